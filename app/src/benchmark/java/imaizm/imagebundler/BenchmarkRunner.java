@@ -0,0 +1,93 @@
+package imaizm.imagebundler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * ベンチマークの子プロセスで、コマンドラインからの実行と同じ経路で1つのコーパスを変換するクラスです。
+ * <p>
+ * {@link EntryPoint#execute(String[])} を呼び出し、その所要時間、プロセスの最大常駐メモリ（RSS）、
+ * ヒープの最大使用量を {@value #RESULT_PREFIX} で始まる1行で標準出力に出力します。
+ * JVMの起動時間は所要時間に含めません。
+ * </p>
+ */
+class BenchmarkRunner {
+
+	/** 結果の行の接頭辞。 */
+	static final String RESULT_PREFIX = "imagebundler.benchmark.result";
+
+	/**
+	 * インスタンス化を禁止します。
+	 */
+	private BenchmarkRunner() {
+	}
+
+	/**
+	 * 指定されたコーパスを変換し、結果を出力します。
+	 *
+	 * @param args 変換対象のファイルまたはディレクトリのパス。
+	 * @throws IOException 変換中にエラーが発生した場合。
+	 */
+	public static void main(String[] args) throws IOException {
+		long startTime = System.nanoTime();
+		int returnCode = EntryPoint.execute(args);
+		long elapsedNanos = System.nanoTime() - startTime;
+
+		System.out.println(RESULT_PREFIX +
+			" returnCode=" + returnCode +
+			" elapsedNanos=" + elapsedNanos +
+			" peakRssBytes=" + getPeakRssBytes() +
+			" peakHeapBytes=" + getPeakHeapBytes());
+		System.exit(returnCode);
+	}
+
+	/**
+	 * プロセスの最大常駐メモリを取得します。
+	 * <p>
+	 * Linuxの {@code /proc/self/status} の {@code VmHWM} を参照します。取得できない場合は-1を返します。
+	 * </p>
+	 *
+	 * @return 最大常駐メモリのバイト数。
+	 */
+	private static long getPeakRssBytes() {
+		Path statusPath = Paths.get("/proc/self/status");
+		if (!Files.isReadable(statusPath)) {
+			return -1;
+		}
+		try {
+			for (String line : Files.readAllLines(statusPath, StandardCharsets.UTF_8)) {
+				if (line.startsWith("VmHWM:")) {
+					String[] fields = line.substring("VmHWM:".length()).trim().split("\\s+");
+					return Long.parseLong(fields[0]) * 1024;
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// 取得できない場合は-1を返す
+		}
+		return -1;
+	}
+
+	/**
+	 * ヒープの最大使用量を取得します。
+	 * <p>
+	 * ヒープの各メモリプールの最大使用量の合計です。各プールの最大値は同時に発生したとは限らないため、上限の目安です。
+	 * </p>
+	 *
+	 * @return ヒープの最大使用量のバイト数。
+	 */
+	private static long getPeakHeapBytes() {
+		long peakHeapBytes = 0;
+		for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPoolMXBean.getType() == MemoryType.HEAP) {
+				peakHeapBytes += memoryPoolMXBean.getPeakUsage().getUsed();
+			}
+		}
+		return peakHeapBytes;
+	}
+}
@@ -0,0 +1,265 @@
+package imaizm.imagebundler;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * ベンチマーク用の合成ページのコーパスを生成するクラスです。
+ * <p>
+ * 乱数の種を固定して描画するため、同じ設定からは常に同じ内容のコーパスが生成されます。
+ * 生成したコーパスのディレクトリには設定とページ数・バイト数を記録した {@value #CORPUS_PROPERTIES_NAME} を作成し、
+ * 同じ設定のコーパスが既に存在する場合は再生成しません。
+ * </p>
+ */
+class CorpusGenerator {
+
+	/** コーパスの種類を表す列挙型です。 */
+	static enum Kind {
+		/** 縦長のページ（JPEG）。 */
+		PORTRAIT("portrait", 200, 1240, 1754, false),
+		/** 見開きの横長のページ（JPEG）。SPLITモードで分割されます。 */
+		SPREAD("spread", 100, 2480, 1754, false),
+		/** 透過のあるPNGのページ。 */
+		TRANSPARENT_PNG("transparent-png", 50, 1240, 1754, false),
+		/** 大判スキャン（JPEG）。オフヒープのラスタと並列エンコードの対象になります。 */
+		GIANT_SCAN("giant-scan", 4, 7016, 9920, false),
+		/** 小さなページを多数格納したZIPファイル。 */
+		MANY_ENTRY_ZIP("many-entry-zip", 3000, 400, 566, true);
+
+		/** コーパス名。 */
+		final String corpusName;
+		/** 倍率1でのページ数。 */
+		final int basePageCount;
+		/** ページの幅。 */
+		final int width;
+		/** ページの高さ。 */
+		final int height;
+		/** ZIPファイルとして生成するかどうか。 */
+		final boolean zip;
+
+		/**
+		 * コーパスの種類を構築します。
+		 *
+		 * @param corpusName コーパス名。
+		 * @param basePageCount 倍率1でのページ数。
+		 * @param width ページの幅。
+		 * @param height ページの高さ。
+		 * @param zip ZIPファイルとして生成するかどうか。
+		 */
+		private Kind(String corpusName, int basePageCount, int width, int height, boolean zip) {
+			this.corpusName = corpusName;
+			this.basePageCount = basePageCount;
+			this.width = width;
+			this.height = height;
+			this.zip = zip;
+		}
+	}
+
+	/** コーパスの設定と統計を記録するファイルの名前。 */
+	static final String CORPUS_PROPERTIES_NAME = "corpus.properties";
+	/** 生成するJPEG画像の圧縮品質。 */
+	private static final float JPEG_QUALITY = 0.9f;
+	/** 乱数の種。 */
+	private static final long SEED = 20240229L;
+
+	/** コーパスを生成するディレクトリ。 */
+	private final Path corpusRootPath;
+	/** ページ数の倍率。 */
+	private final double scale;
+
+	/**
+	 * 指定されたディレクトリにコーパスを生成する {@code CorpusGenerator} を構築します。
+	 *
+	 * @param corpusRootPath コーパスを生成するディレクトリ。
+	 * @param scale ページ数の倍率。
+	 */
+	CorpusGenerator(Path corpusRootPath, double scale) {
+		this.corpusRootPath = corpusRootPath;
+		this.scale = scale;
+	}
+
+	/**
+	 * 指定された種類のコーパスを生成し、その設定と統計を返します。
+	 * <p>
+	 * 同じ設定のコーパスが既に存在する場合は、生成せずにその統計を返します。
+	 * </p>
+	 *
+	 * @param kind コーパスの種類。
+	 * @return {@code input}（変換対象のパス）、{@code pageCount}、{@code byteCount} を含むプロパティ。
+	 * @throws IOException 生成中にエラーが発生した場合。
+	 */
+	Properties generate(Kind kind) throws IOException {
+		int pageCount = Math.max(1, (int) Math.round(kind.basePageCount * this.scale));
+		Path corpusPath = this.corpusRootPath.resolve(kind.corpusName);
+		Path corpusPropertiesPath = corpusPath.resolve(CORPUS_PROPERTIES_NAME);
+
+		if (Files.exists(corpusPropertiesPath)) {
+			Properties properties = new Properties();
+			try (Reader reader = Files.newBufferedReader(corpusPropertiesPath)) {
+				properties.load(reader);
+			}
+			if (Integer.toString(pageCount).equals(properties.getProperty("pageCount"))) {
+				return properties;
+			}
+		}
+
+		System.out.println("generating corpus : " + kind.corpusName + " (" + pageCount + " pages)");
+		FileUtils.deleteDirectory(corpusPath.toFile());
+		Files.createDirectories(corpusPath);
+
+		Random random = new Random(SEED + kind.ordinal());
+		long byteCount = 0;
+		Path inputPath;
+		if (kind.zip) {
+			inputPath = corpusPath.resolve(kind.corpusName + ".zip");
+			try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(inputPath.toFile())) {
+				zipOutputStream.setEncoding("MS932");
+				for (int i = 0; i < pageCount; i++) {
+					byte[] data = encodeJpeg(drawPage(kind, random, i));
+					CRC32 crc32 = new CRC32();
+					crc32.update(data);
+					ZipArchiveEntry zipEntry = new ZipArchiveEntry(String.format("pages/%05d.jpg", i + 1));
+					zipEntry.setMethod(ZipArchiveEntry.STORED);
+					zipEntry.setSize(data.length);
+					zipEntry.setCrc(crc32.getValue());
+					zipOutputStream.putArchiveEntry(zipEntry);
+					zipOutputStream.write(data);
+					zipOutputStream.closeArchiveEntry();
+					byteCount += data.length;
+				}
+			}
+		} else {
+			inputPath = corpusPath.resolve("pages");
+			Files.createDirectories(inputPath);
+			for (int i = 0; i < pageCount; i++) {
+				BufferedImage image = drawPage(kind, random, i);
+				Path pagePath;
+				if (kind == Kind.TRANSPARENT_PNG) {
+					pagePath = inputPath.resolve(String.format("%05d.png", i + 1));
+					ImageIO.write(image, "png", pagePath.toFile());
+				} else {
+					pagePath = inputPath.resolve(String.format("%05d.jpg", i + 1));
+					Files.write(pagePath, encodeJpeg(image));
+				}
+				byteCount += Files.size(pagePath);
+			}
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("input", inputPath.toAbsolutePath().toString());
+		properties.setProperty("pageCount", Integer.toString(pageCount));
+		properties.setProperty("byteCount", Long.toString(byteCount));
+		try (Writer writer = Files.newBufferedWriter(corpusPropertiesPath)) {
+			properties.store(writer, kind.corpusName);
+		}
+		return properties;
+	}
+
+	/**
+	 * 1ページ分の画像を描画します。
+	 * <p>
+	 * 背景のグラデーション、コマ割りの枠、塗りつぶした図形と文字列の行を描画し、実際の漫画・書籍のページに近い圧縮率になるようにします。
+	 * 透過のあるPNGの場合は、背景を半透明にします。
+	 * </p>
+	 *
+	 * @param kind コーパスの種類。
+	 * @param random 乱数。
+	 * @param index ページの番号。
+	 * @return 描画した画像。
+	 */
+	private static BufferedImage drawPage(Kind kind, Random random, int index) {
+		int width = kind.width;
+		int height = kind.height;
+		boolean transparent = (kind == Kind.TRANSPARENT_PNG);
+		BufferedImage image = new BufferedImage(
+			width, height, transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			if (transparent) {
+				graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.6f));
+			}
+			graphics.setPaint(new GradientPaint(
+				0, 0, new Color(0xF8F4EC),
+				width, height, new Color(random.nextInt(0x1000000))));
+			graphics.fillRect(0, 0, width, height);
+			graphics.setComposite(AlphaComposite.SrcOver);
+
+			// コマ割り
+			int margin = width / 20;
+			int panelRows = 2 + random.nextInt(3);
+			int panelHeight = (height - margin * 2) / panelRows;
+			for (int row = 0; row < panelRows; row++) {
+				int top = margin + row * panelHeight;
+				graphics.setColor(new Color(random.nextInt(0x1000000)));
+				graphics.fillOval(
+					margin + random.nextInt(Math.max(1, width / 2)),
+					top + random.nextInt(Math.max(1, panelHeight / 2)),
+					width / 4, panelHeight / 2);
+				graphics.setColor(Color.BLACK);
+				graphics.drawRect(margin, top, width - margin * 2, panelHeight - margin / 4);
+			}
+
+			// 文字列
+			graphics.setFont(new Font(Font.SERIF, Font.PLAIN, Math.max(10, height / 60)));
+			graphics.setColor(Color.DARK_GRAY);
+			int lineHeight = Math.max(12, height / 50);
+			for (int y = margin + lineHeight; y < height - margin; y += lineHeight * 3) {
+				graphics.drawString("ImageBundler benchmark page " + (index + 1) + " line " + y, margin * 2, y);
+			}
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * 画像をJPEG形式でエンコードします。
+	 *
+	 * @param image エンコードする画像。
+	 * @return JPEGデータ。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+		Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName("jpg");
+		ImageWriter imageWriter = imageWriters.next();
+		try {
+			ImageWriteParam imageWriteParam = imageWriter.getDefaultWriteParam();
+			imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			imageWriteParam.setCompressionQuality(JPEG_QUALITY);
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(byteArrayOutputStream)) {
+				imageWriter.setOutput(imageOutputStream);
+				imageWriter.write(null, new IIOImage(image, null, null), imageWriteParam);
+			}
+			return byteArrayOutputStream.toByteArray();
+		} finally {
+			imageWriter.dispose();
+		}
+	}
+}
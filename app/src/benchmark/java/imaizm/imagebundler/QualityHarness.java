@@ -0,0 +1,362 @@
+package imaizm.imagebundler;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 変換処理の候補を、基準の処理に対する画質（PSNR・SSIM）と処理時間で評価するハーネスです。
+ * <p>
+ * 基準の処理は、画像全体をImageIOでデコードして {@link ImageConverter#convert} で変換した、エンコード前の画像です。
+ * 各候補の処理の出力を基準の出力と {@link ImageQuality} で比較し、1ページあたりの処理時間とともに一覧にします。
+ * 高速化のための変更は、出力のバイト列の一致ではなく、ここで測定した画質の許容範囲で評価します。
+ * </p>
+ * <p>
+ * 候補の処理は次のとおりです。新しい候補は {@link #createCandidateMap(OutputProfile)} に追加してください。
+ * <ul>
+ *   <li>{@code scaled-decode} : {@link JpegDecoder#readScaled(byte[], java.util.function.ToDoubleBiFunction)} で縮小しながらデコードしてから変換します。</li>
+ *   <li>{@code cascade} : 2倍の大きさに変換した画像をさらに縮小します。</li>
+ *   <li>{@code bilinear} : {@code getScaledInstance} の代わりに双線形補間で縮小します。</li>
+ *   <li>{@code encode-fast} / {@code encode-small} : 基準の出力を各プロファイルでJPEGエンコードし、デコードし直します。</li>
+ *   <li>{@code production} : 実際の変換と同じく、縮小しながらデコードして変換し、既定のプロファイルでエンコードします。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * 次のシステムプロパティで動作を変更できます。
+ * <ul>
+ *   <li>{@code imagebundler.quality.profile} : 出力プロファイル（既定値は {@value OutputProfile#DEFAULT_SPECIFICATION}）。</li>
+ *   <li>{@code imagebundler.quality.maxPages} : 評価するページ数の上限（既定値は20）。</li>
+ *   <li>{@code imagebundler.quality.minPsnr} : 許容するPSNRの最小値（dB、既定値は30）。</li>
+ *   <li>{@code imagebundler.quality.minSsim} : 許容するSSIMの最小値（既定値は0.95）。</li>
+ * </ul>
+ * いずれかの候補のPSNRまたはSSIMの最小値が許容値を下回った場合は、終了コード1で終了します。
+ * </p>
+ */
+class QualityHarness {
+
+	/** 評価結果を出力するファイルの名前。 */
+	static final String REPORT_FILE_NAME = "quality.properties";
+	/** 設定のシステムプロパティの接頭辞。 */
+	private static final String PROPERTY_PREFIX = "imagebundler.quality.";
+	/** 基準の処理の名前。 */
+	private static final String REFERENCE_NAME = "reference";
+
+	/**
+	 * 1ページのJPEGデータを変換する処理を表すインターフェースです。
+	 */
+	@FunctionalInterface
+	static interface Pipeline {
+		/**
+		 * 1ページのデータを変換します。
+		 *
+		 * @param data 画像ファイルのデータ。
+		 * @return 変換後の画像のリスト。
+		 * @throws IOException 変換中にエラーが発生した場合。
+		 */
+		List<BufferedImage> convert(byte[] data) throws IOException;
+	}
+
+	/**
+	 * 1つの処理の評価結果を集計するクラスです。
+	 */
+	private static class Score {
+		/** 処理時間の合計（ナノ秒）。 */
+		long elapsedNanos;
+		/** 比較した画像の数。 */
+		int imageCount;
+		/** PSNRの合計（一致した画像は含めない）。 */
+		double psnrSum;
+		/** PSNRを合計した画像の数。 */
+		int psnrCount;
+		/** PSNRの最小値。 */
+		double minPsnr = Double.POSITIVE_INFINITY;
+		/** SSIMの合計。 */
+		double ssimSum;
+		/** SSIMの最小値。 */
+		double minSsim = 1;
+	}
+
+	/**
+	 * 評価を実行します。
+	 *
+	 * @param args 作業ディレクトリのパスと、評価するページのディレクトリのパス（省略した場合は合成ページを生成します）。
+	 * @throws IOException 評価中にエラーが発生した場合。
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("usage : QualityHarness <work directory> [page directory]");
+			System.exit(2);
+		}
+		Path workDirectoryPath = Paths.get(args[0]);
+		OutputProfile outputProfile = OutputProfile.parse(
+			System.getProperty(PROPERTY_PREFIX + "profile", OutputProfile.DEFAULT_SPECIFICATION));
+		int maxPages = Integer.getInteger(PROPERTY_PREFIX + "maxPages", 20);
+		double minPsnr = Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "minPsnr", "30"));
+		double minSsim = Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "minSsim", "0.95"));
+
+		List<Path> pagePathList = new ArrayList<Path>();
+		if (args.length == 2) {
+			pagePathList.addAll(listPages(Paths.get(args[1]), maxPages));
+		} else {
+			CorpusGenerator corpusGenerator = new CorpusGenerator(workDirectoryPath.resolve("corpus"), 0.05);
+			for (CorpusGenerator.Kind kind : new CorpusGenerator.Kind[] {
+				CorpusGenerator.Kind.PORTRAIT, CorpusGenerator.Kind.SPREAD, CorpusGenerator.Kind.TRANSPARENT_PNG }) {
+				Path pageDirectoryPath = Paths.get(corpusGenerator.generate(kind).getProperty("input"));
+				pagePathList.addAll(listPages(pageDirectoryPath, maxPages - pagePathList.size()));
+			}
+		}
+
+		Map<String, Pipeline> candidateMap = createCandidateMap(outputProfile);
+		Map<String, Score> scoreMap = new LinkedHashMap<String, Score>();
+		scoreMap.put(REFERENCE_NAME, new Score());
+		for (String name : candidateMap.keySet()) {
+			scoreMap.put(name, new Score());
+		}
+
+		Pipeline reference = data -> outputProfile.convert(readImage(data), ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE);
+		for (Path pagePath : pagePathList) {
+			byte[] data = Files.readAllBytes(pagePath);
+			long startTime = System.nanoTime();
+			List<BufferedImage> referenceImageList = reference.convert(data);
+			scoreMap.get(REFERENCE_NAME).elapsedNanos += System.nanoTime() - startTime;
+
+			for (Map.Entry<String, Pipeline> candidate : candidateMap.entrySet()) {
+				Score score = scoreMap.get(candidate.getKey());
+				startTime = System.nanoTime();
+				List<BufferedImage> candidateImageList = candidate.getValue().convert(data);
+				score.elapsedNanos += System.nanoTime() - startTime;
+				if (candidateImageList.size() != referenceImageList.size()) {
+					throw new IllegalStateException(candidate.getKey() + " : image count differs : " + pagePath);
+				}
+				for (int i = 0; i < referenceImageList.size(); i++) {
+					double psnr = ImageQuality.psnr(referenceImageList.get(i), candidateImageList.get(i));
+					double ssim = ImageQuality.ssim(referenceImageList.get(i), candidateImageList.get(i));
+					score.imageCount++;
+					if (!Double.isInfinite(psnr)) {
+						score.psnrSum += psnr;
+						score.psnrCount++;
+					}
+					score.minPsnr = Math.min(score.minPsnr, psnr);
+					score.ssimSum += ssim;
+					score.minSsim = Math.min(score.minSsim, ssim);
+				}
+			}
+		}
+
+		boolean accepted = report(scoreMap, pagePathList.size(), minPsnr, minSsim, workDirectoryPath.resolve(REPORT_FILE_NAME));
+		if (!accepted) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * 候補の処理を作成します。
+	 *
+	 * @param outputProfile 出力プロファイル。
+	 * @return 候補の名前と処理の対応表（評価する順）。
+	 * @throws IOException JPEGエンコーダを作成できない場合。
+	 */
+	static Map<String, Pipeline> createCandidateMap(OutputProfile outputProfile) throws IOException {
+		int grayscaleTolerance = ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE;
+		OutputProfile doubleProfile = new OutputProfile(
+			"double", outputProfile.getWidth() * 2, outputProfile.getHeight() * 2,
+			outputProfile.getSide(), outputProfile.getCenterClipOption(), outputProfile.getContraAspectMode(),
+			outputProfile.getCenterClipWidth(), outputProfile.getCenterClipHeight(),
+			outputProfile.getQuality(), outputProfile.getJpegProfile());
+		JpegEncoder fastEncoder = new JpegEncoder(JpegEncoder.Profile.FAST);
+		JpegEncoder smallEncoder = new JpegEncoder(JpegEncoder.Profile.SMALL);
+		JpegEncoder productionEncoder = new JpegEncoder(outputProfile.getJpegProfile());
+
+		Map<String, Pipeline> candidateMap = new LinkedHashMap<String, Pipeline>();
+		candidateMap.put("scaled-decode", data -> outputProfile.convert(readScaled(data, outputProfile), grayscaleTolerance));
+		candidateMap.put("cascade", data -> {
+			List<BufferedImage> imageList = new ArrayList<BufferedImage>();
+			for (BufferedImage largerImage : doubleProfile.convert(readImage(data), grayscaleTolerance)) {
+				imageList.addAll(outputProfile.convert(largerImage, grayscaleTolerance));
+			}
+			return imageList;
+		});
+		candidateMap.put("bilinear", data -> resizeBilinear(readImage(data), outputProfile));
+		candidateMap.put("encode-fast", data ->
+			roundTrip(fastEncoder, outputProfile.convert(readImage(data), grayscaleTolerance), outputProfile.getQuality()));
+		candidateMap.put("encode-small", data ->
+			roundTrip(smallEncoder, outputProfile.convert(readImage(data), grayscaleTolerance), outputProfile.getQuality()));
+		candidateMap.put("production", data ->
+			roundTrip(productionEncoder, outputProfile.convert(readScaled(data, outputProfile), grayscaleTolerance), outputProfile.getQuality()));
+		return candidateMap;
+	}
+
+	/**
+	 * 画像全体をImageIOでデコードします。
+	 *
+	 * @param data 画像ファイルのデータ。
+	 * @return デコードした画像。
+	 * @throws IOException デコードできない場合。
+	 */
+	private static BufferedImage readImage(byte[] data) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+		if (image == null) {
+			throw new IOException("unsupported image");
+		}
+		return image;
+	}
+
+	/**
+	 * JPEGデータを出力プロファイルに必要な解像度まで縮小しながらデコードします。縮小できない場合は画像全体をデコードします。
+	 *
+	 * @param data 画像ファイルのデータ。
+	 * @param outputProfile 出力プロファイル。
+	 * @return デコードした画像。
+	 * @throws IOException デコードできない場合。
+	 */
+	private static BufferedImage readScaled(byte[] data, OutputProfile outputProfile) throws IOException {
+		BufferedImage image = JpegDecoder.readScaled(data, outputProfile::getScaleFactor);
+		return (image != null) ? image : readImage(data);
+	}
+
+	/**
+	 * 画像を {@link ImageConverter#convert} と同じ規則で分割し、双線形補間で縮小します。
+	 * <p>
+	 * 縦横比が異なる場合の処理モードは {@link ImageConverter.ContraAspectMode#SPLIT} のみに対応します。
+	 * グレースケールの判定は行いません。
+	 * </p>
+	 *
+	 * @param srcImage 変換元の画像。
+	 * @param outputProfile 出力プロファイル。
+	 * @return 変換後の画像のリスト。
+	 */
+	private static List<BufferedImage> resizeBilinear(BufferedImage srcImage, OutputProfile outputProfile) {
+		List<Rectangle> regionList = ImageConverter.getSplitRegions(
+			srcImage.getWidth(), srcImage.getHeight(), outputProfile.getWidth(), outputProfile.getHeight(),
+			outputProfile.getSide(), outputProfile.getCenterClipOption(),
+			outputProfile.getCenterClipWidth(), outputProfile.getCenterClipHeight());
+		if (regionList.isEmpty()) {
+			regionList.add(new Rectangle(0, 0, srcImage.getWidth(), srcImage.getHeight()));
+		}
+		List<BufferedImage> imageList = new ArrayList<BufferedImage>();
+		for (Rectangle region : regionList) {
+			double scale = Math.min(
+				(double) outputProfile.getWidth() / region.width, (double) outputProfile.getHeight() / region.height);
+			int width = (int) (region.width * scale);
+			int height = (int) (region.height * scale);
+			BufferedImage image = new BufferedImage(width, height,
+				srcImage.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.drawImage(srcImage,
+					0, 0, width, height,
+					region.x, region.y, region.x + region.width, region.y + region.height, null);
+			} finally {
+				graphics.dispose();
+			}
+			imageList.add(image);
+		}
+		return imageList;
+	}
+
+	/**
+	 * 画像をJPEGエンコードし、デコードし直します。
+	 *
+	 * @param jpegEncoder エンコードに使用する {@link JpegEncoder}。
+	 * @param imageList 対象の画像のリスト。
+	 * @param quality 圧縮品質。
+	 * @return デコードし直した画像のリスト。
+	 * @throws IOException エンコードまたはデコード中にエラーが発生した場合。
+	 */
+	private static List<BufferedImage> roundTrip(JpegEncoder jpegEncoder, List<BufferedImage> imageList, int quality) throws IOException {
+		List<BufferedImage> decodedImageList = new ArrayList<BufferedImage>();
+		for (BufferedImage image : imageList) {
+			decodedImageList.add(readImage(jpegEncoder.encode(image, quality)));
+		}
+		return decodedImageList;
+	}
+
+	/**
+	 * 指定されたディレクトリの画像ファイルを名前順に列挙します。
+	 *
+	 * @param pageDirectoryPath ディレクトリのパス。
+	 * @param maxPages 列挙する数の上限。
+	 * @return 画像ファイルのパスのリスト。
+	 * @throws IOException ディレクトリを読み込めない場合。
+	 */
+	private static List<Path> listPages(Path pageDirectoryPath, int maxPages) throws IOException {
+		List<Path> pagePathList = new ArrayList<Path>();
+		try (DirectoryStream<Path> directoryStream =
+				Files.newDirectoryStream(pageDirectoryPath, "*.{jpg,jpeg,JPG,JPEG,png,PNG}")) {
+			for (Path path : directoryStream) {
+				pagePathList.add(path);
+			}
+		}
+		pagePathList.sort(null);
+		return pagePathList.subList(0, Math.max(0, Math.min(maxPages, pagePathList.size())));
+	}
+
+	/**
+	 * 評価結果を一覧にして出力し、ファイルに保存します。
+	 *
+	 * @param scoreMap 処理の名前と評価結果の対応表。
+	 * @param pageCount 評価したページ数。
+	 * @param minPsnr 許容するPSNRの最小値。
+	 * @param minSsim 許容するSSIMの最小値。
+	 * @param reportPath 評価結果を保存するファイルのパス。
+	 * @return すべての候補が許容範囲内の場合は true。
+	 * @throws IOException 保存中にエラーが発生した場合。
+	 */
+	private static boolean report(
+		Map<String, Score> scoreMap,
+		int pageCount,
+		double minPsnr,
+		double minSsim,
+		Path reportPath) throws IOException {
+
+		double referenceMillis = scoreMap.get(REFERENCE_NAME).elapsedNanos / 1e6 / pageCount;
+		Properties properties = new Properties();
+		boolean accepted = true;
+		System.out.println(String.format("%d pages, tolerance : PSNR >= %.1f dB, SSIM >= %.3f", pageCount, minPsnr, minSsim));
+		System.out.println(String.format("%-14s %10s %8s %10s %10s %8s %8s  %s",
+			"pipeline", "ms/page", "speedup", "PSNR(avg)", "PSNR(min)", "SSIM", "SSIM(min)", "result"));
+		for (Map.Entry<String, Score> entry : scoreMap.entrySet()) {
+			String name = entry.getKey();
+			Score score = entry.getValue();
+			double millis = score.elapsedNanos / 1e6 / pageCount;
+			properties.setProperty(name + ".millisPerPage", String.format("%.2f", millis));
+			if (REFERENCE_NAME.equals(name)) {
+				System.out.println(String.format("%-14s %10.2f %8s", name, millis, "1.00x"));
+				continue;
+			}
+			double averagePsnr = (score.psnrCount == 0) ? Double.POSITIVE_INFINITY : score.psnrSum / score.psnrCount;
+			double averageSsim = score.ssimSum / score.imageCount;
+			boolean withinTolerance = score.minPsnr >= minPsnr && score.minSsim >= minSsim;
+			accepted &= withinTolerance;
+			properties.setProperty(name + ".averagePsnr", String.format("%.2f", averagePsnr));
+			properties.setProperty(name + ".minPsnr", String.format("%.2f", score.minPsnr));
+			properties.setProperty(name + ".averageSsim", String.format("%.4f", averageSsim));
+			properties.setProperty(name + ".minSsim", String.format("%.4f", score.minSsim));
+			System.out.println(String.format("%-14s %10.2f %7.2fx %10.2f %10.2f %8.4f %8.4f  %s",
+				name, millis, referenceMillis / millis, averagePsnr, score.minPsnr, averageSsim, score.minSsim,
+				withinTolerance ? "ok" : "NG"));
+		}
+
+		Files.createDirectories(reportPath.toAbsolutePath().getParent());
+		try (Writer writer = Files.newBufferedWriter(reportPath)) {
+			properties.store(writer, Constants.APPLICATION_NAME + " quality report");
+		}
+		return accepted;
+	}
+}
@@ -0,0 +1,344 @@
+package imaizm.imagebundler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 合成ページのコーパスに対して、コマンドラインからの実行と同じ経路で変換を行い、スループットを計測するベンチマークです。
+ * <p>
+ * {@link CorpusGenerator} で生成した各コーパスについて、JVMを起動して {@link BenchmarkRunner} で変換し、
+ * 毎秒のページ数、毎秒の入力メガバイト数、最大常駐メモリ（RSS）、ヒープの最大使用量を記録します。
+ * 各コーパスは指定された回数だけ計測し、スループットは最良の値、メモリは最大の値を採用します。
+ * </p>
+ * <p>
+ * 計測結果は作業ディレクトリの {@value #RESULTS_FILE_NAME} に出力し、ベースラインのファイルと比較します。
+ * スループットが許容範囲を超えて低下した場合、または最大常駐メモリが許容範囲を超えて増加した場合は、終了コード1で終了します。
+ * ベースラインのファイルが存在しない場合は、計測結果をベースラインとして保存します。
+ * ベースラインは計測したマシンに固有の値のため、リリースに使用するマシンで作成してください。
+ * </p>
+ * <p>
+ * 次のシステムプロパティで動作を変更できます。
+ * <ul>
+ * <li>{@code imagebundler.benchmark.scale} : コーパスのページ数の倍率（既定値は1.0）。</li>
+ * <li>{@code imagebundler.benchmark.runs} : コーパスごとの計測回数（既定値は3）。</li>
+ * <li>{@code imagebundler.benchmark.tolerance} : 低下・増加の許容割合（既定値は0.10）。</li>
+ * <li>{@code imagebundler.benchmark.jvmArgs} : 変換を行うJVMに渡す引数（空白区切り）。</li>
+ * <li>{@code imagebundler.benchmark.updateBaseline} : true の場合、比較せずにベースラインを上書きします。</li>
+ * </ul>
+ * {@code imagebundler.} で始まるその他のシステムプロパティは、変換の設定として変換を行うJVMにそのまま渡します。
+ * </p>
+ */
+class ThroughputBenchmark {
+
+	/** 計測結果を出力するファイルの名前。 */
+	static final String RESULTS_FILE_NAME = "results.properties";
+	/** ベンチマークの設定のシステムプロパティの接頭辞。 */
+	private static final String BENCHMARK_PROPERTY_PREFIX = "imagebundler.benchmark.";
+	/** 1メガバイトのバイト数。 */
+	private static final double MEGABYTE = 1024.0 * 1024.0;
+
+	/** 作業ディレクトリ。 */
+	private final Path workDirectoryPath;
+	/** コーパスのページ数の倍率。 */
+	private final double scale;
+	/** コーパスごとの計測回数。 */
+	private final int runs;
+	/** 低下・増加の許容割合。 */
+	private final double tolerance;
+	/** 変換を行うJVMに渡す引数のリスト。 */
+	private final List<String> jvmArgumentList;
+
+	/**
+	 * 指定された作業ディレクトリで計測を行う {@code ThroughputBenchmark} を構築します。
+	 *
+	 * @param workDirectoryPath 作業ディレクトリ。
+	 * @param scale コーパスのページ数の倍率。
+	 * @param runs コーパスごとの計測回数。
+	 * @param tolerance 低下・増加の許容割合。
+	 * @param jvmArgumentList 変換を行うJVMに渡す引数のリスト。
+	 */
+	ThroughputBenchmark(Path workDirectoryPath, double scale, int runs, double tolerance, List<String> jvmArgumentList) {
+		if (runs < 1) {
+			throw new IllegalArgumentException("runs must be positive : " + runs);
+		}
+		this.workDirectoryPath = workDirectoryPath;
+		this.scale = scale;
+		this.runs = runs;
+		this.tolerance = tolerance;
+		this.jvmArgumentList = new ArrayList<String>(jvmArgumentList);
+	}
+
+	/**
+	 * ベンチマークを実行します。
+	 *
+	 * @param args 作業ディレクトリのパスと、ベースラインのファイルのパス。
+	 * @throws IOException 計測中にエラーが発生した場合。
+	 * @throws InterruptedException 計測中に割り込まれた場合。
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 2) {
+			System.err.println("usage : ThroughputBenchmark <work directory> <baseline file>");
+			System.exit(2);
+		}
+
+		List<String> jvmArgumentList = new ArrayList<String>();
+		String jvmArgs = System.getProperty(BENCHMARK_PROPERTY_PREFIX + "jvmArgs", "").trim();
+		if (!jvmArgs.isEmpty()) {
+			jvmArgumentList.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+		}
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith(BundleOptions.SYSTEM_PROPERTY_PREFIX) && !name.startsWith(BENCHMARK_PROPERTY_PREFIX)) {
+				jvmArgumentList.add("-D" + name + "=" + System.getProperty(name));
+			}
+		}
+
+		ThroughputBenchmark benchmark = new ThroughputBenchmark(
+			Paths.get(args[0]),
+			Double.parseDouble(System.getProperty(BENCHMARK_PROPERTY_PREFIX + "scale", "1.0")),
+			Integer.parseInt(System.getProperty(BENCHMARK_PROPERTY_PREFIX + "runs", "3")),
+			Double.parseDouble(System.getProperty(BENCHMARK_PROPERTY_PREFIX + "tolerance", "0.10")),
+			jvmArgumentList);
+		Properties results = benchmark.run();
+
+		Path baselinePath = Paths.get(args[1]);
+		if (Boolean.getBoolean(BENCHMARK_PROPERTY_PREFIX + "updateBaseline") || !Files.exists(baselinePath)) {
+			store(results, baselinePath);
+			System.out.println("baseline written : " + baselinePath);
+			return;
+		}
+
+		Properties baseline = new Properties();
+		try (Reader reader = Files.newBufferedReader(baselinePath)) {
+			baseline.load(reader);
+		}
+		List<String> regressionList = benchmark.compare(baseline, results);
+		if (!regressionList.isEmpty()) {
+			for (String regression : regressionList) {
+				System.err.println("regression : " + regression);
+			}
+			System.exit(1);
+		}
+		System.out.println("no regression against baseline : " + baselinePath);
+	}
+
+	/**
+	 * 各コーパスを生成して計測し、計測結果を返します。
+	 * <p>
+	 * 計測結果は作業ディレクトリの {@value #RESULTS_FILE_NAME} にも出力します。
+	 * </p>
+	 *
+	 * @return コーパス名で始まるキーの計測結果。
+	 * @throws IOException 計測中にエラーが発生した場合。
+	 * @throws InterruptedException 計測中に割り込まれた場合。
+	 */
+	Properties run() throws IOException, InterruptedException {
+		CorpusGenerator corpusGenerator = new CorpusGenerator(this.workDirectoryPath.resolve("corpus"), this.scale);
+		List<Properties> corpusList = new ArrayList<Properties>();
+		for (CorpusGenerator.Kind kind : CorpusGenerator.Kind.values()) {
+			corpusList.add(corpusGenerator.generate(kind));
+		}
+
+		Properties results = new Properties();
+		System.out.println(String.format("%-16s %8s %10s %10s %10s %10s",
+			"corpus", "pages", "pages/s", "MB/s", "RSS(MB)", "heap(MB)"));
+		for (CorpusGenerator.Kind kind : CorpusGenerator.Kind.values()) {
+			Properties corpus = corpusList.get(kind.ordinal());
+			Path inputPath = Paths.get(corpus.getProperty("input"));
+			int pageCount = Integer.parseInt(corpus.getProperty("pageCount"));
+			long byteCount = Long.parseLong(corpus.getProperty("byteCount"));
+
+			long bestElapsedNanos = Long.MAX_VALUE;
+			long peakRssBytes = -1;
+			long peakHeapBytes = -1;
+			for (int i = 0; i < this.runs; i++) {
+				long[] result = this.measure(inputPath);
+				bestElapsedNanos = Math.min(bestElapsedNanos, result[0]);
+				peakRssBytes = Math.max(peakRssBytes, result[1]);
+				peakHeapBytes = Math.max(peakHeapBytes, result[2]);
+			}
+
+			double seconds = bestElapsedNanos / 1e9;
+			double pagesPerSecond = pageCount / seconds;
+			double megabytesPerSecond = byteCount / MEGABYTE / seconds;
+			double peakRssMegabytes = peakRssBytes < 0 ? -1 : peakRssBytes / MEGABYTE;
+			double peakHeapMegabytes = peakHeapBytes / MEGABYTE;
+			results.setProperty(kind.corpusName + ".pageCount", Integer.toString(pageCount));
+			results.setProperty(kind.corpusName + ".pagesPerSecond", format(pagesPerSecond));
+			results.setProperty(kind.corpusName + ".megabytesPerSecond", format(megabytesPerSecond));
+			results.setProperty(kind.corpusName + ".peakRssMegabytes", format(peakRssMegabytes));
+			results.setProperty(kind.corpusName + ".peakHeapMegabytes", format(peakHeapMegabytes));
+			System.out.println(String.format("%-16s %8d %10.2f %10.2f %10.1f %10.1f",
+				kind.corpusName, pageCount, pagesPerSecond, megabytesPerSecond, peakRssMegabytes, peakHeapMegabytes));
+		}
+
+		store(results, this.workDirectoryPath.resolve(RESULTS_FILE_NAME));
+		return results;
+	}
+
+	/**
+	 * JVMを起動して1つのコーパスを変換し、その計測値を返します。
+	 * <p>
+	 * 変換後、次の計測に影響しないように出力ファイルを削除します。
+	 * </p>
+	 *
+	 * @param inputPath 変換対象のファイルまたはディレクトリのパス。
+	 * @return 所要時間（ナノ秒）、最大常駐メモリのバイト数、ヒープの最大使用量のバイト数の配列。
+	 * @throws IOException 変換に失敗した場合。
+	 * @throws InterruptedException 変換の完了を待機中に割り込まれた場合。
+	 */
+	private long[] measure(Path inputPath) throws IOException, InterruptedException {
+		List<String> commandList = new ArrayList<String>();
+		commandList.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		commandList.add("-Djava.awt.headless=true");
+		commandList.addAll(this.jvmArgumentList);
+		commandList.add("-cp");
+		commandList.add(System.getProperty("java.class.path"));
+		commandList.add(BenchmarkRunner.class.getName());
+		commandList.add(inputPath.toString());
+
+		Process process = new ProcessBuilder(commandList).redirectErrorStream(true).start();
+		long[] result = null;
+		StringBuilder output = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(BenchmarkRunner.RESULT_PREFIX)) {
+					result = parseResult(line);
+				} else {
+					output.append(line).append(System.lineSeparator());
+				}
+			}
+		}
+		int exitCode = process.waitFor();
+
+		this.deleteOutputs(inputPath);
+
+		if (exitCode != 0 || result == null) {
+			throw new IOException("conversion failed (exit code " + exitCode + ") : " + inputPath
+				+ System.lineSeparator() + output);
+		}
+		return result;
+	}
+
+	/**
+	 * {@link BenchmarkRunner} が出力した結果の行を解析します。
+	 *
+	 * @param line 結果の行。
+	 * @return 所要時間（ナノ秒）、最大常駐メモリのバイト数、ヒープの最大使用量のバイト数の配列。
+	 */
+	private static long[] parseResult(String line) {
+		long[] result = new long[3];
+		for (String field : line.substring(BenchmarkRunner.RESULT_PREFIX.length()).trim().split("\\s+")) {
+			String[] pair = field.split("=", 2);
+			if ("elapsedNanos".equals(pair[0])) {
+				result[0] = Long.parseLong(pair[1]);
+			} else if ("peakRssBytes".equals(pair[0])) {
+				result[1] = Long.parseLong(pair[1]);
+			} else if ("peakHeapBytes".equals(pair[0])) {
+				result[2] = Long.parseLong(pair[1]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 変換で作成された出力ファイルを削除します。
+	 * <p>
+	 * 入力がディレクトリの場合は、元の画像を格納した {@code <ディレクトリ名>.zip} も削除します。
+	 * 入力のZIPファイル自体は削除しません。
+	 * </p>
+	 *
+	 * @param inputPath 変換対象のファイルまたはディレクトリのパス。
+	 * @throws IOException 削除中にエラーが発生した場合。
+	 */
+	private void deleteOutputs(Path inputPath) throws IOException {
+		Path parentPath = inputPath.toAbsolutePath().getParent();
+		String baseName = inputPath.getFileName().toString();
+		if (baseName.endsWith(".zip")) {
+			baseName = baseName.substring(0, baseName.length() - ".zip".length());
+		}
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(parentPath, "*.zip")) {
+			for (Path path : directoryStream) {
+				if (!path.equals(inputPath.toAbsolutePath()) && path.getFileName().toString().startsWith(baseName)) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ベースラインと計測結果を比較し、許容範囲を超える低下・増加の一覧を返します。
+	 * <p>
+	 * 毎秒のページ数・メガバイト数は低下を、最大常駐メモリは増加を検出します。
+	 * ページ数が異なるコーパス（異なる倍率で作成したベースライン）は比較しません。
+	 * </p>
+	 *
+	 * @param baseline ベースライン。
+	 * @param results 計測結果。
+	 * @return 許容範囲を超える低下・増加の説明のリスト。
+	 */
+	List<String> compare(Properties baseline, Properties results) {
+		List<String> regressionList = new ArrayList<String>();
+		for (CorpusGenerator.Kind kind : CorpusGenerator.Kind.values()) {
+			String prefix = kind.corpusName + ".";
+			String baselinePageCount = baseline.getProperty(prefix + "pageCount");
+			if (baselinePageCount == null) {
+				continue;
+			}
+			if (!baselinePageCount.equals(results.getProperty(prefix + "pageCount"))) {
+				System.out.println("skipped (page count differs from baseline) : " + kind.corpusName);
+				continue;
+			}
+			for (String key : new String[] { "pagesPerSecond", "megabytesPerSecond" }) {
+				double expected = Double.parseDouble(baseline.getProperty(prefix + key));
+				double actual = Double.parseDouble(results.getProperty(prefix + key));
+				if (actual < expected * (1 - this.tolerance)) {
+					regressionList.add(prefix + key + " " + format(expected) + " -> " + format(actual));
+				}
+			}
+			double expectedRss = Double.parseDouble(baseline.getProperty(prefix + "peakRssMegabytes"));
+			double actualRss = Double.parseDouble(results.getProperty(prefix + "peakRssMegabytes"));
+			if (expectedRss > 0 && actualRss > expectedRss * (1 + this.tolerance)) {
+				regressionList.add(prefix + "peakRssMegabytes " + format(expectedRss) + " -> " + format(actualRss));
+			}
+		}
+		return regressionList;
+	}
+
+	/**
+	 * 計測値を文字列に変換します。
+	 *
+	 * @param value 計測値。
+	 * @return 小数点以下2桁の文字列。
+	 */
+	private static String format(double value) {
+		return String.format("%.2f", value);
+	}
+
+	/**
+	 * プロパティをファイルに保存します。
+	 *
+	 * @param properties 保存するプロパティ。
+	 * @param path 保存先のファイルのパス。
+	 * @throws IOException 保存中にエラーが発生した場合。
+	 */
+	private static void store(Properties properties, Path path) throws IOException {
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		try (Writer writer = Files.newBufferedWriter(path)) {
+			properties.store(writer, Constants.APPLICATION_NAME + " throughput benchmark");
+		}
+	}
+}
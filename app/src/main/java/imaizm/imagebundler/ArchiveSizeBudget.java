@@ -0,0 +1,52 @@
+package imaizm.imagebundler;
+
+/**
+ * 1つの出力ZIPファイルに格納するエンコード結果の合計サイズの予算を、各ページに配分するクラスです。
+ * <p>
+ * 各ページには、残りの予算を未完了のページ数で均等に割った値が配分されます。
+ * 先に完了したページが配分より小さく収まった場合は、その差分が後続のページに配分されます。
+ * 複数の変換ワーカーから同時に使用できます。
+ * </p>
+ */
+public class ArchiveSizeBudget {
+
+	/** 予算の合計（バイト数）。 */
+	private final long totalSize;
+	/** 対象のページ数。 */
+	private final int pageCount;
+	/** 完了したページが使用したバイト数の合計。 */
+	private long usedSize;
+	/** 完了したページ数。 */
+	private int finishedPageCount;
+
+	/**
+	 * 指定された予算の合計とページ数で {@code ArchiveSizeBudget} を構築します。
+	 *
+	 * @param totalSize 予算の合計（バイト数）。
+	 * @param pageCount 対象のページ数。
+	 */
+	public ArchiveSizeBudget(long totalSize, int pageCount) {
+		this.totalSize = totalSize;
+		this.pageCount = pageCount;
+	}
+
+	/**
+	 * これから変換するページに配分する予算を取得します。
+	 *
+	 * @return 配分された予算（バイト数）。少なくとも1。
+	 */
+	public synchronized long allocate() {
+		int remainingPageCount = Math.max(1, this.pageCount - this.finishedPageCount);
+		return Math.max(1, (this.totalSize - this.usedSize) / remainingPageCount);
+	}
+
+	/**
+	 * ページの変換が完了したことを記録します。
+	 *
+	 * @param size そのページのエンコード結果のバイト数。
+	 */
+	public synchronized void consume(long size) {
+		this.usedSize += size;
+		this.finishedPageCount++;
+	}
+}
@@ -0,0 +1,408 @@
+package imaizm.imagebundler;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+/**
+ * アーカイブ内の画像のエントリを、一時ファイルに展開せずに先頭から順にメモリ上へ読み込むクラスです。
+ * <p>
+ * 次の入力に対応します。
+ * <ul>
+ *   <li>tarファイル（{@code .tar}）</li>
+ *   <li>gzip圧縮したtarファイル（{@code .tar.gz}、{@code .tgz}）</li>
+ *   <li>7zファイル（{@code .7z}）。LZMA/LZMA2で圧縮されたエントリの展開には XZ for Java が必要です。</li>
+ *   <li>ストリームから読み込むアーカイブ（ZIPファイル、tarファイルなど）。形式は先頭のバイト列から判定します。</li>
+ * </ul>
+ * これらの形式はエントリを先頭から順にしか展開できない（またはその方が効率的な）ため、
+ * {@link ZipFileHandler} のようにエントリを並列に展開せず、専用の読み込みスレッドが順に読み込みます。
+ * 読み込みスレッドは変換と並行して先行し、読み込んだページを有界キューに保持します。
+ * キューが一杯の間は読み込みを待機するため、メモリ上に保持するページ数はコンストラクタで指定した数までに制限されます。
+ * </p>
+ * <p>
+ * 対象のエントリは、名前がJPG、JPEG、PNGの拡張子で終わるファイルです。
+ * エントリ名のエンコーディングはMS932（Shift_JIS）を使用します。
+ * ページ名には、ZIPファイルの展開と同じく、エントリ名のファイル名部分を使用します。
+ * 別のディレクトリに同じファイル名のエントリがある場合は、2つ目以降のエントリに重複しない名前を付けます
+ * （{@link ZipFileHandler#getOutputFileName(String, int, Set)} を参照）。
+ * </p>
+ */
+final class ArchiveStreamReader implements Closeable {
+
+	/**
+	 * 読み込んだ1ページ分の画像を表すクラスです。
+	 */
+	static final class Page {
+
+		/** 画像のファイル名（アーカイブ内で重複しない、エントリ名のファイル名部分）。 */
+		private final String name;
+		/** 画像ファイルの内容。 */
+		private final byte[] data;
+
+		/**
+		 * 指定されたファイル名と内容で {@code Page} を構築します。
+		 *
+		 * @param name 画像のファイル名。
+		 * @param data 画像ファイルの内容。
+		 */
+		Page(String name, byte[] data) {
+			this.name = name;
+			this.data = data;
+		}
+
+		/**
+		 * 画像のファイル名を取得します。
+		 * @return 画像のファイル名。
+		 */
+		String getName() {
+			return this.name;
+		}
+
+		/**
+		 * 画像ファイルの内容を取得します。
+		 * @return 画像ファイルの内容。
+		 */
+		byte[] getData() {
+			return this.data;
+		}
+	}
+
+	/**
+	 * アーカイブから次の画像のエントリを読み込むための関数型インターフェースです。
+	 */
+	@FunctionalInterface
+	private interface EntryReader {
+		/**
+		 * 次の画像のエントリを読み込みます。
+		 *
+		 * @return 読み込んだページ。エントリがもうない場合は null。
+		 * @throws IOException 読み込み中にエラーが発生した場合。
+		 */
+		Page read() throws IOException;
+	}
+
+	/** 読み込みの終了を通知するための番兵。 */
+	private static final Page END_OF_PAGES = new Page(null, null);
+
+	/** アーカイブの読み込みバッファのサイズ（1MB）。 */
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+	/** 読み込みスレッドから変換処理へページを受け渡す有界キュー。 */
+	private final BlockingQueue<Page> pageQueue;
+	/** 読み込みスレッド。 */
+	private final Thread readerThread;
+	/** 読み込み中に発生した例外。 */
+	private volatile Throwable failure;
+	/** {@link #close()} が呼び出されたかどうか。 */
+	private volatile boolean closed;
+	/** 最後のページまで受け取ったかどうか。 */
+	private boolean ended;
+
+	/**
+	 * 指定されたエントリの読み込みを行う読み込みスレッドを開始します。
+	 *
+	 * @param entryReader 次の画像のエントリを読み込む関数。
+	 * @param source 読み込みの終了時に閉じるアーカイブ。
+	 * @param capacity 先行して読み込むページ数の上限。
+	 */
+	private ArchiveStreamReader(EntryReader entryReader, Closeable source, int capacity) {
+		this.pageQueue = new ArrayBlockingQueue<Page>(Math.max(1, capacity));
+		this.readerThread = new Thread(
+			() -> this.readLoop(entryReader, source),
+			Constants.APPLICATION_NAME + "-read");
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+	/**
+	 * 指定されたストリームからアーカイブを読み込む {@code ArchiveStreamReader} を構築し、読み込みスレッドを開始します。
+	 * <p>
+	 * アーカイブの形式はストリームの先頭のバイト列から判定します。
+	 * gzip圧縮されている場合（tar.gzファイル）は、展開しながら読み込みます。
+	 * 7zファイルのようにシークせずに読み込めない形式には対応しません。
+	 * 元のストリームは閉じません。
+	 * </p>
+	 *
+	 * @param inputStream アーカイブを読み込むストリーム。
+	 * @param capacity 先行して読み込むページ数の上限。
+	 * @return 構築した {@code ArchiveStreamReader}。
+	 * @throws IOException アーカイブの形式を判定できない場合、またはシークせずに読み込めない形式の場合。
+	 */
+	static ArchiveStreamReader open(InputStream inputStream, int capacity) throws IOException {
+		InputStream bufferedInputStream =
+			new BufferedInputStream(new CloseShieldInputStream(inputStream), READ_BUFFER_SIZE);
+		// gzipの識別子で始まる場合は、展開したストリームからアーカイブの形式を判定する
+		byte[] signature = new byte[2];
+		bufferedInputStream.mark(signature.length);
+		int signatureLength = IOUtils.read(bufferedInputStream, signature);
+		bufferedInputStream.reset();
+		if (GzipCompressorInputStream.matches(signature, signatureLength)) {
+			bufferedInputStream = new BufferedInputStream(
+				new GzipCompressorInputStream(bufferedInputStream, true), READ_BUFFER_SIZE);
+		}
+		ArchiveInputStream archiveInputStream;
+		try {
+			archiveInputStream = new ArchiveStreamFactory("MS932").createArchiveInputStream(bufferedInputStream);
+		} catch (ArchiveException e) {
+			throw new IOException("アーカイブの形式を判定できません。", e);
+		}
+		return new ArchiveStreamReader(entryReader(archiveInputStream), archiveInputStream, capacity);
+	}
+
+	/**
+	 * 指定されたアーカイブファイルを読み込む {@code ArchiveStreamReader} を構築し、読み込みスレッドを開始します。
+	 *
+	 * @param archiveFilePath アーカイブファイルのパス（{@link #isSupported(Path)} が true を返すもの）。
+	 * @param capacity 先行して読み込むページ数の上限。
+	 * @return 構築した {@code ArchiveStreamReader}。
+	 * @throws IOException アーカイブファイルを開く際にエラーが発生した場合。
+	 * @throws IllegalArgumentException 対応していない形式の場合。
+	 */
+	static ArchiveStreamReader open(Path archiveFilePath, int capacity) throws IOException {
+		String name = archiveFilePath.getFileName().toString().toLowerCase();
+		if (name.endsWith(".7z")) {
+			SevenZFile sevenZFile = new SevenZFile(archiveFilePath.toFile());
+			return new ArchiveStreamReader(entryReader(sevenZFile), sevenZFile, capacity);
+		}
+
+		InputStream inputStream = new BufferedInputStream(Files.newInputStream(archiveFilePath), READ_BUFFER_SIZE);
+		try {
+			if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+				inputStream = new GzipCompressorInputStream(inputStream, true);
+			} else if (!name.endsWith(".tar")) {
+				throw new IllegalArgumentException("未対応のファイル形式です。: " + archiveFilePath);
+			}
+		} catch (IOException | RuntimeException e) {
+			inputStream.close();
+			throw e;
+		}
+		TarArchiveInputStream tarInputStream = new TarArchiveInputStream(inputStream, "MS932");
+		return new ArchiveStreamReader(entryReader(tarInputStream), tarInputStream, capacity);
+	}
+
+	/**
+	 * 指定されたパスが、このクラスで読み込むアーカイブファイル（tarファイル、gzip圧縮したtarファイル、7zファイル）かどうかを判定します。
+	 *
+	 * @param inputFilePath 判定するパス。
+	 * @return 対応するアーカイブファイルの場合は true。
+	 */
+	static boolean isSupported(Path inputFilePath) {
+		return getExtensionLength(inputFilePath) > 0 && !Files.isDirectory(inputFilePath);
+	}
+
+	/**
+	 * アーカイブファイルの名前から拡張子（{@code .tar.gz} のような2つの拡張子を含む）を除いた名前を求めます。
+	 *
+	 * @param archiveFilePath アーカイブファイルのパス。
+	 * @return 拡張子を除いた名前。
+	 */
+	static String getBaseName(Path archiveFilePath) {
+		String name = archiveFilePath.getFileName().toString();
+		return name.substring(0, name.length() - getExtensionLength(archiveFilePath));
+	}
+
+	/**
+	 * 対応するアーカイブファイルの拡張子の長さを求めます。
+	 *
+	 * @param inputFilePath 判定するパス。
+	 * @return 拡張子の長さ（"." を含む）。対応していない場合は0。
+	 */
+	private static int getExtensionLength(Path inputFilePath) {
+		String name = inputFilePath.getFileName().toString().toLowerCase();
+		for (String extension : new String[] { ".tar.gz", ".tgz", ".tar", ".7z" }) {
+			if (name.endsWith(extension) && name.length() > extension.length()) {
+				return extension.length();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * 次のページを取得します。先行して読み込まれていない場合は、読み込まれるまで待機します。
+	 *
+	 * @return 次のページ（アーカイブ内のエントリ順）。すべてのページを読み込んだ場合は null。
+	 * @throws IOException 読み込み中にエラーが発生していた場合、または待機中に割り込まれた場合。
+	 */
+	Page next() throws IOException {
+		if (this.ended) {
+			return null;
+		}
+		Page page;
+		try {
+			page = this.pageQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("アーカイブの読み込みの待機中に割り込まれました。");
+		}
+		if (page == END_OF_PAGES) {
+			this.ended = true;
+			Throwable cause = this.failure;
+			if (cause instanceof IOException) {
+				throw new IOException(cause.getMessage(), cause);
+			} else if (cause != null) {
+				throw new IOException("アーカイブの読み込みに失敗しました。", cause);
+			}
+			return null;
+		}
+		return page;
+	}
+
+	/**
+	 * 読み込みを中断します。
+	 * <p>
+	 * 読み込みスレッドは、読み込み中のエントリを読み終えた時点で（または割り込みにより）終了し、アーカイブを閉じます。
+	 * 標準入力のように読み込みが戻らない場合があるため、読み込みスレッドの終了は待機しません。
+	 * すべてのページを受け取った後は、アーカイブはすでに閉じられています。
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.readerThread.interrupt();
+		this.pageQueue.clear();
+	}
+
+	/**
+	 * 読み込みスレッドの処理本体です。
+	 * <p>
+	 * エントリを順に読み込んでキューに投入し、最後に番兵を投入します。
+	 * 読み込み中に発生した例外は記録し、{@link #next()} で呼び出し元に通知します。
+	 * </p>
+	 *
+	 * @param entryReader 次の画像のエントリを読み込む関数。
+	 * @param source 読み込みの終了時に閉じるアーカイブ。
+	 */
+	private void readLoop(EntryReader entryReader, Closeable source) {
+		try {
+			try {
+				Page page;
+				while (!this.closed && (page = entryReader.read()) != null) {
+					this.enqueue(page);
+				}
+			} finally {
+				source.close();
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			this.failure = e;
+		} catch (InterruptedException e) {
+			// close() による中断
+		} finally {
+			try {
+				this.enqueue(END_OF_PAGES);
+			} catch (InterruptedException e) {
+				// close() による中断
+			}
+		}
+	}
+
+	/**
+	 * キューにページを投入します。{@link #close()} が呼び出された場合は投入せずに戻ります。
+	 *
+	 * @param page 投入するページ。
+	 * @throws InterruptedException 投入の待機中に割り込まれた場合。
+	 */
+	private void enqueue(Page page) throws InterruptedException {
+		while (!this.closed && !this.pageQueue.offer(page, 100, TimeUnit.MILLISECONDS)) {
+			// 変換処理がページを受け取るまで待機
+		}
+	}
+
+	/**
+	 * {@link ArchiveInputStream} から画像のエントリを読み込む {@link EntryReader} を生成します。
+	 *
+	 * @param archiveInputStream 読み込むアーカイブのストリーム。
+	 * @return 生成した {@link EntryReader}。
+	 */
+	private static EntryReader entryReader(ArchiveInputStream archiveInputStream) {
+		Set<String> pageNameSet = new HashSet<String>();
+		int[] entryIndex = { 0 };
+		return () -> {
+			ArchiveEntry archiveEntry;
+			while ((archiveEntry = archiveInputStream.getNextEntry()) != null) {
+				if (archiveEntry.isDirectory() || !ZipFileHandler.isImageEntryName(archiveEntry.getName())) {
+					entryIndex[0]++;
+					continue;
+				}
+				if (!archiveInputStream.canReadEntryData(archiveEntry)) {
+					throw new IOException("エントリの内容を読み込めません。: " + archiveEntry.getName());
+				}
+				byte[] data = (archiveEntry.getSize() >= 0)
+					? IOUtils.toByteArray(archiveInputStream, toArraySize(archiveEntry))
+					: IOUtils.toByteArray(archiveInputStream);
+				String pageName = ZipFileHandler.getOutputFileName(archiveEntry.getName(), entryIndex[0]++, pageNameSet);
+				return new Page(pageName, data);
+			}
+			return null;
+		};
+	}
+
+	/**
+	 * {@link SevenZFile} から画像のエントリを読み込む {@link EntryReader} を生成します。
+	 * <p>
+	 * 対象外のエントリは読み込まずに次のエントリへ進みます（同じブロックの後続のエントリを読み込む際に展開されます）。
+	 * </p>
+	 *
+	 * @param sevenZFile 読み込む7zファイル。
+	 * @return 生成した {@link EntryReader}。
+	 */
+	private static EntryReader entryReader(SevenZFile sevenZFile) {
+		Set<String> pageNameSet = new HashSet<String>();
+		int[] entryIndex = { 0 };
+		return () -> {
+			SevenZArchiveEntry sevenZEntry;
+			while ((sevenZEntry = sevenZFile.getNextEntry()) != null) {
+				if (sevenZEntry.isDirectory() || !sevenZEntry.hasStream() || !ZipFileHandler.isImageEntryName(sevenZEntry.getName())) {
+					entryIndex[0]++;
+					continue;
+				}
+				byte[] data = new byte[toArraySize(sevenZEntry)];
+				int offset = 0;
+				while (offset < data.length) {
+					int readSize = sevenZFile.read(data, offset, data.length - offset);
+					if (readSize < 0) {
+						throw new EOFException("エントリの内容が途中で終了しています。: " + sevenZEntry.getName());
+					}
+					offset += readSize;
+				}
+				String pageName = ZipFileHandler.getOutputFileName(sevenZEntry.getName(), entryIndex[0]++, pageNameSet);
+				return new Page(pageName, data);
+			}
+			return null;
+		};
+	}
+
+	/**
+	 * エントリのサイズを、内容を読み込む配列の長さとして取得します。
+	 *
+	 * @param archiveEntry 対象のエントリ。
+	 * @return エントリのサイズ。
+	 * @throws IOException エントリが大きすぎて配列に読み込めない場合。
+	 */
+	private static int toArraySize(ArchiveEntry archiveEntry) throws IOException {
+		if (archiveEntry.getSize() > Integer.MAX_VALUE - 8) {
+			throw new IOException("エントリが大きすぎます。: " + archiveEntry.getName());
+		}
+		return (int) archiveEntry.getSize();
+	}
+}
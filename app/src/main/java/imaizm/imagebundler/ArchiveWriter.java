@@ -0,0 +1,745 @@
+package imaizm.imagebundler;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * 変換済みのページ（または元画像のファイル）を専用のスレッドでZIPファイルに書き込むクラスです。
+ * <p>
+ * 変換ワーカーは、エンコード済みのページをページ番号（0から始まる連番）とともに
+ * {@link #submit(int, List)} で有界キューに投入します。
+ * 書き込みスレッドは受け取ったページをページ番号順に並べ替え、
+ * 直前までのページがすべて書き込まれた時点で、そのページのエントリをZIPファイルに追記します。
+ * これにより、ディスクへの書き込みとエンコード処理が並行して行われます。
+ * </p>
+ * <p>
+ * 同時に処理中（投入前または並べ替え待ち）のページ数は、コンストラクタで指定した容量までに制限されます。
+ * 呼び出し元は、ページの変換を開始する前に {@link #acquireSlot()} を呼び出して空きを待つ必要があります。
+ * 空きはページの書き込みが完了した時点で解放されるため、並べ替え待ちのページがメモリ上に際限なく蓄積することはありません。
+ * </p>
+ * <p>
+ * ZIPファイルの圧縮メソッドはSTORED（無圧縮）、エンコーディングはMS932（Shift_JIS）です。
+ * 4GBを超えるZIPファイル・エントリや、65,535を超えるエントリ数は、{@link ZipArchiveOutputStream} の既定の動作
+ * （{@link Zip64Mode#AsNeeded}）により、必要な場合にのみZip64拡張を使用して書き込まれます。
+ * エントリのサイズは書き込み前に確定しているため、Zip64拡張の要否はシークせずに判断できます。
+ * </p>
+ * <p>
+ * ZIPファイルは同じディレクトリの一時ファイル（{@code <出力ファイル名>.<識別子>.part}）に書き込み、
+ * すべてのページの書き込みが成功した時点で出力先のパスへ名前を変更します。
+ * 書き込み中の不完全なZIPファイルが出力先のパスに現れることはなく、失敗した場合は一時ファイルを削除します。
+ * 共有ディレクトリで複数のプロセスが同じ出力先に書き込んだ場合も、いずれか1つの完全なZIPファイルが残ります。
+ * </p>
+ * <p>
+ * 出力先に {@link OutputStream} を指定した場合は、一時ファイルを使用せずにストリームへ直接書き込みます。
+ * 各エントリのサイズとCRC-32チェックサムは書き込み前に確定しているため、ローカルファイルヘッダに記録でき、
+ * 書き込み済みの位置へ戻る必要はありません（標準出力などのシークできないストリームに書き込めます）。
+ * ただし、書き込み済みのエントリを参照するエントリ（{@link Entry#asReference(String)}）は一時ファイルから内容を複写するため、
+ * ストリームに書き込む場合は使用できません。
+ * </p>
+ */
+public class ArchiveWriter implements Closeable {
+
+	/**
+	 * ZIPファイルに格納する1つのエントリを表すクラスです。
+	 * <p>
+	 * エントリの内容は、メモリ上のバイト列（エンコード済みのページなど）、ファイル（元画像など）、
+	 * または同じZIPファイルに書き込み済みのエントリ（重複したページ）のいずれかです。
+	 * STOREDで格納するために必要なサイズとCRC-32チェックサムは、生成時（変換ワーカー上）で計算されます。
+	 * </p>
+	 */
+	public static class Entry {
+
+		/** CRC-32チェックサム計算時に1度にマップするバイト数（256MB）。 */
+		private static final long CRC_MAPPING_SIZE = 256L * 1024 * 1024;
+
+		/** エントリ名。 */
+		private final String name;
+		/** 最終更新日時（エポックミリ秒）。 */
+		private final long time;
+		/** エントリの内容。内容がファイルの場合は null。 */
+		private final byte[] data;
+		/** エントリの内容となるファイルのパス。内容がファイルでない場合は null。 */
+		private final Path sourceFilePath;
+		/** 内容の複写元となる、同じZIPファイルに書き込み済みのエントリの名前。内容が書き込み済みのエントリでない場合は null。 */
+		private final String referencedName;
+		/** エントリの内容のバイト数。 */
+		private final long size;
+		/** エントリの内容のCRC-32チェックサム。 */
+		private final long crc;
+
+		/**
+		 * 指定された名前、最終更新日時、内容で {@code Entry} を構築します。
+		 *
+		 * @param name エントリ名。
+		 * @param time 最終更新日時（エポックミリ秒）。
+		 * @param data エントリの内容。
+		 */
+		public Entry(String name, long time, byte[] data) {
+			this.name = name;
+			this.time = time;
+			this.data = data;
+			this.sourceFilePath = null;
+			this.referencedName = null;
+			this.size = data.length;
+			CRC32 crc32 = new CRC32();
+			crc32.update(data, 0, data.length);
+			this.crc = crc32.getValue();
+		}
+
+		/**
+		 * CRC-32チェックサムが計算済みのバイト列を内容とする {@code Entry} を構築します。
+		 *
+		 * @param name エントリ名。
+		 * @param time 最終更新日時（エポックミリ秒）。
+		 * @param data エントリの内容。
+		 * @param crc エントリの内容のCRC-32チェックサム。
+		 */
+		private Entry(String name, long time, byte[] data, long crc) {
+			this.name = name;
+			this.time = time;
+			this.data = data;
+			this.sourceFilePath = null;
+			this.referencedName = null;
+			this.size = data.length;
+			this.crc = crc;
+		}
+
+		/**
+		 * ファイルを内容とする {@code Entry} を構築します。
+		 *
+		 * @param name エントリ名。
+		 * @param time 最終更新日時（エポックミリ秒）。
+		 * @param sourceFilePath エントリの内容となるファイルのパス。
+		 * @param size ファイルのバイト数。
+		 * @param crc ファイルのCRC-32チェックサム。
+		 */
+		private Entry(String name, long time, Path sourceFilePath, long size, long crc) {
+			this.name = name;
+			this.time = time;
+			this.data = null;
+			this.sourceFilePath = sourceFilePath;
+			this.referencedName = null;
+			this.size = size;
+			this.crc = crc;
+		}
+
+		/**
+		 * 同じZIPファイルに書き込み済みのエントリを内容とする {@code Entry} を構築します。
+		 *
+		 * @param name エントリ名。
+		 * @param time 最終更新日時（エポックミリ秒）。
+		 * @param referencedName 内容の複写元となる、書き込み済みのエントリの名前。
+		 * @param size 内容のバイト数。
+		 * @param crc 内容のCRC-32チェックサム。
+		 */
+		private Entry(String name, long time, String referencedName, long size, long crc) {
+			this.name = name;
+			this.time = time;
+			this.data = null;
+			this.sourceFilePath = null;
+			this.referencedName = referencedName;
+			this.size = size;
+			this.crc = crc;
+		}
+
+		/**
+		 * 指定されたファイルを内容とするエントリを生成します。
+		 * <p>
+		 * エントリ名はファイル名、最終更新日時はファイルの最終更新日時になります。
+		 * CRC-32チェックサムは、ファイルをメモリマップして読み込むことで計算します。
+		 * ファイルの内容はこの時点では読み込まず、書き込みスレッドがZIPファイルへ書き込む際に読み込みます。
+		 * </p>
+		 *
+		 * @param sourceFilePath エントリの内容となるファイルのパス。
+		 * @return 生成されたエントリ。
+		 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+		 */
+		public static Entry fromFile(Path sourceFilePath) throws IOException {
+			CRC32 crc32 = new CRC32();
+			long size;
+			try (FileChannel fileChannel = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+				size = fileChannel.size();
+				for (long position = 0; position < size; position += CRC_MAPPING_SIZE) {
+					crc32.update(fileChannel.map(
+						FileChannel.MapMode.READ_ONLY,
+						position,
+						Math.min(CRC_MAPPING_SIZE, size - position)));
+				}
+			}
+			return new Entry(
+				sourceFilePath.getFileName().toString(),
+				Files.getLastModifiedTime(sourceFilePath).toMillis(),
+				sourceFilePath,
+				size,
+				crc32.getValue());
+		}
+
+		/**
+		 * サイズとCRC-32チェックサムが既知のファイルを内容とするエントリを生成します。
+		 * <p>
+		 * {@link PageJournal} に保存したエンコード済みのページを再利用する場合に、ファイルを読み直さずにエントリを生成するために使用します。
+		 * </p>
+		 *
+		 * @param name エントリ名。
+		 * @param time 最終更新日時（エポックミリ秒）。
+		 * @param sourceFilePath エントリの内容となるファイルのパス。
+		 * @param size ファイルのバイト数。
+		 * @param crc ファイルのCRC-32チェックサム。
+		 * @return 生成されたエントリ。
+		 */
+		static Entry fromFile(String name, long time, Path sourceFilePath, long size, long crc) {
+			return new Entry(name, time, sourceFilePath, size, crc);
+		}
+
+		/**
+		 * エントリ名だけを変更した {@code Entry} を生成します。
+		 * <p>
+		 * 内容とCRC-32チェックサムは元のエントリと共有されるため、再計算は行われません。
+		 * </p>
+		 *
+		 * @param name 新しいエントリ名。
+		 * @return エントリ名を変更したエントリ。
+		 */
+		public Entry withName(String name) {
+			if (this.data != null) {
+				return new Entry(name, this.time, this.data, this.crc);
+			}
+			if (this.referencedName != null) {
+				return new Entry(name, this.time, this.referencedName, this.size, this.crc);
+			}
+			return new Entry(name, this.time, this.sourceFilePath, this.size, this.crc);
+		}
+
+		/**
+		 * このエントリと同じ内容を、同じZIPファイルに書き込み済みのこのエントリから複写する {@code Entry} を生成します。
+		 * <p>
+		 * 生成したエントリは内容のバイト列を保持しないため、このエントリが書き込まれた後はバイト列を解放できます。
+		 * このエントリ自体が書き込み済みのエントリを参照している場合は、その複写元をそのまま参照します。
+		 * 生成したエントリは、このエントリより後のページとして同じ {@link ArchiveWriter} に投入する必要があります。
+		 * </p>
+		 *
+		 * @param name 新しいエントリ名。
+		 * @return このエントリを複写元とするエントリ。
+		 */
+		public Entry asReference(String name) {
+			return new Entry(
+				name, this.time, (this.referencedName != null) ? this.referencedName : this.name, this.size, this.crc);
+		}
+
+		/**
+		 * エントリ名を取得します。
+		 * @return エントリ名。
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * 最終更新日時を取得します。
+		 * @return 最終更新日時（エポックミリ秒）。
+		 */
+		public long getTime() {
+			return this.time;
+		}
+
+		/**
+		 * エントリの内容を取得します。
+		 * @return エントリの内容。内容がバイト列でない場合は null。
+		 */
+		public byte[] getData() {
+			return this.data;
+		}
+
+		/**
+		 * エントリの内容となるファイルのパスを取得します。
+		 * @return ファイルのパス。内容がファイルでない場合は null。
+		 */
+		public Path getSourceFilePath() {
+			return this.sourceFilePath;
+		}
+
+		/**
+		 * 内容の複写元となる、書き込み済みのエントリの名前を取得します。
+		 * @return 複写元のエントリ名。内容が書き込み済みのエントリでない場合は null。
+		 */
+		public String getReferencedName() {
+			return this.referencedName;
+		}
+
+		/**
+		 * エントリの内容のバイト数を取得します。
+		 * @return バイト数。
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * エントリの内容のCRC-32チェックサムを取得します。
+		 * @return CRC-32チェックサム。
+		 */
+		public long getCrc() {
+			return this.crc;
+		}
+	}
+
+	/**
+	 * 書き込みスレッドに渡す1ページ分のエントリを表すクラスです。
+	 */
+	private static class Page {
+
+		/** ページ番号。 */
+		private final int sequence;
+		/** ページに含まれるエントリのリスト。 */
+		private final List<Entry> entryList;
+
+		/**
+		 * 指定されたページ番号とエントリのリストで {@code Page} を構築します。
+		 *
+		 * @param sequence ページ番号。
+		 * @param entryList ページに含まれるエントリのリスト。
+		 */
+		Page(int sequence, List<Entry> entryList) {
+			this.sequence = sequence;
+			this.entryList = entryList;
+		}
+	}
+
+	/** 書き込みの終了を書き込みスレッドに通知するための番兵。 */
+	private static final Page END_OF_PAGES = new Page(-1, Collections.<Entry>emptyList());
+
+	/** 変換ワーカーから書き込みスレッドへページを受け渡す有界キュー。 */
+	private final BlockingQueue<Page> pageQueue;
+	/** 同時に処理中のページ数を制限するセマフォ。 */
+	private final Semaphore slots;
+	/** 同時に処理中にできるページ数。 */
+	private final int capacity;
+	/** 書き込み済みのページ数。 */
+	private final AtomicInteger writtenPageCount = new AtomicInteger();
+	/** 書き込みスレッド。 */
+	private final Thread writerThread;
+	/** 出力先のZIPファイルのパス。ストリームに書き込む場合は null。 */
+	private final Path outputFilePath;
+	/** 書き込み中のZIPファイル（一時ファイル）のパス。ストリームに書き込む場合は null。 */
+	private final Path temporaryFilePath;
+	/** ファイルの内容をZIPファイルへ複写する際のバッファのサイズ（1MB）。 */
+	private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+	/** ファイルの内容をZIPファイルへ複写する際のバッファ。書き込みスレッドのみが使用します。 */
+	private ByteBuffer copyBuffer;
+	/** ZIPファイルに書き込んだバイト数を数えるストリーム。エントリの内容の位置を求めるために使用します。 */
+	private final CountingOutputStream countingOutputStream;
+	/**
+	 * 書き込み済みのエントリの名前と、一時ファイル内での内容の開始位置の対応表。
+	 * 書き込み済みのエントリを参照するエントリの複写に使用します。書き込みスレッドのみが使用します。
+	 */
+	private final Map<String, Long> writtenEntryOffsetMap = new HashMap<String, Long>();
+	/** 書き込み中または変換中に発生した最初の例外。 */
+	private volatile Throwable failure;
+
+	/**
+	 * 指定されたZIPファイルに書き込む {@code ArchiveWriter} を構築し、書き込みスレッドを開始します。
+	 * <p>
+	 * 出力先のZIPファイルは {@link #close()} が成功するまで作成（または置き換え）されません。
+	 * </p>
+	 *
+	 * @param outputFilePath 出力するZIPファイルのパス。
+	 * @param capacity 同時に処理中にできるページ数（キューの容量）。
+	 * @throws IOException ZIPファイルの作成中にエラーが発生した場合。
+	 */
+	public ArchiveWriter(Path outputFilePath, int capacity) throws IOException {
+		this(
+			outputFilePath,
+			outputFilePath.resolveSibling(
+				outputFilePath.getFileName().toString() + "." + UUID.randomUUID().toString() + ".part"),
+			capacity);
+	}
+
+	/**
+	 * 指定された一時ファイルに書き込む {@code ArchiveWriter} を構築し、書き込みスレッドを開始します。
+	 *
+	 * @param outputFilePath 出力するZIPファイルのパス。
+	 * @param temporaryFilePath 書き込み中のZIPファイル（一時ファイル）のパス。
+	 * @param capacity 同時に処理中にできるページ数（キューの容量）。
+	 * @throws IOException ZIPファイルの作成中にエラーが発生した場合。
+	 */
+	private ArchiveWriter(Path outputFilePath, Path temporaryFilePath, int capacity) throws IOException {
+		this(
+			outputFilePath,
+			temporaryFilePath,
+			Files.newOutputStream(temporaryFilePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+			capacity);
+	}
+
+	/**
+	 * 指定されたストリームにZIPファイルを書き込む {@code ArchiveWriter} を構築し、書き込みスレッドを開始します。
+	 * <p>
+	 * ストリームはシークできなくても構いません。{@link #close()} ではZIPファイルの末尾（セントラルディレクトリ）を
+	 * 書き込んでストリームをフラッシュしますが、ストリーム自体は閉じません。
+	 * 失敗した場合、ストリームには不完全なZIPファイルが書き込まれています。
+	 * </p>
+	 *
+	 * @param outputStream ZIPファイルを書き込むストリーム。
+	 * @param capacity 同時に処理中にできるページ数（キューの容量）。
+	 */
+	public ArchiveWriter(OutputStream outputStream, int capacity) {
+		this(null, null, new CloseShieldOutputStream(outputStream), capacity);
+	}
+
+	/**
+	 * 指定されたストリームに書き込む {@code ArchiveWriter} を構築し、書き込みスレッドを開始します。
+	 *
+	 * @param outputFilePath 出力するZIPファイルのパス。ストリームに書き込む場合は null。
+	 * @param temporaryFilePath 書き込み中のZIPファイル（一時ファイル）のパス。ストリームに書き込む場合は null。
+	 * @param outputStream ZIPファイルを書き込むストリーム。
+	 * @param capacity 同時に処理中にできるページ数（キューの容量）。
+	 */
+	private ArchiveWriter(Path outputFilePath, Path temporaryFilePath, OutputStream outputStream, int capacity) {
+		this.outputFilePath = outputFilePath;
+		this.temporaryFilePath = temporaryFilePath;
+		this.capacity = Math.max(1, capacity);
+		this.pageQueue = new ArrayBlockingQueue<Page>(this.capacity + 1);
+		this.slots = new Semaphore(this.capacity);
+
+		this.countingOutputStream = new CountingOutputStream(new BufferedOutputStream(outputStream));
+		ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(this.countingOutputStream);
+		zipOutputStream.setMethod(ZipArchiveOutputStream.STORED);
+		zipOutputStream.setEncoding("MS932");
+
+		this.writerThread = new Thread(
+			() -> this.writeLoop(zipOutputStream),
+			Constants.APPLICATION_NAME + "-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * 出力先のZIPファイルのパスを取得します。
+	 * @return 出力先のZIPファイルのパス。ストリームに書き込む場合は null。
+	 */
+	public Path getOutputFilePath() {
+		return this.outputFilePath;
+	}
+
+	/**
+	 * 書き込み済みのページ数を取得します。
+	 * @return 書き込み済みのページ数。
+	 */
+	public int getWrittenPageCount() {
+		return this.writtenPageCount.get();
+	}
+
+	/**
+	 * 処理中のページ数が容量未満になるまで待機し、1ページ分の枠を確保します。
+	 * <p>
+	 * 確保した枠は、そのページが書き込まれた時点で解放されます。
+	 * </p>
+	 *
+	 * @throws IOException 書き込みまたは変換がすでに失敗している場合、または待機中に割り込まれた場合。
+	 */
+	public void acquireSlot() throws IOException {
+		try {
+			this.slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("ページ書き込み枠の待機中に割り込まれました。");
+		}
+		this.throwIfFailed();
+	}
+
+	/**
+	 * 指定されたページ番号のエントリを書き込みキューに投入します。
+	 * <p>
+	 * エントリが空のリストであっても、後続のページの書き込みを進めるために必ず投入する必要があります。
+	 * </p>
+	 *
+	 * @param sequence ページ番号（0から始まる連番）。
+	 * @param entryList ページに含まれるエントリのリスト。
+	 * @throws IOException 書き込みがすでに失敗している場合、または投入中に割り込まれた場合。
+	 */
+	public void submit(int sequence, List<Entry> entryList) throws IOException {
+		this.throwIfFailed();
+		try {
+			this.enqueue(new Page(sequence, entryList));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("ページの投入中に割り込まれました。");
+		}
+	}
+
+	/**
+	 * 変換処理の失敗を通知します。
+	 * <p>
+	 * 通知後、書き込みは中断され、{@link #acquireSlot()}、{@link #submit(int, List)}、{@link #close()} は
+	 * 通知された例外を原因とする {@link IOException} をスローします。
+	 * </p>
+	 *
+	 * @param cause 失敗の原因となった例外。
+	 */
+	public void fail(Throwable cause) {
+		this.recordFailure(cause);
+		this.pageQueue.offer(END_OF_PAGES);
+	}
+
+	/**
+	 * すべてのページの書き込み完了を待機し、ZIPファイルを閉じて出力先のパスへ名前を変更します。
+	 * <p>
+	 * 出力先のパスにファイルがすでに存在する場合は置き換えます。
+	 * ファイルシステムがアトミックな名前の変更に対応していない場合は、通常の名前の変更で置き換えます。
+	 * 失敗した場合は一時ファイルを削除し、出力先のパスのファイルは変更しません。
+	 * ストリームに書き込む場合は、書き込みの完了を待機して失敗を確認するだけです。
+	 * </p>
+	 *
+	 * @throws IOException 書き込み中にエラーが発生した場合、ページ番号に欠番があった場合、変換処理の失敗が通知されていた場合、
+	 *         または名前の変更中にエラーが発生した場合。
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.enqueue(END_OF_PAGES);
+			this.writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("ZIPファイルの書き込み完了の待機中に割り込まれました。");
+		}
+		if (this.temporaryFilePath == null) {
+			this.throwIfFailed();
+			return;
+		}
+		try {
+			this.throwIfFailed();
+			try {
+				Files.move(this.temporaryFilePath, this.outputFilePath,
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(this.temporaryFilePath, this.outputFilePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(this.temporaryFilePath);
+		}
+	}
+
+	/**
+	 * 書き込みキューにページを投入します。
+	 * <p>
+	 * 書き込みスレッドが失敗により終了している場合、キューが空くことはないため、投入せずに戻ります。
+	 * </p>
+	 *
+	 * @param page 投入するページ。
+	 * @throws InterruptedException 投入の待機中に割り込まれた場合。
+	 */
+	private void enqueue(Page page) throws InterruptedException {
+		while (!this.pageQueue.offer(page, 100, TimeUnit.MILLISECONDS)) {
+			if (!this.writerThread.isAlive()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 書き込みスレッドの処理本体です。
+	 * <p>
+	 * キューから受け取ったページをページ番号をキーとするマップに保持し、
+	 * 次に書き込むべきページ番号のページが揃い次第、順にZIPファイルへ書き込みます。
+	 * </p>
+	 * <p>
+	 * すべてのページを書き込めた場合にのみ、セントラルディレクトリを書き込んでZIPファイルを完成させます。
+	 * 失敗した場合はセントラルディレクトリを書き込まずに出力ストリームを閉じるため、
+	 * ストリームに書き込む場合でも、出力は正しいZIPファイルとして読み込めない不完全なものになります。
+	 * </p>
+	 *
+	 * @param zipArchiveOutputStream 書き込み先のZIP出力ストリーム。
+	 */
+	private void writeLoop(ZipArchiveOutputStream zipArchiveOutputStream) {
+		Map<Integer, Page> pendingPageMap = new TreeMap<Integer, Page>();
+		int nextSequence = 0;
+
+		try {
+			while (true) {
+				Page page = this.pageQueue.take();
+				if (page == END_OF_PAGES || this.failure != null) {
+					break;
+				}
+				pendingPageMap.put(page.sequence, page);
+
+				// 直前までのページが揃っている限り順に書き込む
+				Page nextPage;
+				while ((nextPage = pendingPageMap.remove(nextSequence)) != null) {
+					for (Entry entry : nextPage.entryList) {
+						this.writeEntry(zipArchiveOutputStream, entry);
+					}
+					nextSequence++;
+					this.writtenPageCount.incrementAndGet();
+					this.slots.release();
+				}
+			}
+
+			if (this.failure == null && !pendingPageMap.isEmpty()) {
+				throw new IOException("ページ " + nextSequence + " が書き込まれていません。");
+			}
+			if (this.failure == null) {
+				// セントラルディレクトリを書き込んでZIPファイルを完成させる
+				zipArchiveOutputStream.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			this.recordFailure(e);
+		} catch (InterruptedException e) {
+			this.recordFailure(e);
+		} finally {
+			if (this.failure != null) {
+				// 失敗時はセントラルディレクトリを書き込まずに閉じ、正しいZIPファイルに見える出力を残さない
+				try {
+					this.countingOutputStream.close();
+				} catch (IOException e) {
+					this.failure.addSuppressed(e);
+				}
+				// 失敗時に待機中の呼び出し元が解放されるよう、枠をすべて解放する
+				this.slots.release(this.capacity);
+			}
+		}
+	}
+
+	/**
+	 * 1つのエントリをSTOREDでZIPファイルに書き込みます。
+	 * <p>
+	 * 内容がファイルの場合は、{@link FileChannel} から {@link #copyBuffer} 単位で読み込んで書き込みます。
+	 * 読み込んだバイト数がエントリ生成時のサイズと異なる場合（ファイルが更新された場合など）はエラーとします。
+	 * </p>
+	 *
+	 * @param zipOutputStream 書き込み先のZIP出力ストリーム。
+	 * @param entry 書き込むエントリ。
+	 * @throws IOException 書き込み中にエラーが発生した場合。
+	 */
+	private void writeEntry(ZipArchiveOutputStream zipOutputStream, Entry entry) throws IOException {
+		PipelineEvents.ArchiveWrite archiveWriteEvent = new PipelineEvents.ArchiveWrite();
+		archiveWriteEvent.begin();
+		ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.getName());
+		zipEntry.setTime(entry.getTime());
+		zipEntry.setSize(entry.getSize());
+		zipEntry.setCrc(entry.getCrc());
+
+		zipOutputStream.putArchiveEntry(zipEntry);
+		if (this.temporaryFilePath != null) {
+			this.writtenEntryOffsetMap.put(entry.getName(), this.countingOutputStream.getByteCount());
+		}
+		if (entry.getData() != null) {
+			zipOutputStream.write(entry.getData());
+		} else if (entry.getReferencedName() != null) {
+			this.copyWrittenEntry(zipOutputStream, entry);
+		} else {
+			if (this.copyBuffer == null) {
+				this.copyBuffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+			}
+			long totalReadSize = 0;
+			try (FileChannel fileChannel = FileChannel.open(entry.getSourceFilePath(), StandardOpenOption.READ)) {
+				int readSize;
+				while ((readSize = fileChannel.read(this.copyBuffer)) != -1) {
+					zipOutputStream.write(this.copyBuffer.array(), 0, readSize);
+					this.copyBuffer.clear();
+					totalReadSize += readSize;
+				}
+			}
+			if (totalReadSize != entry.getSize()) {
+				throw new IOException("ファイルのサイズが変化しました。: " + entry.getSourceFilePath());
+			}
+		}
+		zipOutputStream.closeArchiveEntry();
+		archiveWriteEvent.end();
+		if (archiveWriteEvent.shouldCommit()) {
+			archiveWriteEvent.archive = String.valueOf(this.outputFilePath);
+			archiveWriteEvent.page = entry.getName();
+			archiveWriteEvent.bytes = entry.getSize();
+			archiveWriteEvent.commit();
+		}
+	}
+
+	/**
+	 * 書き込み済みのエントリの内容を一時ファイルから読み込み、書き込み中のエントリの内容として複写します。
+	 * <p>
+	 * 複写元の内容が一時ファイルに反映されるよう、読み込む前にZIP出力ストリームをフラッシュします。
+	 * ストリームに書き込む場合は、書き込み済みの内容を読み込めないため使用できません。
+	 * </p>
+	 *
+	 * @param zipOutputStream 書き込み先のZIP出力ストリーム。
+	 * @param entry 書き込み済みのエントリを参照するエントリ。
+	 * @throws IOException 複写元のエントリが書き込まれていない場合、または読み書き中にエラーが発生した場合。
+	 */
+	private void copyWrittenEntry(ZipArchiveOutputStream zipOutputStream, Entry entry) throws IOException {
+		Long offset = this.writtenEntryOffsetMap.get(entry.getReferencedName());
+		if (offset == null) {
+			throw new IOException("複写元のエントリが書き込まれていません。: " + entry.getReferencedName());
+		}
+		zipOutputStream.flush();
+		if (this.copyBuffer == null) {
+			this.copyBuffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+		}
+		try (FileChannel fileChannel = FileChannel.open(this.temporaryFilePath, StandardOpenOption.READ)) {
+			long position = offset;
+			long end = offset + entry.getSize();
+			while (position < end) {
+				this.copyBuffer.limit((int) Math.min(this.copyBuffer.capacity(), end - position));
+				int readSize = fileChannel.read(this.copyBuffer, position);
+				if (readSize < 0) {
+					throw new IOException("複写元のエントリの内容を読み込めません。: " + entry.getReferencedName());
+				}
+				zipOutputStream.write(this.copyBuffer.array(), 0, readSize);
+				this.copyBuffer.clear();
+				position += readSize;
+			}
+		}
+	}
+
+	/**
+	 * 最初に発生した失敗を記録します。
+	 *
+	 * @param cause 失敗の原因となった例外。
+	 */
+	private synchronized void recordFailure(Throwable cause) {
+		if (this.failure == null) {
+			this.failure = cause;
+		}
+	}
+
+	/**
+	 * 失敗が記録されている場合、それを {@link IOException} としてスローします。
+	 *
+	 * @throws IOException 失敗が記録されている場合。
+	 */
+	private void throwIfFailed() throws IOException {
+		Throwable cause = this.failure;
+		if (cause == null) {
+			return;
+		}
+		if (cause instanceof IOException) {
+			throw new IOException(cause.getMessage(), cause);
+		}
+		throw new IOException("ZIPファイルの作成に失敗しました。: " + this.outputFilePath, cause);
+	}
+}
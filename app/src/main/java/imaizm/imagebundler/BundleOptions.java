@@ -0,0 +1,499 @@
+package imaizm.imagebundler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 1回の変換ジョブ（1つの入力ファイルまたはディレクトリの変換）の設定を保持する不変クラスです。
+ * <p>
+ * 出力プロファイル、グレースケール判定の許容値、重複ページの判定方法、エンコード結果のサイズの予算、
+ * JPEG画像の可逆分割の有無、並列エンコードの対象とする画素数、画像をヒープ外に確保する画素数、各段階の並行数の調整方法、再開用のジャーナルの保存先を保持します。
+ * インスタンスは {@link Builder} で構築し、構築後は変更できないため、
+ * 設定の異なる複数のジョブを {@link ImageBundler} で同時に実行しても互いに影響しません。
+ * </p>
+ * <p>
+ * コマンドラインから実行する場合は、{@link #fromSystemProperties()} でシステムプロパティから構築します。
+ * </p>
+ */
+public final class BundleOptions {
+
+	/** 設定を表すシステムプロパティの接頭辞。 */
+	public static final String SYSTEM_PROPERTY_PREFIX = "imagebundler.";
+
+	/** 出力プロファイルのリスト（変更不可）。 */
+	private final List<OutputProfile> outputProfileList;
+	/** グレースケール画像とみなす際の、各画素のRGB成分間の差の許容値。負の値の場合は判定を行いません。 */
+	private final int grayscaleTolerance;
+	/** 知覚的に同一とみなす差分ハッシュのハミング距離の上限。負の値の場合は判定を行いません。 */
+	private final int perceptualHashDistance;
+	/** 1ページのエンコード結果の最大バイト数。0以下の場合は制限しません。 */
+	private final long pageSizeBudget;
+	/** 1つの出力ZIPファイルに格納するエンコード結果の合計の最大バイト数。0以下の場合は制限しません。 */
+	private final long archiveSizeBudget;
+	/** 分割するだけで変換後の大きさに収まるJPEG画像を、再エンコードせずに切り抜くかどうか。 */
+	private final boolean losslessSplit;
+	/** 並列にエンコードする画像の画素数の下限。 */
+	private final long parallelEncodingPixels;
+	/** 画像をヒープ外（メモリマップされた一時ファイル）に確保する画素数の閾値。 */
+	private final long offHeapPixelThreshold;
+	/** 展開と変換の段階の並行数を実行中に調整するかどうか。 */
+	private final boolean adaptiveConcurrency;
+	/** ZIPファイルの展開の並行数の上限。 */
+	private final int maxReadParallelism;
+	/** 再開用のジャーナルを保存するディレクトリ。null の場合はジャーナルを記録しません。 */
+	private final Path journalDirectory;
+
+	/**
+	 * 指定された {@link Builder} の設定で {@code BundleOptions} を構築します。
+	 *
+	 * @param builder 設定を保持する {@link Builder}。
+	 */
+	private BundleOptions(Builder builder) {
+		this.outputProfileList = Collections.unmodifiableList(new ArrayList<OutputProfile>(builder.outputProfileList));
+		this.grayscaleTolerance = builder.grayscaleTolerance;
+		this.perceptualHashDistance = builder.perceptualHashDistance;
+		this.pageSizeBudget = builder.pageSizeBudget;
+		this.archiveSizeBudget = builder.archiveSizeBudget;
+		this.losslessSplit = builder.losslessSplit;
+		this.parallelEncodingPixels = builder.parallelEncodingPixels;
+		this.offHeapPixelThreshold = builder.offHeapPixelThreshold;
+		this.adaptiveConcurrency = builder.adaptiveConcurrency;
+		this.maxReadParallelism = builder.maxReadParallelism;
+		this.journalDirectory = builder.journalDirectory;
+	}
+
+	/**
+	 * すべての設定が既定値の {@link Builder} を生成します。
+	 *
+	 * @return 新しい {@link Builder}。
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * すべての設定が既定値の {@code BundleOptions} を返します。
+	 *
+	 * @return 既定値の {@code BundleOptions}。
+	 */
+	public static BundleOptions defaults() {
+		return builder().build();
+	}
+
+	/**
+	 * システムプロパティから {@code BundleOptions} を構築します。
+	 * <p>
+	 * {@code imagebundler.} で始まるシステムプロパティを、接頭辞を除いたキーで {@link #fromProperties(Properties)} に渡します。
+	 * 例えば出力プロファイルの一覧は {@code imagebundler.outputProfiles} で指定します。
+	 * </p>
+	 *
+	 * @return システムプロパティの設定を反映した {@code BundleOptions}。
+	 * @throws IllegalArgumentException システムプロパティの値に誤りがある場合。
+	 */
+	public static BundleOptions fromSystemProperties() {
+		Properties properties = new Properties();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+				properties.setProperty(name.substring(SYSTEM_PROPERTY_PREFIX.length()), System.getProperty(name));
+			}
+		}
+		return fromProperties(properties);
+	}
+
+	/**
+	 * 指定されたプロパティから {@code BundleOptions} を構築します。
+	 * <p>
+	 * 以下のキーを参照し、指定されていない設定は既定値とします。
+	 * <ul>
+	 *   <li>{@code outputProfiles}：出力プロファイルの一覧（{@link OutputProfile#parseList(String)} の書式）</li>
+	 *   <li>{@code jpegProfile}：JPEGエンコーダのプロファイルを指定しなかった出力プロファイルに使用するプロファイル（"fast"、"small"、"archival"）</li>
+	 *   <li>{@code grayscaleTolerance}：グレースケール判定の許容値</li>
+	 *   <li>{@code perceptualHashDistance}：重複ページとみなす差分ハッシュのハミング距離の上限</li>
+	 *   <li>{@code pageSizeBudget}：1ページのエンコード結果の最大バイト数</li>
+	 *   <li>{@code archiveSizeBudget}：1つの出力ZIPファイルのエンコード結果の合計の最大バイト数</li>
+	 *   <li>{@code losslessSplit}：JPEG画像を再エンコードせずに分割するかどうか</li>
+	 *   <li>{@code parallelEncodingPixels}：並列にエンコードする画像の画素数の下限</li>
+	 *   <li>{@code offHeapPixelThreshold}：画像をヒープ外に確保する画素数の閾値</li>
+	 *   <li>{@code adaptiveConcurrency}：展開と変換の段階の並行数を実行中に調整するかどうか</li>
+	 *   <li>{@code maxReadParallelism}：ZIPファイルの展開の並行数の上限</li>
+	 *   <li>{@code journalDirectory}：再開用のジャーナルを保存するディレクトリ</li>
+	 * </ul>
+	 * </p>
+	 *
+	 * @param properties 設定を保持するプロパティ。
+	 * @return プロパティの設定を反映した {@code BundleOptions}。
+	 * @throws IllegalArgumentException プロパティの値に誤りがある場合。
+	 */
+	public static BundleOptions fromProperties(Properties properties) {
+		Builder builder = builder();
+		try {
+			builder.outputProfiles(OutputProfile.parseList(
+				properties.getProperty("outputProfiles", OutputProfile.DEFAULT_SPECIFICATION),
+				JpegEncoder.Profile.valueOf(
+					properties.getProperty("jpegProfile", JpegEncoder.DEFAULT_PROFILE.name()).toUpperCase())));
+			builder.grayscaleTolerance(getInt(properties, "grayscaleTolerance", builder.grayscaleTolerance));
+			builder.perceptualHashDistance(getInt(properties, "perceptualHashDistance", builder.perceptualHashDistance));
+			builder.pageSizeBudget(getLong(properties, "pageSizeBudget", builder.pageSizeBudget));
+			builder.archiveSizeBudget(getLong(properties, "archiveSizeBudget", builder.archiveSizeBudget));
+			builder.losslessSplit(Boolean.parseBoolean(properties.getProperty("losslessSplit", Boolean.toString(builder.losslessSplit))));
+			builder.parallelEncodingPixels(getLong(properties, "parallelEncodingPixels", builder.parallelEncodingPixels));
+			builder.offHeapPixelThreshold(getLong(properties, "offHeapPixelThreshold", builder.offHeapPixelThreshold));
+			builder.adaptiveConcurrency(Boolean.parseBoolean(
+				properties.getProperty("adaptiveConcurrency", Boolean.toString(builder.adaptiveConcurrency))));
+			builder.maxReadParallelism(getInt(properties, "maxReadParallelism", builder.maxReadParallelism));
+			String journalDirectory = properties.getProperty("journalDirectory");
+			if (journalDirectory != null) {
+				builder.journalDirectory(Paths.get(journalDirectory));
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid option value : " + e.getMessage(), e);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * プロパティの値を整数として取得します。
+	 *
+	 * @param properties プロパティ。
+	 * @param key キー。
+	 * @param defaultValue 指定されていない場合の値。
+	 * @return プロパティの値。
+	 * @throws NumberFormatException 値が整数でない場合。
+	 */
+	private static int getInt(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * プロパティの値を長整数として取得します。
+	 *
+	 * @param properties プロパティ。
+	 * @param key キー。
+	 * @param defaultValue 指定されていない場合の値。
+	 * @return プロパティの値。
+	 * @throws NumberFormatException 値が整数でない場合。
+	 */
+	private static long getLong(Properties properties, String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		return (value == null) ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	/**
+	 * この {@code BundleOptions} の設定を初期値とする {@link Builder} を生成します。
+	 *
+	 * @return 新しい {@link Builder}。
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		builder.outputProfileList = new ArrayList<OutputProfile>(this.outputProfileList);
+		builder.grayscaleTolerance = this.grayscaleTolerance;
+		builder.perceptualHashDistance = this.perceptualHashDistance;
+		builder.pageSizeBudget = this.pageSizeBudget;
+		builder.archiveSizeBudget = this.archiveSizeBudget;
+		builder.losslessSplit = this.losslessSplit;
+		builder.parallelEncodingPixels = this.parallelEncodingPixels;
+		builder.offHeapPixelThreshold = this.offHeapPixelThreshold;
+		builder.adaptiveConcurrency = this.adaptiveConcurrency;
+		builder.maxReadParallelism = this.maxReadParallelism;
+		builder.journalDirectory = this.journalDirectory;
+		return builder;
+	}
+
+	/**
+	 * 出力プロファイルのリストを取得します。
+	 * @return 出力プロファイルのリスト（変更不可）。
+	 */
+	public List<OutputProfile> getOutputProfileList() {
+		return this.outputProfileList;
+	}
+
+	/**
+	 * グレースケール画像とみなす際の、各画素のRGB成分間の差の許容値を取得します。
+	 * @return グレースケール判定の許容値。負の値の場合は判定を行いません。
+	 */
+	public int getGrayscaleTolerance() {
+		return this.grayscaleTolerance;
+	}
+
+	/**
+	 * 知覚的に同一とみなす差分ハッシュのハミング距離の上限を取得します。
+	 * @return ハミング距離の上限。負の値の場合は差分ハッシュによる判定を行いません。
+	 */
+	public int getPerceptualHashDistance() {
+		return this.perceptualHashDistance;
+	}
+
+	/**
+	 * 1ページ（分割された場合は分割後のすべての画像の合計）のエンコード結果の最大バイト数を取得します。
+	 * @return 最大バイト数。0以下の場合は制限しません。
+	 */
+	public long getPageSizeBudget() {
+		return this.pageSizeBudget;
+	}
+
+	/**
+	 * 1つの出力ZIPファイルに格納するエンコード結果の合計の最大バイト数（ZIPのヘッダ等は含みません）を取得します。
+	 * @return 最大バイト数。0以下の場合は制限しません。
+	 */
+	public long getArchiveSizeBudget() {
+		return this.archiveSizeBudget;
+	}
+
+	/**
+	 * 分割するだけで変換後の大きさに収まるJPEG画像を、再エンコードせずに切り抜くかどうかを取得します。
+	 * @return 再エンコードせずに切り抜く場合は true。
+	 */
+	public boolean isLosslessSplit() {
+		return this.losslessSplit;
+	}
+
+	/**
+	 * 並列にエンコードする画像の画素数の下限を取得します。
+	 * @return 画素数の下限。
+	 */
+	public long getParallelEncodingPixels() {
+		return this.parallelEncodingPixels;
+	}
+
+	/**
+	 * 画像をヒープ外（メモリマップされた一時ファイル）に確保する画素数の閾値を取得します。
+	 * @return 画素数の閾値。この画素数を超える画像のデコード・回転・グレースケール変換はヒープ外で行います。
+	 */
+	public long getOffHeapPixelThreshold() {
+		return this.offHeapPixelThreshold;
+	}
+
+	/**
+	 * ZIPファイルの展開と、各ページのデコード・変換・エンコードの並行数を、実行中の状況に応じて調整するかどうかを取得します。
+	 * @return 調整する場合は true。
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return this.adaptiveConcurrency;
+	}
+
+	/**
+	 * ZIPファイルの展開の並行数の上限を取得します。並行数を調整しない場合は使用しません。
+	 * @return 展開の並行数の上限。
+	 */
+	public int getMaxReadParallelism() {
+		return this.maxReadParallelism;
+	}
+
+	/**
+	 * 再開用のジャーナルを保存するディレクトリを取得します。
+	 * @return ジャーナルを保存するディレクトリ。ジャーナルを記録しない場合は null。
+	 */
+	public Path getJournalDirectory() {
+		return this.journalDirectory;
+	}
+
+	/**
+	 * {@link BundleOptions} を構築するためのビルダークラスです。
+	 * <p>
+	 * 各設定メソッドはこのビルダー自身を返すため、呼び出しを連結できます。
+	 * このクラスはスレッドセーフではありません。
+	 * </p>
+	 */
+	public static final class Builder {
+
+		/** 出力プロファイルのリスト。 */
+		private List<OutputProfile> outputProfileList =
+			Collections.singletonList(OutputProfile.parse(OutputProfile.DEFAULT_SPECIFICATION));
+		/** グレースケール判定の許容値。 */
+		private int grayscaleTolerance = ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE;
+		/** 差分ハッシュのハミング距離の上限。 */
+		private int perceptualHashDistance = PageDeduplicator.DEFAULT_PERCEPTUAL_HASH_DISTANCE;
+		/** 1ページのエンコード結果の最大バイト数。 */
+		private long pageSizeBudget = 0;
+		/** 1つの出力ZIPファイルのエンコード結果の合計の最大バイト数。 */
+		private long archiveSizeBudget = 0;
+		/** JPEG画像を再エンコードせずに分割するかどうか。 */
+		private boolean losslessSplit = true;
+		/** 並列にエンコードする画像の画素数の下限。 */
+		private long parallelEncodingPixels = ParallelJpegEncoder.DEFAULT_MIN_PIXELS;
+		/** 画像をヒープ外に確保する画素数の閾値。 */
+		private long offHeapPixelThreshold = ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD;
+		/** 展開と変換の段階の並行数を実行中に調整するかどうか。 */
+		private boolean adaptiveConcurrency = true;
+		/** ZIPファイルの展開の並行数の上限。 */
+		private int maxReadParallelism = ZipFileHandler.DEFAULT_PARALLELISM * 4;
+		/** 再開用のジャーナルを保存するディレクトリ。 */
+		private Path journalDirectory;
+
+		/**
+		 * すべての設定が既定値の {@code Builder} を構築します。
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * 出力プロファイルのリストを設定します。既定値は {@link OutputProfile#DEFAULT_SPECIFICATION} の1つです。
+		 *
+		 * @param outputProfileList 出力プロファイルのリスト。名前が重複していてはなりません。
+		 * @return このビルダー。
+		 */
+		public Builder outputProfiles(List<OutputProfile> outputProfileList) {
+			this.outputProfileList = new ArrayList<OutputProfile>(outputProfileList);
+			return this;
+		}
+
+		/**
+		 * 出力プロファイルを1つだけ設定します。
+		 *
+		 * @param outputProfile 出力プロファイル。
+		 * @return このビルダー。
+		 */
+		public Builder outputProfile(OutputProfile outputProfile) {
+			return this.outputProfiles(Collections.singletonList(outputProfile));
+		}
+
+		/**
+		 * グレースケール画像とみなす際の、各画素のRGB成分間の差の許容値を設定します。
+		 * 既定値は {@link ImageConverter#DEFAULT_GRAYSCALE_TOLERANCE} です。
+		 *
+		 * @param grayscaleTolerance グレースケール判定の許容値。負の値の場合は判定を行いません。
+		 * @return このビルダー。
+		 */
+		public Builder grayscaleTolerance(int grayscaleTolerance) {
+			this.grayscaleTolerance = grayscaleTolerance;
+			return this;
+		}
+
+		/**
+		 * 知覚的に同一とみなす差分ハッシュのハミング距離の上限を設定します。既定値は-1（判定を行わない）です。
+		 *
+		 * @param perceptualHashDistance ハミング距離の上限。負の値の場合は差分ハッシュによる判定を行いません。
+		 * @return このビルダー。
+		 */
+		public Builder perceptualHashDistance(int perceptualHashDistance) {
+			this.perceptualHashDistance = perceptualHashDistance;
+			return this;
+		}
+
+		/**
+		 * 1ページのエンコード結果の最大バイト数を設定します。既定値は0（制限なし）です。
+		 *
+		 * @param pageSizeBudget 最大バイト数。0以下の場合は制限しません。
+		 * @return このビルダー。
+		 */
+		public Builder pageSizeBudget(long pageSizeBudget) {
+			this.pageSizeBudget = pageSizeBudget;
+			return this;
+		}
+
+		/**
+		 * 1つの出力ZIPファイルに格納するエンコード結果の合計の最大バイト数を設定します。既定値は0（制限なし）です。
+		 *
+		 * @param archiveSizeBudget 最大バイト数。0以下の場合は制限しません。
+		 * @return このビルダー。
+		 */
+		public Builder archiveSizeBudget(long archiveSizeBudget) {
+			this.archiveSizeBudget = archiveSizeBudget;
+			return this;
+		}
+
+		/**
+		 * 分割するだけで変換後の大きさに収まるJPEG画像を、再エンコードせずに切り抜くかどうかを設定します。既定値は true です。
+		 *
+		 * @param losslessSplit 再エンコードせずに切り抜く場合は true。
+		 * @return このビルダー。
+		 */
+		public Builder losslessSplit(boolean losslessSplit) {
+			this.losslessSplit = losslessSplit;
+			return this;
+		}
+
+		/**
+		 * 並列にエンコードする画像の画素数の下限を設定します。既定値は {@link ParallelJpegEncoder#DEFAULT_MIN_PIXELS} です。
+		 *
+		 * @param parallelEncodingPixels 画素数の下限。
+		 * @return このビルダー。
+		 */
+		public Builder parallelEncodingPixels(long parallelEncodingPixels) {
+			this.parallelEncodingPixels = parallelEncodingPixels;
+			return this;
+		}
+
+		/**
+		 * 画像をヒープ外（メモリマップされた一時ファイル）に確保する画素数の閾値を設定します。
+		 * 既定値は {@link ImageConverter#DEFAULT_OFF_HEAP_PIXEL_THRESHOLD} です。
+		 * この画素数を超える画像のデコード・回転・グレースケール変換は {@link OffHeapImageFactory} を通じてヒープ外で行います。
+		 *
+		 * @param offHeapPixelThreshold 画素数の閾値。
+		 * @return このビルダー。
+		 */
+		public Builder offHeapPixelThreshold(long offHeapPixelThreshold) {
+			this.offHeapPixelThreshold = offHeapPixelThreshold;
+			return this;
+		}
+
+		/**
+		 * ZIPファイルの展開と、各ページのデコード・変換・エンコードの並行数を、
+		 * 待ち行列の深さ・CPU使用率・I/O待ちに応じて実行中に調整するかどうかを設定します。既定値は true です。
+		 * false の場合は、展開を {@link ZipFileHandler#DEFAULT_PARALLELISM}、変換を {@link ImageBundler} の変換ワーカーの数で固定します。
+		 *
+		 * @param adaptiveConcurrency 調整する場合は true。
+		 * @return このビルダー。
+		 */
+		public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+			this.adaptiveConcurrency = adaptiveConcurrency;
+			return this;
+		}
+
+		/**
+		 * ZIPファイルの展開の並行数の上限を設定します。既定値はプロセッサ数の4倍です。
+		 * 低速なネットワークドライブ上のZIPファイルなど、展開がI/O待ちで律速される場合に、この数まで並行数を増やします。
+		 *
+		 * @param maxReadParallelism 展開の並行数の上限。
+		 * @return このビルダー。
+		 */
+		public Builder maxReadParallelism(int maxReadParallelism) {
+			this.maxReadParallelism = maxReadParallelism;
+			return this;
+		}
+
+		/**
+		 * 再開用のジャーナルを保存するディレクトリを設定します。既定値は null（記録しない）です。
+		 * <p>
+		 * 設定した場合、変換が完了したページと入力を {@link PageJournal} に記録し、
+		 * 中断された変換を同じ設定で再実行すると、完了済みの入力を省略し、変換途中だった入力のエンコード済みのページを再利用します。
+		 * </p>
+		 *
+		 * @param journalDirectory ジャーナルを保存するディレクトリ。null の場合は記録しません。
+		 * @return このビルダー。
+		 */
+		public Builder journalDirectory(Path journalDirectory) {
+			this.journalDirectory = journalDirectory;
+			return this;
+		}
+
+		/**
+		 * 設定内容から {@link BundleOptions} を構築します。
+		 *
+		 * @return 構築された {@link BundleOptions}。
+		 * @throws IllegalArgumentException 出力プロファイルが指定されていない場合、名前が重複している場合、
+		 *         または展開の並行数の上限が1未満の場合。
+		 */
+		public BundleOptions build() {
+			if (this.outputProfileList.isEmpty()) {
+				throw new IllegalArgumentException("No output profile");
+			}
+			if (this.maxReadParallelism < 1) {
+				throw new IllegalArgumentException("Invalid max read parallelism : " + this.maxReadParallelism);
+			}
+			for (int i = 0; i < this.outputProfileList.size(); i++) {
+				for (int j = 0; j < i; j++) {
+					if (this.outputProfileList.get(i).getName().equals(this.outputProfileList.get(j).getName())) {
+						throw new IllegalArgumentException("Duplicate output profile name : " + this.outputProfileList.get(i).getName());
+					}
+				}
+			}
+			return new BundleOptions(this);
+		}
+	}
+}
@@ -0,0 +1,443 @@
+package imaizm.imagebundler;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 変換ジョブの各段階の並行数を、実行中の状況に応じて調整するクラスです。
+ * <p>
+ * 1つのジョブは、ZIPファイルの展開（{@code read}）、各ページのデコード・変換・エンコード（{@code convert}）、
+ * 出力ZIPファイルへの書き込み（{@code write}）の段階で構成されます。
+ * デコード・変換・エンコードは1ページを1つのタスクで続けて処理するため、1つの段階として扱います。
+ * 書き込みはZIPファイルの形式上1つのスレッドで順に行うため、並行数は変更せず、滞留の状況のみを判断に使用します。
+ * </p>
+ * <p>
+ * 一定間隔（{@value #DEFAULT_INTERVAL_MILLIS} ミリ秒）ごとに、各段階の次の値をその間の差分として集計し、並行数を1ずつ増減します。
+ * <ul>
+ *   <li>待ち行列の深さ：並行数の上限に達しているために開始を待っている処理の数</li>
+ *   <li>I/O待ちの割合：処理中の経過時間のうち、スレッドがCPUを使用していなかった時間の割合</li>
+ *   <li>前段待ちの割合：処理中の経過時間のうち、前の段階の出力を待っていた時間の割合</li>
+ *   <li>システム全体のCPU使用率</li>
+ * </ul>
+ * 変換の段階が展開の完了を待っている場合は、展開がI/O待ちの多い処理（低速なネットワークドライブなど）であるか、
+ * CPUに余裕があれば展開の並行数を増やします。変換が追いつかず展開済みのページが滞留している場合に、
+ * CPUが飽和していれば展開の並行数を減らします。
+ * 変換の段階は、開始を待っているページがありCPUに余裕があれば並行数を増やし、CPUが飽和していて変換がCPU律速の場合は
+ * プロセッサ数まで並行数を減らします。書き込みが滞留している場合は、前の段階の並行数を増やしても効果がないため増やしません。
+ * 並行数は各段階に設定された下限と上限の範囲で調整します。
+ * </p>
+ * <p>
+ * 調整を行うと、JFRの {@code imagebundler.ConcurrencyChange} イベントを記録します。
+ * </p>
+ */
+final class ConcurrencyController implements Closeable {
+
+	/** 調整の間隔の既定値（ミリ秒）。 */
+	static final long DEFAULT_INTERVAL_MILLIS = 250;
+	/** 並行数を増やさないシステム全体のCPU使用率の下限。 */
+	static final double CPU_BUSY = 0.85;
+	/** CPUが飽和しているとみなすシステム全体のCPU使用率の下限。 */
+	static final double CPU_SATURATED = 0.97;
+	/** I/O律速とみなすI/O待ちの割合の下限。 */
+	static final double IO_BOUND = 0.5;
+	/** 前の段階の出力を待っているとみなす前段待ちの割合の下限。 */
+	static final double STARVED = 0.2;
+	/** 書き込みが滞留しているとみなす、書き込み待ちの時間の調整間隔に対する割合の下限。 */
+	static final double WRITE_BLOCKED = 0.5;
+
+	/**
+	 * 並行数を調整する1つの段階を表すクラスです。
+	 * <p>
+	 * 処理を開始する前に {@link #acquire()} で実行権を取得し、終了後に {@link #release()} で返却します。
+	 * 実行権の数が並行数の上限になります。処理の本体は {@link #startWork()} と {@link #endWork(long[])} で囲み、
+	 * その間に前の段階の出力を待った時間は {@link #recordStall(long)} で記録します。
+	 * 実行権の取得と返却は異なるスレッドで行うことができます。
+	 * </p>
+	 */
+	static final class Stage {
+
+		/** 段階の名前。 */
+		private final String name;
+		/** 並行数の下限。 */
+		private final int minLimit;
+		/** 並行数の上限。 */
+		private final int maxLimit;
+		/** 現在の並行数。 */
+		private int limit;
+		/** 実行権。 */
+		private final AdjustableSemaphore permits;
+		/** 実行権の取得を待っている処理の数。 */
+		private final AtomicInteger waitingCount = new AtomicInteger();
+		/** 処理中の経過時間の合計（ナノ秒）。 */
+		private final AtomicLong busyNanos = new AtomicLong();
+		/** 処理中のCPU時間の合計（ナノ秒）。 */
+		private final AtomicLong cpuNanos = new AtomicLong();
+		/** 前の段階の出力を待っていた時間の合計（ナノ秒）。 */
+		private final AtomicLong stallNanos = new AtomicLong();
+
+		/**
+		 * 指定された範囲で並行数を調整する段階を構築します。
+		 *
+		 * @param name 段階の名前。
+		 * @param minLimit 並行数の下限。
+		 * @param maxLimit 並行数の上限。
+		 * @param initialLimit 並行数の初期値。
+		 * @throws IllegalArgumentException 下限が1未満の場合、または初期値が範囲外の場合。
+		 */
+		Stage(String name, int minLimit, int maxLimit, int initialLimit) {
+			if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+				throw new IllegalArgumentException(
+					"Invalid concurrency limits of " + name + " : " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+			}
+			this.name = name;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.limit = initialLimit;
+			this.permits = new AdjustableSemaphore(initialLimit);
+		}
+
+		/**
+		 * 実行権を取得します。並行数の上限に達している場合は、他の処理が実行権を返却するまで待機します。
+		 *
+		 * @throws InterruptedException 待機中に割り込まれた場合。
+		 */
+		void acquire() throws InterruptedException {
+			if (this.permits.tryAcquire()) {
+				return;
+			}
+			this.waitingCount.incrementAndGet();
+			try {
+				this.permits.acquire();
+			} finally {
+				this.waitingCount.decrementAndGet();
+			}
+		}
+
+		/**
+		 * 実行権を返却します。
+		 */
+		void release() {
+			this.permits.release();
+		}
+
+		/**
+		 * 処理の開始を記録します。
+		 *
+		 * @return {@link #endWork(long[])} に渡す開始時の経過時間とCPU時間。
+		 */
+		long[] startWork() {
+			return new long[] { System.nanoTime(), getCurrentThreadCpuTime() };
+		}
+
+		/**
+		 * {@link #startWork()} と同じスレッドで、処理の終了を記録します。
+		 *
+		 * @param start {@link #startWork()} の戻り値。
+		 */
+		void endWork(long[] start) {
+			long busy = System.nanoTime() - start[0];
+			long cpuTime = getCurrentThreadCpuTime();
+			// CPU時間を取得できない場合は、すべてCPUを使用していたものとみなす
+			this.recordWork(busy, (cpuTime < 0 || start[1] < 0) ? busy : cpuTime - start[1]);
+		}
+
+		/**
+		 * 処理中の経過時間とCPU時間を加算します。
+		 *
+		 * @param busy 経過時間（ナノ秒）。
+		 * @param cpu CPU時間（ナノ秒）。
+		 */
+		void recordWork(long busy, long cpu) {
+			this.busyNanos.addAndGet(busy);
+			this.cpuNanos.addAndGet(Math.min(busy, Math.max(0, cpu)));
+		}
+
+		/**
+		 * 前の段階の出力を待っていた時間を加算します。
+		 *
+		 * @param nanos 待っていた時間（ナノ秒）。
+		 */
+		void recordStall(long nanos) {
+			this.stallNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * 段階の名前を取得します。
+		 * @return 段階の名前。
+		 */
+		String getName() {
+			return this.name;
+		}
+
+		/**
+		 * 現在の並行数を取得します。
+		 * @return 現在の並行数。
+		 */
+		synchronized int getLimit() {
+			return this.limit;
+		}
+
+		/**
+		 * 並行数の上限を取得します。
+		 * @return 並行数の上限。
+		 */
+		int getMaxLimit() {
+			return this.maxLimit;
+		}
+
+		/**
+		 * 実行権の取得を待っている処理の数を取得します。
+		 * @return 待っている処理の数。
+		 */
+		int getWaitingCount() {
+			return this.waitingCount.get();
+		}
+
+		/**
+		 * 並行数を変更します。下限と上限の範囲に切り詰めます。
+		 * <p>
+		 * 並行数を減らした場合、実行中の処理は中断せず、返却された実行権を次の処理に渡さないことで並行数を減らします。
+		 * </p>
+		 *
+		 * @param newLimit 新しい並行数。
+		 * @return 変更前の並行数。
+		 */
+		synchronized int setLimit(int newLimit) {
+			int previousLimit = this.limit;
+			this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+			if (this.limit > previousLimit) {
+				this.permits.release(this.limit - previousLimit);
+			} else if (this.limit < previousLimit) {
+				this.permits.reducePermits(previousLimit - this.limit);
+			}
+			return previousLimit;
+		}
+	}
+
+	/**
+	 * 実行権の数を減らすことのできる {@link Semaphore} です。
+	 */
+	private static final class AdjustableSemaphore extends Semaphore {
+
+		/** シリアライズのバージョン。 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * 指定された数の実行権を持つ {@code AdjustableSemaphore} を構築します。
+		 *
+		 * @param permits 実行権の数。
+		 */
+		AdjustableSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+	/**
+	 * 1つの段階の、調整間隔の間の集計値です。
+	 */
+	private static final class Sample {
+		/** 経過時間（ナノ秒）。 */
+		long busyNanos;
+		/** CPU時間（ナノ秒）。 */
+		long cpuNanos;
+		/** 前段待ちの時間（ナノ秒）。 */
+		long stallNanos;
+
+		/**
+		 * I/O待ちの割合を求めます。
+		 * @return 経過時間のうちCPUを使用していなかった時間の割合。処理がなかった場合は0。
+		 */
+		double getIoWaitRatio() {
+			return (this.busyNanos <= 0) ? 0 : 1 - (double) this.cpuNanos / this.busyNanos;
+		}
+
+		/**
+		 * 前段待ちの割合を求めます。
+		 * @return 経過時間のうち前の段階の出力を待っていた時間の割合。処理がなかった場合は0。
+		 */
+		double getStallRatio() {
+			return (this.busyNanos <= 0) ? 0 : Math.min(1, (double) this.stallNanos / this.busyNanos);
+		}
+	}
+
+	/** スレッドのCPU時間を取得する {@link ThreadMXBean}。 */
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/** 展開の段階。 */
+	private final Stage readStage;
+	/** デコード・変換・エンコードの段階。 */
+	private final Stage convertStage;
+	/** 書き込みの段階（並行数は変更しません）。 */
+	private final Stage writeStage;
+	/** 調整の間隔（ナノ秒）。 */
+	private final long intervalNanos;
+	/** プロセッサ数。 */
+	private final int processorCount;
+	/** 各段階の前回の調整時の累計値（展開・変換・書き込みの順）。 */
+	private final long[][] previousTotals = new long[3][3];
+	/** 調整を定期的に実行する {@link ScheduledExecutorService}。開始していない場合は null。 */
+	private ScheduledExecutorService scheduledExecutorService;
+
+	/**
+	 * 指定された段階の並行数を調整する {@code ConcurrencyController} を構築します。
+	 *
+	 * @param readStage 展開の段階。
+	 * @param convertStage デコード・変換・エンコードの段階。
+	 * @param writeStage 書き込みの段階。
+	 * @param intervalMillis 調整の間隔（ミリ秒）。
+	 */
+	ConcurrencyController(Stage readStage, Stage convertStage, Stage writeStage, long intervalMillis) {
+		this.readStage = readStage;
+		this.convertStage = convertStage;
+		this.writeStage = writeStage;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.processorCount = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * 定期的な調整を開始します。調整はデーモンスレッドで行います。
+	 */
+	synchronized void start() {
+		if (this.scheduledExecutorService != null) {
+			return;
+		}
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-concurrency");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long intervalMillis = TimeUnit.NANOSECONDS.toMillis(this.intervalNanos);
+		this.scheduledExecutorService.scheduleWithFixedDelay(
+			() -> this.adjust(getSystemCpuLoad()), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 定期的な調整を終了します。
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.scheduledExecutorService != null) {
+			this.scheduledExecutorService.shutdownNow();
+			this.scheduledExecutorService = null;
+		}
+	}
+
+	/**
+	 * 前回の調整以降の集計値とシステム全体のCPU使用率から、展開と変換の段階の並行数を調整します。
+	 *
+	 * @param cpuLoad システム全体のCPU使用率（0から1）。取得できない場合は負の値。
+	 */
+	void adjust(double cpuLoad) {
+		Sample read = this.sample(0, this.readStage);
+		Sample convert = this.sample(1, this.convertStage);
+		Sample write = this.sample(2, this.writeStage);
+
+		boolean cpuBusy = cpuLoad >= CPU_BUSY;
+		boolean cpuSaturated = cpuLoad >= CPU_SATURATED;
+		boolean writeBlocked = (double) write.stallNanos / this.intervalNanos >= WRITE_BLOCKED;
+		boolean convertStarved = convert.getStallRatio() >= STARVED;
+
+		// 展開の段階
+		if (convertStarved && !writeBlocked && (read.getIoWaitRatio() >= IO_BOUND || !cpuBusy)) {
+			this.change(this.readStage, +1, cpuLoad, read, this.convertStage.getWaitingCount());
+		} else if (!convertStarved && this.convertStage.getWaitingCount() > 0 && cpuSaturated
+			&& read.getIoWaitRatio() < IO_BOUND) {
+			this.change(this.readStage, -1, cpuLoad, read, this.convertStage.getWaitingCount());
+		}
+
+		// デコード・変換・エンコードの段階
+		int convertWaitingCount = this.convertStage.getWaitingCount();
+		if (convertWaitingCount > 0 && !writeBlocked && !cpuBusy) {
+			this.change(this.convertStage, +1, cpuLoad, convert, convertWaitingCount);
+		} else if (cpuSaturated && convert.getIoWaitRatio() < IO_BOUND
+			&& this.convertStage.getLimit() > this.processorCount) {
+			this.change(this.convertStage, -1, cpuLoad, convert, convertWaitingCount);
+		}
+	}
+
+	/**
+	 * 段階の累計値から、前回の調整以降の集計値を求めます。
+	 *
+	 * @param index 段階の番号。
+	 * @param stage 段階。
+	 * @return 前回の調整以降の集計値。
+	 */
+	private Sample sample(int index, Stage stage) {
+		long[] totals = { stage.busyNanos.get(), stage.cpuNanos.get(), stage.stallNanos.get() };
+		long[] previous = this.previousTotals[index];
+		Sample sample = new Sample();
+		sample.busyNanos = totals[0] - previous[0];
+		sample.cpuNanos = totals[1] - previous[1];
+		sample.stallNanos = totals[2] - previous[2];
+		this.previousTotals[index] = totals;
+		return sample;
+	}
+
+	/**
+	 * 段階の並行数を変更し、変更した場合はイベントを記録します。
+	 *
+	 * @param stage 段階。
+	 * @param delta 並行数の増減。
+	 * @param cpuLoad システム全体のCPU使用率。
+	 * @param sample 段階の集計値。
+	 * @param queueDepth 段階の待ち行列の深さ。
+	 */
+	private void change(Stage stage, int delta, double cpuLoad, Sample sample, int queueDepth) {
+		int previousLimit = stage.setLimit(stage.getLimit() + delta);
+		int limit = stage.getLimit();
+		if (limit == previousLimit) {
+			return;
+		}
+		PipelineEvents.ConcurrencyChange event = new PipelineEvents.ConcurrencyChange();
+		if (event.shouldCommit()) {
+			event.stage = stage.getName();
+			event.previousLimit = previousLimit;
+			event.limit = limit;
+			event.cpuLoad = (float) Math.max(0, cpuLoad);
+			event.ioWaitRatio = (float) sample.getIoWaitRatio();
+			event.stallRatio = (float) sample.getStallRatio();
+			event.queueDepth = queueDepth;
+			event.commit();
+		}
+	}
+
+	/**
+	 * 現在のスレッドのCPU時間を取得します。
+	 *
+	 * @return CPU時間（ナノ秒）。取得できない場合は-1。
+	 */
+	private static long getCurrentThreadCpuTime() {
+		try {
+			return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+		} catch (UnsupportedOperationException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * システム全体のCPU使用率を取得します。
+	 *
+	 * @return CPU使用率（0から1）。取得できない場合は負の値。
+	 */
+	@SuppressWarnings("deprecation")
+	private static double getSystemCpuLoad() {
+		OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+		if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) operatingSystemMXBean).getSystemCpuLoad();
+		}
+		return -1;
+	}
+}
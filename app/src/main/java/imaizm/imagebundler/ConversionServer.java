@@ -0,0 +1,442 @@
+package imaizm.imagebundler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 変換ジョブをHTTPで受け付け、共有の {@link ImageBundler} で実行するサーバーです。
+ * <p>
+ * 1つのJVMで多数のジョブを処理するため、ジョブごとのJVMの起動と変換ワーカーの生成の時間がかかりません。
+ * 以下のリクエストを受け付けます。応答の本文はJSON形式です。
+ * <ul>
+ *   <li>{@code POST /jobs}：ジョブを投入します。変換対象のパスを {@code source} パラメータで、
+ *     変換の設定を {@link BundleOptions#fromProperties(Properties)} のキーのパラメータで指定します
+ *     （クエリ文字列またはフォーム形式の本文）。受け付けた場合は 202、待ち行列が満杯の場合は 503 を返します。
+ *     パラメータのURLエンコードが不正な場合は 400、本文が {@value #MAX_REQUEST_BODY_SIZE} バイトを超える場合は 413 を返します。</li>
+ *   <li>{@code GET /jobs/<ID>}：ジョブの状態、進捗、出力ZIPファイルのパスを返します。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * ジョブは投入順に、{@code jobParallelism} 個まで同時に実行され、各ジョブのページは共有の変換ワーカーで処理されます。
+ * 待ち状態のジョブ数が {@code queueCapacity} に達している間は新しいジョブを受け付けず、
+ * 呼び出し元に {@code Retry-After} ヘッダで再試行を促します。
+ * </p>
+ */
+public class ConversionServer implements Closeable {
+
+	/** ジョブの状態を表す列挙型です。 */
+	public static enum State {
+		/** 実行待ち。 */
+		QUEUED,
+		/** 実行中。 */
+		RUNNING,
+		/** 正常終了。 */
+		SUCCEEDED,
+		/** 異常終了。 */
+		FAILED
+	}
+
+	/** 既定の待ち受けポート番号。 */
+	public static final int DEFAULT_PORT = 8960;
+	/** 既定の、実行待ちにできるジョブ数の上限。 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	/** 既定の、同時に実行するジョブ数。 */
+	public static final int DEFAULT_JOB_PARALLELISM = 2;
+	/** 状態を保持する終了済みのジョブ数の上限。これを超えると古いジョブから破棄されます。 */
+	private static final int RETAINED_JOB_COUNT = 1000;
+	/** 待ち行列が満杯の場合に、再試行までの待機を促す秒数。 */
+	private static final int RETRY_AFTER_SECONDS = 1;
+	/** ジョブの投入のリクエストの本文（パラメータ）のバイト数の上限。 */
+	private static final int MAX_REQUEST_BODY_SIZE = 64 * 1024;
+
+	/** HTTPサーバー。 */
+	private final HttpServer httpServer;
+	/** 変換エンジン（ジョブ間で共有）。 */
+	private final ImageBundler imageBundler;
+	/** ジョブを実行する {@link ThreadPoolExecutor}。待ち行列の容量で受け付けるジョブ数を制限します。 */
+	private final ThreadPoolExecutor jobExecutor;
+	/** ジョブの採番。 */
+	private final AtomicLong jobSequence = new AtomicLong();
+	/** IDごとのジョブ（投入順）。 */
+	private final Map<String, Job> jobMap;
+
+	/**
+	 * 指定されたアドレスで待ち受ける {@code ConversionServer} を構築し、開始します。
+	 *
+	 * @param address 待ち受けるアドレス。ポート番号が0の場合は空いているポートを使用します。
+	 * @param queueCapacity 実行待ちにできるジョブ数の上限。
+	 * @param jobParallelism 同時に実行するジョブ数。
+	 * @throws IOException サーバーの開始中にエラーが発生した場合。
+	 */
+	public ConversionServer(InetSocketAddress address, int queueCapacity, int jobParallelism) throws IOException {
+		this.imageBundler = new ImageBundler();
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-job-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.jobExecutor = new ThreadPoolExecutor(
+			jobParallelism, jobParallelism,
+			0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+			threadFactory);
+		int maxJobCount = RETAINED_JOB_COUNT + queueCapacity + jobParallelism;
+		this.jobMap = Collections.synchronizedMap(new LinkedHashMap<String, Job>() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+				return this.size() > maxJobCount;
+			}
+		});
+
+		this.httpServer = HttpServer.create(address, 0);
+		this.httpServer.createContext("/jobs", this::handle);
+		this.httpServer.setExecutor(null);
+		this.httpServer.start();
+	}
+
+	/**
+	 * システムプロパティの設定で {@code ConversionServer} を構築し、開始します。
+	 * <p>
+	 * 以下のシステムプロパティを参照します。
+	 * <ul>
+	 *   <li>{@code imagebundler.server.address}：待ち受けるアドレス（既定値はループバックアドレス）</li>
+	 *   <li>{@code imagebundler.server.port}：待ち受けるポート番号（既定値は {@link #DEFAULT_PORT}）</li>
+	 *   <li>{@code imagebundler.server.queueCapacity}：実行待ちにできるジョブ数の上限（既定値は {@link #DEFAULT_QUEUE_CAPACITY}）</li>
+	 *   <li>{@code imagebundler.server.jobParallelism}：同時に実行するジョブ数（既定値は {@link #DEFAULT_JOB_PARALLELISM}）</li>
+	 * </ul>
+	 * </p>
+	 *
+	 * @return 開始した {@code ConversionServer}。
+	 * @throws IOException サーバーの開始中にエラーが発生した場合。
+	 */
+	public static ConversionServer fromSystemProperties() throws IOException {
+		String host = System.getProperty("imagebundler.server.address");
+		InetAddress inetAddress = (host == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+		return new ConversionServer(
+			new InetSocketAddress(inetAddress, Integer.getInteger("imagebundler.server.port", DEFAULT_PORT)),
+			Integer.getInteger("imagebundler.server.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+			Integer.getInteger("imagebundler.server.jobParallelism", DEFAULT_JOB_PARALLELISM));
+	}
+
+	/**
+	 * サーバーが待ち受けているアドレスを取得します。
+	 * @return 待ち受けているアドレス。
+	 */
+	public InetSocketAddress getAddress() {
+		return this.httpServer.getAddress();
+	}
+
+	/**
+	 * 新しいジョブの受け付けを停止し、サーバーと変換ワーカーを終了します。実行中のジョブの終了は待機しません。
+	 */
+	@Override
+	public void close() {
+		this.httpServer.stop(0);
+		this.jobExecutor.shutdownNow();
+		this.imageBundler.close();
+	}
+
+	/**
+	 * {@code /jobs} へのリクエストを処理します。
+	 *
+	 * @param exchange HTTPのリクエストと応答。
+	 * @throws IOException 応答の送信中にエラーが発生した場合。
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			if ("/jobs".equals(path) || "/jobs/".equals(path)) {
+				if ("POST".equals(method)) {
+					this.submit(exchange);
+				} else {
+					this.respond(exchange, 405, error("Method not allowed : " + method));
+				}
+			} else if (!path.startsWith("/jobs/")) {
+				this.respond(exchange, 404, error("Not found : " + path));
+			} else {
+				Job job = this.jobMap.get(path.substring("/jobs/".length()));
+				if (!"GET".equals(method)) {
+					this.respond(exchange, 405, error("Method not allowed : " + method));
+				} else if (job == null) {
+					this.respond(exchange, 404, error("No such job : " + path));
+				} else {
+					this.respond(exchange, 200, job.toJson());
+				}
+			}
+		} catch (RuntimeException e) {
+			this.respond(exchange, 500, error(e.toString()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * ジョブを投入します。
+	 *
+	 * @param exchange HTTPのリクエストと応答。
+	 * @throws IOException リクエストの読み込みまたは応答の送信中にエラーが発生した場合。
+	 */
+	private void submit(HttpExchange exchange) throws IOException {
+		byte[] body = readAll(exchange.getRequestBody(), MAX_REQUEST_BODY_SIZE);
+		if (body == null) {
+			this.respond(exchange, 413, error("Request body exceeds " + MAX_REQUEST_BODY_SIZE + " bytes"));
+			return;
+		}
+		Properties parameters = new Properties();
+		try {
+			parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+			parseParameters(new String(body, StandardCharsets.UTF_8), parameters);
+		} catch (IllegalArgumentException e) {
+			// 不正なエスケープ（"%" の後に16進数が続かないなど）
+			this.respond(exchange, 400, error("Malformed parameters : " + e.getMessage()));
+			return;
+		}
+
+		String source = (String) parameters.remove("source");
+		if (source == null || source.isEmpty()) {
+			this.respond(exchange, 400, error("source is required"));
+			return;
+		}
+		Path sourcePath = Paths.get(source).toAbsolutePath();
+		if (Files.notExists(sourcePath)) {
+			this.respond(exchange, 400, error("No such file : " + sourcePath));
+			return;
+		}
+		BundleOptions options;
+		try {
+			options = BundleOptions.fromProperties(parameters);
+		} catch (IllegalArgumentException e) {
+			this.respond(exchange, 400, error(e.getMessage()));
+			return;
+		}
+
+		Job job = new Job(Long.toString(this.jobSequence.incrementAndGet()), sourcePath);
+		this.jobMap.put(job.id, job);
+		try {
+			this.jobExecutor.execute(() -> job.run(this.imageBundler, options));
+		} catch (RejectedExecutionException e) {
+			// 待ち行列が満杯の場合は受け付けず、再試行を促す
+			this.jobMap.remove(job.id);
+			exchange.getResponseHeaders().set("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+			this.respond(exchange, 503, error("Job queue is full"));
+			return;
+		}
+		exchange.getResponseHeaders().set("Location", "/jobs/" + job.id);
+		this.respond(exchange, 202, job.toJson());
+	}
+
+	/**
+	 * JSON形式の応答を送信します。
+	 *
+	 * @param exchange HTTPのリクエストと応答。
+	 * @param statusCode ステータスコード。
+	 * @param json 応答の本文。
+	 * @throws IOException 応答の送信中にエラーが発生した場合。
+	 */
+	private void respond(HttpExchange exchange, int statusCode, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(statusCode, body.length);
+		try (OutputStream outputStream = exchange.getResponseBody()) {
+			outputStream.write(body);
+		}
+	}
+
+	/**
+	 * 1つの変換ジョブの状態を保持するクラスです。
+	 * <p>
+	 * 状態と進捗はジョブを実行するスレッドが更新し、HTTPのリクエストを処理するスレッドが参照します。
+	 * </p>
+	 */
+	private static class Job {
+		/** ジョブのID。 */
+		private final String id;
+		/** 変換対象のパス。 */
+		private final Path sourcePath;
+		/** ジョブの状態。 */
+		private volatile State state = State.QUEUED;
+		/** 変換ワーカーに投入したページ数。 */
+		private volatile int submittedPageCount;
+		/** 書き込まれたページ数。 */
+		private volatile int writtenPageCount;
+		/** 対象のページ数。 */
+		private volatile int pageCount;
+		/** 出力ZIPファイルのパスのリスト。 */
+		private volatile List<Path> outputFilePathList = Collections.emptyList();
+		/** 異常終了した場合のエラーメッセージ。 */
+		private volatile String errorMessage;
+
+		/**
+		 * 実行待ちの {@code Job} を構築します。
+		 *
+		 * @param id ジョブのID。
+		 * @param sourcePath 変換対象のパス。
+		 */
+		private Job(String id, Path sourcePath) {
+			this.id = id;
+			this.sourcePath = sourcePath;
+		}
+
+		/**
+		 * ジョブを実行します。
+		 *
+		 * @param imageBundler 変換エンジン。
+		 * @param options 変換の設定。
+		 */
+		private void run(ImageBundler imageBundler, BundleOptions options) {
+			this.state = State.RUNNING;
+			try {
+				this.outputFilePathList = imageBundler.bundle(
+					this.sourcePath,
+					options,
+					(submittedPageCount, writtenPageCount, pageCount) -> {
+						this.submittedPageCount = submittedPageCount;
+						this.writtenPageCount = writtenPageCount;
+						this.pageCount = pageCount;
+					});
+				this.state = State.SUCCEEDED;
+			} catch (Throwable e) {
+				this.errorMessage = e.toString();
+				this.state = State.FAILED;
+			}
+		}
+
+		/**
+		 * ジョブの状態をJSON形式で表します。
+		 *
+		 * @return ジョブの状態を表すJSON文字列。
+		 */
+		private String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append("{\"id\":").append(quote(this.id));
+			json.append(",\"state\":").append(quote(this.state.name()));
+			json.append(",\"source\":").append(quote(this.sourcePath.toString()));
+			json.append(",\"submittedPageCount\":").append(this.submittedPageCount);
+			json.append(",\"writtenPageCount\":").append(this.writtenPageCount);
+			json.append(",\"pageCount\":").append(this.pageCount);
+			json.append(",\"outputs\":[");
+			List<Path> outputFilePathList = this.outputFilePathList;
+			for (int i = 0; i < outputFilePathList.size(); i++) {
+				json.append((i == 0) ? "" : ",").append(quote(outputFilePathList.get(i).toString()));
+			}
+			json.append("]");
+			if (this.errorMessage != null) {
+				json.append(",\"error\":").append(quote(this.errorMessage));
+			}
+			return json.append("}").toString();
+		}
+	}
+
+	/**
+	 * エラーメッセージを表すJSON文字列を生成します。
+	 *
+	 * @param message エラーメッセージ。
+	 * @return JSON文字列。
+	 */
+	private static String error(String message) {
+		return "{\"error\":" + quote(message) + "}";
+	}
+
+	/**
+	 * 文字列をJSONの文字列リテラルに変換します。
+	 *
+	 * @param value 文字列。
+	 * @return 引用符で囲み、必要な文字をエスケープした文字列。
+	 */
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			switch (c) {
+				case '"':
+					quoted.append("\\\"");
+					break;
+				case '\\':
+					quoted.append("\\\\");
+					break;
+				default:
+					if (c < 0x20) {
+						quoted.append(String.format("\\u%04x", (int) c));
+					} else {
+						quoted.append(c);
+					}
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * クエリ文字列またはフォーム形式の本文を解析し、パラメータを追加します。
+	 *
+	 * @param encodedParameters URLエンコードされたパラメータ。null の場合は何もしません。
+	 * @param parameters パラメータの追加先。
+	 * @throws UnsupportedEncodingException UTF-8がサポートされていない場合。
+	 * @throws IllegalArgumentException URLエンコードが不正な場合。
+	 */
+	private static void parseParameters(String encodedParameters, Properties parameters) throws UnsupportedEncodingException {
+		if (encodedParameters == null) {
+			return;
+		}
+		for (String pair : encodedParameters.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int index = pair.indexOf('=');
+			String name = (index < 0) ? pair : pair.substring(0, index);
+			String value = (index < 0) ? "" : pair.substring(index + 1);
+			parameters.setProperty(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+	}
+
+	/**
+	 * 入力ストリームの内容を、指定されたバイト数を上限としてすべて読み込みます。
+	 * <p>
+	 * 上限を超えた時点で読み込みをやめるため、大きな本文を送られた場合でも保持するのは上限までです。
+	 * </p>
+	 *
+	 * @param inputStream 入力ストリーム。
+	 * @param maxSize 読み込むバイト数の上限。
+	 * @return 読み込んだ内容。上限を超えた場合は null。
+	 * @throws IOException 読み込み中にエラーが発生した場合。
+	 */
+	private static byte[] readAll(InputStream inputStream, int maxSize) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = inputStream.read(buffer)) > 0) {
+			if (outputStream.size() + length > maxSize) {
+				return null;
+			}
+			outputStream.write(buffer, 0, length);
+		}
+		return outputStream.toByteArray();
+	}
+}
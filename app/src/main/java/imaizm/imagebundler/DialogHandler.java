@@ -0,0 +1,118 @@
+package imaizm.imagebundler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import javax.swing.JFileChooser;
+import javax.swing.ProgressMonitor;
+
+/**
+ * ファイル選択ダイアログとプログレスモニターを扱うクラスです。
+ * <p>
+ * Swingのクラスを参照するのはこのクラスだけです。
+ * {@link EntryPoint} は処理対象がコマンドライン引数で指定されなかった場合にのみこのクラスを使用するため、
+ * スクリプトからのバッチ実行ではSwing（およびAWTのツールキット）のクラスが読み込まれず、起動時間が短くなります。
+ * </p>
+ */
+class DialogHandler {
+
+	/**
+	 * インスタンス化を禁止します。
+	 */
+	private DialogHandler() {
+	}
+
+	/**
+	 * ファイル選択ダイアログを表示し、処理対象のファイルまたはディレクトリを選択させます。
+	 * <p>
+	 * INIファイルに前回の作業ディレクトリが記録されていれば、それをダイアログの初期ディレクトリとし、
+	 * 選択された場合は、最後に選択されたファイルの親ディレクトリを今回の作業ディレクトリとして記録します。
+	 * </p>
+	 *
+	 * @return 選択されたファイルまたはディレクトリのリスト。選択されなかった場合は null。
+	 * @throws IOException INIファイルの読み書き中にエラーが発生した場合。
+	 */
+	static List<File> chooseTargetFiles() throws IOException {
+		List<File> targetFileList = new LinkedList<File>();
+
+		// iniファイルが有ればそこから前回の作業ディレクトリを取得
+		IniFileHandler iniFileHandler = new IniFileHandler();
+		Path currentDirectoryPathForJFileChooser = iniFileHandler.getWorkDirectoryPathOfLastTime();
+
+		String parentDirectoryOfSelectedFile = null;
+
+		// JFileChooserを初期化
+		// ・ディレクトリも選択可に設定
+		// ・複数選択可に設定
+		JFileChooser jFileChooser = new JFileChooser();
+		jFileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+		jFileChooser.setMultiSelectionEnabled(true);
+		// ・前回の作業ディレクトリを初期ディレクトリに設定（あれば）
+		if (currentDirectoryPathForJFileChooser != null) {
+			jFileChooser.setCurrentDirectory(currentDirectoryPathForJFileChooser.toFile());
+		}
+
+		// JFileChooser起動
+		int state = jFileChooser.showOpenDialog(null);
+		if (state == JFileChooser.APPROVE_OPTION) {
+			// 選択あれば
+
+			// 選択されたファイル/ディレクトリをtargetFileListに格納
+			for(File targetFile : jFileChooser.getSelectedFiles()) {
+				targetFileList.add(targetFile);
+				parentDirectoryOfSelectedFile = targetFile.getParent();
+			}
+		} else {
+			// 選択がなかった場合
+			return null;
+		}
+
+		// 今回の作業ディレクトリを「前回の作業ディレクトリ」として記録
+		iniFileHandler.writeWorkDirectoryOfLastTime(parentDirectoryOfSelectedFile);
+
+		return targetFileList;
+	}
+
+	/**
+	 * 全体の進捗をプログレスモニターで表示する関数を生成します。
+	 *
+	 * @param targetFileCount 処理対象のファイルまたはディレクトリの数。
+	 * @return 処理済みの数を受け取り、進捗を表示する関数。
+	 */
+	static IntConsumer newOverallProgress(int targetFileCount) {
+		// 処理中ダイアログの準備
+		ProgressMonitor progressMonitor = new ProgressMonitor(null, "全体進捗", "ノート", 0, targetFileCount);
+		progressMonitor.setMillisToDecideToPopup(0);
+		return processedCount -> {
+			progressMonitor.setNote(Math.min(processedCount + 1, targetFileCount) + " of " + targetFileCount);
+			progressMonitor.setProgress(processedCount);
+		};
+	}
+
+	/**
+	 * 変換ジョブの進捗をプログレスモニターで表示する {@link ImageBundler.ProgressListener} を生成します。
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @return 進捗を表示する {@link ImageBundler.ProgressListener}。
+	 */
+	static ImageBundler.ProgressListener newProgressListener(Path inputFilePath) {
+		// 処理中ダイアログ（ページ数は変換開始時に設定する）
+		ProgressMonitor progressMonitor =
+			new ProgressMonitor(
+				null,
+				"変換中 : " + inputFilePath.getFileName().toString(),
+				"ノート",
+				0,
+				1);
+		progressMonitor.setMillisToDecideToPopup(0);
+		return (submittedPageCount, writtenPageCount, pageCount) -> {
+			progressMonitor.setMaximum(pageCount);
+			progressMonitor.setNote(Math.min(submittedPageCount + 1, pageCount) + " of " + pageCount);
+			progressMonitor.setProgress(writtenPageCount);
+		};
+	}
+}
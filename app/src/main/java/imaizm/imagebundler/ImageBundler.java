@@ -0,0 +1,1147 @@
+package imaizm.imagebundler;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * 画像ファイルを出力プロファイルの設定で変換し、JPEG形式で圧縮してZIPファイルに格納する変換エンジンです。
+ * <p>
+ * 変換の設定は {@link BundleOptions} としてジョブごとに指定し、共有される可変の状態を参照しません。
+ * 1つのインスタンスは変換ワーカーのスレッドプールを保持し、複数のスレッドから同時に
+ * {@link #bundle(Path, BundleOptions, ProgressListener)} を呼び出して、設定の異なる複数のジョブを並行して実行できます。
+ * 同時に実行されたジョブのページは、共有の変換ワーカーで処理されます。
+ * </p>
+ * <p>
+ * {@link #bundle(InputStream, OutputStream, BundleOptions)} では、ストリームから読み込んだアーカイブを変換し、
+ * ファイルシステムを使用せずにZIPファイルをストリームへ書き込みます。
+ * </p>
+ * <p>
+ * 使用後は {@link #close()} で変換ワーカーを終了してください。
+ * </p>
+ */
+public class ImageBundler implements Closeable {
+
+	/**
+	 * 変換ジョブの進捗を受け取るための関数型インターフェースです。
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * 変換ジョブの進捗が更新された場合に呼び出されます。
+		 * <p>
+		 * {@link ImageBundler#bundle(Path, BundleOptions, ProgressListener)} を呼び出したスレッドから呼び出されます。
+		 * </p>
+		 *
+		 * @param submittedPageCount 変換ワーカーに投入したページ数。
+		 * @param writtenPageCount すべての出力ZIPファイルに書き込まれたページ数。
+		 * @param pageCount 対象のページ数。tarファイル・7zファイルのようにページ数が事前に分からない入力では、読み込み済みのページ数。
+		 */
+		void progress(int submittedPageCount, int writtenPageCount, int pageCount);
+	}
+
+	/** 進捗を通知しない {@link ProgressListener}。 */
+	private static final ProgressListener NO_PROGRESS_LISTENER = (submittedPageCount, writtenPageCount, pageCount) -> {};
+
+	/** 変換ワーカーの数。 */
+	private final int parallelism;
+	/** 変換ワーカー用の {@link ExecutorService}（ジョブ間で共有、変換ワーカーの数の2倍のスレッドを持つ）。 */
+	private final ExecutorService conversionExecutorService;
+
+	/**
+	 * 利用可能なプロセッサ数の変換ワーカーを持つ {@code ImageBundler} を構築します。
+	 */
+	public ImageBundler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 指定された数の変換ワーカーを持つ {@code ImageBundler} を構築します。
+	 * <p>
+	 * 変換ワーカーのスレッドはデーモンスレッドのため、{@link #close()} されなかった場合でもJVMの終了を妨げません。
+	 * </p>
+	 * <p>
+	 * 各ジョブは指定された数の変換ワーカーで変換を開始します。{@link BundleOptions#isAdaptiveConcurrency()} が
+	 * true の場合は、CPUに余裕があれば指定された数の2倍まで並行数を増やすため、スレッドはその数だけ用意します。
+	 * </p>
+	 *
+	 * @param parallelism 変換ワーカーの数。
+	 */
+	public ImageBundler(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-convert-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.conversionExecutorService = Executors.newFixedThreadPool(this.parallelism * 2, threadFactory);
+	}
+
+	/**
+	 * 指定された入力ファイルまたはディレクトリ内の画像ファイルを、指定された設定で変換します。
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @param options 変換の設定。
+	 * @return 出力プロファイルごとに作成されたZIPファイルのパスのリスト（出力プロファイルの順）。
+	 * @throws IOException ファイルの読み書き中にエラーが発生した場合。
+	 * @see #bundle(Path, BundleOptions, ProgressListener)
+	 */
+	public List<Path> bundle(Path inputFilePath, BundleOptions options) throws IOException {
+		return this.bundle(inputFilePath, options, NO_PROGRESS_LISTENER);
+	}
+
+	/**
+	 * 指定された入力ファイルまたはディレクトリ内の画像ファイルを、指定された設定で変換します。
+	 * <p>
+	 * 各ページは1回だけ読み込まれ、出力プロファイルごとに変換されて、それぞれのZIPファイル
+	 * （{@code <入力名>_<プロファイル名>.zip}）に格納されます。
+	 * 入力パスがディレクトリの場合は、ディレクトリ内の元のファイルも {@code <ディレクトリ名>.zip} に格納します。
+	 * </p>
+	 * <p>
+	 * 入力パスがtarファイル（{@code .tar}、{@code .tar.gz}、{@code .tgz}）または7zファイル（{@code .7z}）の場合は、
+	 * 一時ディレクトリに展開せず、{@link ArchiveStreamReader} によってエントリを順に読み込みながら変換します。
+	 * </p>
+	 * <p>
+	 * {@link BundleOptions#isAdaptiveConcurrency()} が true の場合は、ZIPファイルの展開と各ページの変換の並行数を
+	 * {@link ConcurrencyController} によって実行中に調整します。
+	 * </p>
+	 * <p>
+	 * {@link BundleOptions#getJournalDirectory()} が設定されている場合は、エンコードが完了したページを {@link PageJournal} に記録します。
+	 * 前回の実行が中断されていた場合は記録済みのページを再利用し、前回の実行で完了済みの入力（出力ZIPファイルが残っているもの）は変換せずに戻ります。
+	 * </p>
+	 * <p>
+	 * このメソッドは複数のスレッドから同時に呼び出すことができます。
+	 * </p>
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @param options 変換の設定。
+	 * @param progressListener 進捗を受け取る {@link ProgressListener}。
+	 * @return 出力プロファイルごとに作成されたZIPファイルのパスのリスト（出力プロファイルの順）。
+	 * @throws IOException ファイルの読み書き中にエラーが発生した場合。
+	 */
+	public List<Path> bundle(Path inputFilePath, BundleOptions options, ProgressListener progressListener)
+		throws IOException {
+
+		// 再開用のジャーナルを開き、前回の実行で完了済みの入力は省略する
+		PageJournal pageJournal = openPageJournal(inputFilePath, options);
+		if (pageJournal != null && pageJournal.isCompleted()) {
+			System.out.println("skipped (completed in journal) : " + inputFilePath);
+			return getOutputFilePathList(inputFilePath, options.getOutputProfileList());
+		}
+
+		// 展開・変換・書き込みの段階ごとの並行数（書き込みは1つのスレッドで順に行う）
+		boolean adaptive = options.isAdaptiveConcurrency();
+		int maxReadParallelism = adaptive ? options.getMaxReadParallelism() : ZipFileHandler.DEFAULT_PARALLELISM;
+		ConcurrencyController.Stage readStage = new ConcurrencyController.Stage(
+			"read", 1, maxReadParallelism, Math.min(ZipFileHandler.DEFAULT_PARALLELISM, maxReadParallelism));
+		ConcurrencyController.Stage convertStage = new ConcurrencyController.Stage(
+			"convert", 1, adaptive ? this.parallelism * 2 : this.parallelism, this.parallelism);
+		ConcurrencyController.Stage writeStage = new ConcurrencyController.Stage("write", 1, 1, 1);
+
+		InputFileHandler inputFileHandler = null;
+		try {
+			List<Path> outputFilePathList;
+			try (PageJournal journal = pageJournal;
+				ConcurrencyController concurrencyController = new ConcurrencyController(
+					readStage, convertStage, writeStage, ConcurrencyController.DEFAULT_INTERVAL_MILLIS)) {
+				if (adaptive) {
+					concurrencyController.start();
+				}
+
+				// tarファイル・7zファイルは一時ディレクトリに展開せず、エントリを順に読み込みながら変換する
+				if (ArchiveStreamReader.isSupported(inputFilePath)) {
+					outputFilePathList = getOutputFilePathList(inputFilePath, options.getOutputProfileList());
+					ArchiveStreamReader archiveStreamReader = ArchiveStreamReader.open(inputFilePath, this.parallelism * 2);
+					List<ArchiveWriter> archiveWriterList;
+					try {
+						archiveWriterList = this.openArchiveWriters(outputFilePathList);
+					} catch (IOException | RuntimeException e) {
+						archiveStreamReader.close();
+						throw e;
+					}
+					this.convertStream(
+						archiveStreamReader,
+						archiveWriterList,
+						options,
+						progressListener,
+						convertStage,
+						writeStage,
+						journal);
+				} else {
+					PipelineEvents.InputDiscovery inputDiscoveryEvent = new PipelineEvents.InputDiscovery();
+					inputDiscoveryEvent.begin();
+					inputFileHandler =
+						new InputFileHandler(inputFilePath, readStage);
+					inputDiscoveryEvent.end();
+					if (inputDiscoveryEvent.shouldCommit()) {
+						inputDiscoveryEvent.source = inputFilePath.toString();
+						inputDiscoveryEvent.pageCount = inputFileHandler.getInputFilePathFutureList().size();
+						inputDiscoveryEvent.commit();
+					}
+
+					outputFilePathList = this.convert(
+						inputFilePath,
+						inputFileHandler.getInputFilePathFutureList(),
+						options,
+						progressListener,
+						convertStage,
+						writeStage,
+						journal);
+				}
+			}
+
+			// 入力ソースがディレクトリだった場合
+			if (Files.isDirectory(inputFilePath)) {
+
+				Path outputZipFilePath = getStoreFilePath(inputFilePath);
+
+				System.out.println("output zip file name : " + outputZipFilePath);
+
+				this.store(inputFileHandler.getInputFilePathList(), outputZipFilePath);
+			}
+
+			// すべての出力ZIPファイルを作成できたら、入力の完了をジャーナルに記録する
+			if (pageJournal != null) {
+				pageJournal.complete();
+			}
+
+			return outputFilePathList;
+		} finally {
+			// 変換に失敗した場合も、展開先の一時ディレクトリと展開処理のスレッドを解放する
+			if (inputFileHandler != null) {
+				inputFileHandler.close();
+			}
+		}
+	}
+
+	/**
+	 * 変換の設定でジャーナルが有効な場合に、入力のジャーナルを開きます。
+	 * <p>
+	 * 完了済みのジャーナルであっても、出力ZIPファイルのいずれかが存在しない場合は、ジャーナルを破棄して最初から変換し直します。
+	 * </p>
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @param options 変換の設定。
+	 * @return 開いたジャーナル。ジャーナルが有効でない場合は null。
+	 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+	 */
+	private static PageJournal openPageJournal(Path inputFilePath, BundleOptions options) throws IOException {
+		if (options.getJournalDirectory() == null) {
+			return null;
+		}
+		PageJournal pageJournal = PageJournal.open(options.getJournalDirectory(), inputFilePath, options);
+		if (pageJournal.isCompleted()) {
+			List<Path> outputFilePathList = new ArrayList<Path>(getOutputFilePathList(inputFilePath, options.getOutputProfileList()));
+			if (Files.isDirectory(inputFilePath)) {
+				outputFilePathList.add(getStoreFilePath(inputFilePath));
+			}
+			for (Path outputFilePath : outputFilePathList) {
+				if (Files.notExists(outputFilePath)) {
+					pageJournal.discard();
+					return PageJournal.open(options.getJournalDirectory(), inputFilePath, options);
+				}
+			}
+		}
+		return pageJournal;
+	}
+
+	/**
+	 * 出力プロファイルごとの出力ZIPファイル（{@code <入力名>_<プロファイル名>.zip}）のパスを求めます。
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @param outputProfileList 出力プロファイルのリスト。
+	 * @return 出力ZIPファイルのパスのリスト（出力プロファイルの順）。
+	 */
+	private static List<Path> getOutputFilePathList(Path inputFilePath, List<OutputProfile> outputProfileList) {
+		// 出力ファイル名のベース文字列の設定
+		String outputFileNameBase;
+		if (Files.isDirectory(inputFilePath)) {
+			// 入力がディレクトリの場合、入力名をそのまま設定
+			outputFileNameBase = inputFilePath.getFileName().toString();
+		} else if (ArchiveStreamReader.isSupported(inputFilePath)) {
+			// 入力がtarファイル・7zファイルの場合、入力名から「.tar.gz」のような複合拡張子を除去
+			outputFileNameBase = ArchiveStreamReader.getBaseName(inputFilePath);
+		} else {
+			// 入力がファイルの場合、入力名から拡張子を除去
+			outputFileNameBase = FilenameUtils.getBaseName(inputFilePath.getFileName().toString());
+		}
+
+		List<Path> outputFilePathList = new ArrayList<Path>();
+		for (OutputProfile outputProfile : outputProfileList) {
+			outputFilePathList.add(
+				inputFilePath
+					.getParent()
+					.resolve(
+						outputFileNameBase + "_" + outputProfile.getName() + ".zip")
+					.toAbsolutePath());
+		}
+		return outputFilePathList;
+	}
+
+	/**
+	 * 入力がディレクトリの場合に、ディレクトリ内の元のファイルを格納するZIPファイル（{@code <ディレクトリ名>.zip}）のパスを求めます。
+	 *
+	 * @param inputFilePath 処理対象のディレクトリのパス。
+	 * @return ZIPファイルのパス。
+	 */
+	private static Path getStoreFilePath(Path inputFilePath) {
+		return inputFilePath.getParent().resolve(
+				inputFilePath.getFileName().toString() + ".zip")
+			.toAbsolutePath();
+	}
+
+	/**
+	 * ストリームから読み込んだアーカイブ（ZIPファイルまたはtarファイル）内の画像ファイルを指定された設定で変換し、
+	 * ZIPファイルとしてストリームへ書き込みます。
+	 * <p>
+	 * アーカイブのエントリは {@link ArchiveStreamReader} によって到着順にメモリ上へ読み込み、変換ワーカーに投入します。
+	 * 変換結果は {@link ArchiveWriter#ArchiveWriter(OutputStream, int)} によってページ順に出力ストリームへ書き込むため、
+	 * ファイルシステムを使用せず、標準入力・標準出力のようなシークできないストリームを指定できます。
+	 * アーカイブの形式は先頭のバイト列から判定し、エントリ名のエンコーディングはMS932（Shift_JIS）を使用します。
+	 * 出力ZIPファイルのエントリ名はファイルを指定した場合と同じく、エントリ名のファイル名部分から求め、
+	 * 別のディレクトリに同じファイル名のエントリがある場合は重複しない名前を付けます。
+	 * 入力・出力ストリームは閉じません。
+	 * </p>
+	 * <p>
+	 * 出力先は1つのため、出力プロファイルは1つだけ指定できます。
+	 * ページ数が事前に分からないため、ZIPファイル全体のサイズの予算（{@link BundleOptions#getArchiveSizeBudget()}）は適用せず、
+	 * 重複したページの検出（{@link PageDeduplicator}）とジャーナル（{@link PageJournal}）も使用しません。
+	 * </p>
+	 * <p>
+	 * 各ページの進捗は {@link System#out} に出力するため、標準出力へ書き込む場合は呼び出し元で出力先を切り替えてください。
+	 * </p>
+	 *
+	 * @param inputStream アーカイブを読み込むストリーム。
+	 * @param outputStream ZIPファイルを書き込むストリーム。
+	 * @param options 変換の設定。
+	 * @return 変換したページ数。
+	 * @throws IOException アーカイブの読み込み、変換、またはZIPファイルの書き込み中にエラーが発生した場合。
+	 * @throws IllegalArgumentException 出力プロファイルが1つではない場合。
+	 */
+	public int bundle(InputStream inputStream, OutputStream outputStream, BundleOptions options) throws IOException {
+		if (options.getOutputProfileList().size() != 1) {
+			throw new IllegalArgumentException("ストリームへ出力する場合は、出力プロファイルを1つだけ指定してください。");
+		}
+
+		ConcurrencyController.Stage convertStage = new ConcurrencyController.Stage(
+			"convert", 1, this.parallelism, this.parallelism);
+		ConcurrencyController.Stage writeStage = new ConcurrencyController.Stage("write", 1, 1, 1);
+		ArchiveStreamReader archiveStreamReader = ArchiveStreamReader.open(inputStream, this.parallelism * 2);
+		return this.convertStream(
+			archiveStreamReader,
+			Collections.singletonList(new ArchiveWriter(outputStream, this.parallelism * 2)),
+			options,
+			NO_PROGRESS_LISTENER,
+			convertStage,
+			writeStage,
+			null);
+	}
+
+	/**
+	 * 変換ワーカーを終了します。実行中のジョブの終了は待機しません。
+	 */
+	@Override
+	public void close() {
+		this.conversionExecutorService.shutdown();
+	}
+
+	/**
+	 * 指定された入力ファイルのリストを、各出力プロファイルの設定で変換し、縮小版の画像を出力プロファイルごとのZIPファイルに格納します。
+	 * <p>
+	 * 入力ファイルは準備ができたものから先頭より順に処理されるため、ZIPファイルの展開中であっても、
+	 * 展開済みの先頭のファイルから変換を開始します。
+	 * </p>
+	 * <p>
+	 * 各ページの読み込み・変換・エンコードは変換ワーカーで並列に行われ、
+	 * エンコード済みのページは出力プロファイルごとの {@link ArchiveWriter} の書き込みスレッドによってページ順にZIPファイルへ追記されます。
+	 * 同時に処理中のページ数は {@link ArchiveWriter} の容量と、変換の段階の並行数で制限されます。
+	 * </p>
+	 * <p>
+	 * 内容が同一のページは {@link PageDeduplicator} によって検出され、最初のページの変換結果が再利用されます。
+	 * 重複したページのエントリは、書き込み済みの最初のページのエントリから内容を複写します。
+	 * </p>
+	 * <p>
+	 * ページまたはZIPファイルのサイズの予算が設定されている場合は、
+	 * 各ページを予算に収まる最も高い圧縮品質でエンコードします。予算は出力ZIPファイルごとに適用されます。
+	 * </p>
+	 *
+	 * @param inputFilePath 元の入力パス（ファイルまたはディレクトリ）。主にZIPファイル名の生成に使用されます。
+	 * @param inputFilePathFutureList 処理対象の画像ファイルのパスを返す {@link CompletableFuture} のリスト。
+	 * @param options 変換の設定。
+	 * @param progressListener 進捗を受け取る {@link ProgressListener}。
+	 * @param convertStage デコード・変換・エンコードの段階。
+	 * @param writeStage 書き込みの段階。書き込み枠の待機時間を記録します。
+	 * @param pageJournal エンコードが完了したページを記録するジャーナル。null の場合は記録しません。
+	 * @return 出力プロファイルごとに作成されたZIPファイルのパスのリスト。
+	 * @throws IOException ファイルの読み書きまたはZIPファイル作成中にエラーが発生した場合。
+	 */
+	private List<Path> convert(
+		Path inputFilePath,
+		List<CompletableFuture<Path>> inputFilePathFutureList,
+		BundleOptions options,
+		ProgressListener progressListener,
+		ConcurrencyController.Stage convertStage,
+		ConcurrencyController.Stage writeStage,
+		PageJournal pageJournal)
+		throws IOException {
+
+		List<OutputProfile> outputProfileList = options.getOutputProfileList();
+		int pageCount = inputFilePathFutureList.size();
+
+		// 出力プロファイルごとにZIPファイルの書き込みとファイルサイズの予算を用意する
+		List<Path> outputFilePathList = getOutputFilePathList(inputFilePath, outputProfileList);
+		List<ArchiveWriter> archiveWriterList = this.openArchiveWriters(outputFilePathList);
+		List<ArchiveSizeBudget> archiveSizeBudgetList = new ArrayList<ArchiveSizeBudget>();
+		for (int j = 0; j < outputProfileList.size(); j++) {
+			archiveSizeBudgetList.add(
+				(options.getArchiveSizeBudget() > 0)
+					? new ArchiveSizeBudget(options.getArchiveSizeBudget(), pageCount)
+					: null);
+		}
+
+		PageDeduplicator pageDeduplicator = new PageDeduplicator(options.getPerceptualHashDistance());
+		// 大きなページは帯に分けて並列にエンコードする（このジョブの変換ワーカー間で共有）
+		ParallelJpegEncoder parallelJpegEncoder =
+			new ParallelJpegEncoder(JpegEncoder.Profile.FAST, this.parallelism, options.getParallelEncodingPixels());
+		// JpegEncoderは変換ワーカーごと・プロファイルごとに1つ生成して再利用する
+		List<JpegEncoder> jpegEncoderList = Collections.synchronizedList(new ArrayList<JpegEncoder>());
+		// 変換ワーカーはジョブ間で共有されるため、エンコーダはスレッドローカル変数ではなくジョブごとの対応に保持する
+		Map<Thread, Map<JpegEncoder.Profile, JpegEncoder>> jpegEncoderMapByWorker =
+			new ConcurrentHashMap<Thread, Map<JpegEncoder.Profile, JpegEncoder>>();
+		JpegEncoderProvider jpegEncoderProvider =
+			newJpegEncoderProvider(jpegEncoderMapByWorker, parallelJpegEncoder, jpegEncoderList);
+		List<Future<?>> taskFutureList = new ArrayList<Future<?>>();
+		Throwable failure = null;
+		try {
+			for (int i = 0; i < pageCount; i++) {
+
+				// 書き込み待ちのページ数が上限に達している場合は、先行ページの書き込みを待機
+				long slotWaitStart = System.nanoTime();
+				for (ArchiveWriter archiveWriter : archiveWriterList) {
+					archiveWriter.acquireSlot();
+				}
+				writeStage.recordStall(System.nanoTime() - slotWaitStart);
+				progressListener.progress(i, getWrittenPageCount(archiveWriterList), pageCount);
+
+				// 変換の並行数が上限に達している場合は、先行ページの変換を待機
+				try {
+					convertStage.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("変換の実行権の待機中に割り込まれました。");
+				}
+				int sequence = i;
+				CompletableFuture<Path> inputFilePathFuture = inputFilePathFutureList.get(i);
+				// 前回の実行でエンコード済みのページは、ジャーナルに保存された結果を再利用する
+				List<List<ArchiveWriter.Entry>> journaledEntryListList =
+					(pageJournal == null) ? null : pageJournal.getEntries(sequence);
+				this.submitTask(taskFutureList, () -> {
+					long[] workStart = convertStage.startWork();
+					try {
+						List<List<ArchiveWriter.Entry>> entryListList;
+						if (journaledEntryListList != null) {
+							entryListList = journaledEntryListList;
+						} else {
+							// ZIPファイルの場合、対象エントリの展開完了を待機
+							Path inputFilePathOfPage;
+							if (inputFilePathFuture.isDone()) {
+								inputFilePathOfPage = ZipFileHandler.await(inputFilePathFuture);
+							} else {
+								long stallStart = System.nanoTime();
+								try {
+									inputFilePathOfPage = ZipFileHandler.await(inputFilePathFuture);
+								} finally {
+									convertStage.recordStall(System.nanoTime() - stallStart);
+								}
+							}
+							entryListList = pageDeduplicator.convertAll(
+								sequence,
+								inputFilePathOfPage,
+								pageFilePath -> {
+									long[] pageSizeBudgets = new long[outputProfileList.size()];
+									for (int j = 0; j < pageSizeBudgets.length; j++) {
+										pageSizeBudgets[j] = getPageSizeBudget(options.getPageSizeBudget(), archiveSizeBudgetList.get(j));
+									}
+									return convertPage(
+										pageFilePath.getFileName().toString(),
+										Files.readAllBytes(pageFilePath),
+										options,
+										jpegEncoderProvider,
+										pageSizeBudgets);
+								});
+							if (pageJournal != null) {
+								pageJournal.record(sequence, entryListList);
+							}
+						}
+						for (int j = 0; j < archiveWriterList.size(); j++) {
+							List<ArchiveWriter.Entry> entryList = entryListList.get(j);
+							ArchiveSizeBudget archiveSizeBudget = archiveSizeBudgetList.get(j);
+							if (archiveSizeBudget != null) {
+								long pageSize = 0;
+								for (ArchiveWriter.Entry entry : entryList) {
+									pageSize += entry.getSize();
+								}
+								archiveSizeBudget.consume(pageSize);
+							}
+							archiveWriterList.get(j).submit(sequence, entryList);
+						}
+					} catch (Throwable e) {
+						for (ArchiveWriter archiveWriter : archiveWriterList) {
+							archiveWriter.fail(e);
+						}
+					} finally {
+						convertStage.endWork(workStart);
+						convertStage.release();
+					}
+				});
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			// いずれかのZIPファイルの書き込みが失敗した場合は、他のZIPファイルの書き込みも中断する
+			failure = e;
+			for (ArchiveWriter archiveWriter : archiveWriterList) {
+				archiveWriter.fail(e);
+			}
+			throw e;
+		} finally {
+			// 投入済みのページがすべて書き込みキューに渡るまで待機してから書き込みを終了する
+			awaitAll(taskFutureList);
+			jpegEncoderMapByWorker.clear();
+			for (JpegEncoder jpegEncoder : jpegEncoderList) {
+				jpegEncoder.close();
+			}
+			jpegEncoderList.clear();
+			parallelJpegEncoder.close();
+			closeAll(archiveWriterList, failure);
+		}
+
+		if (pageDeduplicator.getDuplicatePageCount() > 0) {
+			System.out.println("duplicate pages : " + pageDeduplicator.getDuplicatePageCount());
+		}
+
+		progressListener.progress(pageCount, pageCount, pageCount);
+		return outputFilePathList;
+	}
+
+	/**
+	 * {@link ArchiveStreamReader} から順に読み込んだページを各出力プロファイルの設定で変換し、出力ZIPファイルごとの {@link ArchiveWriter} に書き込みます。
+	 * <p>
+	 * 各ページは読み込まれた時点で変換ワーカーに投入し、{@link #convert} と同様にページ順に書き込みます。
+	 * ページ数が事前に分からないため、ZIPファイル全体のサイズの予算は適用せず、進捗の対象のページ数には読み込み済みのページ数を通知します。
+	 * 重複したページの検出は、ファイルの内容を比較する {@link PageDeduplicator} を使用できないため行いません。
+	 * </p>
+	 * <p>
+	 * 終了時に {@code archiveStreamReader} と {@code archiveWriterList} の {@link ArchiveWriter} を閉じます。
+	 * </p>
+	 *
+	 * @param archiveStreamReader ページを読み込む {@link ArchiveStreamReader}。
+	 * @param archiveWriterList 出力プロファイルごとの {@link ArchiveWriter} のリスト（出力プロファイルの順）。
+	 * @param options 変換の設定。
+	 * @param progressListener 進捗を受け取る {@link ProgressListener}。
+	 * @param convertStage デコード・変換・エンコードの段階。
+	 * @param writeStage 書き込みの段階。書き込み枠の待機時間を記録します。
+	 * @param pageJournal エンコードが完了したページを記録するジャーナル。null の場合は記録しません。
+	 * @return 変換したページ数。
+	 * @throws IOException アーカイブの読み込み、変換、またはZIPファイルの書き込み中にエラーが発生した場合。
+	 */
+	private int convertStream(
+		ArchiveStreamReader archiveStreamReader,
+		List<ArchiveWriter> archiveWriterList,
+		BundleOptions options,
+		ProgressListener progressListener,
+		ConcurrencyController.Stage convertStage,
+		ConcurrencyController.Stage writeStage,
+		PageJournal pageJournal)
+		throws IOException {
+
+		ParallelJpegEncoder parallelJpegEncoder =
+			new ParallelJpegEncoder(JpegEncoder.Profile.FAST, this.parallelism, options.getParallelEncodingPixels());
+		List<JpegEncoder> jpegEncoderList = Collections.synchronizedList(new ArrayList<JpegEncoder>());
+		// 変換ワーカーはジョブ間で共有されるため、エンコーダはスレッドローカル変数ではなくジョブごとの対応に保持する
+		Map<Thread, Map<JpegEncoder.Profile, JpegEncoder>> jpegEncoderMapByWorker =
+			new ConcurrentHashMap<Thread, Map<JpegEncoder.Profile, JpegEncoder>>();
+		JpegEncoderProvider jpegEncoderProvider =
+			newJpegEncoderProvider(jpegEncoderMapByWorker, parallelJpegEncoder, jpegEncoderList);
+		List<Future<?>> taskFutureList = new ArrayList<Future<?>>();
+		Throwable failure = null;
+		int pageCount = 0;
+		try (ArchiveStreamReader reader = archiveStreamReader) {
+			ArchiveStreamReader.Page page;
+			while ((page = reader.next()) != null) {
+
+				// 書き込み待ちのページ数が上限に達している場合は、先行ページの書き込みを待機
+				long slotWaitStart = System.nanoTime();
+				for (ArchiveWriter archiveWriter : archiveWriterList) {
+					archiveWriter.acquireSlot();
+				}
+				writeStage.recordStall(System.nanoTime() - slotWaitStart);
+				progressListener.progress(pageCount, getWrittenPageCount(archiveWriterList), pageCount + 1);
+
+				// 変換の並行数が上限に達している場合は、先行ページの変換を待機
+				try {
+					convertStage.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("変換の実行権の待機中に割り込まれました。");
+				}
+				int sequence = pageCount++;
+				String pageName = page.getName();
+				byte[] inputData = page.getData();
+				// 前回の実行でエンコード済みのページは、ジャーナルに保存された結果を再利用する
+				List<List<ArchiveWriter.Entry>> journaledEntryListList =
+					(pageJournal == null) ? null : pageJournal.getEntries(sequence);
+				this.submitTask(taskFutureList, () -> {
+					long[] workStart = convertStage.startWork();
+					try {
+						List<List<ArchiveWriter.Entry>> entryListList;
+						if (journaledEntryListList != null) {
+							entryListList = journaledEntryListList;
+						} else {
+							long[] pageSizeBudgets = new long[archiveWriterList.size()];
+							Arrays.fill(pageSizeBudgets, options.getPageSizeBudget());
+							entryListList = convertPage(pageName, inputData, options, jpegEncoderProvider, pageSizeBudgets);
+							if (pageJournal != null) {
+								pageJournal.record(sequence, entryListList);
+							}
+						}
+						for (int j = 0; j < archiveWriterList.size(); j++) {
+							archiveWriterList.get(j).submit(sequence, entryListList.get(j));
+						}
+					} catch (Throwable e) {
+						for (ArchiveWriter archiveWriter : archiveWriterList) {
+							archiveWriter.fail(e);
+						}
+					} finally {
+						convertStage.endWork(workStart);
+						convertStage.release();
+					}
+				});
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			// 読み込みまたはいずれかのZIPファイルの書き込みが失敗した場合は、すべてのZIPファイルの書き込みを中断する
+			failure = e;
+			for (ArchiveWriter archiveWriter : archiveWriterList) {
+				archiveWriter.fail(e);
+			}
+			throw e;
+		} finally {
+			// 投入済みのページがすべて書き込みキューに渡るまで待機してから書き込みを終了する
+			awaitAll(taskFutureList);
+			jpegEncoderMapByWorker.clear();
+			for (JpegEncoder jpegEncoder : jpegEncoderList) {
+				jpegEncoder.close();
+			}
+			jpegEncoderList.clear();
+			parallelJpegEncoder.close();
+			closeAll(archiveWriterList, failure);
+		}
+
+		progressListener.progress(pageCount, pageCount, pageCount);
+		return pageCount;
+	}
+
+	/**
+	 * 出力ZIPファイルごとの {@link ArchiveWriter} を作成します。
+	 * <p>
+	 * 途中で失敗した場合は、作成済みの {@link ArchiveWriter} を中断して閉じます。
+	 * </p>
+	 *
+	 * @param outputFilePathList 出力ZIPファイルのパスのリスト。
+	 * @return 作成した {@link ArchiveWriter} のリスト（出力ZIPファイルの順）。
+	 * @throws IOException ZIPファイルの作成中にエラーが発生した場合。
+	 */
+	private List<ArchiveWriter> openArchiveWriters(List<Path> outputFilePathList) throws IOException {
+		List<ArchiveWriter> archiveWriterList = new ArrayList<ArchiveWriter>();
+		try {
+			for (Path outputZipFilePath : outputFilePathList) {
+
+				System.out.println("output zip file name : " + outputZipFilePath);
+
+				archiveWriterList.add(new ArchiveWriter(outputZipFilePath, this.parallelism * 2));
+			}
+		} catch (IOException | RuntimeException e) {
+			for (ArchiveWriter archiveWriter : archiveWriterList) {
+				archiveWriter.fail(e);
+			}
+			closeAll(archiveWriterList, e);
+			throw e;
+		}
+		return archiveWriterList;
+	}
+
+	/**
+	 * 出力プロファイルに対応する {@link JpegEncoder} を取得するための関数型インターフェースです。
+	 */
+	@FunctionalInterface
+	private interface JpegEncoderProvider {
+		/**
+		 * 指定されたプロファイルの {@link JpegEncoder} を取得します。
+		 *
+		 * @param jpegProfile JPEGエンコーダのプロファイル。
+		 * @return この変換ワーカーが使用する {@link JpegEncoder}。
+		 * @throws IOException エンコーダの生成中にエラーが発生した場合。
+		 */
+		JpegEncoder get(JpegEncoder.Profile jpegProfile) throws IOException;
+	}
+
+	/**
+	 * 変換ワーカーごと・プロファイルごとに1つの {@link JpegEncoder} を生成して再利用する {@link JpegEncoderProvider} を生成します。
+	 * <p>
+	 * エンコーダはジョブの間、変換ワーカーのスレッドをキーとしてページをまたいで再利用されます。
+	 * 変換ワーカーの数は固定のため、1つのジョブで生成されるエンコーダの数は変換ワーカーの数×プロファイルの数までで、
+	 * ページ数によって増えません。
+	 * </p>
+	 *
+	 * @param jpegEncoderMapByWorker このジョブの、変換ワーカーごとのプロファイルと {@link JpegEncoder} の対応。
+	 * @param parallelJpegEncoder 大きなページを帯に分けて並列にエンコードする {@link ParallelJpegEncoder}。
+	 * @param jpegEncoderList 生成した {@link JpegEncoder} を追加するリスト（ジョブの終了時に閉じるため）。
+	 * @return 生成した {@link JpegEncoderProvider}。
+	 */
+	private static JpegEncoderProvider newJpegEncoderProvider(
+		Map<Thread, Map<JpegEncoder.Profile, JpegEncoder>> jpegEncoderMapByWorker,
+		ParallelJpegEncoder parallelJpegEncoder,
+		List<JpegEncoder> jpegEncoderList) {
+
+		return jpegProfile -> {
+			// 変換ワーカーのスレッドだけが自身の対応を参照するため、内側の対応は同期しない
+			Map<JpegEncoder.Profile, JpegEncoder> jpegEncoderMap = jpegEncoderMapByWorker.computeIfAbsent(
+				Thread.currentThread(), thread -> new EnumMap<JpegEncoder.Profile, JpegEncoder>(JpegEncoder.Profile.class));
+			JpegEncoder jpegEncoder = jpegEncoderMap.get(jpegProfile);
+			if (jpegEncoder == null) {
+				jpegEncoder = new JpegEncoder(jpegProfile, parallelJpegEncoder);
+				jpegEncoderMap.put(jpegProfile, jpegEncoder);
+				jpegEncoderList.add(jpegEncoder);
+			}
+			return jpegEncoder;
+		};
+	}
+
+	/**
+	 * 1ページ分の画像を、各出力プロファイルの設定で変換してJPEG形式でエンコードします。
+	 * <p>
+	 * このメソッドは変換ワーカー上で実行されます。
+	 * 変換によって複数の画像に分割された場合は、元のファイル名に "_1"、"_2" のような連番を付加したエントリ名になります。
+	 * 画像として読み込めなかった場合は空のリストを返します。
+	 * </p>
+	 * <p>
+	 * 画像のデコードは、すべての出力プロファイルに必要な解像度で1回だけ行います。
+	 * 出力プロファイルは変換後の大きさが大きい順に処理し、分割・回転・切り抜きの設定が同じ大きい出力プロファイルの
+	 * 変換結果がある場合は（{@link OutputProfile#canCascadeTo(OutputProfile)}）、元の画像の代わりにそれを縮小します。
+	 * 分割するだけで変換後の大きさに収まるJPEG画像は、出力プロファイルごとに再エンコードせずに係数の段階で分割します。
+	 * </p>
+	 * <p>
+	 * {@code pageSizeBudgets} の値が指定された出力プロファイルでは、分割後の各画像に予算を均等に配分し、
+	 * {@link JpegEncoder#encodeWithinSize(BufferedImage, long)} で予算に収まる最も高い圧縮品質でエンコードします。
+	 * 指定されない場合は、出力プロファイルの圧縮品質でエンコードします。
+	 * </p>
+	 *
+	 * @param pageName 処理対象の画像のファイル名。エントリ名の生成に使用します。
+	 * @param inputData 処理対象の画像ファイルの内容。
+	 * @param options 変換の設定。
+	 * @param jpegEncoderProvider この変換ワーカーが使用する {@link JpegEncoder} を取得する関数。
+	 * @param pageSizeBudgets 出力プロファイルごとの、このページのエンコード結果の最大バイト数。0以下の場合は制限しません。
+	 * @return 出力プロファイルごとの、ZIPファイルに格納するエントリのリスト。
+	 * @throws IOException 画像の読み込みまたはエンコード中にエラーが発生した場合。
+	 */
+	private static List<List<ArchiveWriter.Entry>> convertPage(
+		String pageName,
+		byte[] inputData,
+		BundleOptions options,
+		JpegEncoderProvider jpegEncoderProvider,
+		long[] pageSizeBudgets)
+		throws IOException {
+
+		System.out.println("-> " + pageName);
+
+		List<OutputProfile> outputProfileList = options.getOutputProfileList();
+		BufferedImage bufferedImage = null;
+		boolean decoded = false;
+
+		List<List<ArchiveWriter.Entry>> entryListList = new ArrayList<List<ArchiveWriter.Entry>>();
+		List<List<BufferedImage>> convertedImageListList = new ArrayList<List<BufferedImage>>();
+		for (int i = 0; i < outputProfileList.size(); i++) {
+			entryListList.add(new ArrayList<ArchiveWriter.Entry>());
+			convertedImageListList.add(null);
+		}
+
+		List<Integer> processedIndexList = new ArrayList<Integer>();
+		for (int i : getProcessingOrder(outputProfileList)) {
+			OutputProfile outputProfile = outputProfileList.get(i);
+			List<ArchiveWriter.Entry> entryList = entryListList.get(i);
+			processedIndexList.add(i);
+
+			// 分割するだけで変換後の大きさに収まるJPEG画像は、再エンコードせずに係数の段階で分割する
+			if (options.isLosslessSplit()) {
+				PipelineEvents.Encode splitEvent = new PipelineEvents.Encode();
+				splitEvent.begin();
+				List<byte[]> croppedJpegDataList = outputProfile.splitLosslessly(inputData);
+				if (croppedJpegDataList != null && isWithinPageSizeBudget(croppedJpegDataList, pageSizeBudgets[i])) {
+					splitEvent.end();
+					int index = 0;
+					long splitSize = 0;
+					for (byte[] croppedJpegData : croppedJpegDataList) {
+						index++;
+						entryList.add(new ArchiveWriter.Entry(
+							getOutputFileName(pageName, index, croppedJpegDataList.size()),
+							System.currentTimeMillis(),
+							croppedJpegData));
+						splitSize += croppedJpegData.length;
+					}
+					if (splitEvent.shouldCommit()) {
+						// 分割は1回の処理のため、分割前のページ名と分割後の合計のバイト数を記録する
+						splitEvent.page = pageName;
+						splitEvent.profile = outputProfile.getName();
+						splitEvent.bytes = splitSize;
+						splitEvent.method = "lossless-split";
+						splitEvent.commit();
+					}
+					continue;
+				}
+			}
+
+			// JPEG画像はすべての出力プロファイルに必要な解像度まで縮小しながらデコードし、それ以外は従来どおり読み込む
+			if (!decoded) {
+				PipelineEvents.Decode decodeEvent = new PipelineEvents.Decode();
+				decodeEvent.begin();
+				String decoder = "jpeg-scaled";
+				try {
+					bufferedImage = JpegDecoder.readScaled(inputData, (srcWidth, srcHeight) -> {
+						double scaleFactor = 0;
+						for (OutputProfile profile : outputProfileList) {
+							scaleFactor = Math.max(scaleFactor, profile.getScaleFactor(srcWidth, srcHeight));
+						}
+						return scaleFactor;
+					}, options.getOffHeapPixelThreshold());
+				} catch (IOException e) {
+					// 標準のデコーダは壊れたエントロピー符号化データを補ってデコードできるため、1ページの破損でZIPファイル全体を失敗させない
+					bufferedImage = null;
+				}
+				if (bufferedImage == null) {
+					decoder = "imageio";
+					bufferedImage = OffHeapImageFactory.read(inputData, options.getOffHeapPixelThreshold());
+				}
+				decoded = true;
+				decodeEvent.end();
+				if (decodeEvent.shouldCommit()) {
+					decodeEvent.page = pageName;
+					decodeEvent.bytes = inputData.length;
+					decodeEvent.decoder = decoder;
+					if (bufferedImage != null) {
+						decodeEvent.width = bufferedImage.getWidth();
+						decodeEvent.height = bufferedImage.getHeight();
+					}
+					decodeEvent.commit();
+				}
+			}
+			if (bufferedImage == null) {
+				continue;
+			}
+
+			// 同じ構図の大きい出力プロファイルの変換結果があれば、それを縮小する
+			PipelineEvents.Convert convertEvent = new PipelineEvents.Convert();
+			convertEvent.begin();
+			List<BufferedImage> convertedImageList = null;
+			for (int j = processedIndexList.size() - 2; j >= 0 && convertedImageList == null; j--) {
+				int largerIndex = processedIndexList.get(j);
+				List<BufferedImage> largerImageList = convertedImageListList.get(largerIndex);
+				if (largerImageList != null && outputProfileList.get(largerIndex).canCascadeTo(outputProfile)) {
+					convertedImageList = cascade(largerImageList, outputProfile, options);
+				}
+			}
+			boolean cascaded = (convertedImageList != null);
+			if (convertedImageList == null) {
+				convertedImageList = outputProfile.convert(
+					bufferedImage, options.getGrayscaleTolerance(), options.getOffHeapPixelThreshold());
+			}
+			convertEvent.end();
+			if (convertEvent.shouldCommit()) {
+				convertEvent.page = pageName;
+				convertEvent.profile = outputProfile.getName();
+				convertEvent.sourceWidth = bufferedImage.getWidth();
+				convertEvent.sourceHeight = bufferedImage.getHeight();
+				convertEvent.mode = outputProfile.getContraAspectMode().name();
+				convertEvent.resultCount = convertedImageList.size();
+				convertEvent.cascaded = cascaded;
+				convertEvent.commit();
+			}
+			// 拡大した変換結果は、小さい出力プロファイルの変換元にしない
+			if (outputProfile.getScaleFactor(bufferedImage.getWidth(), bufferedImage.getHeight()) <= 1.0) {
+				convertedImageListList.set(i, convertedImageList);
+			}
+
+			JpegEncoder jpegEncoder = jpegEncoderProvider.get(outputProfile.getJpegProfile());
+			int index = 0;
+			for (BufferedImage convertedImage : convertedImageList) {
+				index++;
+
+				String outputFileName = getOutputFileName(pageName, index, convertedImageList.size());
+				PipelineEvents.Encode encodeEvent = new PipelineEvents.Encode();
+				encodeEvent.begin();
+				byte[] jpegData =
+					(pageSizeBudgets[i] > 0)
+						? jpegEncoder.encodeWithinSize(convertedImage, pageSizeBudgets[i] / convertedImageList.size())
+						: jpegEncoder.encode(convertedImage, outputProfile.getQuality());
+				encodeEvent.end();
+				if (encodeEvent.shouldCommit()) {
+					encodeEvent.page = outputFileName;
+					encodeEvent.profile = outputProfile.getName();
+					encodeEvent.width = convertedImage.getWidth();
+					encodeEvent.height = convertedImage.getHeight();
+					encodeEvent.bytes = jpegData.length;
+					encodeEvent.method = (pageSizeBudgets[i] > 0) ? "size-budget" : "quality";
+					encodeEvent.commit();
+				}
+				entryList.add(new ArchiveWriter.Entry(
+					outputFileName,
+					System.currentTimeMillis(),
+					jpegData));
+			}
+		}
+
+		return entryListList;
+	}
+
+	/**
+	 * 出力プロファイルを処理する順序（変換後の大きさが大きい順）を求めます。
+	 *
+	 * @param outputProfileList 出力プロファイルのリスト。
+	 * @return 出力プロファイルのインデックスのリスト。大きさが同じ場合は指定順。
+	 */
+	private static List<Integer> getProcessingOrder(List<OutputProfile> outputProfileList) {
+		List<Integer> indexList = new ArrayList<Integer>();
+		for (int i = 0; i < outputProfileList.size(); i++) {
+			indexList.add(i);
+		}
+		Collections.sort(indexList, (a, b) -> Long.compare(
+			(long) outputProfileList.get(b).getWidth() * outputProfileList.get(b).getHeight(),
+			(long) outputProfileList.get(a).getWidth() * outputProfileList.get(a).getHeight()));
+		return indexList;
+	}
+
+	/**
+	 * 大きい出力プロファイルの変換結果を、指定された出力プロファイルの大きさに縮小します。
+	 * <p>
+	 * 変換結果の各画像がそれぞれ1つの画像に変換される（さらに分割されない）場合のみ縮小します。
+	 * </p>
+	 *
+	 * @param largerImageList 大きい出力プロファイルの変換結果。
+	 * @param outputProfile 縮小後の出力プロファイル。
+	 * @param options グレースケール判定の許容値とヒープ外に確保する画素数の閾値を保持する変換ジョブの設定。
+	 * @return 縮小後の画像のリスト。縮小できない場合は null。
+	 */
+	private static List<BufferedImage> cascade(List<BufferedImage> largerImageList, OutputProfile outputProfile, BundleOptions options) {
+		List<BufferedImage> convertedImageList = new ArrayList<BufferedImage>();
+		for (BufferedImage largerImage : largerImageList) {
+			List<BufferedImage> imageList = outputProfile.convert(
+				largerImage, options.getGrayscaleTolerance(), options.getOffHeapPixelThreshold());
+			if (imageList.size() != 1) {
+				return null;
+			}
+			convertedImageList.add(imageList.get(0));
+		}
+		return convertedImageList;
+	}
+
+	/**
+	 * すべての出力ZIPファイルに書き込まれたページ数を求めます。
+	 *
+	 * @param archiveWriterList 出力ZIPファイルごとの {@link ArchiveWriter} のリスト。
+	 * @return 書き込まれたページ数の最小値。
+	 */
+	private static int getWrittenPageCount(List<ArchiveWriter> archiveWriterList) {
+		int writtenPageCount = Integer.MAX_VALUE;
+		for (ArchiveWriter archiveWriter : archiveWriterList) {
+			writtenPageCount = Math.min(writtenPageCount, archiveWriter.getWrittenPageCount());
+		}
+		return writtenPageCount;
+	}
+
+	/**
+	 * タスクを変換ワーカーに投入し、{@link #awaitAll(List)} で終了を待機するリストに追加します。
+	 * <p>
+	 * 終了済みのタスクは追加の前にリストから取り除くため、リストの大きさは実行中のタスク数（書き込み待ちのページ数の上限）程度に保たれ、
+	 * 数万ページのアーカイブでもページ数に比例して増えません。
+	 * タスク内の例外は {@link ArchiveWriter#fail(Throwable)} で通知済みのため、取り除いても失われません。
+	 * </p>
+	 *
+	 * @param taskFutureList 投入したタスクの {@link Future} のリスト。
+	 * @param task 投入するタスク。
+	 */
+	private void submitTask(List<Future<?>> taskFutureList, Runnable task) {
+		taskFutureList.removeIf(Future::isDone);
+		taskFutureList.add(this.conversionExecutorService.submit(task));
+	}
+
+	/**
+	 * 変換ワーカーに投入したすべてのタスクの終了を待機します。
+	 * <p>
+	 * タスク内の例外は {@link ArchiveWriter#fail(Throwable)} で通知済みのため、ここでは無視します。
+	 * 待機中に割り込まれた場合は、割り込み状態を再設定して待機を中断します。
+	 * </p>
+	 *
+	 * @param taskFutureList 待機するタスクの {@link Future} のリスト。
+	 */
+	private static void awaitAll(List<Future<?>> taskFutureList) {
+		for (Future<?> taskFuture : taskFutureList) {
+			try {
+				taskFuture.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				// タスク内で通知済み
+			}
+		}
+	}
+
+	/**
+	 * すべての {@link ArchiveWriter} を閉じます。
+	 * <p>
+	 * 途中で例外が発生した場合も残りを閉じ、最初の例外をスローします。
+	 * 先行する失敗が指定された場合は、閉じる際の例外をその抑制された例外として追加し、スローしません。
+	 * </p>
+	 *
+	 * @param archiveWriterList 閉じる {@link ArchiveWriter} のリスト。
+	 * @param failure 先行する失敗。ない場合は null。
+	 * @throws IOException 閉じる際にエラーが発生した場合。
+	 */
+	private static void closeAll(List<ArchiveWriter> archiveWriterList, Throwable failure) throws IOException {
+		IOException closeException = null;
+		for (ArchiveWriter archiveWriter : archiveWriterList) {
+			try {
+				archiveWriter.close();
+			} catch (IOException e) {
+				if (failure != null) {
+					if (failure != e.getCause()) {
+						failure.addSuppressed(e);
+					}
+				} else if (closeException == null) {
+					closeException = e;
+				} else {
+					closeException.addSuppressed(e);
+				}
+			}
+		}
+		if (closeException != null) {
+			throw closeException;
+		}
+	}
+
+	/**
+	 * 変換後の画像のファイル名を求めます。
+	 *
+	 * @param pageName 変換元の画像のファイル名。
+	 * @param index 変換後の画像の番号（1から始まる）。
+	 * @param count 1つの画像ファイルから変換された画像の数。
+	 * @return 変換後の画像のファイル名。分割された場合は、ベース名に "_" と番号が付加される。
+	 */
+	private static String getOutputFileName(String pageName, int index, int count) {
+		return
+			FilenameUtils.getBaseName(pageName) +
+			((count == 1) ? "" : "_" + Integer.toString(index)) +
+			".jpg";
+	}
+
+	/**
+	 * 分割した画像のJPEGデータが、ページのエンコード結果の最大バイト数に収まっているかどうかを判定します。
+	 *
+	 * @param jpegDataList 分割した画像のJPEGデータ。
+	 * @param pageSizeBudget ページのエンコード結果の最大バイト数。制限しない場合は0。
+	 * @return 各画像が、最大バイト数を画像の数で割った値以下の場合は true。
+	 */
+	private static boolean isWithinPageSizeBudget(List<byte[]> jpegDataList, long pageSizeBudget) {
+		if (pageSizeBudget <= 0) {
+			return true;
+		}
+		for (byte[] jpegData : jpegDataList) {
+			if (jpegData.length > pageSizeBudget / jpegDataList.size()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * これから変換するページのエンコード結果の最大バイト数を求めます。
+	 * <p>
+	 * ページごとの予算と、出力ZIPファイル全体の予算から配分された値のうち、小さい方を返します。
+	 * </p>
+	 *
+	 * @param pageSizeBudget ページごとの予算。制限しない場合は0。
+	 * @param archiveSizeBudget 出力ZIPファイル全体の予算。制限しない場合は null。
+	 * @return 最大バイト数。制限しない場合は0。
+	 */
+	private static long getPageSizeBudget(long pageSizeBudget, ArchiveSizeBudget archiveSizeBudget) {
+		if (archiveSizeBudget != null) {
+			long allocatedSize = archiveSizeBudget.allocate();
+			pageSizeBudget = (pageSizeBudget > 0) ? Math.min(pageSizeBudget, allocatedSize) : allocatedSize;
+		}
+		return pageSizeBudget;
+	}
+
+	/**
+	 * 指定されたファイルリストをZIPファイルに格納します。
+	 * <p>
+	 * 各ファイルはZIPファイル内のエントリとして、元のファイル名で格納されます。
+	 * ZIP圧縮メソッドはSTORED（無圧縮）を使用し、エンコーディングはMS932（Shift_JIS）です。
+	 * 各エントリには、最終更新日時、サイズ、CRC-32チェックサムが設定されます。
+	 * </p>
+	 * <p>
+	 * CRC-32チェックサムの計算（{@link ArchiveWriter.Entry#fromFile(Path)}）は変換ワーカー上で並列に行われ、
+	 * ファイルの内容は {@link ArchiveWriter} の書き込みスレッドによってリスト順にZIPファイルへ複写されます。
+	 * </p>
+	 *
+	 * @param targetFilePathList ZIPファイルに格納するファイルのパスのリスト。
+	 * @param outputFilePath 出力するZIPファイルのパス。
+	 * @return 作成されたZIPファイルの {@link Path} オブジェクト。
+	 * @throws IOException ファイルの読み書きまたはZIPファイル作成中にエラーが発生した場合。
+	 */
+	private Path store(List<Path> targetFilePathList, Path outputFilePath)
+		throws IOException {
+
+		ArchiveWriter archiveWriter = new ArchiveWriter(outputFilePath, this.parallelism * 2);
+		List<Future<?>> taskFutureList = new ArrayList<Future<?>>();
+		try {
+			for (int i = 0; i < targetFilePathList.size(); i++) {
+
+				// 書き込み待ちのファイル数が上限に達している場合は、先行ファイルの書き込みを待機
+				archiveWriter.acquireSlot();
+
+				int sequence = i;
+				Path targetFilePath = targetFilePathList.get(i);
+				this.submitTask(taskFutureList, () -> {
+					try {
+						archiveWriter.submit(sequence, Collections.singletonList(ArchiveWriter.Entry.fromFile(targetFilePath)));
+					} catch (Throwable e) {
+						archiveWriter.fail(e);
+					}
+				});
+			}
+		} finally {
+			awaitAll(taskFutureList);
+			archiveWriter.close();
+		}
+		return outputFilePath;
+	}
+}
@@ -4,20 +4,23 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Transparency;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 /**
  * 画像の変換処理を行うユーティリティクラスです。
@@ -27,8 +30,9 @@ import javax.imageio.stream.ImageOutputStream;
  *   <li>画像の回転</li>
  *   <li>アスペクト比を維持した画像のリサイズ</li>
  *   <li>指定されたサイズへの画像リサイズ</li>
- *   <li>JPEGファイルへの書き出し（透過情報を持つ場合は白色で塗りつぶし）</li>
+ *   <li>JPEGファイルおよびバイト列への書き出し（透過情報を持つ場合は白色で塗りつぶし）</li>
  *   <li>画像の透過ピクセルを指定色で塗りつぶし</li>
+ *   <li>グレースケール画像の検出と1チャンネルでの変換</li>
  *   <li>入力画像と出力サイズの縦横比が異なる場合の処理（分割、回転、サイズ入れ替え）</li>
  * </ul>
  * </p>
@@ -66,10 +70,25 @@ public class ImageConverter {
 		/** 中央部分を切り抜かず、そのまま分割します。 */
 		OFF
 	}
-	/** {@link CenterClipOption#ON} の場合に切り抜く際の基準となる幅。デフォルトは1520ピクセル。 */
-	public static int CenterClipWidth = 1520;
-	/** {@link CenterClipOption#ON} の場合に切り抜く際の基準となる高さ。デフォルトは1080ピクセル。 */
-	public static int CenterClipHeight = 1080;
+	/** {@link CenterClipOption#ON} の場合に切り抜く際の基準となる幅の既定値（1520ピクセル）。 */
+	public static final int DEFAULT_CENTER_CLIP_WIDTH = 1520;
+	/** {@link CenterClipOption#ON} の場合に切り抜く際の基準となる高さの既定値（1080ピクセル）。 */
+	public static final int DEFAULT_CENTER_CLIP_HEIGHT = 1080;
+	/**
+	 * 画像をヒープ外（メモリマップされた一時ファイル）に保持するかどうかを決める画素数の閾値の既定値（約3200万画素）。
+	 * この画素数を超える画像のデコードおよび回転は {@link OffHeapImageFactory} を通じてヒープ外で行われます。
+	 * システムプロパティ {@code imagebundler.offHeapPixelThreshold} で既定値を変更でき、
+	 * 変換ジョブごとの値は {@link BundleOptions.Builder#offHeapPixelThreshold(long)} で指定します。
+	 */
+	public static final long DEFAULT_OFF_HEAP_PIXEL_THRESHOLD = Long.getLong("imagebundler.offHeapPixelThreshold", 32L * 1024 * 1024);
+	/**
+	 * グレースケール画像とみなす際の、各画素のRGB成分間の差の許容値の既定値（12）。
+	 * JPEGの色差成分の量子化誤差を吸収するため、わずかな差は無彩色として扱います。
+	 */
+	public static final int DEFAULT_GRAYSCALE_TOLERANCE = 12;
+
+	/** グレースケールの判定時に調べる画素の、縦横それぞれの最大数。 */
+	private static final int GRAYSCALE_SAMPLING_GRID_SIZE = 512;
 
 	/**
 	 * 指定された画像を、指定された幅と高さに変換します。
@@ -143,7 +162,7 @@ public class ImageConverter {
 	 *   <li>{@link ContraAspectMode#SPLIT}: 画像を指定されたアスペクト比に合わせて分割します。
 	 *     <ul>
 	 *       <li>出力が横長サイズ指定で入力画像が縦長の場合：入力画像を上下に2分割します。</li>
-	 *       <li>出力が縦長サイズ指定で入力画像が横長の場合：入力画像を左右に2分割します。この際、{@code centerClipOption} が {@link CenterClipOption#ON ON} であれば、中央部分を {@link #CenterClipWidth} と {@link #CenterClipHeight} で定義されるアスペクト比で切り抜いてから分割します。{@code side} （綴じ方向）によって分割された画像の順序が変わります。</li>
+	 *       <li>出力が縦長サイズ指定で入力画像が横長の場合：入力画像を左右に2分割します。この際、{@code centerClipOption} が {@link CenterClipOption#ON ON} であれば、中央部分を {@link #DEFAULT_CENTER_CLIP_WIDTH} と {@link #DEFAULT_CENTER_CLIP_HEIGHT} で定義されるアスペクト比で切り抜いてから分割します。{@code side} （綴じ方向）によって分割された画像の順序が変わります。</li>
 	 *     </ul>
 	 *   </li>
 	 *   <li>{@link ContraAspectMode#PLAIN}: 指定された出力の幅と高さを入れ替えた上で、入力画像をリサイズします。縦横比のミスマッチを回転させずに解決しようとします。</li>
@@ -151,6 +170,11 @@ public class ImageConverter {
 	 * </ul>
 	 * 最終的に、すべての処理済み画像（分割された場合は各画像）は、目標の幅と高さに合うようにアスペクト比を維持してリサイズされます。
 	 * </p>
+	 * <p>
+	 * グレースケールの判定は行わないため、変換後の画像は変換元の画像と同じ種類（RGBの画像の場合はRGB）になります。
+	 * 無彩色の画像を1チャンネルで変換する場合は、{@link #convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode, int, int, int)}
+	 * にグレースケール判定の許容値を指定してください。
+	 * </p>
 	 *
 	 * @param srcImage 変換元の画像。
 	 * @param width 変換後の画像の目標幅（ピクセル単位）。
@@ -167,6 +191,80 @@ public class ImageConverter {
 		BindingSide side,
 		CenterClipOption centerClipOption,
 		ContraAspectMode mode) {
+		return convert(
+			srcImage, width, height, side, centerClipOption, mode,
+			DEFAULT_CENTER_CLIP_WIDTH, DEFAULT_CENTER_CLIP_HEIGHT, -1);
+	}
+
+	/**
+	 * 指定された画像を、中央切り抜きの縦横比とグレースケール判定の許容値も含めたすべての設定を指定して変換します。
+	 * <p>
+	 * 変換の規則は {@link #convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode)} と同じです。
+	 * {@code grayscaleTolerance} に0以上の値（通常は {@link #DEFAULT_GRAYSCALE_TOLERANCE}）を指定した場合は、
+	 * 無彩色の画像を8ビットのグレースケール画像に変換してから、分割・回転・縮小を1チャンネルで行います。
+	 * 共有される状態を参照しないため、異なる設定の変換を複数のスレッドで同時に行うことができます。
+	 * </p>
+	 *
+	 * @param srcImage 変換元の画像。
+	 * @param width 変換後の画像の目標幅（ピクセル単位）。
+	 * @param height 変換後の画像の目標高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param mode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @param grayscaleTolerance グレースケール画像とみなす際のRGB成分間の差の許容値。負の値の場合はグレースケールの判定を行いません。
+	 * @return 変換後の画像のリスト。
+	 */
+	public static List<BufferedImage> convert(
+		BufferedImage srcImage,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		ContraAspectMode mode,
+		int centerClipWidth,
+		int centerClipHeight,
+		int grayscaleTolerance) {
+		return convert(
+			srcImage, width, height, side, centerClipOption, mode,
+			centerClipWidth, centerClipHeight, grayscaleTolerance, DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された画像を、回転やグレースケール変換で生成する画像をヒープ外に確保する画素数の閾値も指定して変換します。
+	 * <p>
+	 * 変換の規則は {@link #convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode, int, int, int)} と同じです。
+	 * </p>
+	 *
+	 * @param srcImage 変換元の画像。
+	 * @param width 変換後の画像の目標幅（ピクセル単位）。
+	 * @param height 変換後の画像の目標高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param mode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @param grayscaleTolerance グレースケール画像とみなす際のRGB成分間の差の許容値。負の値の場合はグレースケールの判定を行いません。
+	 * @param offHeapPixelThreshold 画像をヒープ外に確保する画素数の閾値。
+	 * @return 変換後の画像のリスト。
+	 */
+	public static List<BufferedImage> convert(
+		BufferedImage srcImage,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		ContraAspectMode mode,
+		int centerClipWidth,
+		int centerClipHeight,
+		int grayscaleTolerance,
+		long offHeapPixelThreshold) {
+		
+		// 無彩色の画像は、以降の分割・回転・縮小・エンコードを1チャンネルで行う
+		if (!isGray8(srcImage) && isGrayscale(srcImage, grayscaleTolerance)) {
+			srcImage = toGrayscale(srcImage, offHeapPixelThreshold);
+		}
 		
 		LinkedList<BufferedImage> bufferedImageList = new LinkedList<BufferedImage>();
 		
@@ -178,44 +276,9 @@ public class ImageConverter {
 			// 分割で対応する場合
 			if (mode == ContraAspectMode.SPLIT) {
 				
-				// 変換サイズ指定が横長の場合
-				if (width > height) {
-					int halfValue = srcImage.getHeight() / 2;
-					int offsetValue = (srcImage.getHeight() % 2 == 0) ? 0 : 1;
-					
-					bufferedImageList.add(srcImage.getSubimage(0, 0, srcImage.getWidth(), halfValue));
-					bufferedImageList.add(srcImage.getSubimage(0, halfValue, srcImage.getWidth(), halfValue + offsetValue));
-
-				// 変換サイズ指定が縦長の場合
-				} else {
-					BufferedImage leftImage = null;
-					BufferedImage rightImage = null;
-
-					// 中央切り抜きオプション：ON
-					if (centerClipOption == CenterClipOption.ON) {
-						int originalWidth = srcImage.getWidth();
-						int originalHeight = srcImage.getHeight();
-						int clippingWidth = (int)((double)originalHeight * ((double)CenterClipWidth / (double)CenterClipHeight));
-						int leftPadding = (originalWidth - clippingWidth) / 2;
-
-						int halfValue = clippingWidth / 2;
-						int offsetValue = (clippingWidth % 2 == 0) ? 0 : 1;
-						leftImage = srcImage.getSubimage(leftPadding, 0, halfValue, originalHeight);
-						rightImage = srcImage.getSubimage(leftPadding + halfValue, 0, halfValue + offsetValue, originalHeight);
-					// 中央切り抜きオプション：OFF
-					} else {
-						int halfValue = srcImage.getWidth() / 2;
-						int offsetValue = (srcImage.getWidth() % 2 == 0) ? 0 : 1;
-						leftImage = srcImage.getSubimage(0, 0, halfValue, srcImage.getHeight());
-						rightImage = srcImage.getSubimage(halfValue, 0, halfValue + offsetValue, srcImage.getHeight());
-					}
-					if (side == BindingSide.RIGHT) {
-						bufferedImageList.add(rightImage);
-						bufferedImageList.add(leftImage);
-					} else {
-						bufferedImageList.add(leftImage);
-						bufferedImageList.add(rightImage);
-					}
+				for (Rectangle region : getSplitRegions(
+					srcImage.getWidth(), srcImage.getHeight(), width, height, side, centerClipOption, centerClipWidth, centerClipHeight)) {
+					bufferedImageList.add(srcImage.getSubimage(region.x, region.y, region.width, region.height));
 				}
 				
 				
@@ -231,7 +294,7 @@ public class ImageConverter {
 				// 画像回転モード
 				
 				// 画像を1/4回転
-				srcImage = rotate(srcImage);
+				srcImage = rotate(srcImage, offHeapPixelThreshold);
 				
 				bufferedImageList.add(srcImage);
 			}
@@ -256,15 +319,18 @@ public class ImageConverter {
 	 * <p>
 	 * 新しい {@link BufferedImage} を作成し、アフィン変換を使用して元の画像を回転させて描画します。
 	 * 回転後の画像の幅と高さは、元の画像の高さと幅にそれぞれ対応します。
+	 * 回転後の画像は {@link OffHeapImageFactory#createCompatibleImage(BufferedImage, int, int, long)} で生成されるため、
+	 * 画素数が {@code offHeapPixelThreshold} を超える場合はヒープ外に確保されます。
 	 * </p>
 	 *
 	 * @param srcImage 回転する元の画像。
+	 * @param offHeapPixelThreshold 画像をヒープ外に確保する画素数の閾値。
 	 * @return 反時計回りに90度回転された新しい {@link BufferedImage}。
 	 */
-	private static BufferedImage rotate(BufferedImage srcImage) {
+	private static BufferedImage rotate(BufferedImage srcImage, long offHeapPixelThreshold) {
 		int width = srcImage.getWidth();
 		int height = srcImage.getHeight();
-		BufferedImage newImage = new BufferedImage(height, width, srcImage.getType());
+		BufferedImage newImage = OffHeapImageFactory.createCompatibleImage(srcImage, height, width, offHeapPixelThreshold);
 		AffineTransform affineTransform =
 			AffineTransform.getRotateInstance(
 				(-Math.PI / 2), 0, 0);
@@ -309,12 +375,207 @@ public class ImageConverter {
 		return new Dimension(scaledWidth, scaledHeight);
 	}
 
+	/**
+	 * 指定された大きさの画像を {@link #convert(BufferedImage, int, int)} で変換した場合の縮小率を求めます。
+	 * <p>
+	 * 中央切り抜きオプションはオン（{@link CenterClipOption#ON}）、
+	 * 縦横比が異なる場合の処理モードは分割（{@link ContraAspectMode#SPLIT}）として計算します。
+	 * </p>
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @return 変換元の画像の1ピクセルに対する変換後の画像のピクセル数の比（縮小の場合は1未満）。
+	 */
+	public static double getScaleFactor(int srcWidth, int srcHeight, int width, int height) {
+		return getScaleFactor(srcWidth, srcHeight, width, height, CenterClipOption.ON, ContraAspectMode.SPLIT);
+	}
+
+	/**
+	 * 指定された大きさの画像を、指定されたオプションで変換した場合の縮小率を求めます。
+	 * <p>
+	 * {@link #convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode)} と同じ規則で
+	 * 分割・回転後の画像の大きさを求め、それを変換後の大きさに収める際の縮小率を返します。
+	 * 画像をデコードする前に、どの程度の解像度でデコードすれば十分かを判断するために使用します。
+	 * </p>
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param mode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @return 変換元の画像の1ピクセルに対する変換後の画像のピクセル数の比（縮小の場合は1未満）。
+	 */
+	public static double getScaleFactor(
+		int srcWidth,
+		int srcHeight,
+		int width,
+		int height,
+		CenterClipOption centerClipOption,
+		ContraAspectMode mode) {
+		return getScaleFactor(
+			srcWidth, srcHeight, width, height, centerClipOption, mode,
+			DEFAULT_CENTER_CLIP_WIDTH, DEFAULT_CENTER_CLIP_HEIGHT);
+	}
+
+	/**
+	 * 指定された大きさの画像を、中央切り抜きの縦横比も含めたオプションで変換した場合の縮小率を求めます。
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param mode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @return 変換元の画像の1ピクセルに対する変換後の画像のピクセル数の比（縮小の場合は1未満）。
+	 * @see #getScaleFactor(int, int, int, int, CenterClipOption, ContraAspectMode)
+	 */
+	public static double getScaleFactor(
+		int srcWidth,
+		int srcHeight,
+		int width,
+		int height,
+		CenterClipOption centerClipOption,
+		ContraAspectMode mode,
+		int centerClipWidth,
+		int centerClipHeight) {
+		
+		double pieceWidth = srcWidth;
+		double pieceHeight = srcHeight;
+		
+		if (width > height && srcWidth < srcHeight ||
+			width < height && srcWidth > srcHeight) {
+			
+			if (mode == ContraAspectMode.SPLIT) {
+				// 分割後の画像のうち、最も大きく拡大（最も小さく縮小）されるものの縮小率を採用する
+				double scaleFactor = 0;
+				for (Rectangle region : getSplitRegions(
+					srcWidth, srcHeight, width, height, BindingSide.RIGHT, centerClipOption, centerClipWidth, centerClipHeight)) {
+					scaleFactor = Math.max(scaleFactor, Math.min((double) width / region.width, (double) height / region.height));
+				}
+				return scaleFactor;
+			} else if (mode == ContraAspectMode.PLAIN) {
+				int temp = width;
+				width = height;
+				height = temp;
+			} else {
+				pieceWidth = srcHeight;
+				pieceHeight = srcWidth;
+			}
+		}
+		
+		return Math.min(width / pieceWidth, height / pieceHeight);
+	}
+
+	/**
+	 * 縦横比が異なる画像を {@link ContraAspectMode#SPLIT} で変換する場合の、分割後の各画像の領域を求めます。
+	 * <p>
+	 * 変換サイズ指定が横長で入力画像が縦長の場合は上下に、変換サイズ指定が縦長で入力画像が横長の場合は左右に2分割します。
+	 * 左右に分割する場合、{@code centerClipOption} が {@link CenterClipOption#ON ON} であれば
+	 * 中央部分を {@link #DEFAULT_CENTER_CLIP_WIDTH} と {@link #DEFAULT_CENTER_CLIP_HEIGHT} で定義されるアスペクト比で切り抜いてから分割し、
+	 * {@code side} （綴じ方向）に従って読む順に並べます。
+	 * 高さまたは幅が奇数の場合は、2つ目（下側または右側）の領域が1ピクセル大きくなります。
+	 * </p>
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @return 分割後の各画像の領域（読む順）。縦横比が同じで分割の必要がない場合は空のリスト。
+	 */
+	public static List<Rectangle> getSplitRegions(
+		int srcWidth,
+		int srcHeight,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption) {
+		return getSplitRegions(
+			srcWidth, srcHeight, width, height, side, centerClipOption,
+			DEFAULT_CENTER_CLIP_WIDTH, DEFAULT_CENTER_CLIP_HEIGHT);
+	}
+
+	/**
+	 * 縦横比が異なる画像を {@link ContraAspectMode#SPLIT} で変換する場合の、分割後の各画像の領域を、
+	 * 指定された中央切り抜きの縦横比で求めます。
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @return 分割後の各画像の領域（読む順）。縦横比が同じで分割の必要がない場合は空のリスト。
+	 * @see #getSplitRegions(int, int, int, int, BindingSide, CenterClipOption)
+	 */
+	public static List<Rectangle> getSplitRegions(
+		int srcWidth,
+		int srcHeight,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		int centerClipWidth,
+		int centerClipHeight) {
+		
+		List<Rectangle> regionList = new ArrayList<Rectangle>();
+		
+		// 変換サイズ指定が横長の場合
+		if (width > height && srcWidth < srcHeight) {
+			int halfValue = srcHeight / 2;
+			int offsetValue = (srcHeight % 2 == 0) ? 0 : 1;
+			
+			regionList.add(new Rectangle(0, 0, srcWidth, halfValue));
+			regionList.add(new Rectangle(0, halfValue, srcWidth, halfValue + offsetValue));
+
+		// 変換サイズ指定が縦長の場合
+		} else if (width < height && srcWidth > srcHeight) {
+			Rectangle leftRegion = null;
+			Rectangle rightRegion = null;
+
+			// 中央切り抜きオプション：ON
+			if (centerClipOption == CenterClipOption.ON) {
+				int clippingWidth = (int)((double)srcHeight * ((double)centerClipWidth / (double)centerClipHeight));
+				int leftPadding = (srcWidth - clippingWidth) / 2;
+
+				int halfValue = clippingWidth / 2;
+				int offsetValue = (clippingWidth % 2 == 0) ? 0 : 1;
+				leftRegion = new Rectangle(leftPadding, 0, halfValue, srcHeight);
+				rightRegion = new Rectangle(leftPadding + halfValue, 0, halfValue + offsetValue, srcHeight);
+			// 中央切り抜きオプション：OFF
+			} else {
+				int halfValue = srcWidth / 2;
+				int offsetValue = (srcWidth % 2 == 0) ? 0 : 1;
+				leftRegion = new Rectangle(0, 0, halfValue, srcHeight);
+				rightRegion = new Rectangle(halfValue, 0, halfValue + offsetValue, srcHeight);
+			}
+			if (side == BindingSide.RIGHT) {
+				regionList.add(rightRegion);
+				regionList.add(leftRegion);
+			} else {
+				regionList.add(leftRegion);
+				regionList.add(rightRegion);
+			}
+		}
+		
+		return regionList;
+	}
+
 	/**
 	 * 指定された画像を、指定された幅と高さにリサイズします。
 	 * <p>
 	 * 新しい {@link BufferedImage} を作成し、元の画像をスケーリングして描画します。
 	 * 元の画像のタイプが不明（0）の場合は、{@code BufferedImage.TYPE_4BYTE_ABGR_PRE} を使用します。
 	 * スケーリングアルゴリズムには、{@code Image.SCALE_SMOOTH} (16) が使用されます。
+	 * 元の画像が8ビットのグレースケール画像の場合は、{@link #resizeGray(BufferedImage, int, int)} を使用します。
 	 * </p>
 	 *
 	 * @param srcImage リサイズする元の画像。
@@ -324,6 +585,10 @@ public class ImageConverter {
 	 */
 	private static BufferedImage resize(BufferedImage srcImage, int width, int height) {
 
+		if (isGray8(srcImage)) {
+			return resizeGray(srcImage, width, height);
+		}
+
 		int newImageType = (srcImage.getType() == 0) ? BufferedImage.TYPE_4BYTE_ABGR_PRE : srcImage.getType();
 
 		BufferedImage newImage =
@@ -339,6 +604,210 @@ public class ImageConverter {
 		return newImage;
 	}
 
+	/**
+	 * 指定されたグレースケール画像を、指定された幅と高さにリサイズします。
+	 * <p>
+	 * {@code Image.SCALE_SMOOTH} と同じ面積平均法で縮小しますが、
+	 * {@code getScaledInstance} のようにRGBの3チャンネルに展開せず、1チャンネルのまま横方向・縦方向の順に処理します。
+	 * </p>
+	 *
+	 * @param srcImage リサイズする元の画像（8ビットのグレースケール画像）。
+	 * @param width リサイズ後の画像の幅（ピクセル単位）。
+	 * @param height リサイズ後の画像の高さ（ピクセル単位）。
+	 * @return 指定された幅と高さにリサイズされた新しい {@code BufferedImage.TYPE_BYTE_GRAY} の画像。
+	 */
+	private static BufferedImage resizeGray(BufferedImage srcImage, int width, int height) {
+		int srcWidth = srcImage.getWidth();
+		int srcHeight = srcImage.getHeight();
+		Raster srcRaster = srcImage.getRaster();
+
+		BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster newRaster = newImage.getRaster();
+
+		// 横方向：出力画素ごとに、元画像の各画素が占める幅を重みとして平均する
+		double xScale = (double) srcWidth / width;
+		int[] xStart = new int[width];
+		int[] xEnd = new int[width];
+		float[][] xWeight = new float[width][];
+		for (int x = 0; x < width; x++) {
+			computeAreaWeights(x, xScale, srcWidth, xStart, xEnd, xWeight);
+		}
+		double yScale = (double) srcHeight / height;
+		int[] yStart = new int[height];
+		int[] yEnd = new int[height];
+		float[][] yWeight = new float[height][];
+		for (int y = 0; y < height; y++) {
+			computeAreaWeights(y, yScale, srcHeight, yStart, yEnd, yWeight);
+		}
+
+		int[] srcRow = new int[srcWidth];
+		float[] accumulator = new float[width];
+		int[] newRow = new int[width];
+		for (int y = 0; y < height; y++) {
+			Arrays.fill(accumulator, 0F);
+			for (int srcY = yStart[y]; srcY < yEnd[y]; srcY++) {
+				float rowWeight = yWeight[y][srcY - yStart[y]];
+				srcRaster.getSamples(0, srcY, srcWidth, 1, 0, srcRow);
+				for (int x = 0; x < width; x++) {
+					float sum = 0F;
+					float[] weight = xWeight[x];
+					for (int srcX = xStart[x]; srcX < xEnd[x]; srcX++) {
+						sum += srcRow[srcX] * weight[srcX - xStart[x]];
+					}
+					accumulator[x] += sum * rowWeight;
+				}
+			}
+			for (int x = 0; x < width; x++) {
+				newRow[x] = Math.min(255, Math.max(0, Math.round(accumulator[x])));
+			}
+			newRaster.setSamples(0, y, width, 1, 0, newRow);
+		}
+
+		return newImage;
+	}
+
+	/**
+	 * 面積平均法で縮小する際の、1つの出力画素に対応する元画像の画素の範囲と重みを計算します。
+	 *
+	 * @param index 出力画素の位置。
+	 * @param scale 元画像の長さと出力画像の長さの比。
+	 * @param srcLength 元画像の長さ（ピクセル単位）。
+	 * @param start 元画像の画素の範囲の開始位置（この位置を含む）を格納する配列。
+	 * @param end 元画像の画素の範囲の終了位置（この位置を含まない）を格納する配列。
+	 * @param weight 範囲内の各画素の重み（合計は1）を格納する配列。
+	 */
+	private static void computeAreaWeights(
+		int index,
+		double scale,
+		int srcLength,
+		int[] start,
+		int[] end,
+		float[][] weight) {
+
+		double from = index * scale;
+		double to = Math.min(srcLength, (index + 1) * scale);
+		start[index] = Math.min(srcLength - 1, (int) from);
+		end[index] = Math.max(start[index] + 1, Math.min(srcLength, (int) Math.ceil(to)));
+		weight[index] = new float[end[index] - start[index]];
+		double total = 0;
+		for (int i = start[index]; i < end[index]; i++) {
+			double coverage = Math.min(to, i + 1) - Math.max(from, i);
+			weight[index][i - start[index]] = (float) Math.max(0, coverage);
+			total += Math.max(0, coverage);
+		}
+		for (int i = 0; i < weight[index].length; i++) {
+			weight[index][i] = (total > 0) ? (float) (weight[index][i] / total) : 1F / weight[index].length;
+		}
+	}
+
+	/**
+	 * 指定された画像が、実質的にグレースケール（無彩色）かどうかを判定します。
+	 * <p>
+	 * カラーモデルの色成分が1つの場合はグレースケールとみなします。
+	 * それ以外の場合は、縦横それぞれ最大 {@value #GRAYSCALE_SAMPLING_GRID_SIZE} 個の格子状に画素を調べ、
+	 * RGB成分間の差が {@link #DEFAULT_GRAYSCALE_TOLERANCE} を超える画素（有彩色の画素）が見つかった時点で false を返します。
+	 * 透過画素は、白色で塗りつぶされる前提で判定から除外します。
+	 * </p>
+	 *
+	 * @param srcImage 判定対象の画像。
+	 * @return グレースケールとみなせる場合は true。
+	 */
+	public static boolean isGrayscale(BufferedImage srcImage) {
+		return isGrayscale(srcImage, DEFAULT_GRAYSCALE_TOLERANCE);
+	}
+
+	/**
+	 * 指定された画像が、指定された許容値で実質的にグレースケール（無彩色）かどうかを判定します。
+	 *
+	 * @param srcImage 判定対象の画像。
+	 * @param grayscaleTolerance 各画素のRGB成分間の差の許容値。
+	 * @return グレースケールとみなせる場合は true。{@code grayscaleTolerance} が負の値の場合は常に false。
+	 * @see #isGrayscale(BufferedImage)
+	 */
+	public static boolean isGrayscale(BufferedImage srcImage, int grayscaleTolerance) {
+		if (grayscaleTolerance < 0) {
+			return false;
+		}
+		if (srcImage.getColorModel().getNumColorComponents() == 1) {
+			return true;
+		}
+
+		int width = srcImage.getWidth();
+		int height = srcImage.getHeight();
+		int xStep = Math.max(1, width / GRAYSCALE_SAMPLING_GRID_SIZE);
+		int yStep = Math.max(1, height / GRAYSCALE_SAMPLING_GRID_SIZE);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y += yStep) {
+			srcImage.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x += xStep) {
+				int argb = row[x];
+				if ((argb >>> 24) == 0) {
+					continue;
+				}
+				int r = (argb >> 16) & 0xFF;
+				int g = (argb >> 8) & 0xFF;
+				int b = argb & 0xFF;
+				if (Math.abs(r - g) > grayscaleTolerance ||
+					Math.abs(g - b) > grayscaleTolerance ||
+					Math.abs(r - b) > grayscaleTolerance) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 指定された画像が、1チャンネル8ビットのグレースケール画像かどうかを判定します。
+	 * <p>
+	 * {@code BufferedImage.TYPE_BYTE_GRAY} の画像に加えて、同じ構造を持つメモリマップされた画像（{@code TYPE_CUSTOM}）も対象とします。
+	 * </p>
+	 *
+	 * @param srcImage 判定対象の画像。
+	 * @return 1チャンネル8ビットのグレースケール画像の場合は true。
+	 */
+	private static boolean isGray8(BufferedImage srcImage) {
+		return srcImage.getColorModel().getNumComponents() == 1 &&
+			srcImage.getColorModel().getPixelSize() == 8 &&
+			srcImage.getRaster().getNumBands() == 1;
+	}
+
+	/**
+	 * 指定された画像を {@code BufferedImage.TYPE_BYTE_GRAY} の画像に変換します。
+	 * <p>
+	 * 透過部分は白色で塗りつぶされます。
+	 * 画素数が {@link #DEFAULT_OFF_HEAP_PIXEL_THRESHOLD} を超える場合はヒープ外に確保されます。
+	 * </p>
+	 *
+	 * @param srcImage 変換する画像。
+	 * @return グレースケールに変換された新しい画像。
+	 */
+	public static BufferedImage toGrayscale(BufferedImage srcImage) {
+		return toGrayscale(srcImage, DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された画像を、ヒープ外に確保する画素数の閾値を指定して {@code BufferedImage.TYPE_BYTE_GRAY} の画像に変換します。
+	 *
+	 * @param srcImage 変換する画像。
+	 * @param offHeapPixelThreshold 画像をヒープ外に確保する画素数の閾値。
+	 * @return グレースケールに変換された新しい画像。
+	 */
+	public static BufferedImage toGrayscale(BufferedImage srcImage, long offHeapPixelThreshold) {
+		int width = srcImage.getWidth();
+		int height = srcImage.getHeight();
+		BufferedImage newImage = OffHeapImageFactory.createImage(width, height, BufferedImage.TYPE_BYTE_GRAY, offHeapPixelThreshold);
+		Graphics2D g = newImage.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			g.drawRenderedImage(srcImage, null);
+		} finally {
+			g.dispose();
+		}
+		return newImage;
+	}
+
 	/**
 	 * 指定された {@link BufferedImage} をJPEGファイルとして書き込みます。
 	 * <p>
@@ -359,47 +828,73 @@ public class ImageConverter {
 		int compressionQualityPercentage)
 		throws IOException {
 		
-		// 変換元画像が透過情報を持っている場合、透過情報を白色に置き換える
-		if (inputBufferedImage.getColorModel().getTransparency() != Transparency.OPAQUE) {
-			inputBufferedImage = fillTransparentPixels(inputBufferedImage, Color.WHITE);
-		}
-		
 		File outputFile = new File(outputFileName);
-		float compressionQuality = compressionQualityPercentage / 100F;
-		ImageWriter imageWriter = null; // 初期化
-		ImageWriteParam imageWriteParam = null; // 初期化
-		
-		Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName("jpg");
-		if (imageWriters.hasNext()) { // ImageWriterが存在するか確認
-			imageWriter = imageWriters.next();
-			ImageOutputStream imageOutputStream = null; // 初期化
-			try {
-				imageOutputStream = ImageIO.createImageOutputStream(outputFile);
-				imageWriter.setOutput(imageOutputStream);
-				imageWriteParam = imageWriter.getDefaultWriteParam();
-				imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT); // MODE_EXPLICIT = 2
-				imageWriteParam.setCompressionQuality(compressionQuality);
-				imageWriter.write(null, new IIOImage(inputBufferedImage, null, null), imageWriteParam);
-			} finally {
-				if (imageOutputStream != null) {
-					try {
-						imageOutputStream.close(); // imageOutputStreamをクローズ
-					} catch (IOException e) {
-						// クローズ時のエラーハンドリング（必要に応じてログ出力など）
-						e.printStackTrace();
-					}
-				}
-				if (imageWriter != null) {
-					imageWriter.dispose(); // imageWriterを解放
+		ImageOutputStream imageOutputStream = null; // 初期化
+		try {
+			imageOutputStream = ImageIO.createImageOutputStream(outputFile);
+			writeJpeg(inputBufferedImage, imageOutputStream, compressionQualityPercentage);
+		} finally {
+			if (imageOutputStream != null) {
+				try {
+					imageOutputStream.close(); // imageOutputStreamをクローズ
+				} catch (IOException e) {
+					// クローズ時のエラーハンドリング（必要に応じてログ出力など）
+					e.printStackTrace();
 				}
 			}
-		} else {
-			throw new IOException("No JPEG ImageWriter found"); // JPEGライターが見つからない場合のエラー
 		}
 
 		return outputFile;
 	}
 
+	/**
+	 * 指定された {@link BufferedImage} をJPEG形式でエンコードし、そのバイト列を返します。
+	 * <p>
+	 * {@link #writeJpegFile(BufferedImage, String, int)} と同じ方法でエンコードしますが、
+	 * ファイルを介さずメモリ上に出力します。変換ワーカーからZIPファイルへ直接格納する場合に使用します。
+	 * </p>
+	 *
+	 * @param inputBufferedImage エンコードする対象の画像データ。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @return JPEG形式のバイト列。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	public static byte[] encodeJpeg(
+		BufferedImage inputBufferedImage,
+		int compressionQualityPercentage)
+		throws IOException {
+		
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(byteArrayOutputStream)) {
+			writeJpeg(inputBufferedImage, imageOutputStream, compressionQualityPercentage);
+		}
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	/**
+	 * 指定された {@link BufferedImage} をJPEG形式で指定された {@link ImageOutputStream} に書き込みます。
+	 * <p>
+	 * 画像が透過情報を持つ場合、透過部分を白色で塗りつぶしてからJPEGに変換します。
+	 * このメソッドは、利用可能な最初のJPEG {@link ImageWriter} を使用する {@link JpegEncoder} を1回だけ使用します。
+	 * 多数の画像を続けてエンコードする場合は、{@link JpegEncoder} を直接使用してください。
+	 * </p>
+	 *
+	 * @param inputBufferedImage 書き込む対象の画像データ。
+	 * @param imageOutputStream 書き込み先のストリーム。クローズは呼び出し元が行います。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @throws IOException 書き込み中にエラーが発生した場合、またはJPEGの {@link ImageWriter} が見つからない場合。
+	 */
+	private static void writeJpeg(
+		BufferedImage inputBufferedImage,
+		ImageOutputStream imageOutputStream,
+		int compressionQualityPercentage)
+		throws IOException {
+		
+		try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+			jpegEncoder.write(inputBufferedImage, imageOutputStream, compressionQualityPercentage);
+		}
+	}
+
 	/**
 	 * 指定された {@link BufferedImage} の透過ピクセルを指定された色で塗りつぶします。
 	 * <p>
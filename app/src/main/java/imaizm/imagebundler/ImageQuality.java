@@ -0,0 +1,202 @@
+package imaizm.imagebundler;
+
+import java.awt.Color;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * 2つの画像の差を、画質の指標であるPSNRとSSIMで求めるクラスです。
+ * <p>
+ * 変換処理の高速化などで出力画像がバイト単位では一致しなくなった場合に、
+ * 基準となる処理の出力とどの程度見た目が異なるかを数値で評価するために使用します。
+ * </p>
+ * <ul>
+ *   <li>PSNR（ピーク信号対雑音比）は、RGBの各成分の二乗誤差の平均から求めます。単位はdBで、値が大きいほど差が小さく、画像が一致する場合は無限大です。</li>
+ *   <li>SSIM（構造的類似度）は、輝度（ITU-R BT.601）の {@value #SSIM_WINDOW_SIZE}x{@value #SSIM_WINDOW_SIZE} の窓を
+ *     {@value #SSIM_WINDOW_STEP} ピクセルずつずらしながら求めた値の平均です。1が一致を表し、差が大きいほど小さくなります。</li>
+ * </ul>
+ * <p>
+ * 透過情報を持つ画像は、{@link JpegEncoder} がエンコードする場合と同じく透過部分を白色で塗りつぶしてから比較します。
+ * </p>
+ */
+final class ImageQuality {
+
+	/** SSIMを求める窓の一辺のピクセル数。 */
+	static final int SSIM_WINDOW_SIZE = 8;
+	/** SSIMを求める窓をずらすピクセル数。 */
+	static final int SSIM_WINDOW_STEP = 4;
+	/** 画素値の最大値。 */
+	private static final double MAX_VALUE = 255.0;
+	/** SSIMの平均の項の安定化定数（(0.01 * 255)^2）。 */
+	private static final double C1 = (0.01 * MAX_VALUE) * (0.01 * MAX_VALUE);
+	/** SSIMの分散の項の安定化定数（(0.03 * 255)^2）。 */
+	private static final double C2 = (0.03 * MAX_VALUE) * (0.03 * MAX_VALUE);
+
+	/**
+	 * インスタンス化を禁止します。
+	 */
+	private ImageQuality() {
+	}
+
+	/**
+	 * 2つの画像のPSNRを求めます。
+	 *
+	 * @param referenceImage 基準の画像。
+	 * @param candidateImage 比較する画像。
+	 * @return PSNR（dB）。画像が一致する場合は {@link Double#POSITIVE_INFINITY}。
+	 * @throws IllegalArgumentException 画像の大きさが異なる場合。
+	 */
+	static double psnr(BufferedImage referenceImage, BufferedImage candidateImage) {
+		checkSize(referenceImage, candidateImage);
+		referenceImage = toOpaqueImage(referenceImage);
+		candidateImage = toOpaqueImage(candidateImage);
+		int width = referenceImage.getWidth();
+		int height = referenceImage.getHeight();
+		int[] referenceRow = new int[width];
+		int[] candidateRow = new int[width];
+		double squaredErrorSum = 0;
+		for (int y = 0; y < height; y++) {
+			referenceImage.getRGB(0, y, width, 1, referenceRow, 0, width);
+			candidateImage.getRGB(0, y, width, 1, candidateRow, 0, width);
+			for (int x = 0; x < width; x++) {
+				for (int shift = 0; shift <= 16; shift += 8) {
+					int difference = ((referenceRow[x] >> shift) & 0xFF) - ((candidateRow[x] >> shift) & 0xFF);
+					squaredErrorSum += difference * difference;
+				}
+			}
+		}
+		double meanSquaredError = squaredErrorSum / ((double) width * height * 3);
+		if (meanSquaredError == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return 10 * Math.log10(MAX_VALUE * MAX_VALUE / meanSquaredError);
+	}
+
+	/**
+	 * 2つの画像の輝度のSSIMを求めます。
+	 * <p>
+	 * 画像が窓より小さい場合は、画像全体を1つの窓として求めます。
+	 * </p>
+	 *
+	 * @param referenceImage 基準の画像。
+	 * @param candidateImage 比較する画像。
+	 * @return SSIM（-1から1の範囲で、1が一致）。
+	 * @throws IllegalArgumentException 画像の大きさが異なる場合。
+	 */
+	static double ssim(BufferedImage referenceImage, BufferedImage candidateImage) {
+		checkSize(referenceImage, candidateImage);
+		int width = referenceImage.getWidth();
+		int height = referenceImage.getHeight();
+		float[] referenceLuma = toLuma(toOpaqueImage(referenceImage));
+		float[] candidateLuma = toLuma(toOpaqueImage(candidateImage));
+
+		int windowWidth = Math.min(SSIM_WINDOW_SIZE, width);
+		int windowHeight = Math.min(SSIM_WINDOW_SIZE, height);
+		double ssimSum = 0;
+		int windowCount = 0;
+		for (int top = 0; top + windowHeight <= height; top += SSIM_WINDOW_STEP) {
+			for (int left = 0; left + windowWidth <= width; left += SSIM_WINDOW_STEP) {
+				ssimSum += windowSsim(referenceLuma, candidateLuma, width, left, top, windowWidth, windowHeight);
+				windowCount++;
+			}
+		}
+		return ssimSum / windowCount;
+	}
+
+	/**
+	 * 1つの窓のSSIMを求めます。
+	 *
+	 * @param referenceLuma 基準の画像の輝度。
+	 * @param candidateLuma 比較する画像の輝度。
+	 * @param width 画像の幅。
+	 * @param left 窓の左端の位置。
+	 * @param top 窓の上端の位置。
+	 * @param windowWidth 窓の幅。
+	 * @param windowHeight 窓の高さ。
+	 * @return 窓のSSIM。
+	 */
+	private static double windowSsim(
+		float[] referenceLuma,
+		float[] candidateLuma,
+		int width,
+		int left,
+		int top,
+		int windowWidth,
+		int windowHeight) {
+
+		double referenceSum = 0;
+		double candidateSum = 0;
+		double referenceSquareSum = 0;
+		double candidateSquareSum = 0;
+		double productSum = 0;
+		for (int y = top; y < top + windowHeight; y++) {
+			for (int x = left; x < left + windowWidth; x++) {
+				double reference = referenceLuma[y * width + x];
+				double candidate = candidateLuma[y * width + x];
+				referenceSum += reference;
+				candidateSum += candidate;
+				referenceSquareSum += reference * reference;
+				candidateSquareSum += candidate * candidate;
+				productSum += reference * candidate;
+			}
+		}
+		int count = windowWidth * windowHeight;
+		double referenceMean = referenceSum / count;
+		double candidateMean = candidateSum / count;
+		double referenceVariance = referenceSquareSum / count - referenceMean * referenceMean;
+		double candidateVariance = candidateSquareSum / count - candidateMean * candidateMean;
+		double covariance = productSum / count - referenceMean * candidateMean;
+		return ((2 * referenceMean * candidateMean + C1) * (2 * covariance + C2))
+			/ ((referenceMean * referenceMean + candidateMean * candidateMean + C1) * (referenceVariance + candidateVariance + C2));
+	}
+
+	/**
+	 * 画像の各画素の輝度を求めます。
+	 *
+	 * @param image 対象の画像。
+	 * @return 輝度（0から255）を行順に並べた配列。
+	 */
+	private static float[] toLuma(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		float[] luma = new float[width * height];
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				luma[y * width + x] =
+					0.299F * ((rgb >> 16) & 0xFF) + 0.587F * ((rgb >> 8) & 0xFF) + 0.114F * (rgb & 0xFF);
+			}
+		}
+		return luma;
+	}
+
+	/**
+	 * 画像が透過情報を持つ場合、透過部分を白色で塗りつぶした画像を返します。
+	 *
+	 * @param image 対象の画像。
+	 * @return 不透明な画像。元の画像が不透明な場合は元の画像そのもの。
+	 */
+	private static BufferedImage toOpaqueImage(BufferedImage image) {
+		if (image.getColorModel().getTransparency() != Transparency.OPAQUE) {
+			return ImageConverter.fillTransparentPixels(image, Color.WHITE);
+		}
+		return image;
+	}
+
+	/**
+	 * 2つの画像の大きさが同じであることを確認します。
+	 *
+	 * @param referenceImage 基準の画像。
+	 * @param candidateImage 比較する画像。
+	 * @throws IllegalArgumentException 画像の大きさが異なる場合。
+	 */
+	private static void checkSize(BufferedImage referenceImage, BufferedImage candidateImage) {
+		if (referenceImage.getWidth() != candidateImage.getWidth() || referenceImage.getHeight() != candidateImage.getHeight()) {
+			throw new IllegalArgumentException(
+				"image size differs : " + referenceImage.getWidth() + "x" + referenceImage.getHeight()
+				+ " / " + candidateImage.getWidth() + "x" + candidateImage.getHeight());
+		}
+	}
+}
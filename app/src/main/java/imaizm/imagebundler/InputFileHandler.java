@@ -1,11 +1,16 @@
 package imaizm.imagebundler;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 /**
@@ -19,6 +24,9 @@ import java.util.stream.Collectors;
  * </ul>
  * ZIPファイルが処理された場合、{@link #close()} メソッドを呼び出すことで、解凍時に作成された一時ファイルおよびディレクトリが削除されます。
  * </p>
+ * <p>
+ * tarファイル・7zファイルは一時ディレクトリに展開せずに変換するため、このクラスではなく {@link ArchiveStreamReader} で読み込みます。
+ * </p>
  */
 public class InputFileHandler {
 	
@@ -29,12 +37,39 @@ public class InputFileHandler {
 	 * <p>
 	 * このリストは、コンストラクタで指定された入力ソースに基づいて設定されます。
 	 * 入力ソースがディレクトリの場合はその中の画像ファイル、ZIPファイルの場合は解凍された画像ファイルが含まれます。
+	 * 入力ソースがZIPファイルの場合、このメソッドはすべてのエントリの展開が完了するまで待機します。
 	 * </p>
 	 * @return 処理対象の画像ファイルの {@link Path} のリスト。
+	 * @throws IOException ZIPファイルの展開中にI/Oエラーが発生していた場合。
 	 */
-	public List<Path> getInputFilePathList() {
+	public List<Path> getInputFilePathList() throws IOException {
+		if (this.inputFilePathList == null && this.inputFilePathFutureList != null) {
+			List<Path> pathList = new ArrayList<Path>();
+			for (CompletableFuture<Path> inputFilePathFuture : this.inputFilePathFutureList) {
+				pathList.add(ZipFileHandler.await(inputFilePathFuture));
+			}
+			this.inputFilePathList = pathList;
+		}
 		return this.inputFilePathList;
 	}
+
+	/** 処理対象となる画像ファイルのパスを、準備ができ次第返す {@link CompletableFuture} のリスト。 */
+	private List<CompletableFuture<Path>> inputFilePathFutureList;
+	/**
+	 * 処理対象となる画像ファイルのパスを返す {@link CompletableFuture} のリストを取得します。
+	 * <p>
+	 * 入力ソースがZIPファイルの場合、各要素は対応するエントリの展開が完了した時点で完了します。
+	 * 呼び出し元はリストの先頭から順に待機することで、すべてのエントリの展開完了を待たずに処理を開始できます。
+	 * 入力ソースがディレクトリの場合、各要素はすでに完了した状態で返されます。
+	 * </p>
+	 * @return 処理対象の画像ファイルの {@link Path} を返す {@link CompletableFuture} のリスト。
+	 */
+	public List<CompletableFuture<Path>> getInputFilePathFutureList() {
+		return this.inputFilePathFutureList;
+	}
+
+	/** ZIPファイルの展開を行う {@link ExecutorService}。入力ソースがZIPファイルの場合のみ設定されます。 */
+	private ExecutorService inflateExecutorService;
 	
 	/** ZIPファイルが入力された場合に、ファイルを解凍するための一時ディレクトリのパス。 */
 	private Path extractDirectoryPath;
@@ -49,9 +84,6 @@ public class InputFileHandler {
 	public Path getExtractDirectoryPath() {
 		return this.extractDirectoryPath;
 	}
-	/** ZIPファイルが入力された場合に、解凍されたファイルのパスのリスト。 */
-	private List<Path> extractedFilePathList;
-	
 	/**
 	 * {@code InputFileHandler} オブジェクトを構築し、指定された入力パスに基づいて処理対象ファイルを初期化します。
 	 * <p>
@@ -66,9 +98,9 @@ public class InputFileHandler {
 	 *   <li><b>ZIPファイルの場合:</b>
 	 *     まず、{@link WorkDirectoryHandler} を使用して一時的な作業ディレクトリを作成し、
 	 *     そのパスを {@link #extractDirectoryPath} に格納します。
-	 *     次に、指定されたZIPファイルをこの一時ディレクトリに解凍します（{@link ZipFileHandler#inflate(Path, Path)} を使用）。
-	 *     解凍されたファイルのパスのリストは {@link #extractedFilePathList} に格納され、
-	 *     このリストが {@link #inputFilePathList} としても使用されます。
+	 *     次に、指定されたZIPファイルをこの一時ディレクトリへ並列に解凍する処理を開始します
+	 *     （{@link ZipFileHandler#inflateAsync(Path, Path, ExecutorService, int)} を使用）。
+	 *     コンストラクタは展開の完了を待たずに戻り、展開状況は {@link #getInputFilePathFutureList()} で参照できます。
 	 *   </li>
 	 *   <li><b>上記以外の場合:</b>
 	 *     サポートされていないファイル形式であると判断し、"未対応のファイル形式です。" というメッセージと共に
@@ -80,9 +112,25 @@ public class InputFileHandler {
 	 * </p>
 	 *
 	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
-	 * @throws IOException ファイルの読み込み、ディレクトリのリスト、またはZIPファイルの解凍中にI/Oエラーが発生した場合。
+	 * @throws IOException ファイルの読み込み、ディレクトリのリスト、またはZIPファイルのセントラルディレクトリの読み込み中にI/Oエラーが発生した場合。
 	 */
 	public InputFileHandler(Path inputFilePath) throws IOException {
+		this(inputFilePath, null);
+	}
+
+	/**
+	 * 入力パスがZIPファイルの場合に、同時に展開するエントリの数を指定された段階で制限する {@code InputFileHandler} オブジェクトを構築します。
+	 * <p>
+	 * 展開のワーカーは {@code readStage} の並行数の上限の数だけ起動し、同時に展開するエントリの数は {@code readStage} の並行数に従います
+	 * （{@link ZipFileHandler#inflateAsync(Path, Path, ExecutorService, int, ConcurrencyController.Stage)} を使用）。
+	 * その他の動作は {@link #InputFileHandler(Path)} と同じです。
+	 * </p>
+	 *
+	 * @param inputFilePath 処理対象のファイルまたはディレクトリのパス。
+	 * @param readStage 同時に展開するエントリの数を制限する段階。null の場合は {@link ZipFileHandler#DEFAULT_PARALLELISM} 個のワーカーで展開します。
+	 * @throws IOException ファイルの読み込み、ディレクトリのリスト、またはZIPファイルのセントラルディレクトリの読み込み中にI/Oエラーが発生した場合。
+	 */
+	InputFileHandler(Path inputFilePath, ConcurrencyController.Stage readStage) throws IOException {
 		
 //		PathMatcher pmZip = FileSystems.getDefault().getPathMatcher("glob:**.zip");
 //		PathMatcher pmJpg = FileSystems.getDefault().getPathMatcher("glob:**.jpg");
@@ -103,6 +151,9 @@ public class InputFileHandler {
 						pmJpeg.matches(listFilePath) ||
 						pmPng.matches(listFilePath)))
 				.collect(Collectors.toList());
+			this.inputFilePathFutureList = this.inputFilePathList.stream()
+				.map(CompletableFuture::completedFuture)
+				.collect(Collectors.toList());
 
 		// 入力ソースがZipファイルだった場合
 		} else if (pmZip.matches(inputFilePath)) {
@@ -110,11 +161,19 @@ public class InputFileHandler {
 			// 解凍用仮ディレクトリの作成
 			this.extractDirectoryPath = (new WorkDirectoryHandler()).getWorkDirectoryPath();
 			
-			// 入力ソースのZipファイルを解凍し、解凍されたファイル群からJpegファイルを取得
+			// 入力ソースのZipファイルの並列解凍を開始し、解凍されたファイル群からJpegファイルを取得
+			int parallelism = (readStage != null) ? readStage.getMaxLimit() : ZipFileHandler.DEFAULT_PARALLELISM;
+			this.inflateExecutorService = ZipFileHandler.newInflateExecutor(parallelism);
 			try {
-				this.extractedFilePathList = ZipFileHandler.inflate(inputFilePath, this.extractDirectoryPath);
-				this.inputFilePathList = this.extractedFilePathList;
+				this.inputFilePathFutureList = ZipFileHandler.inflateAsync(
+					inputFilePath,
+					this.extractDirectoryPath,
+					this.inflateExecutorService,
+					parallelism,
+					readStage);
 			} catch (IOException e) {
+				this.inflateExecutorService.shutdown();
+				Files.delete(this.extractDirectoryPath);
 				throw e;
 			}
 			
@@ -131,10 +190,11 @@ public class InputFileHandler {
 	 * <p>
 	 * 主に、入力ソースがZIPファイルであった場合に作成された一時ファイルをクリーンアップするために使用されます。
 	 * <ul>
-	 *   <li>{@link #extractedFilePathList} が null でない場合（つまり、ZIPファイルが解凍された場合）：
+	 *   <li>{@link #inflateExecutorService} が null でない場合（つまり、ZIPファイルが解凍された場合）：
 	 *     <ul>
+	 *       <li>実行中の展開処理の完了を待機し、{@link ExecutorService} をシャットダウンします。</li>
 	 *       <li>{@link #inputFilePathList} を null に設定します。</li>
-	 *       <li>{@link #extractedFilePathList} に含まれるすべての解凍されたファイルを削除します。</li>
+	 *       <li>展開されたすべてのファイルを削除します。</li>
 	 *     </ul>
 	 *   </li>
 	 *   <li>{@link #extractDirectoryPath} が null でない場合（つまり、解凍用の一時ディレクトリが作成された場合）：
@@ -149,12 +209,24 @@ public class InputFileHandler {
 	 * @throws IOException ファイルまたはディレクトリの削除中にI/Oエラーが発生した場合。
 	 */
 	public void close() throws IOException {
-		if (this.extractedFilePathList != null) {
+		if (this.inflateExecutorService != null) {
 			this.inputFilePathList = null;
 			
+			// 展開中のファイルが残らないよう、すべての展開処理の終了を待機する
+			for (CompletableFuture<Path> inputFilePathFuture : this.inputFilePathFutureList) {
+				try {
+					inputFilePathFuture.join();
+				} catch (CompletionException e) {
+					// 展開に失敗したエントリは削除対象外（書きかけのファイルは下記で削除する）
+				}
+			}
+			this.inflateExecutorService.shutdown();
+			
 			// 処理済みの解凍ファイルを削除
-			for(Path extractedFilePath : this.extractedFilePathList) {
-				Files.delete(extractedFilePath);
+			try (DirectoryStream<Path> extractedFilePaths = Files.newDirectoryStream(this.extractDirectoryPath)) {
+				for (Path extractedFilePath : extractedFilePaths) {
+					Files.delete(extractedFilePath);
+				}
 			}
 		}
 		
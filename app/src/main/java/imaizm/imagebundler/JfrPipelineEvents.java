@@ -0,0 +1,407 @@
+package imaizm.imagebundler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * {@link PipelineEvents} の各イベントを記録する、Java Flight Recorder（JFR）のイベントを定義するクラスです。
+ * <p>
+ * {@code jdk.jfr} パッケージを参照するのはこのクラスだけです。{@link PipelineEvents} は、JFRを使用できる実行環境
+ * （Java 8u262以降、Java 11以降）でだけこのクラスを読み込むため、JFRのない実行環境でも変換を行えます。
+ * 各イベントの項目は {@link PipelineEvents} の同じ名前のイベントから記録の直前に複写します。
+ * </p>
+ */
+final class JfrPipelineEvents {
+
+	/** イベントのカテゴリ名。 */
+	private static final String CATEGORY = Constants.APPLICATION_NAME;
+
+	/**
+	 * インスタンス化を禁止します。
+	 */
+	private JfrPipelineEvents() {
+	}
+
+	/**
+	 * 記録の開始時刻を設定します。
+	 *
+	 * @param jfrEvent JFRのイベント。
+	 */
+	static void begin(Object jfrEvent) {
+		((Event) jfrEvent).begin();
+	}
+
+	/**
+	 * 記録の終了時刻を設定します。
+	 *
+	 * @param jfrEvent JFRのイベント。
+	 */
+	static void end(Object jfrEvent) {
+		((Event) jfrEvent).end();
+	}
+
+	/**
+	 * イベントを記録するかどうか（記録が有効で、しきい値を超えているか）を判定します。
+	 *
+	 * @param jfrEvent JFRのイベント。
+	 * @return 記録する場合は true。
+	 */
+	static boolean shouldCommit(Object jfrEvent) {
+		return ((Event) jfrEvent).shouldCommit();
+	}
+
+	/**
+	 * 入力ファイルの列挙のイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newInputDiscovery() {
+		return new InputDiscovery();
+	}
+
+	/**
+	 * 入力ファイルの列挙のイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newInputDiscovery()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.InputDiscovery source, Object jfrEvent) {
+		InputDiscovery event = (InputDiscovery) jfrEvent;
+		event.source = source.source;
+		event.pageCount = source.pageCount;
+		event.commit();
+	}
+
+	/**
+	 * ZIPファイルのエントリの展開のイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newInflate() {
+		return new Inflate();
+	}
+
+	/**
+	 * ZIPファイルのエントリの展開のイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newInflate()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.Inflate source, Object jfrEvent) {
+		Inflate event = (Inflate) jfrEvent;
+		event.archive = source.archive;
+		event.page = source.page;
+		event.bytes = source.bytes;
+		event.commit();
+	}
+
+	/**
+	 * 画像のデコードのイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newDecode() {
+		return new Decode();
+	}
+
+	/**
+	 * 画像のデコードのイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newDecode()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.Decode source, Object jfrEvent) {
+		Decode event = (Decode) jfrEvent;
+		event.page = source.page;
+		event.bytes = source.bytes;
+		event.width = source.width;
+		event.height = source.height;
+		event.decoder = source.decoder;
+		event.commit();
+	}
+
+	/**
+	 * 画像の変換のイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newConvert() {
+		return new Convert();
+	}
+
+	/**
+	 * 画像の変換のイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newConvert()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.Convert source, Object jfrEvent) {
+		Convert event = (Convert) jfrEvent;
+		event.page = source.page;
+		event.profile = source.profile;
+		event.sourceWidth = source.sourceWidth;
+		event.sourceHeight = source.sourceHeight;
+		event.mode = source.mode;
+		event.resultCount = source.resultCount;
+		event.cascaded = source.cascaded;
+		event.commit();
+	}
+
+	/**
+	 * JPEGエンコードのイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newEncode() {
+		return new Encode();
+	}
+
+	/**
+	 * JPEGエンコードのイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newEncode()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.Encode source, Object jfrEvent) {
+		Encode event = (Encode) jfrEvent;
+		event.page = source.page;
+		event.profile = source.profile;
+		event.width = source.width;
+		event.height = source.height;
+		event.bytes = source.bytes;
+		event.method = source.method;
+		event.commit();
+	}
+
+	/**
+	 * ZIPファイルへの書き込みのイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newArchiveWrite() {
+		return new ArchiveWrite();
+	}
+
+	/**
+	 * ZIPファイルへの書き込みのイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newArchiveWrite()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.ArchiveWrite source, Object jfrEvent) {
+		ArchiveWrite event = (ArchiveWrite) jfrEvent;
+		event.archive = source.archive;
+		event.page = source.page;
+		event.bytes = source.bytes;
+		event.commit();
+	}
+
+	/**
+	 * 並行数の変更のイベントを生成します。
+	 * @return 生成したイベント。
+	 */
+	static Object newConcurrencyChange() {
+		return new ConcurrencyChange();
+	}
+
+	/**
+	 * 並行数の変更のイベントの項目を複写して記録します。
+	 *
+	 * @param source 項目の複写元。
+	 * @param jfrEvent {@link #newConcurrencyChange()} で生成したイベント。
+	 */
+	static void commit(PipelineEvents.ConcurrencyChange source, Object jfrEvent) {
+		ConcurrencyChange event = (ConcurrencyChange) jfrEvent;
+		event.stage = source.stage;
+		event.previousLimit = source.previousLimit;
+		event.limit = source.limit;
+		event.cpuLoad = source.cpuLoad;
+		event.ioWaitRatio = source.ioWaitRatio;
+		event.stallRatio = source.stallRatio;
+		event.queueDepth = source.queueDepth;
+		event.commit();
+	}
+
+	/**
+	 * 入力ファイルの列挙（ディレクトリの走査、またはZIPファイルの目次の読み込みと展開の開始）を記録するイベントです。
+	 */
+	@Name("imagebundler.InputDiscovery")
+	@Label("Input Discovery")
+	@Description("入力ファイルまたはディレクトリから変換対象のページを列挙する")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class InputDiscovery extends Event {
+		/** 入力ファイルまたはディレクトリのパス。 */
+		@Label("Source")
+		String source;
+		/** 変換対象のページ数。 */
+		@Label("Page Count")
+		int pageCount;
+	}
+
+	/**
+	 * ZIPファイルの1つのエントリの展開を記録するイベントです。
+	 */
+	@Name("imagebundler.Inflate")
+	@Label("Inflate")
+	@Description("ZIPファイルの1つのエントリを作業ディレクトリに展開する")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class Inflate extends Event {
+		/** ZIPファイルのパス。 */
+		@Label("Archive")
+		String archive;
+		/** エントリ名。 */
+		@Label("Page")
+		String page;
+		/** 展開後のバイト数。 */
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * 1ページの画像のデコードを記録するイベントです。
+	 */
+	@Name("imagebundler.Decode")
+	@Label("Decode")
+	@Description("1ページの画像ファイルを読み込んでデコードする")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class Decode extends Event {
+		/** ページのファイル名。 */
+		@Label("Page")
+		String page;
+		/** 画像ファイルのバイト数。 */
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		/** デコード後の画像の幅。 */
+		@Label("Width")
+		int width;
+		/** デコード後の画像の高さ。 */
+		@Label("Height")
+		int height;
+		/** 使用したデコーダ（"jpeg-scaled" または "imageio"）。 */
+		@Label("Decoder")
+		String decoder;
+	}
+
+	/**
+	 * 1ページの画像の、1つの出力プロファイルへの変換（{@link ImageConverter#convert}）を記録するイベントです。
+	 */
+	@Name("imagebundler.Convert")
+	@Label("Convert")
+	@Description("1ページの画像を出力プロファイルの大きさに変換する")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class Convert extends Event {
+		/** ページのファイル名。 */
+		@Label("Page")
+		String page;
+		/** 出力プロファイル名。 */
+		@Label("Profile")
+		String profile;
+		/** 変換元の画像の幅。 */
+		@Label("Source Width")
+		int sourceWidth;
+		/** 変換元の画像の高さ。 */
+		@Label("Source Height")
+		int sourceHeight;
+		/** 縦横比が異なる場合の処理モード。 */
+		@Label("Mode")
+		String mode;
+		/** 変換後の画像の数。 */
+		@Label("Result Count")
+		int resultCount;
+		/** 大きい出力プロファイルの変換結果を縮小したかどうか。 */
+		@Label("Cascaded")
+		boolean cascaded;
+	}
+
+	/**
+	 * 1つの出力画像のJPEGエンコード（または再エンコードしない分割）を記録するイベントです。
+	 */
+	@Name("imagebundler.Encode")
+	@Label("Encode")
+	@Description("1つの出力画像をJPEG形式でエンコードする")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class Encode extends Event {
+		/** 出力エントリ名（再エンコードしない分割の場合は分割前のページのファイル名）。 */
+		@Label("Page")
+		String page;
+		/** 出力プロファイル名。 */
+		@Label("Profile")
+		String profile;
+		/** 画像の幅（再エンコードしない分割の場合は0）。 */
+		@Label("Width")
+		int width;
+		/** 画像の高さ（再エンコードしない分割の場合は0）。 */
+		@Label("Height")
+		int height;
+		/** エンコード結果のバイト数（再エンコードしない分割の場合は分割後の合計）。 */
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		/** エンコードの方法（"quality"、"size-budget" または "lossless-split"）。 */
+		@Label("Method")
+		String method;
+	}
+
+	/**
+	 * ZIPファイルへの1つのエントリの書き込みを記録するイベントです。
+	 */
+	@Name("imagebundler.ArchiveWrite")
+	@Label("Archive Write")
+	@Description("1つのエントリを出力ZIPファイルに書き込む")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class ArchiveWrite extends Event {
+		/** ZIPファイルのパス。 */
+		@Label("Archive")
+		String archive;
+		/** エントリ名。 */
+		@Label("Page")
+		String page;
+		/** 書き込んだバイト数。 */
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * {@link ConcurrencyController} による段階の並行数の変更を記録するイベントです。
+	 */
+	@Name("imagebundler.ConcurrencyChange")
+	@Label("Concurrency Change")
+	@Description("パイプラインの段階の並行数を、待ち行列の深さ・CPU使用率・I/O待ちに応じて変更する")
+	@Category({ CATEGORY, "Pipeline" })
+	@StackTrace(false)
+	private static final class ConcurrencyChange extends Event {
+		/** 段階の名前（"read" または "convert"）。 */
+		@Label("Stage")
+		String stage;
+		/** 変更前の並行数。 */
+		@Label("Previous Limit")
+		int previousLimit;
+		/** 変更後の並行数。 */
+		@Label("Limit")
+		int limit;
+		/** システム全体のCPU使用率。 */
+		@Label("CPU Load")
+		@Percentage
+		float cpuLoad;
+		/** 段階の処理時間のうちI/O待ちの割合。 */
+		@Label("I/O Wait Ratio")
+		@Percentage
+		float ioWaitRatio;
+		/** 段階の処理時間のうち前の段階の出力を待っていた割合。 */
+		@Label("Stall Ratio")
+		@Percentage
+		float stallRatio;
+		/** 段階の開始を待っている処理の数。 */
+		@Label("Queue Depth")
+		int queueDepth;
+	}
+}
@@ -0,0 +1,778 @@
+package imaizm.imagebundler;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import imaizm.imagebundler.ImageConverter.BindingSide;
+import imaizm.imagebundler.ImageConverter.CenterClipOption;
+
+/**
+ * JPEG画像を、画素に復号することなく係数の段階で切り抜くクラスです（jpegtran の -crop に相当）。
+ * <p>
+ * 切り抜く領域の左端と上端をMCU（最小符号化単位）の境界に揃えることで、
+ * 量子化された係数をそのまま新しいJPEGデータに格納し直します。
+ * IDCT・DCT・再量子化を行わないため、画質は劣化せず、デコードとエンコードに比べて処理も軽量です。
+ * ハフマン符号表は、切り抜いた後の係数から最適なものを生成します。
+ * </p>
+ * <p>
+ * 見開きの横長画像を分割するだけで変換後の大きさに収まる場合に、
+ * {@link ImageConverter#convert(java.awt.image.BufferedImage, int, int)} による再エンコードの代わりに使用します。
+ * 対応しているのは、1つのスキャンですべての成分を符号化するシーケンシャル形式の画像のみです。
+ * </p>
+ */
+public class JpegCropper {
+
+	/**
+	 * 指定されたJPEG画像ファイルを、{@link ImageConverter#getSplitRegions(int, int, int, int, BindingSide, CenterClipOption)} と同じ規則で
+	 * 可逆に分割します。
+	 * <p>
+	 * 綴じ方向は右綴じ（{@link BindingSide#RIGHT}）、中央切り抜きオプションはオン（{@link CenterClipOption#ON}）として分割します。
+	 * </p>
+	 *
+	 * @param inputFile 分割する画像ファイル。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @return 分割後の各画像のJPEGデータ（読む順）。可逆に分割できない場合は null。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合、またはJPEGデータが壊れている場合。
+	 */
+	public static List<byte[]> split(File inputFile, int width, int height) throws IOException {
+		return split(Files.readAllBytes(inputFile.toPath()), width, height, BindingSide.RIGHT, CenterClipOption.ON);
+	}
+
+	/**
+	 * 指定されたJPEGデータを、{@link ImageConverter#getSplitRegions(int, int, int, int, BindingSide, CenterClipOption)} と同じ規則で
+	 * 可逆に分割します。
+	 * <p>
+	 * 分割位置はMCUの境界のうち最も近いものに、中央切り抜きの左端はその左側のMCUの境界に揃えます。
+	 * 揃えた後の各領域が変換後の大きさに収まらない（縮小が必要な）場合は、可逆に分割できないものとして null を返します。
+	 * </p>
+	 *
+	 * @param data 分割するJPEGデータ。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @return 分割後の各画像のJPEGデータ（読む順）。可逆に分割できない場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 */
+	public static List<byte[]> split(
+		byte[] data,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption)
+		throws IOException {
+		return split(
+			data, width, height, side, centerClipOption,
+			ImageConverter.DEFAULT_CENTER_CLIP_WIDTH, ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT);
+	}
+
+	/**
+	 * 指定されたJPEGデータを、{@link ImageConverter#getSplitRegions(int, int, int, int, BindingSide, CenterClipOption, int, int)} と同じ規則で
+	 * 可逆に分割します。
+	 *
+	 * @param data 分割するJPEGデータ。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @return 分割後の各画像のJPEGデータ（読む順）。可逆に分割できない場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 * @see #split(byte[], int, int, BindingSide, CenterClipOption)
+	 */
+	public static List<byte[]> split(
+		byte[] data,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		int centerClipWidth,
+		int centerClipHeight)
+		throws IOException {
+
+		Frame frame = Frame.read(data);
+		if (frame == null) {
+			return null;
+		}
+		List<Rectangle> regionList =
+			ImageConverter.getSplitRegions(frame.width, frame.height, width, height, side, centerClipOption, centerClipWidth, centerClipHeight);
+		if (regionList.size() < 2) {
+			return null;
+		}
+		regionList = alignRegions(regionList, frame.mcuWidth, frame.mcuHeight);
+		if (regionList == null) {
+			return null;
+		}
+		for (Rectangle region : regionList) {
+			if (region.width > width || region.height > height) {
+				return null;
+			}
+		}
+		return crop(data, frame, regionList);
+	}
+
+	/**
+	 * 指定されたJPEGデータから、指定された各領域を可逆に切り抜きます。
+	 * <p>
+	 * 各領域の左端と上端はMCUの境界に揃っている必要があります。右端と下端は任意の位置を指定できます。
+	 * 複数の領域は、エントロピー符号化データを1回読み取るごとにまとめて処理します。
+	 * </p>
+	 *
+	 * @param data 切り抜くJPEGデータ。
+	 * @param regionList 切り抜く領域。
+	 * @return 各領域のJPEGデータ。未対応の形式の場合、または領域がMCUの境界に揃っていない場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 */
+	public static List<byte[]> crop(byte[] data, List<Rectangle> regionList) throws IOException {
+		Frame frame = Frame.read(data);
+		if (frame == null) {
+			return null;
+		}
+		for (Rectangle region : regionList) {
+			if (region.x % frame.mcuWidth != 0 || region.y % frame.mcuHeight != 0) {
+				return null;
+			}
+		}
+		return crop(data, frame, regionList);
+	}
+
+	/**
+	 * 分割後の各領域の左端と上端をMCUの境界に揃えます。
+	 * <p>
+	 * 他の領域と接している端（分割位置）は最も近い境界に揃え、接している側の領域の右端または下端も同じ位置に合わせます。
+	 * それ以外の左端と上端は、領域が狭くならないように手前の境界に揃えます。
+	 * </p>
+	 *
+	 * @param regionList 分割後の各領域。
+	 * @param mcuWidth MCUの幅（ピクセル単位）。
+	 * @param mcuHeight MCUの高さ（ピクセル単位）。
+	 * @return 揃えた後の各領域（元の順序）。揃えた結果、空になる領域がある場合は null。
+	 */
+	static List<Rectangle> alignRegions(List<Rectangle> regionList, int mcuWidth, int mcuHeight) {
+		List<Rectangle> alignedRegionList = new ArrayList<Rectangle>();
+		for (Rectangle region : regionList) {
+			int left = alignEdge(region.x, mcuWidth, isSharedEdge(regionList, region.x, true));
+			int top = alignEdge(region.y, mcuHeight, isSharedEdge(regionList, region.y, false));
+			int right = region.x + region.width;
+			int bottom = region.y + region.height;
+			if (isSharedEdge(regionList, right, true)) {
+				right = alignEdge(right, mcuWidth, true);
+			}
+			if (isSharedEdge(regionList, bottom, false)) {
+				bottom = alignEdge(bottom, mcuHeight, true);
+			}
+			if (right <= left || bottom <= top) {
+				return null;
+			}
+			alignedRegionList.add(new Rectangle(left, top, right - left, bottom - top));
+		}
+		return alignedRegionList;
+	}
+
+	/**
+	 * 指定された位置が、ある領域の右端（下端）であり、かつ別の領域の左端（上端）であるかどうかを判定します。
+	 *
+	 * @param regionList 分割後の各領域。
+	 * @param position 判定する位置。
+	 * @param horizontal 横方向の位置の場合は true、縦方向の位置の場合は false。
+	 * @return 2つの領域が接している位置の場合は true。
+	 */
+	private static boolean isSharedEdge(List<Rectangle> regionList, int position, boolean horizontal) {
+		boolean start = false;
+		boolean end = false;
+		for (Rectangle region : regionList) {
+			int regionStart = horizontal ? region.x : region.y;
+			int regionEnd = regionStart + (horizontal ? region.width : region.height);
+			start |= (regionStart == position);
+			end |= (regionEnd == position);
+		}
+		return start && end;
+	}
+
+	/**
+	 * 位置をMCUの境界に揃えます。
+	 *
+	 * @param position 揃える位置。
+	 * @param unit MCUの大きさ。
+	 * @param nearest 最も近い境界に揃える場合は true、手前の境界に揃える場合は false。
+	 * @return 揃えた後の位置。
+	 */
+	private static int alignEdge(int position, int unit, boolean nearest) {
+		return nearest ? (int) Math.round((double) position / unit) * unit : position / unit * unit;
+	}
+
+	/**
+	 * 指定されたJPEGデータから、指定された各領域を可逆に切り抜きます。
+	 * <p>
+	 * 1回目の読み取りで各領域のハフマン符号の出現頻度を集計して最適な符号表を生成し、
+	 * 2回目の読み取りでその符号表を使って係数を符号化します。
+	 * </p>
+	 *
+	 * @param data 切り抜くJPEGデータ。
+	 * @param frame JPEGデータのフレーム情報。
+	 * @param regionList 切り抜く領域（左端と上端はMCUの境界に揃っていること）。
+	 * @return 各領域のJPEGデータ。未対応の形式の場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 */
+	private static List<byte[]> crop(byte[] data, Frame frame, List<Rectangle> regionList) throws IOException {
+		final List<EntropyEncoder> encoderList = new ArrayList<EntropyEncoder>();
+		for (Rectangle region : regionList) {
+			if (region.x < 0 || region.y < 0 ||
+				region.x + region.width > frame.width || region.y + region.height > frame.height) {
+				return null;
+			}
+			encoderList.add(new EntropyEncoder(frame, region));
+		}
+
+		JpegDecoder.BlockHandler blockHandler = (componentIndex, blockRow, blockColumn, coefficients) -> {
+			for (EntropyEncoder encoder : encoderList) {
+				encoder.handle(componentIndex, blockRow, blockColumn, coefficients);
+			}
+		};
+
+		// 1回目：ハフマン符号の出現頻度の集計
+		if (!JpegDecoder.readCoefficients(data, blockHandler)) {
+			return null;
+		}
+		// 2回目：最適化した符号表による符号化
+		for (EntropyEncoder encoder : encoderList) {
+			encoder.startWriting();
+		}
+		JpegDecoder.readCoefficients(data, blockHandler);
+
+		List<byte[]> outputList = new ArrayList<byte[]>();
+		for (EntropyEncoder encoder : encoderList) {
+			outputList.add(encoder.toJpeg(data));
+		}
+		return outputList;
+	}
+
+	/**
+	 * 切り抜きに必要な、JPEGデータのフレームヘッダとセグメントの情報を保持するクラスです。
+	 */
+	private static class Frame {
+		/** 画像の幅。 */
+		int width;
+		/** 画像の高さ。 */
+		int height;
+		/** 成分ID。 */
+		int[] componentIds;
+		/** 水平方向のサンプリング係数。 */
+		int[] h;
+		/** 垂直方向のサンプリング係数。 */
+		int[] v;
+		/** 量子化テーブルの番号。 */
+		int[] quantizationTableIndexes;
+		/** MCUの幅（ピクセル単位）。 */
+		int mcuWidth;
+		/** MCUの高さ（ピクセル単位）。 */
+		int mcuHeight;
+		/** 切り抜いた後のJPEGデータにそのまま複製するセグメント（APPn、COM、DQT）の開始位置と終了位置。 */
+		List<int[]> copiedSegmentList = new ArrayList<int[]>();
+
+		/**
+		 * JPEGデータの先頭から最初のスキャンヘッダ（SOSマーカー）までを読み取ります。
+		 *
+		 * @param data JPEGデータ。
+		 * @return フレーム情報。JPEG形式でない場合、または切り抜きに対応していない形式の場合は null。
+		 */
+		static Frame read(byte[] data) {
+			if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+				return null;
+			}
+			Frame frame = null;
+			List<int[]> copiedSegmentList = new ArrayList<int[]>();
+			int pos = 2;
+			while (pos + 4 <= data.length) {
+				if ((data[pos] & 0xFF) != 0xFF) {
+					return null;
+				}
+				int marker = data[pos + 1] & 0xFF;
+				if (marker == 0xFF) {
+					pos++;
+					continue;
+				}
+				int length = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+				int end = pos + 2 + length;
+				if (end > data.length) {
+					return null;
+				}
+
+				if (marker == 0xC0 || marker == 0xC1) {
+					frame = readFrameHeader(data, pos + 4);
+					if (frame == null) {
+						return null;
+					}
+				} else if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+					// プログレッシブ形式、可逆符号化、階層符号化、算術符号化
+					return null;
+				} else if ((marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE || marker == 0xDB) {
+					copiedSegmentList.add(new int[] { pos, end });
+				} else if (marker == 0xDA) {
+					// 1つのスキャンで、フレームヘッダと同じ順序ですべての成分を符号化している場合のみ対応する
+					if (frame == null || (data[pos + 4] & 0xFF) != frame.componentIds.length) {
+						return null;
+					}
+					for (int i = 0; i < frame.componentIds.length; i++) {
+						if ((data[pos + 5 + i * 2] & 0xFF) != frame.componentIds[i]) {
+							return null;
+						}
+					}
+					frame.copiedSegmentList = copiedSegmentList;
+					return frame;
+				}
+				pos = end;
+			}
+			return null;
+		}
+
+		/**
+		 * フレームヘッダ（SOFマーカー）の内容を読み取ります。
+		 *
+		 * @param data JPEGデータ。
+		 * @param start セグメントの内容の開始位置。
+		 * @return フレーム情報。対応していない形式の場合は null。
+		 */
+		private static Frame readFrameHeader(byte[] data, int start) {
+			int componentCount = data[start + 5] & 0xFF;
+			if ((data[start] & 0xFF) != 8 || (componentCount != 1 && componentCount != 3)) {
+				return null;
+			}
+			Frame frame = new Frame();
+			frame.height = ((data[start + 1] & 0xFF) << 8) | (data[start + 2] & 0xFF);
+			frame.width = ((data[start + 3] & 0xFF) << 8) | (data[start + 4] & 0xFF);
+			if (frame.width == 0 || frame.height == 0) {
+				return null;
+			}
+			frame.componentIds = new int[componentCount];
+			frame.h = new int[componentCount];
+			frame.v = new int[componentCount];
+			frame.quantizationTableIndexes = new int[componentCount];
+			int maxH = 1;
+			int maxV = 1;
+			for (int i = 0; i < componentCount; i++) {
+				int offset = start + 6 + i * 3;
+				frame.componentIds[i] = data[offset] & 0xFF;
+				// 1成分の場合、サンプリング係数に関わらず各ブロックが1つのMCUとなる
+				frame.h[i] = (componentCount == 1) ? 1 : (data[offset + 1] & 0xFF) >> 4;
+				frame.v[i] = (componentCount == 1) ? 1 : data[offset + 1] & 0x0F;
+				frame.quantizationTableIndexes[i] = data[offset + 2] & 0x03;
+				if (frame.h[i] < 1 || frame.h[i] > 4 || frame.v[i] < 1 || frame.v[i] > 4) {
+					return null;
+				}
+				maxH = Math.max(maxH, frame.h[i]);
+				maxV = Math.max(maxV, frame.v[i]);
+			}
+			frame.mcuWidth = maxH * 8;
+			frame.mcuHeight = maxV * 8;
+			return frame;
+		}
+	}
+
+	/**
+	 * 1つの切り抜き領域について、係数をハフマン符号化するクラスです。
+	 * <p>
+	 * 最初は符号の出現頻度の集計のみを行い、{@link #startWriting()} の呼び出し後は
+	 * 集計結果から生成した最適な符号表で実際に符号化します。
+	 * </p>
+	 */
+	private static class EntropyEncoder {
+
+		/** 切り抜く画像のフレーム情報。 */
+		private final Frame frame;
+		/** 切り抜く領域。 */
+		private final Rectangle region;
+		/** 切り抜く領域の左端のMCUの列。 */
+		private final int mcuColumnStart;
+		/** 切り抜く領域の上端のMCUの行。 */
+		private final int mcuRowStart;
+		/** 切り抜く領域の横方向のMCU数。 */
+		private final int mcuColumnCount;
+		/** 切り抜く領域の縦方向のMCU数。 */
+		private final int mcuRowCount;
+		/** 成分ごとのDC成分の予測値。 */
+		private final int[] dcPredictions;
+		/** 符号表（0：輝度、1：色差）ごとの、DC成分の符号の出現頻度。 */
+		private final int[][] dcFrequencies = new int[2][257];
+		/** 符号表（0：輝度、1：色差）ごとの、AC成分の符号の出現頻度。 */
+		private final int[][] acFrequencies = new int[2][257];
+		/** 符号表ごとのDC成分の符号表（符号長と値の一覧）。 */
+		private final int[][][] dcTables = new int[2][][];
+		/** 符号表ごとのAC成分の符号表（符号長と値の一覧）。 */
+		private final int[][][] acTables = new int[2][][];
+		/** 符号表ごとの、DC成分の値から符号（上位16ビット：符号長、下位16ビット：符号）への対応表。 */
+		private final int[][] dcCodes = new int[2][];
+		/** 符号表ごとの、AC成分の値から符号（上位16ビット：符号長、下位16ビット：符号）への対応表。 */
+		private final int[][] acCodes = new int[2][];
+		/** 符号化したエントロピー符号化データ。 */
+		private ByteArrayOutputStream output;
+		/** 書き出し待ちのビット。 */
+		private long bitBuffer;
+		/** 書き出し待ちのビット数。 */
+		private int bitCount;
+
+		/**
+		 * 指定されたフレームと切り抜き領域で {@code EntropyEncoder} を構築します。
+		 *
+		 * @param frame 切り抜く画像のフレーム情報。
+		 * @param region 切り抜く領域。
+		 */
+		EntropyEncoder(Frame frame, Rectangle region) {
+			this.frame = frame;
+			this.region = region;
+			this.mcuColumnStart = region.x / frame.mcuWidth;
+			this.mcuRowStart = region.y / frame.mcuHeight;
+			this.mcuColumnCount = (region.width + frame.mcuWidth - 1) / frame.mcuWidth;
+			this.mcuRowCount = (region.height + frame.mcuHeight - 1) / frame.mcuHeight;
+			this.dcPredictions = new int[frame.componentIds.length];
+		}
+
+		/**
+		 * 復号された1つのブロックが切り抜く領域内にある場合に、そのブロックを符号化します。
+		 *
+		 * @param componentIndex 成分の番号。
+		 * @param blockRow 成分内でのブロックの行。
+		 * @param blockColumn 成分内でのブロックの列。
+		 * @param coefficients ブロックの係数（自然順）。
+		 */
+		void handle(int componentIndex, int blockRow, int blockColumn, int[] coefficients) {
+			int mcuRow = blockRow / this.frame.v[componentIndex] - this.mcuRowStart;
+			int mcuColumn = blockColumn / this.frame.h[componentIndex] - this.mcuColumnStart;
+			if (mcuRow < 0 || mcuRow >= this.mcuRowCount || mcuColumn < 0 || mcuColumn >= this.mcuColumnCount) {
+				return;
+			}
+			this.encodeBlock(componentIndex, coefficients);
+		}
+
+		/**
+		 * 集計した出現頻度から最適な符号表を生成し、以降は実際に符号化するように切り替えます。
+		 */
+		void startWriting() {
+			int tableCount = (this.frame.componentIds.length == 1) ? 1 : 2;
+			for (int table = 0; table < tableCount; table++) {
+				this.dcTables[table] = createOptimalTable(this.dcFrequencies[table]);
+				this.acTables[table] = createOptimalTable(this.acFrequencies[table]);
+				this.dcCodes[table] = createCodes(this.dcTables[table]);
+				this.acCodes[table] = createCodes(this.acTables[table]);
+			}
+			Arrays.fill(this.dcPredictions, 0);
+			this.output = new ByteArrayOutputStream();
+		}
+
+		/**
+		 * 1つのブロックの係数を符号化します（集計中は出現頻度のみを数えます）。
+		 *
+		 * @param componentIndex 成分の番号。
+		 * @param coefficients ブロックの係数（自然順）。
+		 */
+		private void encodeBlock(int componentIndex, int[] coefficients) {
+			int table = (componentIndex == 0) ? 0 : 1;
+
+			int dc = coefficients[0];
+			int diff = dc - this.dcPredictions[componentIndex];
+			this.dcPredictions[componentIndex] = dc;
+			int size = getMagnitudeCategory(diff);
+			this.writeSymbol(this.dcFrequencies[table], this.dcCodes[table], size);
+			this.writeMagnitude(diff, size);
+
+			int run = 0;
+			for (int k = 1; k < 64; k++) {
+				int value = coefficients[JpegDecoder.ZIGZAG_TO_NATURAL[k]];
+				if (value == 0) {
+					run++;
+					continue;
+				}
+				while (run > 15) {
+					this.writeSymbol(this.acFrequencies[table], this.acCodes[table], 0xF0);
+					run -= 16;
+				}
+				size = getMagnitudeCategory(value);
+				this.writeSymbol(this.acFrequencies[table], this.acCodes[table], (run << 4) | size);
+				this.writeMagnitude(value, size);
+				run = 0;
+			}
+			if (run > 0) {
+				this.writeSymbol(this.acFrequencies[table], this.acCodes[table], 0x00);
+			}
+		}
+
+		/**
+		 * ハフマン符号の値を1つ書き出します（集計中は出現頻度を数えます）。
+		 *
+		 * @param frequencies 出現頻度。
+		 * @param codes 値から符号への対応表。
+		 * @param symbol 値。
+		 */
+		private void writeSymbol(int[] frequencies, int[] codes, int symbol) {
+			if (this.output == null) {
+				frequencies[symbol]++;
+				return;
+			}
+			int code = codes[symbol];
+			this.writeBits(code & 0xFFFF, code >>> 16);
+		}
+
+		/**
+		 * 係数の値の下位ビット（符号化規則に従い、負の値は1を引いた値）を書き出します。
+		 *
+		 * @param value 係数の値。
+		 * @param size 値のビット数。
+		 */
+		private void writeMagnitude(int value, int size) {
+			if (this.output == null || size == 0) {
+				return;
+			}
+			this.writeBits((value < 0) ? value - 1 : value, size);
+		}
+
+		/**
+		 * 指定されたビット数を書き出します。0xFF のバイトの後には 0x00 を挿入します。
+		 *
+		 * @param bits 書き出すビット（下位 {@code count} ビットが有効）。
+		 * @param count ビット数。
+		 */
+		private void writeBits(int bits, int count) {
+			this.bitBuffer = (this.bitBuffer << count) | (bits & ((1L << count) - 1));
+			this.bitCount += count;
+			while (this.bitCount >= 8) {
+				int b = (int) (this.bitBuffer >>> (this.bitCount - 8)) & 0xFF;
+				this.output.write(b);
+				if (b == 0xFF) {
+					this.output.write(0x00);
+				}
+				this.bitCount -= 8;
+			}
+		}
+
+		/**
+		 * 符号化したデータを、元のJPEGデータのセグメントと合わせて1つのJPEGデータにします。
+		 *
+		 * @param data 元のJPEGデータ。
+		 * @return 切り抜いた画像のJPEGデータ。
+		 */
+		byte[] toJpeg(byte[] data) {
+			// 最後のバイトの残りのビットは1で埋める
+			if (this.bitCount > 0) {
+				this.writeBits(0x7F, 8 - this.bitCount);
+			}
+
+			int componentCount = this.frame.componentIds.length;
+			ByteArrayOutputStream jpeg = new ByteArrayOutputStream(this.output.size() + 1024);
+			jpeg.write(0xFF);
+			jpeg.write(0xD8);
+			for (int[] segment : this.frame.copiedSegmentList) {
+				jpeg.write(data, segment[0], segment[1] - segment[0]);
+			}
+
+			// SOF0
+			writeMarker(jpeg, 0xC0, 8 + componentCount * 3);
+			jpeg.write(8);
+			writeShort(jpeg, this.region.height);
+			writeShort(jpeg, this.region.width);
+			jpeg.write(componentCount);
+			for (int i = 0; i < componentCount; i++) {
+				jpeg.write(this.frame.componentIds[i]);
+				jpeg.write((this.frame.h[i] << 4) | this.frame.v[i]);
+				jpeg.write(this.frame.quantizationTableIndexes[i]);
+			}
+
+			// DHT
+			int tableCount = (componentCount == 1) ? 1 : 2;
+			for (int table = 0; table < tableCount; table++) {
+				writeHuffmanTable(jpeg, table, this.dcTables[table]);
+				writeHuffmanTable(jpeg, 0x10 | table, this.acTables[table]);
+			}
+
+			// SOS
+			writeMarker(jpeg, 0xDA, 6 + componentCount * 2);
+			jpeg.write(componentCount);
+			for (int i = 0; i < componentCount; i++) {
+				jpeg.write(this.frame.componentIds[i]);
+				jpeg.write((i == 0) ? 0x00 : 0x11);
+			}
+			jpeg.write(0);
+			jpeg.write(63);
+			jpeg.write(0);
+
+			byte[] entropyCodedData = this.output.toByteArray();
+			jpeg.write(entropyCodedData, 0, entropyCodedData.length);
+			jpeg.write(0xFF);
+			jpeg.write(0xD9);
+			return jpeg.toByteArray();
+		}
+	}
+
+	/**
+	 * 値を符号化するのに必要なビット数（JPEGの大きさのカテゴリ）を求めます。
+	 *
+	 * @param value 値。
+	 * @return ビット数。
+	 */
+	private static int getMagnitudeCategory(int value) {
+		return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+	}
+
+	/**
+	 * 出現頻度から、符号長が16ビット以下の最適なハフマン符号表を生成します（JPEG仕様書 Annex K.2 の手順）。
+	 *
+	 * @param sourceFrequencies 値（0〜255）ごとの出現頻度。
+	 * @return 符号長（1〜16）ごとの符号の数（要素0）と、符号長の順の値の一覧（要素1）。
+	 */
+	private static int[][] createOptimalTable(int[] sourceFrequencies) {
+		long[] frequencies = new long[257];
+		for (int i = 0; i < 256; i++) {
+			frequencies[i] = sourceFrequencies[i];
+		}
+		// すべて1のビットからなる符号が生じないように、予約用の値を1つ加える
+		frequencies[256] = 1;
+
+		int[] codeSizes = new int[257];
+		int[] others = new int[257];
+		Arrays.fill(others, -1);
+
+		while (true) {
+			int c1 = -1;
+			long v1 = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (frequencies[i] > 0 && frequencies[i] <= v1) {
+					v1 = frequencies[i];
+					c1 = i;
+				}
+			}
+			int c2 = -1;
+			long v2 = Long.MAX_VALUE;
+			for (int i = 0; i <= 256; i++) {
+				if (frequencies[i] > 0 && frequencies[i] <= v2 && i != c1) {
+					v2 = frequencies[i];
+					c2 = i;
+				}
+			}
+			if (c2 < 0) {
+				break;
+			}
+
+			frequencies[c1] += frequencies[c2];
+			frequencies[c2] = 0;
+			codeSizes[c1]++;
+			while (others[c1] >= 0) {
+				c1 = others[c1];
+				codeSizes[c1]++;
+			}
+			others[c1] = c2;
+			codeSizes[c2]++;
+			while (others[c2] >= 0) {
+				c2 = others[c2];
+				codeSizes[c2]++;
+			}
+		}
+
+		int[] bits = new int[33];
+		for (int i = 0; i <= 256; i++) {
+			if (codeSizes[i] > 0) {
+				bits[codeSizes[i]]++;
+			}
+		}
+		// 16ビットを超える符号長を切り詰める
+		for (int i = 32; i > 16; i--) {
+			while (bits[i] > 0) {
+				int j = i - 2;
+				while (bits[j] == 0) {
+					j--;
+				}
+				bits[i] -= 2;
+				bits[i - 1]++;
+				bits[j + 1] += 2;
+				bits[j]--;
+			}
+		}
+		// 予約用の値の符号を取り除く
+		int longest = 16;
+		while (bits[longest] == 0) {
+			longest--;
+		}
+		bits[longest]--;
+
+		int[] counts = new int[16];
+		System.arraycopy(bits, 1, counts, 0, 16);
+		int[] values = new int[256];
+		int valueCount = 0;
+		for (int size = 1; size <= 32; size++) {
+			for (int i = 0; i < 256; i++) {
+				if (codeSizes[i] == size) {
+					values[valueCount++] = i;
+				}
+			}
+		}
+		return new int[][] { counts, Arrays.copyOf(values, valueCount) };
+	}
+
+	/**
+	 * 符号表から、値ごとの符号の対応表を生成します。
+	 *
+	 * @param table 符号長ごとの符号の数と、値の一覧。
+	 * @return 値から符号（上位16ビット：符号長、下位16ビット：符号）への対応表。
+	 */
+	private static int[] createCodes(int[][] table) {
+		int[] codes = new int[256];
+		int code = 0;
+		int index = 0;
+		for (int length = 1; length <= 16; length++) {
+			for (int i = 0; i < table[0][length - 1]; i++) {
+				codes[table[1][index++]] = (length << 16) | code;
+				code++;
+			}
+			code <<= 1;
+		}
+		return codes;
+	}
+
+	/**
+	 * DHTマーカーで1つのハフマン符号表を書き出します。
+	 *
+	 * @param output 書き出し先。
+	 * @param tableClassAndIndex 符号表の種類（上位4ビット）と番号（下位4ビット）。
+	 * @param table 符号長ごとの符号の数と、値の一覧。
+	 */
+	private static void writeHuffmanTable(ByteArrayOutputStream output, int tableClassAndIndex, int[][] table) {
+		writeMarker(output, 0xC4, 2 + 1 + 16 + table[1].length);
+		output.write(tableClassAndIndex);
+		for (int count : table[0]) {
+			output.write(count);
+		}
+		for (int value : table[1]) {
+			output.write(value);
+		}
+	}
+
+	/**
+	 * マーカーとセグメント長を書き出します。
+	 *
+	 * @param output 書き出し先。
+	 * @param marker マーカーの2バイト目。
+	 * @param length セグメント長（セグメント長自体の2バイトを含む）。
+	 */
+	private static void writeMarker(ByteArrayOutputStream output, int marker, int length) {
+		output.write(0xFF);
+		output.write(marker);
+		writeShort(output, length);
+	}
+
+	/**
+	 * ビッグエンディアンの16ビット整数を書き出します。
+	 *
+	 * @param output 書き出し先。
+	 * @param value 値。
+	 */
+	private static void writeShort(ByteArrayOutputStream output, int value) {
+		output.write(value >> 8);
+		output.write(value & 0xFF);
+	}
+}
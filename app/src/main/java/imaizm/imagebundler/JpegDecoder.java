@@ -0,0 +1,1331 @@
+package imaizm.imagebundler;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * JPEG画像を縮小しながらデコードする、Javaのみで実装されたデコーダクラスです。
+ * <p>
+ * 逆離散コサイン変換（IDCT）を各ブロックの低周波成分のみで行うことで、
+ * 画像を 1/1、1/2、1/4、1/8 の大きさで直接デコードします（libjpeg の scale_denom に相当）。
+ * 縮小後の大きさでのみIDCT、色差成分の補間、色空間の変換を行うため、
+ * 元の大きさでデコードしてから縮小する場合に比べて処理量が大幅に少なくなります。
+ * </p>
+ * <p>
+ * 対応しているのは、ハフマン符号化された8ビット精度のベースライン形式・拡張シーケンシャル形式・プログレッシブ形式で、
+ * 成分数が1（グレースケール）または3（YCbCrまたはRGB）の画像です。
+ * 出力は {@link BufferedImage#TYPE_BYTE_GRAY} または {@link BufferedImage#TYPE_3BYTE_BGR} の画像です。
+ * 算術符号化、12ビット精度、CMYKなどの未対応の画像の場合は null を返し、
+ * 呼び出し元が {@link javax.imageio.ImageIO} などにフォールバックできるようにします。
+ * </p>
+ */
+public class JpegDecoder {
+
+	/** ジグザグ順の位置から、ブロック内の自然順（行優先）の位置への対応表。 */
+	static final int[] ZIGZAG_TO_NATURAL = {
+		 0,  1,  8, 16,  9,  2,  3, 10,
+		17, 24, 32, 25, 18, 11,  4,  5,
+		12, 19, 26, 33, 40, 48, 41, 34,
+		27, 20, 13,  6,  7, 14, 21, 28,
+		35, 42, 49, 56, 57, 50, 43, 36,
+		29, 22, 15, 23, 30, 37, 44, 51,
+		58, 59, 52, 45, 38, 31, 39, 46,
+		53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	/**
+	 * 縮小後のブロックの大きさ（1、2、4、8）ごとのIDCTの係数表。
+	 * {@code IDCT_TABLES[k][x * k + u]} は、k点の出力の位置 x における周波数 u の基底関数の値（正規化係数を含む）です。
+	 */
+	private static final float[][] IDCT_TABLES = new float[9][];
+	static {
+		for (int k = 1; k <= 8; k <<= 1) {
+			float[] table = new float[k * k];
+			for (int x = 0; x < k; x++) {
+				for (int u = 0; u < k; u++) {
+					double c = (u == 0) ? 1 / Math.sqrt(2) : 1;
+					table[x * k + u] = (float) (c / 2 * Math.cos((2 * x + 1) * u * Math.PI / (2 * k)));
+				}
+			}
+			IDCT_TABLES[k] = table;
+		}
+	}
+
+	/**
+	 * 指定された画像ファイルを、指定された大きさへの変換に十分な解像度まで縮小してデコードします。
+	 * <p>
+	 * 画像の大きさと {@link ImageConverter#getScaleFactor(int, int, int, int)} から縮小率を求め、
+	 * 変換後の大きさを下回らない範囲で最も小さいデコードの大きさ（1/2、1/4、1/8）を選択します。
+	 * 縮小の必要がない場合（1/1でデコードすることになる場合）は、標準のデコーダの方が高速なため null を返します。
+	 * </p>
+	 *
+	 * @param inputFile 読み込む画像ファイル。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @return デコードされた画像。JPEG形式でない場合、未対応の形式の場合、縮小の必要がない場合は null。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合、またはJPEGデータが壊れている場合。
+	 */
+	public static BufferedImage readScaled(File inputFile, int width, int height) throws IOException {
+		return readScaled(
+			Files.readAllBytes(inputFile.toPath()),
+			(srcWidth, srcHeight) -> ImageConverter.getScaleFactor(srcWidth, srcHeight, width, height));
+	}
+
+	/**
+	 * 指定されたJPEGデータを、指定された関数が求める縮小率に十分な解像度まで縮小してデコードします。
+	 * <p>
+	 * 1つの画像から複数の大きさの画像を変換する場合に、それぞれの縮小率の最大値を返す関数を指定することで、
+	 * デコードを1回で済ませるために使用します。
+	 * 縮小の必要がない場合や未対応の形式の場合の扱いは {@link #readScaled(File, int, int)} と同じです。
+	 * </p>
+	 *
+	 * @param data JPEGデータ。
+	 * @param scaleFactorFunction 画像の幅と高さから、変換時の縮小率を求める関数。
+	 * @return デコードされた画像。JPEG形式でない場合、未対応の形式の場合、縮小の必要がない場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 */
+	public static BufferedImage readScaled(byte[] data, ToDoubleBiFunction<Integer, Integer> scaleFactorFunction) throws IOException {
+		return readScaled(data, scaleFactorFunction, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定されたJPEGデータを、ヒープ外に展開する画素数の閾値を指定して縮小しながらデコードします。
+	 * <p>
+	 * 画素数が {@code offHeapPixelThreshold} を超える画像は、
+	 * {@link OffHeapImageFactory#read(byte[], long)} によるメモリマップでの処理に任せるため null を返します。
+	 * </p>
+	 *
+	 * @param data JPEGデータ。
+	 * @param scaleFactorFunction 画像の幅と高さから、変換時の縮小率を求める関数。
+	 * @param offHeapPixelThreshold 画像をヒープ外に展開する画素数の閾値。
+	 * @return デコードされた画像。JPEG形式でない場合、未対応の形式の場合、縮小の必要がない場合、画素数が閾値を超える場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 * @see #readScaled(byte[], ToDoubleBiFunction)
+	 */
+	public static BufferedImage readScaled(
+		byte[] data, ToDoubleBiFunction<Integer, Integer> scaleFactorFunction, long offHeapPixelThreshold) throws IOException {
+		Dimension size = readSize(data);
+		if (size == null) {
+			return null;
+		}
+		if (OffHeapImageFactory.isOversized(size.width, size.height, offHeapPixelThreshold)) {
+			// 係数の保持領域がヒープ上に確保されるため、巨大な画像はメモリマップによる従来の処理に任せる
+			return null;
+		}
+
+		int scale = getScale(scaleFactorFunction.applyAsDouble(size.width, size.height));
+		if (scale == 8) {
+			return null;
+		}
+		return decode(data, scale);
+	}
+
+	/**
+	 * 指定された縮小率で画像を変換する場合に十分な、デコード時の大きさを求めます。
+	 *
+	 * @param scaleFactor 変換時の縮小率。
+	 * @return デコード時の大きさ（8分の1単位で、1、2、4、8のいずれか）。
+	 */
+	public static int getScale(double scaleFactor) {
+		int scale = 1;
+		while (scale < 8 && scale / 8.0 < scaleFactor) {
+			scale <<= 1;
+		}
+		return scale;
+	}
+
+	/**
+	 * JPEGデータのフレームヘッダ（SOFマーカー）から画像の大きさを読み取ります。
+	 *
+	 * @param data JPEGデータ。
+	 * @return 画像の大きさ。JPEG形式でない場合、または未対応の形式の場合は null。
+	 */
+	public static Dimension readSize(byte[] data) {
+		if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+			return null;
+		}
+		int pos = 2;
+		while (pos + 4 <= data.length) {
+			if ((data[pos] & 0xFF) != 0xFF) {
+				return null;
+			}
+			int marker = data[pos + 1] & 0xFF;
+			if (marker == 0xFF) {
+				pos++;
+				continue;
+			}
+			int length = readUnsignedShort(data, pos + 2);
+			if (marker == 0xC0 || marker == 0xC1 || marker == 0xC2) {
+				if (pos + 9 > data.length || (data[pos + 4] & 0xFF) != 8) {
+					return null;
+				}
+				return new Dimension(readUnsignedShort(data, pos + 7), readUnsignedShort(data, pos + 5));
+			}
+			if (isUnsupportedFrameMarker(marker) || marker == 0xDA || marker == 0xD9) {
+				return null;
+			}
+			pos += 2 + length;
+		}
+		return null;
+	}
+
+	/**
+	 * 指定されたJPEGデータを、指定された大きさでデコードします。
+	 *
+	 * @param data JPEGデータ。
+	 * @param scale デコード時の大きさ（8分の1単位で、1、2、4、8のいずれか）。
+	 * @return デコードされた画像。未対応の形式の場合は null。
+	 * @throws IOException JPEGデータが壊れている場合。
+	 */
+	public static BufferedImage decode(byte[] data, int scale) throws IOException {
+		if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+			throw new IllegalArgumentException("scale : " + scale);
+		}
+		try {
+			return new Decoder(data, scale).decode();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt JPEG data", e);
+		}
+	}
+
+	/**
+	 * シーケンシャル形式のJPEGデータのエントロピー符号化データを復号し、
+	 * 各ブロックの量子化された係数をデコードの順に {@link BlockHandler} に渡します。
+	 * <p>
+	 * IDCTは行いません。係数の段階での加工（可逆な切り抜きなど）に使用します。
+	 * </p>
+	 *
+	 * @param data JPEGデータ。
+	 * @param blockHandler 各ブロックの係数を受け取るハンドラ。
+	 * @return すべてのブロックを復号した場合は true。プログレッシブ形式などの未対応の形式の場合は false。
+	 * @throws IOException JPEGデータが壊れている場合、またはハンドラでエラーが発生した場合。
+	 */
+	static boolean readCoefficients(byte[] data, BlockHandler blockHandler) throws IOException {
+		Decoder decoder = new Decoder(data, 8);
+		decoder.blockHandler = blockHandler;
+		try {
+			return decoder.readSegments();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt JPEG data", e);
+		}
+	}
+
+	/**
+	 * 復号したブロックの係数を受け取るハンドラです。
+	 */
+	@FunctionalInterface
+	interface BlockHandler {
+
+		/**
+		 * 1つのブロックの係数を受け取ります。
+		 *
+		 * @param componentIndex 成分の番号（フレームヘッダでの順序）。
+		 * @param blockRow 成分内でのブロックの行。
+		 * @param blockColumn 成分内でのブロックの列。
+		 * @param coefficients ブロックの係数（自然順、量子化されたまま、DC成分は予測を加えた値）。呼び出し後に再利用されます。
+		 * @throws IOException 処理中にエラーが発生した場合。
+		 */
+		void handle(int componentIndex, int blockRow, int blockColumn, int[] coefficients) throws IOException;
+	}
+
+	/**
+	 * 指定されたマーカーが、未対応の符号化方式のフレームヘッダ（SOFマーカー）かどうかを判定します。
+	 *
+	 * @param marker マーカーの2バイト目。
+	 * @return 可逆符号化、階層符号化、算術符号化のフレームヘッダの場合は true。
+	 */
+	private static boolean isUnsupportedFrameMarker(int marker) {
+		return marker == 0xC3 || (marker >= 0xC5 && marker <= 0xC7) || (marker >= 0xC9 && marker <= 0xCB) || (marker >= 0xCD && marker <= 0xCF);
+	}
+
+	/**
+	 * ビッグエンディアンの符号なし16ビット整数を読み取ります。
+	 *
+	 * @param data 読み取り元のバイト列。
+	 * @param pos 読み取り位置。
+	 * @return 読み取った値。
+	 */
+	private static int readUnsignedShort(byte[] data, int pos) {
+		return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+	}
+
+	/**
+	 * ハフマン符号表を表すクラスです。
+	 * <p>
+	 * 9ビット以下の符号は参照表で1回で復号し、それより長い符号は符号長ごとの最大値と比較して復号します。
+	 * </p>
+	 */
+	private static class HuffmanTable {
+
+		/** 参照表で復号する符号の最大ビット数。 */
+		static final int LOOKUP_BITS = 9;
+
+		/** 先頭 {@value #LOOKUP_BITS} ビットから、(符号長 &lt;&lt; 8) | 値 を引く参照表。該当しない場合は0。 */
+		final int[] lookup = new int[1 << LOOKUP_BITS];
+		/** 符号長ごとの符号の最大値（該当する符号がない場合は-1）。 */
+		final int[] maxCode = new int[18];
+		/** 符号長ごとの、最小の符号に対応する値の位置から最小の符号を引いた値。 */
+		final int[] valueOffset = new int[17];
+		/** 符号に対応する値（符号の昇順）。 */
+		final int[] values;
+
+		/**
+		 * DHTマーカーの内容から {@code HuffmanTable} を構築します。
+		 *
+		 * @param counts 符号長（1〜16）ごとの符号の数。
+		 * @param values 符号に対応する値。
+		 */
+		HuffmanTable(int[] counts, int[] values) {
+			this.values = values;
+			int code = 0;
+			int index = 0;
+			for (int length = 1; length <= 16; length++) {
+				this.valueOffset[length] = index - code;
+				for (int i = 0; i < counts[length - 1]; i++) {
+					if (length <= LOOKUP_BITS) {
+						int shift = LOOKUP_BITS - length;
+						for (int j = 0; j < (1 << shift); j++) {
+							this.lookup[(code << shift) | j] = (length << 8) | values[index];
+						}
+					}
+					code++;
+					index++;
+				}
+				this.maxCode[length] = (counts[length - 1] > 0) ? code - 1 : -1;
+				code <<= 1;
+			}
+			this.maxCode[17] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * 画像の成分（Y、Cb、Crなど）ごとの情報とデコード結果を保持するクラスです。
+	 */
+	private static class Component {
+		/** フレームヘッダでの成分の順序。 */
+		int index;
+		/** 成分ID。 */
+		int id;
+		/** 水平方向のサンプリング係数。 */
+		int h;
+		/** 垂直方向のサンプリング係数。 */
+		int v;
+		/** 量子化テーブルの番号。 */
+		int quantizationTableIndex;
+		/** MCUの境界まで拡張した、横方向のブロック数。 */
+		int blocksPerLine;
+		/** MCUの境界まで拡張した、縦方向のブロック数。 */
+		int blocksPerColumn;
+		/** 画像の範囲内にある横方向のブロック数（非インターリーブのスキャンで使用）。 */
+		int usedBlocksPerLine;
+		/** 画像の範囲内にある縦方向のブロック数（非インターリーブのスキャンで使用）。 */
+		int usedBlocksPerColumn;
+		/** 縮小後の大きさでの画素値（横 blocksPerLine * scale、縦 blocksPerColumn * scale）。 */
+		byte[] plane;
+		/** プログレッシブ形式の場合の、各ブロックの低周波成分（scale x scale）の係数（量子化されたまま）。 */
+		short[] coefficients;
+		/** プログレッシブ形式の場合の、各ブロックの非ゼロ係数のジグザグ順の位置のビットマスク。 */
+		long[] nonzeroMasks;
+		/** DC成分の予測値。 */
+		int dcPrediction;
+		/** このスキャンで使用するDC成分のハフマン符号表。 */
+		HuffmanTable dcTable;
+		/** このスキャンで使用するAC成分のハフマン符号表。 */
+		HuffmanTable acTable;
+	}
+
+	/**
+	 * 1つのJPEGデータのデコード処理を行うクラスです。
+	 */
+	private static class Decoder {
+
+		/** JPEGデータ。 */
+		private final byte[] data;
+		/** デコード時の大きさ（8分の1単位）。 */
+		private final int scale;
+		/** 量子化テーブル（自然順）。 */
+		private final int[][] quantizationTables = new int[4][];
+		/** DC成分のハフマン符号表。 */
+		private final HuffmanTable[] dcTables = new HuffmanTable[4];
+		/** AC成分のハフマン符号表。 */
+		private final HuffmanTable[] acTables = new HuffmanTable[4];
+		/** 係数を受け取るハンドラ。null でない場合はIDCTを行わずに係数を渡す。 */
+		private BlockHandler blockHandler;
+		/** 1ブロック分の係数の作業領域（自然順）。 */
+		private final int[] blockCoefficients = new int[64];
+		/** IDCTの作業領域。 */
+		private final float[] idctWork = new float[64];
+
+		/** 画像の幅。 */
+		private int width;
+		/** 画像の高さ。 */
+		private int height;
+		/** プログレッシブ形式かどうか。 */
+		private boolean progressive;
+		/** 成分。 */
+		private Component[] components;
+		/** 水平方向のサンプリング係数の最大値。 */
+		private int maxH;
+		/** 垂直方向のサンプリング係数の最大値。 */
+		private int maxV;
+		/** 横方向のMCU数。 */
+		private int mcusPerLine;
+		/** 縦方向のMCU数。 */
+		private int mcusPerColumn;
+		/** リスタートインターバル（MCU数）。0の場合はリスタートマーカーなし。 */
+		private int restartInterval;
+		/** AdobeのAPP14マーカーの色変換の値。マーカーがない場合は-1。 */
+		private int adobeTransform = -1;
+
+		/** 読み取り位置。 */
+		private int pos;
+		/** エントロピー符号化データのビットバッファ。 */
+		private long bitBuffer;
+		/** ビットバッファ内の有効なビット数。 */
+		private int bitCount;
+		/** エントロピー符号化データの終端（マーカー）に達したかどうか。 */
+		private boolean markerReached;
+		/** プログレッシブ形式のAC成分のスキャンで、残りのEOBの数。 */
+		private int eobRun;
+
+		/**
+		 * 指定されたJPEGデータと大きさで {@code Decoder} を構築します。
+		 *
+		 * @param data JPEGデータ。
+		 * @param scale デコード時の大きさ（8分の1単位）。
+		 */
+		Decoder(byte[] data, int scale) {
+			this.data = data;
+			this.scale = scale;
+		}
+
+		/**
+		 * JPEGデータをデコードします。
+		 *
+		 * @return デコードされた画像。未対応の形式の場合は null。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		BufferedImage decode() throws IOException {
+			if (!this.readSegments()) {
+				return null;
+			}
+			if (this.progressive) {
+				this.transformStoredCoefficients();
+			}
+			return this.createImage();
+		}
+
+		/**
+		 * JPEGデータの各セグメントを読み取り、スキャンのエントロピー符号化データを復号します。
+		 *
+		 * @return 対応している形式で、フレームヘッダを読み取った場合は true。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		boolean readSegments() throws IOException {
+			if (this.data.length < 4 || (this.data[0] & 0xFF) != 0xFF || (this.data[1] & 0xFF) != 0xD8) {
+				return false;
+			}
+			this.pos = 2;
+
+			boolean frameRead = false;
+			while (true) {
+				int marker = this.nextMarker();
+				if (marker < 0 || marker == 0xD9) {
+					break;
+				}
+				if (marker == 0xD8 || (marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+					continue;
+				}
+
+				int length = readUnsignedShort(this.data, this.pos);
+				int segmentStart = this.pos + 2;
+				int segmentEnd = this.pos + length;
+
+				if (marker == 0xC0 || marker == 0xC1 || marker == 0xC2) {
+					if (!this.readFrameHeader(segmentStart, marker == 0xC2)) {
+						return false;
+					}
+					frameRead = true;
+				} else if (isUnsupportedFrameMarker(marker) || marker == 0xDC) {
+					return false;
+				} else if (marker == 0xC4) {
+					this.readHuffmanTables(segmentStart, segmentEnd);
+				} else if (marker == 0xDB) {
+					this.readQuantizationTables(segmentStart, segmentEnd);
+				} else if (marker == 0xDD) {
+					this.restartInterval = readUnsignedShort(this.data, segmentStart);
+				} else if (marker == 0xEE) {
+					if (length >= 12 &&
+						this.data[segmentStart] == 'A' && this.data[segmentStart + 1] == 'd' &&
+						this.data[segmentStart + 2] == 'o' && this.data[segmentStart + 3] == 'b' &&
+						this.data[segmentStart + 4] == 'e') {
+						this.adobeTransform = this.data[segmentStart + 11] & 0xFF;
+					}
+				} else if (marker == 0xDA) {
+					if (!frameRead) {
+						throw new IOException("SOS before SOF");
+					}
+					this.pos = segmentEnd;
+					this.readScan(segmentStart);
+					continue;
+				}
+				this.pos = segmentEnd;
+			}
+
+			return frameRead;
+		}
+
+		/**
+		 * 次のマーカーまで読み進め、マーカーの2バイト目を返します。
+		 * 読み取り位置はマーカーの直後（セグメント長の位置）になります。
+		 *
+		 * @return マーカーの2バイト目。データの終端に達した場合は-1。
+		 */
+		private int nextMarker() {
+			while (this.pos + 1 < this.data.length) {
+				if ((this.data[this.pos] & 0xFF) == 0xFF) {
+					int marker = this.data[this.pos + 1] & 0xFF;
+					if (marker != 0x00 && marker != 0xFF) {
+						this.pos += 2;
+						return marker;
+					}
+				}
+				this.pos++;
+			}
+			return -1;
+		}
+
+		/**
+		 * フレームヘッダ（SOFマーカー）を読み取り、各成分の記憶域を確保します。
+		 *
+		 * @param start セグメントの内容の開始位置。
+		 * @param progressive プログレッシブ形式かどうか。
+		 * @return 対応している形式の場合は true。
+		 */
+		private boolean readFrameHeader(int start, boolean progressive) {
+			int precision = this.data[start] & 0xFF;
+			this.height = readUnsignedShort(this.data, start + 1);
+			this.width = readUnsignedShort(this.data, start + 3);
+			int componentCount = this.data[start + 5] & 0xFF;
+			if (precision != 8 || this.width == 0 || this.height == 0 || (componentCount != 1 && componentCount != 3)) {
+				return false;
+			}
+			if (progressive && this.blockHandler != null) {
+				return false;
+			}
+			this.progressive = progressive;
+
+			this.components = new Component[componentCount];
+			for (int i = 0; i < componentCount; i++) {
+				Component component = new Component();
+				int offset = start + 6 + i * 3;
+				component.index = i;
+				component.id = this.data[offset] & 0xFF;
+				component.h = (this.data[offset + 1] & 0xFF) >> 4;
+				component.v = this.data[offset + 1] & 0x0F;
+				component.quantizationTableIndex = this.data[offset + 2] & 0x03;
+				if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4) {
+					return false;
+				}
+				this.maxH = Math.max(this.maxH, component.h);
+				this.maxV = Math.max(this.maxV, component.v);
+				this.components[i] = component;
+			}
+			if (componentCount == 1) {
+				// 1成分の場合、サンプリング係数に関わらず各ブロックが1つのMCUとなる
+				this.components[0].h = this.components[0].v = this.maxH = this.maxV = 1;
+			}
+
+			this.mcusPerLine = (this.width + 8 * this.maxH - 1) / (8 * this.maxH);
+			this.mcusPerColumn = (this.height + 8 * this.maxV - 1) / (8 * this.maxV);
+			for (Component component : this.components) {
+				component.blocksPerLine = this.mcusPerLine * component.h;
+				component.blocksPerColumn = this.mcusPerColumn * component.v;
+				int componentWidth = (this.width * component.h + this.maxH - 1) / this.maxH;
+				int componentHeight = (this.height * component.v + this.maxV - 1) / this.maxV;
+				component.usedBlocksPerLine = (componentWidth + 7) / 8;
+				component.usedBlocksPerColumn = (componentHeight + 7) / 8;
+				if (this.blockHandler != null) {
+					continue;
+				}
+				component.plane = new byte[component.blocksPerLine * this.scale * component.blocksPerColumn * this.scale];
+				if (progressive) {
+					int blockCount = component.blocksPerLine * component.blocksPerColumn;
+					component.coefficients = new short[blockCount * this.scale * this.scale];
+					component.nonzeroMasks = new long[blockCount];
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * ハフマン符号表（DHTマーカー）を読み取ります。
+		 *
+		 * @param start セグメントの内容の開始位置。
+		 * @param end セグメントの終了位置。
+		 */
+		private void readHuffmanTables(int start, int end) {
+			int offset = start;
+			while (offset < end) {
+				int tableClass = (this.data[offset] & 0xFF) >> 4;
+				int tableIndex = this.data[offset] & 0x03;
+				int[] counts = new int[16];
+				int total = 0;
+				for (int i = 0; i < 16; i++) {
+					counts[i] = this.data[offset + 1 + i] & 0xFF;
+					total += counts[i];
+				}
+				int[] values = new int[total];
+				for (int i = 0; i < total; i++) {
+					values[i] = this.data[offset + 17 + i] & 0xFF;
+				}
+				HuffmanTable table = new HuffmanTable(counts, values);
+				if (tableClass == 0) {
+					this.dcTables[tableIndex] = table;
+				} else {
+					this.acTables[tableIndex] = table;
+				}
+				offset += 17 + total;
+			}
+		}
+
+		/**
+		 * 量子化テーブル（DQTマーカー）を読み取ります。
+		 *
+		 * @param start セグメントの内容の開始位置。
+		 * @param end セグメントの終了位置。
+		 */
+		private void readQuantizationTables(int start, int end) {
+			int offset = start;
+			while (offset < end) {
+				int precision = (this.data[offset] & 0xFF) >> 4;
+				int tableIndex = this.data[offset] & 0x03;
+				offset++;
+				int[] table = new int[64];
+				for (int i = 0; i < 64; i++) {
+					if (precision == 0) {
+						table[ZIGZAG_TO_NATURAL[i]] = this.data[offset] & 0xFF;
+						offset++;
+					} else {
+						table[ZIGZAG_TO_NATURAL[i]] = readUnsignedShort(this.data, offset);
+						offset += 2;
+					}
+				}
+				this.quantizationTables[tableIndex] = table;
+			}
+		}
+
+		/**
+		 * スキャンヘッダ（SOSマーカー）を読み取り、続くエントロピー符号化データをデコードします。
+		 *
+		 * @param start スキャンヘッダの内容の開始位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void readScan(int start) throws IOException {
+			int componentCount = this.data[start] & 0xFF;
+			Component[] scanComponents = new Component[componentCount];
+			for (int i = 0; i < componentCount; i++) {
+				int id = this.data[start + 1 + i * 2] & 0xFF;
+				int tables = this.data[start + 2 + i * 2] & 0xFF;
+				Component component = null;
+				for (Component c : this.components) {
+					if (c.id == id) {
+						component = c;
+					}
+				}
+				if (component == null) {
+					throw new IOException("Unknown component in SOS : " + id);
+				}
+				component.dcTable = this.dcTables[tables >> 4];
+				component.acTable = this.acTables[tables & 0x03];
+				scanComponents[i] = component;
+			}
+			int offset = start + 1 + componentCount * 2;
+			int spectralStart = this.data[offset] & 0xFF;
+			int spectralEnd = this.data[offset + 1] & 0xFF;
+			int successiveHigh = (this.data[offset + 2] & 0xFF) >> 4;
+			int successiveLow = this.data[offset + 2] & 0x0F;
+
+			this.decodeScan(scanComponents, spectralStart, spectralEnd, successiveHigh, successiveLow);
+		}
+
+		/**
+		 * 1つのスキャンのエントロピー符号化データをデコードします。
+		 *
+		 * @param scanComponents スキャンに含まれる成分。
+		 * @param spectralStart スペクトル選択の開始位置（ジグザグ順）。
+		 * @param spectralEnd スペクトル選択の終了位置（ジグザグ順）。
+		 * @param successiveHigh 逐次近似の前回のビット位置。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeScan(
+			Component[] scanComponents,
+			int spectralStart,
+			int spectralEnd,
+			int successiveHigh,
+			int successiveLow)
+			throws IOException {
+
+			this.resetEntropyDecoder(scanComponents);
+
+			int mcuCount;
+			if (scanComponents.length == 1) {
+				mcuCount = scanComponents[0].usedBlocksPerLine * scanComponents[0].usedBlocksPerColumn;
+			} else {
+				mcuCount = this.mcusPerLine * this.mcusPerColumn;
+			}
+
+			for (int mcu = 0; mcu < mcuCount; mcu++) {
+				if (this.restartInterval > 0 && mcu > 0 && mcu % this.restartInterval == 0) {
+					this.processRestart(scanComponents);
+				}
+
+				if (scanComponents.length == 1) {
+					Component component = scanComponents[0];
+					int blockRow = mcu / component.usedBlocksPerLine;
+					int blockColumn = mcu % component.usedBlocksPerLine;
+					this.decodeBlock(component, blockRow, blockColumn, spectralStart, spectralEnd, successiveHigh, successiveLow);
+				} else {
+					int mcuRow = mcu / this.mcusPerLine;
+					int mcuColumn = mcu % this.mcusPerLine;
+					for (Component component : scanComponents) {
+						for (int v = 0; v < component.v; v++) {
+							for (int h = 0; h < component.h; h++) {
+								this.decodeBlock(
+									component,
+									mcuRow * component.v + v,
+									mcuColumn * component.h + h,
+									spectralStart, spectralEnd, successiveHigh, successiveLow);
+							}
+						}
+					}
+				}
+			}
+
+			// エントロピー符号化データの終端以降から次のマーカーを探す
+			this.pos = Math.min(this.pos, this.data.length);
+		}
+
+		/**
+		 * スキャンの開始時またはリスタートマーカーの位置で、エントロピー復号の状態を初期化します。
+		 *
+		 * @param scanComponents スキャンに含まれる成分。
+		 */
+		private void resetEntropyDecoder(Component[] scanComponents) {
+			this.bitBuffer = 0;
+			this.bitCount = 0;
+			this.markerReached = false;
+			this.eobRun = 0;
+			for (Component component : scanComponents) {
+				component.dcPrediction = 0;
+			}
+		}
+
+		/**
+		 * リスタートマーカー（RSTn）を読み飛ばし、エントロピー復号の状態を初期化します。
+		 *
+		 * @param scanComponents スキャンに含まれる成分。
+		 */
+		private void processRestart(Component[] scanComponents) {
+			while (this.pos + 1 < this.data.length) {
+				int b0 = this.data[this.pos] & 0xFF;
+				int b1 = this.data[this.pos + 1] & 0xFF;
+				if (b0 == 0xFF && b1 >= 0xD0 && b1 <= 0xD7) {
+					this.pos += 2;
+					break;
+				}
+				this.pos++;
+			}
+			this.resetEntropyDecoder(scanComponents);
+		}
+
+		/**
+		 * 1つのブロックをデコードします。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockRow ブロックの行。
+		 * @param blockColumn ブロックの列。
+		 * @param spectralStart スペクトル選択の開始位置。
+		 * @param spectralEnd スペクトル選択の終了位置。
+		 * @param successiveHigh 逐次近似の前回のビット位置。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeBlock(
+			Component component,
+			int blockRow,
+			int blockColumn,
+			int spectralStart,
+			int spectralEnd,
+			int successiveHigh,
+			int successiveLow)
+			throws IOException {
+
+			if (!this.progressive) {
+				this.decodeBaselineBlock(component, blockRow, blockColumn);
+				return;
+			}
+
+			int blockIndex = blockRow * component.blocksPerLine + blockColumn;
+			if (spectralStart == 0) {
+				if (successiveHigh == 0) {
+					this.decodeDcFirst(component, blockIndex, successiveLow);
+				} else {
+					this.decodeDcRefine(component, blockIndex, successiveLow);
+				}
+			} else {
+				if (successiveHigh == 0) {
+					this.decodeAcFirst(component, blockIndex, spectralStart, spectralEnd, successiveLow);
+				} else {
+					this.decodeAcRefine(component, blockIndex, spectralStart, spectralEnd, successiveLow);
+				}
+			}
+		}
+
+		/**
+		 * ベースライン形式（シーケンシャル形式）の1ブロックをデコードし、縮小IDCTを行って成分の画素値に書き込みます。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockRow ブロックの行。
+		 * @param blockColumn ブロックの列。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeBaselineBlock(Component component, int blockRow, int blockColumn) throws IOException {
+			int[] coefficients = this.blockCoefficients;
+			int scale = this.scale;
+			if (this.blockHandler != null) {
+				Arrays.fill(coefficients, 0);
+			} else {
+				for (int row = 0; row < scale; row++) {
+					for (int column = 0; column < scale; column++) {
+						coefficients[row * 8 + column] = 0;
+					}
+				}
+			}
+
+			int t = this.decodeHuffman(component.dcTable);
+			int diff = (t == 0) ? 0 : this.receiveExtend(t);
+			component.dcPrediction += diff;
+			coefficients[0] = component.dcPrediction;
+
+			HuffmanTable acTable = component.acTable;
+			int k = 1;
+			while (k < 64) {
+				int rs = this.decodeHuffman(acTable);
+				int s = rs & 0x0F;
+				int r = rs >> 4;
+				if (s == 0) {
+					if (r < 15) {
+						break;
+					}
+					k += 16;
+					continue;
+				}
+				k += r;
+				if (k > 63) {
+					break;
+				}
+				coefficients[ZIGZAG_TO_NATURAL[k]] = this.receiveExtend(s);
+				k++;
+			}
+
+			if (this.blockHandler != null) {
+				this.blockHandler.handle(component.index, blockRow, blockColumn, coefficients);
+			} else {
+				this.inverseTransform(component, blockRow, blockColumn, coefficients);
+			}
+		}
+
+		/**
+		 * プログレッシブ形式のDC成分の最初のスキャンの1ブロックをデコードします。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeDcFirst(Component component, int blockIndex, int successiveLow) throws IOException {
+			int t = this.decodeHuffman(component.dcTable);
+			int diff = (t == 0) ? 0 : this.receiveExtend(t);
+			component.dcPrediction += diff;
+			component.coefficients[blockIndex * this.scale * this.scale] = (short) (component.dcPrediction << successiveLow);
+		}
+
+		/**
+		 * プログレッシブ形式のDC成分の逐次近似スキャンの1ブロックをデコードします。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeDcRefine(Component component, int blockIndex, int successiveLow) throws IOException {
+			if (this.readBit() != 0) {
+				component.coefficients[blockIndex * this.scale * this.scale] |= (short) (1 << successiveLow);
+			}
+		}
+
+		/**
+		 * プログレッシブ形式のAC成分の最初のスキャンの1ブロックをデコードします。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param spectralStart スペクトル選択の開始位置。
+		 * @param spectralEnd スペクトル選択の終了位置。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeAcFirst(
+			Component component,
+			int blockIndex,
+			int spectralStart,
+			int spectralEnd,
+			int successiveLow)
+			throws IOException {
+
+			if (this.eobRun > 0) {
+				this.eobRun--;
+				return;
+			}
+			int k = spectralStart;
+			while (k <= spectralEnd) {
+				int rs = this.decodeHuffman(component.acTable);
+				int s = rs & 0x0F;
+				int r = rs >> 4;
+				if (s == 0) {
+					if (r < 15) {
+						this.eobRun = (1 << r) - 1;
+						if (r > 0) {
+							this.eobRun += this.readBits(r);
+						}
+						break;
+					}
+					k += 16;
+					continue;
+				}
+				k += r;
+				if (k > 63) {
+					break;
+				}
+				this.storeCoefficient(component, blockIndex, k, this.receiveExtend(s) * (1 << successiveLow));
+				k++;
+			}
+		}
+
+		/**
+		 * プログレッシブ形式のAC成分の逐次近似スキャンの1ブロックをデコードします。
+		 * <p>
+		 * 既に非ゼロの係数には補正ビットを加え、新たに非ゼロとなる係数を設定します。
+		 * 縮小IDCTで使用しない高周波の係数は値を保持しませんが、非ゼロかどうかはビットマスクで管理し、
+		 * 補正ビットの読み飛ばしを正しく行います。
+		 * </p>
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param spectralStart スペクトル選択の開始位置。
+		 * @param spectralEnd スペクトル選択の終了位置。
+		 * @param successiveLow 逐次近似のビット位置。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void decodeAcRefine(
+			Component component,
+			int blockIndex,
+			int spectralStart,
+			int spectralEnd,
+			int successiveLow)
+			throws IOException {
+
+			int positiveBit = 1 << successiveLow;
+			int negativeBit = -1 << successiveLow;
+			int k = spectralStart;
+
+			if (this.eobRun == 0) {
+				for (; k <= spectralEnd; k++) {
+					int rs = this.decodeHuffman(component.acTable);
+					int s = rs & 0x0F;
+					int r = rs >> 4;
+					int value = 0;
+					if (s != 0) {
+						value = (this.readBit() != 0) ? positiveBit : negativeBit;
+					} else if (r != 15) {
+						this.eobRun = 1 << r;
+						if (r > 0) {
+							this.eobRun += this.readBits(r);
+						}
+						break;
+					}
+
+					// r個のゼロの係数を読み飛ばす（その間にある非ゼロの係数には補正ビットを加える）
+					while (k <= spectralEnd) {
+						if (this.isNonzero(component, blockIndex, k)) {
+							this.refineCoefficient(component, blockIndex, k, positiveBit, negativeBit);
+						} else {
+							if (r == 0) {
+								break;
+							}
+							r--;
+						}
+						k++;
+					}
+					if (value != 0 && k <= spectralEnd) {
+						this.storeCoefficient(component, blockIndex, k, value);
+					}
+				}
+			}
+
+			if (this.eobRun > 0) {
+				// EOBの範囲内では、既に非ゼロの係数の補正ビットのみが続く
+				for (; k <= spectralEnd; k++) {
+					if (this.isNonzero(component, blockIndex, k)) {
+						this.refineCoefficient(component, blockIndex, k, positiveBit, negativeBit);
+					}
+				}
+				this.eobRun--;
+			}
+		}
+
+		/**
+		 * 指定されたブロックの、指定されたジグザグ順の位置の係数が非ゼロかどうかを判定します。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param zigzagIndex ジグザグ順の位置。
+		 * @return 非ゼロの場合は true。
+		 */
+		private boolean isNonzero(Component component, int blockIndex, int zigzagIndex) {
+			return (component.nonzeroMasks[blockIndex] & (1L << zigzagIndex)) != 0;
+		}
+
+		/**
+		 * 既に非ゼロの係数に、逐次近似の補正ビットを読み取って加えます。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param zigzagIndex ジグザグ順の位置。
+		 * @param positiveBit 正の係数に加える値。
+		 * @param negativeBit 負の係数に加える値。
+		 * @throws IOException JPEGデータが壊れている場合。
+		 */
+		private void refineCoefficient(
+			Component component,
+			int blockIndex,
+			int zigzagIndex,
+			int positiveBit,
+			int negativeBit)
+			throws IOException {
+
+			if (this.readBit() == 0) {
+				return;
+			}
+			int index = this.getStoredIndex(blockIndex, zigzagIndex);
+			if (index < 0) {
+				return;
+			}
+			int value = component.coefficients[index];
+			if ((value & positiveBit) == 0) {
+				component.coefficients[index] = (short) (value + ((value >= 0) ? positiveBit : negativeBit));
+			}
+		}
+
+		/**
+		 * 係数を設定し、非ゼロとして記録します。縮小IDCTで使用しない位置の係数は値を保持しません。
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockIndex ブロックの番号。
+		 * @param zigzagIndex ジグザグ順の位置。
+		 * @param value 係数の値。
+		 */
+		private void storeCoefficient(Component component, int blockIndex, int zigzagIndex, int value) {
+			component.nonzeroMasks[blockIndex] |= 1L << zigzagIndex;
+			int index = this.getStoredIndex(blockIndex, zigzagIndex);
+			if (index >= 0) {
+				component.coefficients[index] = (short) value;
+			}
+		}
+
+		/**
+		 * ジグザグ順の位置に対応する、係数の保持領域内の位置を求めます。
+		 *
+		 * @param blockIndex ブロックの番号。
+		 * @param zigzagIndex ジグザグ順の位置。
+		 * @return 保持領域内の位置。縮小IDCTで使用しない位置の場合は-1。
+		 */
+		private int getStoredIndex(int blockIndex, int zigzagIndex) {
+			int natural = ZIGZAG_TO_NATURAL[zigzagIndex];
+			int row = natural >> 3;
+			int column = natural & 7;
+			if (row >= this.scale || column >= this.scale) {
+				return -1;
+			}
+			return blockIndex * this.scale * this.scale + row * this.scale + column;
+		}
+
+		/**
+		 * プログレッシブ形式で保持していた係数に対して、すべてのブロックの縮小IDCTを行います。
+		 */
+		private void transformStoredCoefficients() {
+			int scale = this.scale;
+			int[] coefficients = this.blockCoefficients;
+			for (Component component : this.components) {
+				for (int blockRow = 0; blockRow < component.blocksPerColumn; blockRow++) {
+					for (int blockColumn = 0; blockColumn < component.blocksPerLine; blockColumn++) {
+						int offset = (blockRow * component.blocksPerLine + blockColumn) * scale * scale;
+						for (int row = 0; row < scale; row++) {
+							for (int column = 0; column < scale; column++) {
+								coefficients[row * 8 + column] = component.coefficients[offset + row * scale + column];
+							}
+						}
+						this.inverseTransform(component, blockRow, blockColumn, coefficients);
+					}
+				}
+				component.coefficients = null;
+				component.nonzeroMasks = null;
+			}
+		}
+
+		/**
+		 * 1ブロックの係数を逆量子化し、縮小IDCTを行って成分の画素値に書き込みます。
+		 * <p>
+		 * 低周波側の scale x scale 個の係数のみを使用し、scale x scale 画素を出力します。
+		 * </p>
+		 *
+		 * @param component ブロックの成分。
+		 * @param blockRow ブロックの行。
+		 * @param blockColumn ブロックの列。
+		 * @param coefficients ブロックの係数（自然順、量子化されたまま）。
+		 */
+		private void inverseTransform(Component component, int blockRow, int blockColumn, int[] coefficients) {
+			int scale = this.scale;
+			int[] quantizationTable = this.quantizationTables[component.quantizationTableIndex];
+			int planeWidth = component.blocksPerLine * scale;
+			int planeOffset = blockRow * scale * planeWidth + blockColumn * scale;
+			byte[] plane = component.plane;
+
+			if (scale == 1) {
+				int value = Math.round(coefficients[0] * quantizationTable[0] / 8F) + 128;
+				plane[planeOffset] = (byte) clamp(value);
+				return;
+			}
+
+			float[] table = IDCT_TABLES[scale];
+			float[] work = this.idctWork;
+			// 行方向（周波数 u → 位置 x）
+			for (int v = 0; v < scale; v++) {
+				for (int x = 0; x < scale; x++) {
+					float sum = 0F;
+					for (int u = 0; u < scale; u++) {
+						int natural = v * 8 + u;
+						sum += coefficients[natural] * quantizationTable[natural] * table[x * scale + u];
+					}
+					work[v * scale + x] = sum;
+				}
+			}
+			// 列方向（周波数 v → 位置 y）
+			for (int y = 0; y < scale; y++) {
+				int rowOffset = planeOffset + y * planeWidth;
+				for (int x = 0; x < scale; x++) {
+					float sum = 0F;
+					for (int v = 0; v < scale; v++) {
+						sum += table[y * scale + v] * work[v * scale + x];
+					}
+					plane[rowOffset + x] = (byte) clamp(Math.round(sum) + 128);
+				}
+			}
+		}
+
+		/**
+		 * 各成分の画素値から、出力画像を生成します。
+		 * <p>
+		 * 色差成分は最近傍で補間し、YCbCrの場合はRGBに変換します。
+		 * </p>
+		 *
+		 * @return 出力画像。
+		 */
+		private BufferedImage createImage() {
+			int outputWidth = (this.width * this.scale + 7) / 8;
+			int outputHeight = (this.height * this.scale + 7) / 8;
+
+			if (this.components.length == 1) {
+				BufferedImage image = new BufferedImage(outputWidth, outputHeight, BufferedImage.TYPE_BYTE_GRAY);
+				byte[] output = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+				Component component = this.components[0];
+				int planeWidth = component.blocksPerLine * this.scale;
+				for (int y = 0; y < outputHeight; y++) {
+					System.arraycopy(component.plane, y * planeWidth, output, y * outputWidth, outputWidth);
+				}
+				return image;
+			}
+
+			BufferedImage image = new BufferedImage(outputWidth, outputHeight, BufferedImage.TYPE_3BYTE_BGR);
+			byte[] output = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			boolean rgb =
+				this.adobeTransform == 0 ||
+				(this.adobeTransform < 0 && this.components[0].id == 'R' && this.components[1].id == 'G' && this.components[2].id == 'B');
+
+			Component c0 = this.components[0];
+			Component c1 = this.components[1];
+			Component c2 = this.components[2];
+			int[] x0 = this.createColumnMap(c0, outputWidth);
+			int[] x1 = this.createColumnMap(c1, outputWidth);
+			int[] x2 = this.createColumnMap(c2, outputWidth);
+			for (int y = 0; y < outputHeight; y++) {
+				int row0 = (y * c0.v / this.maxV) * c0.blocksPerLine * this.scale;
+				int row1 = (y * c1.v / this.maxV) * c1.blocksPerLine * this.scale;
+				int row2 = (y * c2.v / this.maxV) * c2.blocksPerLine * this.scale;
+				int outputOffset = y * outputWidth * 3;
+				for (int x = 0; x < outputWidth; x++) {
+					int a = c0.plane[row0 + x0[x]] & 0xFF;
+					int b = c1.plane[row1 + x1[x]] & 0xFF;
+					int c = c2.plane[row2 + x2[x]] & 0xFF;
+					int r;
+					int g;
+					int bl;
+					if (rgb) {
+						r = a;
+						g = b;
+						bl = c;
+					} else {
+						// JFIFの YCbCr → RGB 変換（係数は 2^16 倍の固定小数点）
+						int cb = b - 128;
+						int cr = c - 128;
+						r = clamp(a + ((91881 * cr + 32768) >> 16));
+						g = clamp(a - ((22554 * cb + 46802 * cr - 32768) >> 16));
+						bl = clamp(a + ((116130 * cb + 32768) >> 16));
+					}
+					output[outputOffset++] = (byte) bl;
+					output[outputOffset++] = (byte) g;
+					output[outputOffset++] = (byte) r;
+				}
+			}
+			return image;
+		}
+
+		/**
+		 * 出力画像の各列に対応する、成分の画素値の列の位置の表を作成します。
+		 *
+		 * @param component 成分。
+		 * @param outputWidth 出力画像の幅。
+		 * @return 出力画像の列から成分の列への対応表。
+		 */
+		private int[] createColumnMap(Component component, int outputWidth) {
+			int[] columnMap = new int[outputWidth];
+			for (int x = 0; x < outputWidth; x++) {
+				columnMap[x] = x * component.h / this.maxH;
+			}
+			return columnMap;
+		}
+
+		/**
+		 * ビットバッファに、少なくとも57ビットになるまでエントロピー符号化データを読み込みます。
+		 * <p>
+		 * 0xFF に続く 0x00 は 0xFF として扱い、それ以外のマーカーに達した場合は以降を0ビットで補います。
+		 * </p>
+		 */
+		private void fillBits() {
+			while (this.bitCount <= 56) {
+				int b = 0;
+				if (!this.markerReached && this.pos < this.data.length) {
+					b = this.data[this.pos] & 0xFF;
+					if (b == 0xFF) {
+						int next = (this.pos + 1 < this.data.length) ? this.data[this.pos + 1] & 0xFF : 0xD9;
+						if (next == 0x00) {
+							this.pos += 2;
+						} else {
+							this.markerReached = true;
+							b = 0;
+						}
+					} else {
+						this.pos++;
+					}
+				}
+				this.bitBuffer = (this.bitBuffer << 8) | b;
+				this.bitCount += 8;
+			}
+		}
+
+		/**
+		 * 1ビットを読み取ります。
+		 *
+		 * @return 読み取ったビット。
+		 */
+		private int readBit() {
+			if (this.bitCount < 1) {
+				this.fillBits();
+			}
+			this.bitCount--;
+			return (int) (this.bitBuffer >>> this.bitCount) & 1;
+		}
+
+		/**
+		 * 指定されたビット数を読み取ります。
+		 *
+		 * @param n ビット数（16以下）。
+		 * @return 読み取った値。
+		 */
+		private int readBits(int n) {
+			if (this.bitCount < n) {
+				this.fillBits();
+			}
+			this.bitCount -= n;
+			return (int) (this.bitBuffer >>> this.bitCount) & ((1 << n) - 1);
+		}
+
+		/**
+		 * 指定されたビット数を読み取り、JPEGの符号拡張規則に従って符号付きの値に変換します。
+		 *
+		 * @param n ビット数（1〜16）。
+		 * @return 変換後の値。
+		 */
+		private int receiveExtend(int n) {
+			int value = this.readBits(n);
+			return (value < (1 << (n - 1))) ? value - (1 << n) + 1 : value;
+		}
+
+		/**
+		 * ハフマン符号を1つ復号します。
+		 *
+		 * @param table ハフマン符号表。
+		 * @return 復号した値。
+		 * @throws IOException 符号表に該当する符号がない場合。
+		 */
+		private int decodeHuffman(HuffmanTable table) throws IOException {
+			if (table == null) {
+				throw new IOException("Huffman table not defined");
+			}
+			if (this.bitCount < 16) {
+				this.fillBits();
+			}
+			int look = (int) (this.bitBuffer >>> (this.bitCount - HuffmanTable.LOOKUP_BITS)) & ((1 << HuffmanTable.LOOKUP_BITS) - 1);
+			int entry = table.lookup[look];
+			if (entry != 0) {
+				this.bitCount -= entry >> 8;
+				return entry & 0xFF;
+			}
+			for (int length = HuffmanTable.LOOKUP_BITS + 1; length <= 16; length++) {
+				int code = (int) (this.bitBuffer >>> (this.bitCount - length)) & ((1 << length) - 1);
+				if (code <= table.maxCode[length]) {
+					this.bitCount -= length;
+					return table.values[table.valueOffset[length] + code];
+				}
+			}
+			throw new IOException("Corrupt JPEG data: bad Huffman code");
+		}
+
+		/**
+		 * 値を0〜255の範囲に制限します。
+		 *
+		 * @param value 値。
+		 * @return 制限後の値。
+		 */
+		private static int clamp(int value) {
+			return (value < 0) ? 0 : (value > 255) ? 255 : value;
+		}
+	}
+}
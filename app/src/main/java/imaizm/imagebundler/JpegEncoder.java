@@ -0,0 +1,430 @@
+package imaizm.imagebundler;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * JPEG形式のエンコードを行うクラスです。
+ * <p>
+ * JPEGの {@link ImageWriter} とエンコード先のバッファをインスタンスごとに保持して再利用するため、
+ * 1つのスレッドで多数の画像を続けてエンコードする場合に適しています。
+ * インスタンスはスレッドセーフではありません。変換ワーカーごとに1つのインスタンスを使用してください。
+ * </p>
+ * <p>
+ * ハフマン符号表の最適化やプログレッシブ形式などの設定は、{@link Profile} で指定します。
+ * 固定の圧縮品質でのエンコード（{@link #encode(BufferedImage, int)}）に加えて、
+ * 指定されたバイト数に収まる最も高い圧縮品質を探索するエンコード（{@link #encodeWithinSize(BufferedImage, long)}）を提供します。
+ * </p>
+ * <p>
+ * {@link ParallelJpegEncoder} を指定して構築した場合、大きな画像はその {@link ParallelJpegEncoder} で帯に分けて並列にエンコードします。
+ * </p>
+ */
+public class JpegEncoder implements Closeable {
+
+	/** {@link #JpegEncoder()} で構築した場合に使用するエンコーダのプロファイル（{@link Profile#FAST}）。 */
+	public static final Profile DEFAULT_PROFILE = Profile.FAST;
+
+	/** JPEGの標準メタデータ形式の名前。 */
+	private static final String JPEG_METADATA_FORMAT_NAME = "javax_imageio_jpeg_image_1.0";
+
+	/** 目標サイズでのエンコード時に探索する圧縮品質の下限。 */
+	public static final int MIN_SEARCH_QUALITY = 5;
+	/** 目標サイズでのエンコード時に探索する圧縮品質の上限。 */
+	public static final int MAX_SEARCH_QUALITY = 95;
+
+	/** 試行エンコード用の縮小画像を作成する際の縮小率（縦横それぞれ 1/n）。 */
+	private static final int TRIAL_SCALE_DIVISOR = 2;
+	/** 縮小画像での試行エンコードを行わない画素数の下限。これより小さい画像は元の画像で探索します。 */
+	private static final long TRIAL_MIN_PIXELS = 256L * 256;
+	/** 探索の初期値から探索範囲を広げる際の、最初の圧縮品質の刻み幅。 */
+	private static final int GALLOP_INITIAL_STEP = 4;
+
+	/**
+	 * エンコーダのプロファイルを定義します。
+	 * <p>
+	 * 各プロファイルは、ハフマン符号表の最適化、プログレッシブ形式、色差成分の間引き（クロマサブサンプリング）、
+	 * およびメタデータ（JFIFマーカー）の削除の組み合わせを表します。圧縮品質はプロファイルとは別に指定します。
+	 * </p>
+	 */
+	public static enum Profile {
+		/** エンコード速度を優先します。標準のハフマン符号表を使用したベースライン形式で、従来と同じ出力になります。 */
+		FAST(false, false, 0, false),
+		/** 出力サイズを優先します。最適化したハフマン符号表によるプログレッシブ形式、4:2:0の色差間引きで、JFIFマーカーを削除します。 */
+		SMALL(true, true, 2, true),
+		/** 画質を優先します。最適化したハフマン符号表によるベースライン形式で、色差成分を間引きません（4:4:4）。 */
+		ARCHIVAL(true, false, 1, false);
+
+		/** ハフマン符号表を画像ごとに最適化するかどうか。 */
+		private final boolean optimizeHuffmanTables;
+		/** プログレッシブ形式で出力するかどうか。 */
+		private final boolean progressive;
+		/** 輝度成分の水平・垂直のサンプリング係数（色差成分は1）。0の場合は {@link ImageWriter} の既定値を使用します。 */
+		private final int lumaSamplingFactor;
+		/** JFIFマーカーを削除するかどうか。 */
+		private final boolean stripMetadata;
+
+		/**
+		 * 指定された設定で {@code Profile} を構築します。
+		 *
+		 * @param optimizeHuffmanTables ハフマン符号表を画像ごとに最適化するかどうか。
+		 * @param progressive プログレッシブ形式で出力するかどうか。
+		 * @param lumaSamplingFactor 輝度成分のサンプリング係数。0の場合は既定値。
+		 * @param stripMetadata JFIFマーカーを削除するかどうか。
+		 */
+		private Profile(boolean optimizeHuffmanTables, boolean progressive, int lumaSamplingFactor, boolean stripMetadata) {
+			this.optimizeHuffmanTables = optimizeHuffmanTables;
+			this.progressive = progressive;
+			this.lumaSamplingFactor = lumaSamplingFactor;
+			this.stripMetadata = stripMetadata;
+		}
+	}
+
+	/** エンコーダのプロファイル。 */
+	private final Profile profile;
+	/** 再利用するJPEGの {@link ImageWriter}。 */
+	private final ImageWriter imageWriter;
+	/** 大きな画像を並列にエンコードする {@link ParallelJpegEncoder}。並列にエンコードしない場合は null。 */
+	private final ParallelJpegEncoder parallelJpegEncoder;
+	/** 再利用するエンコード先のバッファ。{@link ByteArrayOutputStream#reset()} は内部配列を縮小しないため、一度確保した配列がそのまま再利用されます。 */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	/**
+	 * {@link #DEFAULT_PROFILE} のプロファイルで {@code JpegEncoder} を構築します。
+	 *
+	 * @throws IOException JPEGの {@link ImageWriter} が見つからない場合。
+	 */
+	public JpegEncoder() throws IOException {
+		this(DEFAULT_PROFILE);
+	}
+
+	/**
+	 * 指定されたプロファイルで {@code JpegEncoder} を構築します。
+	 *
+	 * @param profile エンコーダのプロファイル。
+	 * @throws IOException JPEGの {@link ImageWriter} が見つからない場合。
+	 */
+	public JpegEncoder(Profile profile) throws IOException {
+		this(profile, null);
+	}
+
+	/**
+	 * 指定されたプロファイルで、大きな画像を指定された {@link ParallelJpegEncoder} で並列にエンコードする {@code JpegEncoder} を構築します。
+	 * <p>
+	 * 並列エンコードは、標準のハフマン符号表を使用するベースライン形式のプロファイルの場合のみ行います。
+	 * </p>
+	 *
+	 * @param profile エンコーダのプロファイル。
+	 * @param parallelJpegEncoder 大きな画像を並列にエンコードする {@link ParallelJpegEncoder}。並列にエンコードしない場合は null。
+	 * @throws IOException JPEGの {@link ImageWriter} が見つからない場合。
+	 */
+	public JpegEncoder(Profile profile, ParallelJpegEncoder parallelJpegEncoder) throws IOException {
+		this.profile = profile;
+		this.parallelJpegEncoder =
+			(profile.optimizeHuffmanTables || profile.progressive) ? null : parallelJpegEncoder;
+		Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName("jpg");
+		if (!imageWriters.hasNext()) {
+			throw new IOException("No JPEG ImageWriter found"); // JPEGライターが見つからない場合のエラー
+		}
+		this.imageWriter = imageWriters.next();
+	}
+
+	/**
+	 * 指定された画像を、指定された圧縮品質でJPEG形式にエンコードします。
+	 *
+	 * @param inputBufferedImage エンコードする対象の画像データ。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @return JPEG形式のバイト列。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	public byte[] encode(BufferedImage inputBufferedImage, int compressionQualityPercentage) throws IOException {
+		BufferedImage opaqueImage = toOpaqueImage(inputBufferedImage);
+		this.encodeToBuffer(opaqueImage, compressionQualityPercentage);
+		return this.buffer.toByteArray();
+	}
+
+	/**
+	 * 指定された画像を、指定されたバイト数に収まる最も高い圧縮品質でJPEG形式にエンコードします。
+	 * <p>
+	 * まず縦横を 1/{@value #TRIAL_SCALE_DIVISOR} に縮小した画像で圧縮品質を二分探索し、
+	 * 縮小画像のサイズを画素数の比で換算した推定値から探索の初期値を求めます。
+	 * 次に元の画像を初期値でエンコードし、結果が目標サイズに収まるかどうかに応じて
+	 * 刻み幅を倍々に広げながら上下どちらかに探索範囲を確定させ、その範囲を二分探索します。
+	 * 推定が正確であれば、元の画像のエンコードは数回で済みます。
+	 * </p>
+	 * <p>
+	 * 探索範囲は {@link #MIN_SEARCH_QUALITY} から {@link #MAX_SEARCH_QUALITY} です。
+	 * 最低品質でも目標サイズに収まらない場合は、最低品質でエンコードした結果を返します。
+	 * </p>
+	 *
+	 * @param inputBufferedImage エンコードする対象の画像データ。
+	 * @param maxSize エンコード結果の最大バイト数。
+	 * @return JPEG形式のバイト列。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	public byte[] encodeWithinSize(BufferedImage inputBufferedImage, long maxSize) throws IOException {
+		BufferedImage opaqueImage = toOpaqueImage(inputBufferedImage);
+
+		int seedQuality = this.estimateQuality(opaqueImage, maxSize);
+
+		// fitQuality : 目標サイズに収まることを確認済みの最も高い品質（未確認の場合は下限-1）
+		// overQuality : 目標サイズを超えることを確認済みの最も低い品質（未確認の場合は上限+1）
+		int fitQuality = MIN_SEARCH_QUALITY - 1;
+		int overQuality = MAX_SEARCH_QUALITY + 1;
+		byte[] fitData = null;
+
+		// 初期値から刻み幅を倍々に広げて、fitQuality と overQuality で探索範囲を挟み込む
+		int quality = seedQuality;
+		int step = GALLOP_INITIAL_STEP;
+		while (overQuality - fitQuality > 1) {
+			this.encodeToBuffer(opaqueImage, quality);
+			if (this.buffer.size() <= maxSize) {
+				fitQuality = quality;
+				fitData = this.buffer.toByteArray();
+				if (overQuality <= MAX_SEARCH_QUALITY) {
+					break;
+				}
+				quality = Math.min(quality + step, MAX_SEARCH_QUALITY);
+			} else {
+				overQuality = quality;
+				if (fitQuality >= MIN_SEARCH_QUALITY) {
+					break;
+				}
+				quality = Math.max(quality - step, MIN_SEARCH_QUALITY);
+			}
+			if (quality <= fitQuality || quality >= overQuality) {
+				break;
+			}
+			step *= 2;
+		}
+
+		// 挟み込んだ範囲を二分探索
+		while (overQuality - fitQuality > 1) {
+			quality = (fitQuality + overQuality) >>> 1;
+			this.encodeToBuffer(opaqueImage, quality);
+			if (this.buffer.size() <= maxSize) {
+				fitQuality = quality;
+				fitData = this.buffer.toByteArray();
+			} else {
+				overQuality = quality;
+			}
+		}
+
+		if (fitData == null) {
+			// 最低品質でも収まらない場合は最低品質の結果を返す
+			this.encodeToBuffer(opaqueImage, MIN_SEARCH_QUALITY);
+			fitData = this.buffer.toByteArray();
+		}
+		return fitData;
+	}
+
+	/**
+	 * 縮小画像での試行エンコードにより、指定されたバイト数に収まる圧縮品質を推定します。
+	 * <p>
+	 * 画像が小さい場合は試行エンコードを行わず、探索範囲の中央値を返します。
+	 * </p>
+	 *
+	 * @param opaqueImage 推定対象の画像（不透明）。
+	 * @param maxSize エンコード結果の最大バイト数。
+	 * @return 推定された圧縮品質。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	private int estimateQuality(BufferedImage opaqueImage, long maxSize) throws IOException {
+		long pixels = (long) opaqueImage.getWidth() * opaqueImage.getHeight();
+		if (pixels < TRIAL_MIN_PIXELS) {
+			return (MIN_SEARCH_QUALITY + MAX_SEARCH_QUALITY) / 2;
+		}
+
+		BufferedImage trialImage = downsample(opaqueImage, TRIAL_SCALE_DIVISOR);
+		double sizeRatio = (double) pixels / ((long) trialImage.getWidth() * trialImage.getHeight());
+
+		int fitQuality = MIN_SEARCH_QUALITY;
+		int overQuality = MAX_SEARCH_QUALITY + 1;
+		while (overQuality - fitQuality > 1) {
+			int quality = (fitQuality + overQuality) >>> 1;
+			this.encodeToBuffer(trialImage, quality);
+			if (this.buffer.size() * sizeRatio <= maxSize) {
+				fitQuality = quality;
+			} else {
+				overQuality = quality;
+			}
+		}
+		return fitQuality;
+	}
+
+	/**
+	 * 指定された画像を、縦横それぞれ 1/{@code divisor} に縮小します。
+	 *
+	 * @param srcImage 縮小する画像。
+	 * @param divisor 縮小率の分母。
+	 * @return 縮小された画像。
+	 */
+	private static BufferedImage downsample(BufferedImage srcImage, int divisor) {
+		int width = Math.max(1, srcImage.getWidth() / divisor);
+		int height = Math.max(1, srcImage.getHeight() / divisor);
+		int type = (srcImage.getType() == BufferedImage.TYPE_BYTE_GRAY) ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+		BufferedImage dstImage = new BufferedImage(width, height, type);
+		Graphics2D graphics = dstImage.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(srcImage, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		return dstImage;
+	}
+
+	/**
+	 * 指定された画像を、指定された圧縮品質でJPEG形式にエンコードし、指定された {@link ImageOutputStream} に書き込みます。
+	 *
+	 * @param inputBufferedImage 書き込む対象の画像データ。
+	 * @param imageOutputStream 書き込み先のストリーム。クローズは呼び出し元が行います。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @throws IOException 書き込み中にエラーが発生した場合。
+	 */
+	public void write(
+		BufferedImage inputBufferedImage,
+		ImageOutputStream imageOutputStream,
+		int compressionQualityPercentage)
+		throws IOException {
+
+		BufferedImage opaqueImage = toOpaqueImage(inputBufferedImage);
+		try {
+			this.imageWriter.setOutput(imageOutputStream);
+			ImageWriteParam imageWriteParam = this.imageWriter.getDefaultWriteParam();
+			imageWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT); // MODE_EXPLICIT = 2
+			imageWriteParam.setCompressionQuality(compressionQualityPercentage / 100F);
+			if (this.profile.optimizeHuffmanTables && imageWriteParam instanceof JPEGImageWriteParam) {
+				((JPEGImageWriteParam) imageWriteParam).setOptimizeHuffmanTables(true);
+			}
+			if (this.profile.progressive) {
+				imageWriteParam.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+			}
+			IIOMetadata imageMetadata = this.createImageMetadata(opaqueImage, imageWriteParam);
+			this.imageWriter.write(null, new IIOImage(opaqueImage, null, imageMetadata), imageWriteParam);
+		} finally {
+			this.imageWriter.setOutput(null);
+		}
+	}
+
+	/**
+	 * プロファイルの色差間引きとメタデータ削除の設定を反映した画像メタデータを生成します。
+	 * <p>
+	 * {@link ImageWriter} の既定の画像メタデータをツリー形式で取得し、
+	 * SOFマーカーの各成分（componentSpec）のサンプリング係数を書き換え、
+	 * JFIFマーカー（JPEGvariety配下の app0JFIF）を削除します。
+	 * 色差間引きは3成分（YCbCr）の画像にのみ適用します。
+	 * </p>
+	 *
+	 * @param opaqueImage エンコードする画像（不透明）。
+	 * @param imageWriteParam エンコードに使用するパラメータ。
+	 * @return 画像メタデータ。プロファイルが既定のメタデータを変更しない場合は null。
+	 * @throws IOException メタデータの変更に失敗した場合。
+	 */
+	private IIOMetadata createImageMetadata(BufferedImage opaqueImage, ImageWriteParam imageWriteParam) throws IOException {
+		boolean subsample = this.profile.lumaSamplingFactor > 0 && opaqueImage.getColorModel().getNumColorComponents() == 3;
+		if (!subsample && !this.profile.stripMetadata) {
+			return null;
+		}
+
+		IIOMetadata imageMetadata = this.imageWriter.getDefaultImageMetadata(
+			ImageTypeSpecifier.createFromRenderedImage(opaqueImage), imageWriteParam);
+		IIOMetadataNode rootNode = (IIOMetadataNode) imageMetadata.getAsTree(JPEG_METADATA_FORMAT_NAME);
+
+		if (subsample) {
+			NodeList componentSpecNodes = rootNode.getElementsByTagName("componentSpec");
+			for (int i = 0; i < componentSpecNodes.getLength(); i++) {
+				IIOMetadataNode componentSpecNode = (IIOMetadataNode) componentSpecNodes.item(i);
+				String samplingFactor = Integer.toString((i == 0) ? this.profile.lumaSamplingFactor : 1);
+				componentSpecNode.setAttribute("HsamplingFactor", samplingFactor);
+				componentSpecNode.setAttribute("VsamplingFactor", samplingFactor);
+			}
+		}
+
+		if (this.profile.stripMetadata) {
+			NodeList jpegVarietyNodes = rootNode.getElementsByTagName("JPEGvariety");
+			for (int i = 0; i < jpegVarietyNodes.getLength(); i++) {
+				Node jpegVarietyNode = jpegVarietyNodes.item(i);
+				while (jpegVarietyNode.hasChildNodes()) {
+					jpegVarietyNode.removeChild(jpegVarietyNode.getFirstChild());
+				}
+			}
+		}
+
+		imageMetadata.setFromTree(JPEG_METADATA_FORMAT_NAME, rootNode);
+		return imageMetadata;
+	}
+
+	/**
+	 * このエンコーダのプロファイルを取得します。
+	 * @return エンコーダのプロファイル。
+	 */
+	public Profile getProfile() {
+		return this.profile;
+	}
+
+	/**
+	 * 指定された画像を、再利用するバッファにエンコードします。
+	 * バッファの内容は、このメソッドの呼び出しごとに置き換えられます。
+	 * 並列エンコードの対象となる大きな画像は、{@link ParallelJpegEncoder} でエンコードします。
+	 *
+	 * @param opaqueImage エンコードする画像（不透明）。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	private void encodeToBuffer(BufferedImage opaqueImage, int compressionQualityPercentage) throws IOException {
+		this.buffer.reset();
+		if (this.parallelJpegEncoder != null && this.parallelJpegEncoder.isApplicable(opaqueImage)) {
+			byte[] data = this.parallelJpegEncoder.encode(opaqueImage, compressionQualityPercentage);
+			if (data != null) {
+				this.buffer.write(data, 0, data.length);
+				return;
+			}
+		}
+		try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(this.buffer)) {
+			this.write(opaqueImage, imageOutputStream, compressionQualityPercentage);
+		}
+	}
+
+	/**
+	 * 画像が透過情報を持つ場合、透過部分を白色で塗りつぶした画像を返します。
+	 *
+	 * @param inputBufferedImage 対象の画像。
+	 * @return 不透明な画像。元の画像が不透明な場合は元の画像そのもの。
+	 */
+	private static BufferedImage toOpaqueImage(BufferedImage inputBufferedImage) {
+		// 変換元画像が透過情報を持っている場合、透過情報を白色に置き換える
+		if (inputBufferedImage.getColorModel().getTransparency() != Transparency.OPAQUE) {
+			return ImageConverter.fillTransparentPixels(inputBufferedImage, Color.WHITE);
+		}
+		return inputBufferedImage;
+	}
+
+	/**
+	 * 保持している {@link ImageWriter} を解放します。
+	 */
+	@Override
+	public void close() {
+		this.imageWriter.dispose();
+	}
+}
@@ -0,0 +1,146 @@
+package imaizm.imagebundler;
+
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * メモリマップされた一時ファイルを記憶域とする {@link DataBuffer} の実装クラスです。
+ * <p>
+ * 画素データをJavaヒープ上の配列ではなく、OSのページキャッシュ上にマップされた領域へ格納します。
+ * これにより、巨大な画像を扱う場合でもヒープ使用量とGC負荷が画像サイズに比例して増加しません。
+ * </p>
+ * <p>
+ * 1つのマッピングは最大2GBまでしか扱えないため、記憶域は {@link #CHUNK_SIZE} ごとの
+ * 複数のマッピングに分割して保持します。要素サイズはチャンクサイズの約数であるため、
+ * 1つの要素が複数のチャンクをまたぐことはありません。
+ * </p>
+ * <p>
+ * 対応するデータ型は {@link DataBuffer#TYPE_BYTE}、{@link DataBuffer#TYPE_USHORT}、
+ * {@link DataBuffer#TYPE_INT} の3種類で、バンク数は常に1です。
+ * </p>
+ */
+public class MappedDataBuffer extends DataBuffer {
+
+	/** 1チャンクあたりのバイト数を表すシフト量（1GB）。 */
+	private static final int CHUNK_SHIFT = 30;
+	/** 1チャンクあたりのバイト数。 */
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	/** チャンク内オフセットを求めるためのマスク値。 */
+	private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/** 記憶域としてマップされたチャンクの配列。 */
+	private final ByteBuffer[] chunks;
+	/** 1要素あたりのバイト数を表すシフト量（BYTE=0, USHORT=1, INT=2）。 */
+	private final int elementShift;
+
+	/**
+	 * 指定されたデータ型と要素数で {@code MappedDataBuffer} を構築します。
+	 * <p>
+	 * 記憶域となる一時ファイルを {@code java.io.tmpdir} に作成し、必要なサイズ分をマップします。
+	 * マップ後は一時ファイルの削除を試みます（マッピング自体は削除後も有効です）。
+	 * 削除できないOS（Windowsなど）の場合は、JVM終了時に削除されるよう登録します。
+	 * </p>
+	 *
+	 * @param dataType データ型（{@link DataBuffer#TYPE_BYTE}、{@link DataBuffer#TYPE_USHORT}、{@link DataBuffer#TYPE_INT} のいずれか）。
+	 * @param size 要素数。
+	 * @throws IOException 一時ファイルの作成またはマッピング中にI/Oエラーが発生した場合。
+	 * @throws IllegalArgumentException 未対応のデータ型が指定された場合。
+	 */
+	public MappedDataBuffer(int dataType, int size) throws IOException {
+		super(dataType, size);
+
+		switch (dataType) {
+		case TYPE_BYTE:
+			this.elementShift = 0;
+			break;
+		case TYPE_USHORT:
+			this.elementShift = 1;
+			break;
+		case TYPE_INT:
+			this.elementShift = 2;
+			break;
+		default:
+			throw new IllegalArgumentException("未対応のデータ型です。: " + dataType);
+		}
+
+		long totalBytes = ((long) size) << this.elementShift;
+		int chunkCount = (int) ((totalBytes + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+		this.chunks = new ByteBuffer[Math.max(chunkCount, 1)];
+
+		Path backingFilePath = Files.createTempFile(Constants.APPLICATION_NAME, ".raster");
+		try (FileChannel fileChannel = FileChannel.open(
+				backingFilePath,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			for (int i = 0; i < this.chunks.length; i++) {
+				long position = ((long) i) << CHUNK_SHIFT;
+				long length = Math.min(CHUNK_SIZE, totalBytes - position);
+				MappedByteBuffer chunk =
+					fileChannel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(length, 0));
+				chunk.order(ByteOrder.nativeOrder());
+				this.chunks[i] = chunk;
+			}
+		} finally {
+			// マップ済みの領域はファイル削除後も有効なため、可能であれば即座に削除する
+			try {
+				Files.delete(backingFilePath);
+			} catch (IOException e) {
+				backingFilePath.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * 指定されたバンクの指定位置にある要素を取得します。
+	 *
+	 * @param bank バンク番号（常に0）。
+	 * @param i 要素の位置。
+	 * @return 要素の値（符号なしに拡張されます）。
+	 */
+	@Override
+	public int getElem(int bank, int i) {
+		long position = ((long) (i + this.offset)) << this.elementShift;
+		ByteBuffer chunk = this.chunks[(int) (position >>> CHUNK_SHIFT)];
+		int index = (int) (position & CHUNK_MASK);
+		switch (this.elementShift) {
+		case 0:
+			return chunk.get(index) & 0xFF;
+		case 1:
+			return chunk.getShort(index) & 0xFFFF;
+		default:
+			return chunk.getInt(index);
+		}
+	}
+
+	/**
+	 * 指定されたバンクの指定位置に要素を設定します。
+	 *
+	 * @param bank バンク番号（常に0）。
+	 * @param i 要素の位置。
+	 * @param val 設定する値（データ型のビット幅に切り詰められます）。
+	 */
+	@Override
+	public void setElem(int bank, int i, int val) {
+		long position = ((long) (i + this.offset)) << this.elementShift;
+		ByteBuffer chunk = this.chunks[(int) (position >>> CHUNK_SHIFT)];
+		int index = (int) (position & CHUNK_MASK);
+		switch (this.elementShift) {
+		case 0:
+			chunk.put(index, (byte) val);
+			break;
+		case 1:
+			chunk.putShort(index, (short) val);
+			break;
+		default:
+			chunk.putInt(index, val);
+			break;
+		}
+	}
+}
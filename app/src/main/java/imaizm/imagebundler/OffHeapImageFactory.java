@@ -0,0 +1,333 @@
+package imaizm.imagebundler;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * 画素数に応じて、ヒープ上またはメモリマップされた記憶域上に画像を生成するファクトリクラスです。
+ * <p>
+ * 画素数が閾値を超える画像は、
+ * {@link MappedDataBuffer} を記憶域とする {@link BufferedImage} として生成されます。
+ * それ以下の画像は、従来どおりヒープ上の {@link BufferedImage} として生成されます。
+ * 閾値は各メソッドの引数で指定し、省略した場合は {@link ImageConverter#DEFAULT_OFF_HEAP_PIXEL_THRESHOLD} を使用します。
+ * </p>
+ * <p>
+ * メモリマップされた画像は {@link BufferedImage#TYPE_CUSTOM} 型となりますが、
+ * {@link BufferedImage#getSubimage(int, int, int, int)} や {@link java.awt.Graphics2D} による描画など、
+ * 通常の画像と同じ操作を行うことができます。
+ * </p>
+ */
+public class OffHeapImageFactory {
+
+	/**
+	 * 指定された幅と高さの画像が、メモリマップ対象となる画素数を超えているかどうかを判定します。
+	 *
+	 * @param width 画像の幅（ピクセル単位）。
+	 * @param height 画像の高さ（ピクセル単位）。
+	 * @return 画素数が {@link ImageConverter#DEFAULT_OFF_HEAP_PIXEL_THRESHOLD} を超える場合は true。
+	 */
+	public static boolean isOversized(long width, long height) {
+		return isOversized(width, height, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された幅と高さの画像が、指定された画素数の閾値を超えているかどうかを判定します。
+	 *
+	 * @param width 画像の幅（ピクセル単位）。
+	 * @param height 画像の高さ（ピクセル単位）。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 画素数が {@code pixelThreshold} を超える場合は true。
+	 */
+	public static boolean isOversized(long width, long height, long pixelThreshold) {
+		return width * height > pixelThreshold;
+	}
+
+	/**
+	 * 指定された画像と互換性のある（同じカラーモデルを持つ）新しい画像を、指定された幅と高さで生成します。
+	 * <p>
+	 * 画素数が閾値を超える場合はメモリマップされた画像を生成します。
+	 * それ以外の場合は、元画像の型が {@link BufferedImage#TYPE_CUSTOM} でなければ同じ型で、
+	 * {@code TYPE_CUSTOM} であれば元画像のカラーモデルから互換ラスタを生成してヒープ上に作成します。
+	 * </p>
+	 *
+	 * @param srcImage 互換性の基準となる画像。
+	 * @param width 生成する画像の幅（ピクセル単位）。
+	 * @param height 生成する画像の高さ（ピクセル単位）。
+	 * @return 生成された画像。
+	 */
+	public static BufferedImage createCompatibleImage(BufferedImage srcImage, int width, int height) {
+		return createCompatibleImage(srcImage, width, height, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された画像と互換性のある新しい画像を、メモリマップ対象とする画素数の閾値を指定して生成します。
+	 *
+	 * @param srcImage 互換性の基準となる画像。
+	 * @param width 生成する画像の幅（ピクセル単位）。
+	 * @param height 生成する画像の高さ（ピクセル単位）。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 生成された画像。
+	 * @see #createCompatibleImage(BufferedImage, int, int)
+	 */
+	public static BufferedImage createCompatibleImage(BufferedImage srcImage, int width, int height, long pixelThreshold) {
+		ColorModel colorModel = srcImage.getColorModel();
+
+		if (isOversized(width, height, pixelThreshold)) {
+			BufferedImage mappedImage = createMappedImage(
+				colorModel,
+				srcImage.getSampleModel().createCompatibleSampleModel(width, height));
+			if (mappedImage != null) {
+				return mappedImage;
+			}
+		}
+
+		if (srcImage.getType() != BufferedImage.TYPE_CUSTOM) {
+			return new BufferedImage(width, height, srcImage.getType());
+		}
+		return new BufferedImage(
+			colorModel,
+			colorModel.createCompatibleWritableRaster(width, height),
+			colorModel.isAlphaPremultiplied(),
+			null);
+	}
+
+	/**
+	 * 指定された幅、高さ、型の新しい画像を生成します。
+	 * <p>
+	 * 画素数が閾値を超える場合はメモリマップされた画像を、それ以外の場合はヒープ上の画像を生成します。
+	 * </p>
+	 *
+	 * @param width 生成する画像の幅（ピクセル単位）。
+	 * @param height 生成する画像の高さ（ピクセル単位）。
+	 * @param imageType 生成する画像の型（{@link BufferedImage#TYPE_BYTE_GRAY} など）。
+	 * @return 生成された画像。
+	 */
+	public static BufferedImage createImage(int width, int height, int imageType) {
+		return createImage(width, height, imageType, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された幅、高さ、型の新しい画像を、メモリマップ対象とする画素数の閾値を指定して生成します。
+	 *
+	 * @param width 生成する画像の幅（ピクセル単位）。
+	 * @param height 生成する画像の高さ（ピクセル単位）。
+	 * @param imageType 生成する画像の型（{@link BufferedImage#TYPE_BYTE_GRAY} など）。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 生成された画像。
+	 * @see #createImage(int, int, int)
+	 */
+	public static BufferedImage createImage(int width, int height, int imageType, long pixelThreshold) {
+		if (isOversized(width, height, pixelThreshold)) {
+			BufferedImage templateImage = new BufferedImage(1, 1, imageType);
+			BufferedImage mappedImage = createMappedImage(
+				templateImage.getColorModel(),
+				templateImage.getSampleModel().createCompatibleSampleModel(width, height));
+			if (mappedImage != null) {
+				return mappedImage;
+			}
+		}
+		return new BufferedImage(width, height, imageType);
+	}
+
+	/**
+	 * 指定されたカラーモデルとサンプルモデルを持つ、メモリマップされた画像を生成します。
+	 * <p>
+	 * バンクが1つのサンプルモデル（{@link ComponentSampleModel}、{@link SinglePixelPackedSampleModel}、
+	 * {@link MultiPixelPackedSampleModel}）のみに対応します。
+	 * 未対応のサンプルモデルの場合や、記憶域の作成に失敗した場合は null を返し、
+	 * 呼び出し元がヒープ上の画像にフォールバックできるようにします。
+	 * </p>
+	 *
+	 * @param colorModel 生成する画像のカラーモデル。
+	 * @param sampleModel 生成する画像のサンプルモデル（幅・高さを含む）。
+	 * @return メモリマップされた画像。生成できない場合は null。
+	 */
+	public static BufferedImage createMappedImage(ColorModel colorModel, SampleModel sampleModel) {
+		long scanlineStride;
+		if (sampleModel instanceof ComponentSampleModel &&
+			isSingleBank((ComponentSampleModel) sampleModel)) {
+			scanlineStride = ((ComponentSampleModel) sampleModel).getScanlineStride();
+		} else if (sampleModel instanceof SinglePixelPackedSampleModel) {
+			scanlineStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+		} else if (sampleModel instanceof MultiPixelPackedSampleModel) {
+			scanlineStride = ((MultiPixelPackedSampleModel) sampleModel).getScanlineStride();
+		} else {
+			return null;
+		}
+
+		long size = scanlineStride * sampleModel.getHeight();
+		if (size > Integer.MAX_VALUE) {
+			return null;
+		}
+
+		try {
+			MappedDataBuffer dataBuffer = new MappedDataBuffer(sampleModel.getDataType(), (int) size);
+			WritableRaster raster = new MappedRaster(sampleModel, dataBuffer);
+			return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+		} catch (IOException | IllegalArgumentException e) {
+			// 記憶域を確保できない場合はヒープ上の画像で処理を継続する
+			System.out.println("mapped image allocation failed, using heap : "
+				+ sampleModel.getWidth() + "x" + sampleModel.getHeight() + " : " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * 指定されたサンプルモデルのすべてのバンドが、同一のバンク（バンク0）に格納されているかどうかを判定します。
+	 *
+	 * @param sampleModel 判定対象のサンプルモデル。
+	 * @return すべてのバンドがバンク0に格納されている場合は true。
+	 */
+	private static boolean isSingleBank(ComponentSampleModel sampleModel) {
+		for (int bankIndex : sampleModel.getBankIndices()) {
+			if (bankIndex != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 指定された画像ファイルを読み込みます。
+	 * <p>
+	 * {@link ImageIO#read(File)} と同様に動作しますが、画像の画素数が閾値を超える場合は、
+	 * デコード先としてメモリマップされた画像を {@link ImageReadParam#setDestination(BufferedImage)} で指定します。
+	 * これにより、巨大な画像をヒープ上に展開することなくデコードできます。
+	 * </p>
+	 *
+	 * @param inputFile 読み込む画像ファイル。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+	 */
+	public static BufferedImage read(File inputFile) throws IOException {
+		return read(inputFile, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された画像ファイルを、メモリマップ対象とする画素数の閾値を指定して読み込みます。
+	 *
+	 * @param inputFile 読み込む画像ファイル。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+	 * @see #read(File)
+	 */
+	public static BufferedImage read(File inputFile, long pixelThreshold) throws IOException {
+		try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputFile)) {
+			if (imageInputStream == null) {
+				throw new IOException("Can't create an ImageInputStream!");
+			}
+			return read(imageInputStream, pixelThreshold);
+		}
+	}
+
+	/**
+	 * 指定されたバイト列の画像を読み込みます。
+	 * <p>
+	 * {@link #read(File)} と同様に動作します。
+	 * {@link ImageIO#createImageInputStream(Object)} はキャッシュ用の一時ファイルを作成する場合があるため、
+	 * メモリ上でキャッシュする {@link MemoryCacheImageInputStream} から読み込みます。
+	 * </p>
+	 *
+	 * @param inputData 読み込む画像のバイト列。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException 画像の読み込み中にエラーが発生した場合。
+	 */
+	public static BufferedImage read(byte[] inputData) throws IOException {
+		return read(inputData, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定されたバイト列の画像を、メモリマップ対象とする画素数の閾値を指定して読み込みます。
+	 *
+	 * @param inputData 読み込む画像のバイト列。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException 画像の読み込み中にエラーが発生した場合。
+	 * @see #read(byte[])
+	 */
+	public static BufferedImage read(byte[] inputData, long pixelThreshold) throws IOException {
+		try (ImageInputStream imageInputStream = new MemoryCacheImageInputStream(new ByteArrayInputStream(inputData))) {
+			return read(imageInputStream, pixelThreshold);
+		}
+	}
+
+	/**
+	 * 指定された {@link ImageInputStream} から画像を読み込みます。
+	 *
+	 * @param imageInputStream 読み込む画像の {@link ImageInputStream}。
+	 * @param pixelThreshold メモリマップ対象とする画素数の閾値。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException 画像の読み込み中にエラーが発生した場合。
+	 */
+	private static BufferedImage read(ImageInputStream imageInputStream, long pixelThreshold) throws IOException {
+		Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+		if (!imageReaders.hasNext()) {
+			return null;
+		}
+
+		ImageReader imageReader = imageReaders.next();
+		try {
+			imageReader.setInput(imageInputStream, true, true);
+			ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+
+			int width = imageReader.getWidth(0);
+			int height = imageReader.getHeight(0);
+			if (isOversized(width, height, pixelThreshold)) {
+				Iterator<ImageTypeSpecifier> imageTypes = imageReader.getImageTypes(0);
+				if (imageTypes != null && imageTypes.hasNext()) {
+					ImageTypeSpecifier imageType = imageTypes.next();
+					BufferedImage destination = createMappedImage(
+						imageType.getColorModel(),
+						imageType.getSampleModel(width, height));
+					if (destination != null) {
+						imageReadParam.setDestination(destination);
+					}
+				}
+			}
+
+			return imageReader.read(0, imageReadParam);
+		} finally {
+			imageReader.dispose();
+		}
+	}
+
+	/**
+	 * {@link MappedDataBuffer} を保持するためのラスタクラスです。
+	 * <p>
+	 * {@link Raster#createWritableRaster(SampleModel, java.awt.image.DataBuffer, Point)} は
+	 * サンプルモデルに応じて {@code DataBufferByte} などの標準データバッファを前提とする実装クラスを選択するため、
+	 * 任意のデータバッファを受け付ける汎用の {@link WritableRaster} を直接生成します。
+	 * </p>
+	 */
+	private static class MappedRaster extends WritableRaster {
+
+		/**
+		 * 指定されたサンプルモデルとデータバッファで {@code MappedRaster} を構築します。
+		 *
+		 * @param sampleModel ラスタのサンプルモデル。
+		 * @param dataBuffer ラスタの記憶域となるデータバッファ。
+		 */
+		MappedRaster(SampleModel sampleModel, MappedDataBuffer dataBuffer) {
+			super(sampleModel, dataBuffer, new Point(0, 0));
+		}
+	}
+}
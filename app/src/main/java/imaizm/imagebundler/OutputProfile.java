@@ -0,0 +1,481 @@
+package imaizm.imagebundler;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import imaizm.imagebundler.ImageConverter.BindingSide;
+import imaizm.imagebundler.ImageConverter.CenterClipOption;
+import imaizm.imagebundler.ImageConverter.ContraAspectMode;
+
+/**
+ * 1つの出力ZIPファイルについての変換設定（出力プロファイル）を表すクラスです。
+ * <p>
+ * 変換後の画像の幅と高さ、縦横比が異なる場合の処理（分割・回転・サイズ入れ替え）、綴じ方向、中央切り抜きとその縦横比、
+ * JPEGの圧縮品質とエンコーダのプロファイルを保持します。
+ * 複数の出力プロファイルを指定した場合、各ページは1回だけデコードされ、出力プロファイルごとに変換されて
+ * それぞれのZIPファイル（{@code <入力名>_<プロファイル名>.zip}）に格納されます。
+ * </p>
+ * <p>
+ * インスタンスは不変です。
+ * </p>
+ */
+public class OutputProfile {
+
+	/** 既定の出力プロファイルの名前。出力ZIPファイル名の接尾辞（{@code _reduced.zip}）になります。 */
+	public static final String DEFAULT_NAME = "reduced";
+	/** 既定のJPEGの圧縮品質。 */
+	public static final int DEFAULT_QUALITY = 75;
+	/** 既定の出力プロファイルの一覧（{@link #parseList(String)} の書式）。 */
+	public static final String DEFAULT_SPECIFICATION = DEFAULT_NAME + "=768x1024";
+
+	/** 出力プロファイルの名前。 */
+	private final String name;
+	/** 変換後の画像の幅（ピクセル単位）。 */
+	private final int width;
+	/** 変換後の画像の高さ（ピクセル単位）。 */
+	private final int height;
+	/** 見開き処理時の綴じ方向。 */
+	private final BindingSide side;
+	/** 横長画像を分割する際の中央切り抜きオプション。 */
+	private final CenterClipOption centerClipOption;
+	/** 中央部分を切り抜く際の縦横比の基準となる幅。 */
+	private final int centerClipWidth;
+	/** 中央部分を切り抜く際の縦横比の基準となる高さ。 */
+	private final int centerClipHeight;
+	/** 入力画像と出力画像の縦横比が異なる場合の処理モード。 */
+	private final ContraAspectMode contraAspectMode;
+	/** JPEGの圧縮品質（0から100の範囲）。 */
+	private final int quality;
+	/** JPEGエンコーダのプロファイル。 */
+	private final JpegEncoder.Profile jpegProfile;
+
+	/**
+	 * 指定された名前と大きさで、その他の設定は既定値（右綴じ、中央切り抜きオン、分割、圧縮品質75、
+	 * {@link JpegEncoder#DEFAULT_PROFILE}）の {@code OutputProfile} を構築します。
+	 *
+	 * @param name 出力プロファイルの名前。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 */
+	public OutputProfile(String name, int width, int height) {
+		this(
+			name, width, height,
+			BindingSide.RIGHT, CenterClipOption.ON, ContraAspectMode.SPLIT,
+			DEFAULT_QUALITY, JpegEncoder.DEFAULT_PROFILE);
+	}
+
+	/**
+	 * 指定された設定で {@code OutputProfile} を構築します。
+	 *
+	 * @param name 出力プロファイルの名前。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param contraAspectMode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @param quality JPEGの圧縮品質（0から100の範囲）。
+	 * @param jpegProfile JPEGエンコーダのプロファイル。
+	 */
+	public OutputProfile(
+		String name,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		ContraAspectMode contraAspectMode,
+		int quality,
+		JpegEncoder.Profile jpegProfile) {
+		this(
+			name, width, height, side, centerClipOption, contraAspectMode,
+			ImageConverter.DEFAULT_CENTER_CLIP_WIDTH, ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+			quality, jpegProfile);
+	}
+
+	/**
+	 * 中央切り抜きの縦横比も含めた、すべての設定を指定して {@code OutputProfile} を構築します。
+	 *
+	 * @param name 出力プロファイルの名前。
+	 * @param width 変換後の画像の幅（ピクセル単位）。
+	 * @param height 変換後の画像の高さ（ピクセル単位）。
+	 * @param side 見開き処理時の綴じ方向。
+	 * @param centerClipOption 横長画像を分割する際の中央切り抜きオプション。
+	 * @param contraAspectMode 入力画像と出力画像の縦横比が異なる場合の処理モード。
+	 * @param centerClipWidth 中央部分を切り抜く際の縦横比の基準となる幅。
+	 * @param centerClipHeight 中央部分を切り抜く際の縦横比の基準となる高さ。
+	 * @param quality JPEGの圧縮品質（0から100の範囲）。
+	 * @param jpegProfile JPEGエンコーダのプロファイル。
+	 */
+	public OutputProfile(
+		String name,
+		int width,
+		int height,
+		BindingSide side,
+		CenterClipOption centerClipOption,
+		ContraAspectMode contraAspectMode,
+		int centerClipWidth,
+		int centerClipHeight,
+		int quality,
+		JpegEncoder.Profile jpegProfile) {
+
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid output size : " + width + "x" + height);
+		}
+		if (centerClipWidth <= 0 || centerClipHeight <= 0) {
+			throw new IllegalArgumentException("Invalid center clip aspect : " + centerClipWidth + "x" + centerClipHeight);
+		}
+		if (quality < 0 || quality > 100) {
+			throw new IllegalArgumentException("Invalid quality : " + quality);
+		}
+		this.name = name;
+		this.width = width;
+		this.height = height;
+		this.side = side;
+		this.centerClipOption = centerClipOption;
+		this.contraAspectMode = contraAspectMode;
+		this.centerClipWidth = centerClipWidth;
+		this.centerClipHeight = centerClipHeight;
+		this.quality = quality;
+		this.jpegProfile = jpegProfile;
+	}
+
+	/**
+	 * 出力プロファイルの一覧を表す文字列を解析します。
+	 * <p>
+	 * 書式は {@code 名前=幅x高さ[:オプション]...} をカンマで区切ったものです。オプションには以下を指定できます。
+	 * <ul>
+	 *   <li>{@code split}、{@code rotate}、{@code plain}：縦横比が異なる場合の処理モード（既定は {@code split}）</li>
+	 *   <li>{@code right}、{@code left}：綴じ方向（既定は {@code right}）</li>
+	 *   <li>{@code clip}、{@code noclip}：中央切り抜きオプション（既定は {@code clip}）</li>
+	 *   <li>{@code clip<幅>x<高さ>}：中央切り抜きを行い、その縦横比を指定（既定は {@code clip1520x1080}）</li>
+	 *   <li>{@code q<数値>}：JPEGの圧縮品質（既定は {@code q75}）</li>
+	 *   <li>{@code fast}、{@code small}、{@code archival}：JPEGエンコーダのプロファイル（既定は {@link JpegEncoder#DEFAULT_PROFILE}）</li>
+	 * </ul>
+	 * 例：{@code reduced=768x1024,tablet=1536x2048:archival:q85,thumb=150x200:plain:q60}
+	 * </p>
+	 *
+	 * @param specification 出力プロファイルの一覧を表す文字列。
+	 * @return 出力プロファイルのリスト（指定順）。
+	 * @throws IllegalArgumentException 書式に誤りがある場合、または名前が重複している場合。
+	 */
+	public static List<OutputProfile> parseList(String specification) {
+		return parseList(specification, JpegEncoder.DEFAULT_PROFILE);
+	}
+
+	/**
+	 * 出力プロファイルの一覧を表す文字列を、JPEGエンコーダのプロファイルの既定値を指定して解析します。
+	 *
+	 * @param specification 出力プロファイルの一覧を表す文字列。
+	 * @param defaultJpegProfile JPEGエンコーダのプロファイルを指定しなかった出力プロファイルに使用するプロファイル。
+	 * @return 出力プロファイルのリスト（指定順）。
+	 * @throws IllegalArgumentException 書式に誤りがある場合、または名前が重複している場合。
+	 * @see #parseList(String)
+	 */
+	public static List<OutputProfile> parseList(String specification, JpegEncoder.Profile defaultJpegProfile) {
+		List<OutputProfile> outputProfileList = new ArrayList<OutputProfile>();
+		for (String profileSpecification : specification.split(",")) {
+			if (profileSpecification.trim().isEmpty()) {
+				continue;
+			}
+			OutputProfile outputProfile = parse(profileSpecification.trim(), defaultJpegProfile);
+			for (OutputProfile other : outputProfileList) {
+				if (other.name.equals(outputProfile.name)) {
+					throw new IllegalArgumentException("Duplicate output profile name : " + outputProfile.name);
+				}
+			}
+			outputProfileList.add(outputProfile);
+		}
+		if (outputProfileList.isEmpty()) {
+			throw new IllegalArgumentException("No output profile : " + specification);
+		}
+		return outputProfileList;
+	}
+
+	/**
+	 * 1つの出力プロファイルを表す文字列（{@code 名前=幅x高さ[:オプション]...}）を解析します。
+	 *
+	 * @param specification 出力プロファイルを表す文字列。
+	 * @return 出力プロファイル。
+	 * @throws IllegalArgumentException 書式に誤りがある場合。
+	 */
+	public static OutputProfile parse(String specification) {
+		return parse(specification, JpegEncoder.DEFAULT_PROFILE);
+	}
+
+	/**
+	 * 1つの出力プロファイルを表す文字列を、JPEGエンコーダのプロファイルの既定値を指定して解析します。
+	 *
+	 * @param specification 出力プロファイルを表す文字列。
+	 * @param defaultJpegProfile JPEGエンコーダのプロファイルを指定しなかった場合に使用するプロファイル。
+	 * @return 出力プロファイル。
+	 * @throws IllegalArgumentException 書式に誤りがある場合。
+	 * @see #parse(String)
+	 */
+	public static OutputProfile parse(String specification, JpegEncoder.Profile defaultJpegProfile) {
+		int separatorIndex = specification.indexOf('=');
+		if (separatorIndex <= 0) {
+			throw new IllegalArgumentException("Invalid output profile : " + specification);
+		}
+		String name = specification.substring(0, separatorIndex).trim();
+		String[] fields = specification.substring(separatorIndex + 1).split(":");
+
+		int[] size = parseSize(fields[0], specification);
+		int width = size[0];
+		int height = size[1];
+
+		BindingSide side = BindingSide.RIGHT;
+		CenterClipOption centerClipOption = CenterClipOption.ON;
+		ContraAspectMode contraAspectMode = ContraAspectMode.SPLIT;
+		int centerClipWidth = ImageConverter.DEFAULT_CENTER_CLIP_WIDTH;
+		int centerClipHeight = ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT;
+		int quality = DEFAULT_QUALITY;
+		JpegEncoder.Profile jpegProfile = defaultJpegProfile;
+		for (int i = 1; i < fields.length; i++) {
+			String option = fields[i].trim().toLowerCase();
+			switch (option) {
+			case "split":
+				contraAspectMode = ContraAspectMode.SPLIT;
+				break;
+			case "rotate":
+				contraAspectMode = ContraAspectMode.ROTATE;
+				break;
+			case "plain":
+				contraAspectMode = ContraAspectMode.PLAIN;
+				break;
+			case "right":
+				side = BindingSide.RIGHT;
+				break;
+			case "left":
+				side = BindingSide.LEFT;
+				break;
+			case "clip":
+				centerClipOption = CenterClipOption.ON;
+				break;
+			case "noclip":
+				centerClipOption = CenterClipOption.OFF;
+				break;
+			case "fast":
+			case "small":
+			case "archival":
+				jpegProfile = JpegEncoder.Profile.valueOf(option.toUpperCase());
+				break;
+			default:
+				if (option.startsWith("clip")) {
+					int[] centerClipSize = parseSize(option.substring("clip".length()), specification);
+					centerClipOption = CenterClipOption.ON;
+					centerClipWidth = centerClipSize[0];
+					centerClipHeight = centerClipSize[1];
+				} else if (option.startsWith("q")) {
+					try {
+						quality = Integer.parseInt(option.substring(1));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid quality : " + specification, e);
+					}
+				} else {
+					throw new IllegalArgumentException("Unknown output profile option : " + option);
+				}
+			}
+		}
+		return new OutputProfile(
+			name, width, height, side, centerClipOption, contraAspectMode,
+			centerClipWidth, centerClipHeight, quality, jpegProfile);
+	}
+
+	/**
+	 * {@code 幅x高さ} の形式の文字列を解析します。
+	 *
+	 * @param size 解析する文字列。
+	 * @param specification エラーメッセージに含める、出力プロファイルを表す文字列。
+	 * @return 幅と高さの配列。
+	 * @throws IllegalArgumentException 書式に誤りがある場合。
+	 */
+	private static int[] parseSize(String size, String specification) {
+		String[] values = size.trim().toLowerCase().split("x");
+		if (values.length != 2) {
+			throw new IllegalArgumentException("Invalid size : " + specification);
+		}
+		try {
+			return new int[] { Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()) };
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid size : " + specification, e);
+		}
+	}
+
+	/**
+	 * 出力プロファイルの名前を取得します。
+	 * @return 出力プロファイルの名前。
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * 変換後の画像の幅を取得します。
+	 * @return 変換後の画像の幅（ピクセル単位）。
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * 変換後の画像の高さを取得します。
+	 * @return 変換後の画像の高さ（ピクセル単位）。
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * 見開き処理時の綴じ方向を取得します。
+	 * @return 見開き処理時の綴じ方向。
+	 */
+	public BindingSide getSide() {
+		return this.side;
+	}
+
+	/**
+	 * 横長画像を分割する際の中央切り抜きオプションを取得します。
+	 * @return 中央切り抜きオプション。
+	 */
+	public CenterClipOption getCenterClipOption() {
+		return this.centerClipOption;
+	}
+
+	/**
+	 * 中央部分を切り抜く際の縦横比の基準となる幅を取得します。
+	 * @return 中央切り抜きの縦横比の基準となる幅。
+	 */
+	public int getCenterClipWidth() {
+		return this.centerClipWidth;
+	}
+
+	/**
+	 * 中央部分を切り抜く際の縦横比の基準となる高さを取得します。
+	 * @return 中央切り抜きの縦横比の基準となる高さ。
+	 */
+	public int getCenterClipHeight() {
+		return this.centerClipHeight;
+	}
+
+	/**
+	 * 入力画像と出力画像の縦横比が異なる場合の処理モードを取得します。
+	 * @return 縦横比が異なる場合の処理モード。
+	 */
+	public ContraAspectMode getContraAspectMode() {
+		return this.contraAspectMode;
+	}
+
+	/**
+	 * JPEGの圧縮品質を取得します。
+	 * @return JPEGの圧縮品質（0から100の範囲）。
+	 */
+	public int getQuality() {
+		return this.quality;
+	}
+
+	/**
+	 * JPEGエンコーダのプロファイルを取得します。
+	 * @return JPEGエンコーダのプロファイル。
+	 */
+	public JpegEncoder.Profile getJpegProfile() {
+		return this.jpegProfile;
+	}
+
+	/**
+	 * 指定された大きさの画像をこの出力プロファイルで変換した場合の縮小率を求めます。
+	 *
+	 * @param srcWidth 変換元の画像の幅（ピクセル単位）。
+	 * @param srcHeight 変換元の画像の高さ（ピクセル単位）。
+	 * @return 変換元の画像の1ピクセルに対する変換後の画像のピクセル数の比（縮小の場合は1未満）。
+	 * @see ImageConverter#getScaleFactor(int, int, int, int, CenterClipOption, ContraAspectMode, int, int)
+	 */
+	public double getScaleFactor(int srcWidth, int srcHeight) {
+		return ImageConverter.getScaleFactor(
+			srcWidth, srcHeight, this.width, this.height, this.centerClipOption, this.contraAspectMode,
+			this.centerClipWidth, this.centerClipHeight);
+	}
+
+	/**
+	 * 指定された画像をこの出力プロファイルの設定で変換します。
+	 *
+	 * @param srcImage 変換元の画像。
+	 * @param grayscaleTolerance グレースケール画像とみなす際のRGB成分間の差の許容値。負の値の場合はグレースケールの判定を行いません。
+	 * @return 変換後の画像のリスト（読む順）。
+	 * @see ImageConverter#convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode, int, int, int)
+	 */
+	public List<BufferedImage> convert(BufferedImage srcImage, int grayscaleTolerance) {
+		return this.convert(srcImage, grayscaleTolerance, ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD);
+	}
+
+	/**
+	 * 指定された画像を、ヒープ外に確保する画素数の閾値を指定してこの出力プロファイルの設定で変換します。
+	 *
+	 * @param srcImage 変換元の画像。
+	 * @param grayscaleTolerance グレースケール画像とみなす際のRGB成分間の差の許容値。負の値の場合はグレースケールの判定を行いません。
+	 * @param offHeapPixelThreshold 回転やグレースケール変換で生成する画像をヒープ外に確保する画素数の閾値。
+	 * @return 変換後の画像のリスト（読む順）。
+	 * @see ImageConverter#convert(BufferedImage, int, int, BindingSide, CenterClipOption, ContraAspectMode, int, int, int, long)
+	 */
+	public List<BufferedImage> convert(BufferedImage srcImage, int grayscaleTolerance, long offHeapPixelThreshold) {
+		return ImageConverter.convert(
+			srcImage, this.width, this.height, this.side, this.centerClipOption, this.contraAspectMode,
+			this.centerClipWidth, this.centerClipHeight, grayscaleTolerance, offHeapPixelThreshold);
+	}
+
+	/**
+	 * 指定されたJPEGデータを、この出力プロファイルの設定で再エンコードせずに分割します。
+	 * <p>
+	 * JPEGデータの係数を読み込めない場合（エントロピー符号化データが壊れている場合など）も、可逆に分割できないものとして null を返します。
+	 * 呼び出し元は画素をデコードして分割する処理に切り替えるため、標準のデコーダで読み込めるページは変換できます。
+	 * </p>
+	 *
+	 * @param data 分割するJPEGデータ。
+	 * @return 分割後の各画像のJPEGデータ（読む順）。処理モードが分割でない場合や、可逆に分割できない場合は null。
+	 * @see JpegCropper#split(byte[], int, int, BindingSide, CenterClipOption, int, int)
+	 */
+	public List<byte[]> splitLosslessly(byte[] data) {
+		if (this.contraAspectMode != ContraAspectMode.SPLIT) {
+			return null;
+		}
+		try {
+			return JpegCropper.split(
+				data, this.width, this.height, this.side, this.centerClipOption,
+				this.centerClipWidth, this.centerClipHeight);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * この出力プロファイルで変換した画像を、指定された出力プロファイルで変換し直せるかどうかを判定します。
+	 * <p>
+	 * 分割・回転・切り抜きの設定が同じで、指定された出力プロファイルの大きさがこの出力プロファイルの大きさ以下の場合、
+	 * この出力プロファイルの変換結果を縮小するだけで、元の画像から変換した場合と同じ構図の画像が得られます。
+	 * </p>
+	 *
+	 * @param other 変換し直す出力プロファイル。
+	 * @return 変換し直せる場合は true。
+	 */
+	public boolean canCascadeTo(OutputProfile other) {
+		return
+			this.side == other.side &&
+			this.centerClipOption == other.centerClipOption &&
+			this.centerClipWidth == other.centerClipWidth &&
+			this.centerClipHeight == other.centerClipHeight &&
+			this.contraAspectMode == other.contraAspectMode &&
+			this.width >= other.width &&
+			this.height >= other.height &&
+			(this.width > this.height) == (other.width > other.height);
+	}
+
+	@Override
+	public String toString() {
+		return this.name + "=" + this.width + "x" + this.height + ":" +
+			this.contraAspectMode.name().toLowerCase() + ":" +
+			this.side.name().toLowerCase() + ":" +
+			((this.centerClipOption == CenterClipOption.ON) ? "clip" + this.centerClipWidth + "x" + this.centerClipHeight : "noclip") + ":" +
+			"q" + this.quality + ":" +
+			this.jpegProfile.name().toLowerCase();
+	}
+}
@@ -0,0 +1,405 @@
+package imaizm.imagebundler;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * 重複したページを検出し、同じ内容のページの変換を1度だけ行うためのクラスです。
+ * <p>
+ * 各ページの元ファイルの内容のSHA-256ハッシュ値を計算し、既に変換済み（または変換中）のページと一致した場合は、
+ * そのページの変換結果を再利用します。
+ * 再利用するエントリはエンコード済みのバイト列を保持せず、同じZIPファイルに書き込み済みの最初のページのエントリを
+ * 参照します（{@link ArchiveWriter.Entry#asReference(String)}）。
+ * このクラスが保持するのは、ハッシュ値ごとの最初のページの名前・ページ番号と、エントリの名前・サイズ・CRC-32チェックサムだけのため、
+ * エンコード済みのバイト列は書き込みスレッドが書き込んだ時点で解放され、メモリ使用量が出力ZIPファイルのサイズに比例して増えることはありません。
+ * 同じ内容のページが同時に処理された場合は、最初のページの変換完了を待機します。
+ * </p>
+ * <p>
+ * 参照先のエントリは参照するエントリより前に書き込まれている必要があるため、重複したページは
+ * ページ番号が小さいページだけを参照します。後のページが先に登録された場合、前のページは重複とみなさずに変換します。
+ * </p>
+ * <p>
+ * 差分ハッシュのハミング距離の上限が0以上の場合は、縮小画像から計算した64ビットの差分ハッシュ（dHash）も比較し、
+ * ハミング距離がその値以下のページ（白紙ページや再スキャンされたページなど）も重複とみなします。
+ * この判定は元ファイルが完全に一致しないページの変換結果を共有するため、既定では無効です。
+ * </p>
+ * <p>
+ * このクラスのインスタンスは1つの出力ZIPファイルの作成ごとに生成し、複数の変換ワーカーから同時に使用できます。
+ * </p>
+ */
+public class PageDeduplicator {
+
+	/** 知覚的に同一とみなす差分ハッシュのハミング距離の上限の既定値（-1：差分ハッシュによる判定を行わない）。 */
+	public static final int DEFAULT_PERCEPTUAL_HASH_DISTANCE = -1;
+
+	/** ハッシュ値の計算時に1度にマップするバイト数（256MB）。 */
+	private static final long DIGEST_MAPPING_SIZE = 256L * 1024 * 1024;
+
+	/** 差分ハッシュの計算に使用する縮小画像の幅（隣接画素の差分を取るため、ハッシュのビット数の列数＋1）。 */
+	private static final int HASH_IMAGE_WIDTH = 9;
+	/** 差分ハッシュの計算に使用する縮小画像の高さ。 */
+	private static final int HASH_IMAGE_HEIGHT = 8;
+	/** 差分ハッシュの計算時に、デコード時の間引きで得る中間画像の幅の目安。 */
+	private static final int HASH_SOURCE_WIDTH = 72;
+
+	/**
+	 * 1ページ分の画像ファイルを変換するための関数型インターフェースです。
+	 */
+	@FunctionalInterface
+	public interface PageConverter {
+		/**
+		 * 指定された画像ファイルを変換し、ZIPファイルに格納するエントリのリストを返します。
+		 *
+		 * @param inputFilePath 変換対象の画像ファイルのパス。
+		 * @return ZIPファイルに格納するエントリのリスト。
+		 * @throws IOException ファイルの読み込みまたはエンコード中にエラーが発生した場合。
+		 */
+		List<ArchiveWriter.Entry> convert(Path inputFilePath) throws IOException;
+	}
+
+	/**
+	 * 1ページ分の画像ファイルを、複数の出力ZIPファイル向けに変換するための関数型インターフェースです。
+	 */
+	@FunctionalInterface
+	public interface MultiPageConverter {
+		/**
+		 * 指定された画像ファイルを変換し、出力ZIPファイルごとに格納するエントリのリストを返します。
+		 *
+		 * @param inputFilePath 変換対象の画像ファイルのパス。
+		 * @return 出力ZIPファイルごとの、格納するエントリのリスト。
+		 * @throws IOException ファイルの読み込みまたはエンコード中にエラーが発生した場合。
+		 */
+		List<List<ArchiveWriter.Entry>> convert(Path inputFilePath) throws IOException;
+	}
+
+	/**
+	 * 最初に変換されたページの情報を保持するクラスです。
+	 */
+	private static class ConvertedPage {
+		/** 最初に変換されたページのファイル名（拡張子を除く）。 */
+		private final String baseName;
+		/** 最初に変換されたページのページ番号。 */
+		private final int sequence;
+		/** 最初に変換されたページの差分ハッシュ。差分ハッシュによる判定を行わない場合は0。 */
+		private long perceptualHash;
+		/** 最初に変換されたページの、出力ZIPファイルごとのエントリを参照するエントリ（内容のバイト列を保持しない）。 */
+		private final CompletableFuture<List<List<ArchiveWriter.Entry>>> referenceListFuture = new CompletableFuture<List<List<ArchiveWriter.Entry>>>();
+
+		/**
+		 * 指定されたファイル名とページ番号で {@code ConvertedPage} を構築します。
+		 *
+		 * @param baseName 最初に変換されたページのファイル名（拡張子を除く）。
+		 * @param sequence 最初に変換されたページのページ番号。
+		 */
+		ConvertedPage(String baseName, int sequence) {
+			this.baseName = baseName;
+			this.sequence = sequence;
+		}
+	}
+
+	/** 元ファイルのSHA-256ハッシュ値（16進文字列）と、最初に変換されたページの対応表。 */
+	private final ConcurrentMap<String, ConvertedPage> convertedPageMap = new ConcurrentHashMap<String, ConvertedPage>();
+	/** 差分ハッシュによる判定の対象となる、変換済み（または変換中）のページのリスト。 */
+	private final List<ConvertedPage> perceptualPageList = new ArrayList<ConvertedPage>();
+	/** 知覚的に同一とみなす差分ハッシュのハミング距離の上限。負の値の場合は判定を行いません。 */
+	private final int perceptualHashDistance;
+	/** 重複と判定されたページの数。 */
+	private final AtomicInteger duplicatePageCount = new AtomicInteger();
+
+	/**
+	 * 差分ハッシュによる判定を行わない（{@link #DEFAULT_PERCEPTUAL_HASH_DISTANCE}）{@code PageDeduplicator} を構築します。
+	 */
+	public PageDeduplicator() {
+		this(DEFAULT_PERCEPTUAL_HASH_DISTANCE);
+	}
+
+	/**
+	 * 指定された差分ハッシュのハミング距離の上限で {@code PageDeduplicator} を構築します。
+	 *
+	 * @param perceptualHashDistance 知覚的に同一とみなす差分ハッシュのハミング距離の上限。負の値の場合は判定を行いません。
+	 */
+	public PageDeduplicator(int perceptualHashDistance) {
+		this.perceptualHashDistance = perceptualHashDistance;
+	}
+
+	/**
+	 * 指定された画像ファイルを変換します。重複したページの場合は、最初のページの変換結果を再利用します。
+	 * <p>
+	 * 再利用したエントリの名前は、最初のページのファイル名の部分をこのページのファイル名に置き換えたものになります
+	 * （例："p01_2.jpg" → "p05_2.jpg"）。内容は最初のページのエントリを参照します。
+	 * 最初のページの変換が失敗した場合は、重複したページも同じ例外で失敗します。
+	 * </p>
+	 *
+	 * @param sequence ページ番号（出力ZIPファイルに書き込まれる順）。
+	 * @param inputFilePath 変換対象の画像ファイルのパス。
+	 * @param pageConverter 重複していないページを変換する関数。
+	 * @return ZIPファイルに格納するエントリのリスト。
+	 * @throws IOException ファイルの読み込みまたはエンコード中にエラーが発生した場合。
+	 */
+	public List<ArchiveWriter.Entry> convert(int sequence, Path inputFilePath, PageConverter pageConverter) throws IOException {
+		return this.convertAll(
+			sequence,
+			inputFilePath,
+			pageFilePath -> Collections.singletonList(pageConverter.convert(pageFilePath)))
+			.get(0);
+	}
+
+	/**
+	 * 指定された画像ファイルを複数の出力ZIPファイル向けに変換します。重複したページの場合は、最初のページの変換結果を再利用します。
+	 * <p>
+	 * 再利用したエントリの名前の付け替えや、最初のページの変換が失敗した場合の扱いは
+	 * {@link #convert(int, Path, PageConverter)} と同じです。
+	 * </p>
+	 *
+	 * @param sequence ページ番号（出力ZIPファイルに書き込まれる順）。
+	 * @param inputFilePath 変換対象の画像ファイルのパス。
+	 * @param multiPageConverter 重複していないページを変換する関数。
+	 * @return 出力ZIPファイルごとの、格納するエントリのリスト。
+	 * @throws IOException ファイルの読み込みまたはエンコード中にエラーが発生した場合。
+	 */
+	public List<List<ArchiveWriter.Entry>> convertAll(int sequence, Path inputFilePath, MultiPageConverter multiPageConverter) throws IOException {
+		String baseName = FilenameUtils.getBaseName(inputFilePath.getFileName().toString());
+
+		ConvertedPage ownPage = new ConvertedPage(baseName, sequence);
+		ConvertedPage existingPage = this.convertedPageMap.putIfAbsent(computeDigest(inputFilePath), ownPage);
+		boolean registered = (existingPage == null);
+		if (registered && this.perceptualHashDistance >= 0) {
+			try {
+				ownPage.perceptualHash = computePerceptualHash(inputFilePath);
+				existingPage = this.findOrAddSimilarPage(ownPage);
+			} catch (IOException | RuntimeException | Error e) {
+				ownPage.referenceListFuture.completeExceptionally(e);
+				throw e;
+			}
+			if (existingPage != null) {
+				// 同じ内容のページが後から現れた場合に備えて、このページの参照も最初のページから導出する
+				ConvertedPage similarPage = existingPage;
+				similarPage.referenceListFuture.whenComplete((referenceList, e) -> {
+					if (e != null) {
+						ownPage.referenceListFuture.completeExceptionally(e);
+					} else {
+						ownPage.referenceListFuture.complete(rename(referenceList, similarPage.baseName, baseName));
+					}
+				});
+			}
+		}
+		if (existingPage != null && existingPage.sequence > sequence) {
+			// 後のページはまだ書き込まれていないため参照できない。このページは重複とみなさずに変換する
+			existingPage = null;
+		}
+
+		if (existingPage == null) {
+			try {
+				List<List<ArchiveWriter.Entry>> entryListList = multiPageConverter.convert(inputFilePath);
+				if (registered) {
+					ownPage.referenceListFuture.complete(rename(entryListList, baseName, baseName));
+				}
+				return entryListList;
+			} catch (IOException | RuntimeException | Error e) {
+				if (registered) {
+					ownPage.referenceListFuture.completeExceptionally(e);
+				}
+				throw e;
+			}
+		}
+
+		List<List<ArchiveWriter.Entry>> existingReferenceList = await(existingPage.referenceListFuture);
+		this.duplicatePageCount.incrementAndGet();
+		System.out.println("-> " + inputFilePath.getFileName() + " (duplicate of " + existingPage.baseName + ")");
+		return rename(existingReferenceList, existingPage.baseName, baseName);
+	}
+
+	/**
+	 * エントリ名のファイル名の部分を置き換え、元のエントリを参照するエントリのリストを、出力ZIPファイルごとに生成します。
+	 * <p>
+	 * 生成したエントリは内容のバイト列を保持せず、元のエントリ（またはその参照先）を参照します。
+	 * </p>
+	 *
+	 * @param entryListList 出力ZIPファイルごとの、元のエントリのリスト。
+	 * @param oldBaseName 元のエントリ名の先頭のファイル名（拡張子を除く）。
+	 * @param newBaseName 置き換え後のファイル名（拡張子を除く）。
+	 * @return 出力ZIPファイルごとの、エントリ名を置き換えて元のエントリを参照するエントリのリスト。
+	 */
+	private static List<List<ArchiveWriter.Entry>> rename(List<List<ArchiveWriter.Entry>> entryListList, String oldBaseName, String newBaseName) {
+		List<List<ArchiveWriter.Entry>> renamedEntryListList = new ArrayList<List<ArchiveWriter.Entry>>();
+		for (List<ArchiveWriter.Entry> entryList : entryListList) {
+			List<ArchiveWriter.Entry> renamedEntryList = new ArrayList<ArchiveWriter.Entry>();
+			for (ArchiveWriter.Entry entry : entryList) {
+				renamedEntryList.add(entry.asReference(newBaseName + entry.getName().substring(oldBaseName.length())));
+			}
+			renamedEntryListList.add(renamedEntryList);
+		}
+		return renamedEntryListList;
+	}
+
+	/**
+	 * 差分ハッシュが近い、指定されたページより前のページを検索し、見つからなかった場合は指定されたページを検索対象に追加します。
+	 *
+	 * @param ownPage 検索の基準となるページ。
+	 * @return 差分ハッシュが近いページ。見つからなかった場合は null。
+	 */
+	private synchronized ConvertedPage findOrAddSimilarPage(ConvertedPage ownPage) {
+		for (ConvertedPage page : this.perceptualPageList) {
+			if (page.sequence < ownPage.sequence && Long.bitCount(page.perceptualHash ^ ownPage.perceptualHash) <= this.perceptualHashDistance) {
+				return page;
+			}
+		}
+		this.perceptualPageList.add(ownPage);
+		return null;
+	}
+
+	/**
+	 * 重複と判定されたページの数を取得します。
+	 * @return 重複と判定されたページの数。
+	 */
+	public int getDuplicatePageCount() {
+		return this.duplicatePageCount.get();
+	}
+
+	/**
+	 * 指定されたファイルの内容のSHA-256ハッシュ値を計算します。
+	 * <p>
+	 * ファイルはメモリマップして読み込みます。
+	 * </p>
+	 *
+	 * @param filePath 対象のファイルのパス。
+	 * @return SHA-256ハッシュ値の16進文字列。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+	 */
+	public static String computeDigest(Path filePath) throws IOException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+			long size = fileChannel.size();
+			for (long position = 0; position < size; position += DIGEST_MAPPING_SIZE) {
+				messageDigest.update(fileChannel.map(
+					FileChannel.MapMode.READ_ONLY,
+					position,
+					Math.min(DIGEST_MAPPING_SIZE, size - position)));
+			}
+		}
+
+		StringBuilder stringBuilder = new StringBuilder();
+		for (byte b : messageDigest.digest()) {
+			stringBuilder.append(String.format("%02x", b));
+		}
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * 指定された画像ファイルの差分ハッシュ（dHash）を計算します。
+	 * <p>
+	 * 画像をデコード時に間引いて読み込み、9x8ピクセルのグレースケール画像に縮小したうえで、
+	 * 各行の隣接する画素の明るさを比較した64ビットの値を返します。
+	 * 画像として読み込めなかった場合は0を返します。
+	 * </p>
+	 *
+	 * @param imageFilePath 対象の画像ファイルのパス。
+	 * @return 差分ハッシュ。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+	 */
+	public static long computePerceptualHash(Path imageFilePath) throws IOException {
+		BufferedImage sourceImage = readSubsampled(imageFilePath, HASH_SOURCE_WIDTH);
+		if (sourceImage == null) {
+			return 0;
+		}
+
+		BufferedImage hashImage = new BufferedImage(HASH_IMAGE_WIDTH, HASH_IMAGE_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D graphics = hashImage.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(sourceImage, 0, 0, HASH_IMAGE_WIDTH, HASH_IMAGE_HEIGHT, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		long perceptualHash = 0;
+		for (int y = 0; y < HASH_IMAGE_HEIGHT; y++) {
+			for (int x = 0; x < HASH_IMAGE_WIDTH - 1; x++) {
+				perceptualHash <<= 1;
+				if (hashImage.getRaster().getSample(x, y, 0) > hashImage.getRaster().getSample(x + 1, y, 0)) {
+					perceptualHash |= 1;
+				}
+			}
+		}
+		return perceptualHash;
+	}
+
+	/**
+	 * 指定された画像ファイルを、幅がおおよそ指定された値になるよう間引いて読み込みます。
+	 *
+	 * @param imageFilePath 対象の画像ファイルのパス。
+	 * @param targetWidth 読み込み後の幅の目安（ピクセル単位）。
+	 * @return 読み込まれた画像。対応する {@link ImageReader} が存在しない場合は null。
+	 * @throws IOException ファイルの読み込み中にエラーが発生した場合。
+	 */
+	private static BufferedImage readSubsampled(Path imageFilePath, int targetWidth) throws IOException {
+		try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(imageFilePath.toFile())) {
+			if (imageInputStream == null) {
+				throw new IOException("Can't create an ImageInputStream!");
+			}
+
+			Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+			if (!imageReaders.hasNext()) {
+				return null;
+			}
+
+			ImageReader imageReader = imageReaders.next();
+			try {
+				imageReader.setInput(imageInputStream, true, true);
+				ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+				int subsampling = Math.max(1, imageReader.getWidth(0) / targetWidth);
+				imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return imageReader.read(0, imageReadParam);
+			} finally {
+				imageReader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * 指定された {@link CompletableFuture} の完了を待機し、最初のページのエントリを参照するエントリを返します。
+	 *
+	 * @param entryListFuture 待機対象の {@link CompletableFuture}。
+	 * @return 最初のページのエントリを参照するエントリ。
+	 * @throws IOException 最初のページの変換中にI/Oエラーが発生していた場合。
+	 */
+	private static List<List<ArchiveWriter.Entry>> await(CompletableFuture<List<List<ArchiveWriter.Entry>>> entryListFuture) throws IOException {
+		try {
+			return entryListFuture.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package imaizm.imagebundler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * 1つの入力の変換で、エンコードが完了したページを記録するジャーナルです。
+ * <p>
+ * 変換が中断された場合（プロセスの強制終了など）に、同じ入力を同じ設定で再実行すると、
+ * 記録済みのページは変換せずに保存済みのエンコード結果を出力ZIPファイルへ格納し、残りのページだけを変換します。
+ * 入力の変換が完了した場合は、ページのエンコード結果を削除して完了を記録し、再実行時はその入力を省略できるようにします。
+ * </p>
+ * <p>
+ * ジャーナルは、ジャーナルのディレクトリ内の入力ごとのディレクトリ（{@code <入力名>-<入力パスのハッシュ>}）に保存します。
+ * <ul>
+ *   <li>{@value #JOURNAL_FILE_NAME}：1行目が識別情報、2行目以降が完了したページごとの1行（ページ番号とエントリの名前・サイズ・CRC-32チェックサム）のログです。</li>
+ *   <li>{@code <ページ番号>-<出力プロファイルの番号>-<エントリの番号>}：エンコード結果のファイルです。</li>
+ *   <li>{@value #DONE_FILE_NAME}：入力の変換が完了したことを表すファイルです。内容は識別情報です。</li>
+ * </ul>
+ * ページを記録する際は、エンコード結果のファイルをディスクへ同期してからログに1行を追記し、ログも同期します。
+ * 途中で中断された場合の不完全な行や、ファイルが欠けているページは、読み込み時に未完了として扱います。
+ * </p>
+ * <p>
+ * 識別情報は、入力のパス・サイズ・最終更新日時と、出力に影響する変換の設定から求めたハッシュです。
+ * 入力または設定が変わった場合、以前のジャーナルは破棄します。
+ * </p>
+ */
+final class PageJournal implements Closeable {
+
+	/** ページを記録するログのファイル名。 */
+	static final String JOURNAL_FILE_NAME = "journal.log";
+	/** 入力の変換の完了を表すファイルのファイル名。 */
+	static final String DONE_FILE_NAME = "done";
+	/** ログの1行目の接頭辞。 */
+	private static final String HEADER_PREFIX = "imagebundler-journal 1 ";
+	/** ログのページの行の接頭辞。 */
+	private static final String PAGE_PREFIX = "page";
+
+	/** 入力ごとのジャーナルのディレクトリのパス。 */
+	private final Path directoryPath;
+	/** 識別情報。 */
+	private final String fingerprint;
+	/** 入力の変換が完了済みかどうか。 */
+	private final boolean completed;
+	/** 記録済みのページの、出力プロファイルごとのエントリのリスト（ページ番号順）。 */
+	private final Map<Integer, List<List<ArchiveWriter.Entry>>> journaledPageMap;
+	/** ログへ追記する {@link FileChannel}。完了済みの場合は null。 */
+	private FileChannel journalFileChannel;
+
+	/**
+	 * 読み込み済みの状態で {@code PageJournal} を構築します。
+	 *
+	 * @param directoryPath 入力ごとのジャーナルのディレクトリのパス。
+	 * @param fingerprint 識別情報。
+	 * @param completed 入力の変換が完了済みかどうか。
+	 * @param journaledPageMap 記録済みのページ。
+	 * @param journalFileChannel ログへ追記する {@link FileChannel}。
+	 */
+	private PageJournal(
+		Path directoryPath,
+		String fingerprint,
+		boolean completed,
+		Map<Integer, List<List<ArchiveWriter.Entry>>> journaledPageMap,
+		FileChannel journalFileChannel) {
+
+		this.directoryPath = directoryPath;
+		this.fingerprint = fingerprint;
+		this.completed = completed;
+		this.journaledPageMap = journaledPageMap;
+		this.journalFileChannel = journalFileChannel;
+	}
+
+	/**
+	 * 指定された入力のジャーナルを開きます。
+	 * <p>
+	 * 同じ入力と設定のジャーナルがある場合は、記録済みのページまたは完了の記録を読み込みます。
+	 * 入力または設定が異なるジャーナルがある場合は破棄して、新しいジャーナルを作成します。
+	 * </p>
+	 *
+	 * @param journalDirectoryPath ジャーナルのディレクトリのパス。
+	 * @param inputFilePath 入力ファイルまたはディレクトリのパス。
+	 * @param options 変換の設定。
+	 * @return 開いたジャーナル。
+	 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+	 */
+	static PageJournal open(Path journalDirectoryPath, Path inputFilePath, BundleOptions options) throws IOException {
+		Path absoluteInputFilePath = inputFilePath.toAbsolutePath().normalize();
+		Path directoryPath = journalDirectoryPath.resolve(
+			absoluteInputFilePath.getFileName().toString() + "-" + hash(absoluteInputFilePath.toString()).substring(0, 16));
+		String fingerprint = fingerprint(absoluteInputFilePath, options);
+
+		// 完了済みの場合
+		Path doneFilePath = directoryPath.resolve(DONE_FILE_NAME);
+		if (Files.exists(doneFilePath)) {
+			if (fingerprint.equals(new String(Files.readAllBytes(doneFilePath), StandardCharsets.UTF_8))) {
+				return new PageJournal(
+					directoryPath, fingerprint, true, Collections.<Integer, List<List<ArchiveWriter.Entry>>>emptyMap(), null);
+			}
+			FileUtils.deleteDirectory(directoryPath.toFile());
+		}
+
+		// 変換途中の場合は、記録済みのページを読み込む
+		Path journalFilePath = directoryPath.resolve(JOURNAL_FILE_NAME);
+		Map<Integer, List<List<ArchiveWriter.Entry>>> journaledPageMap = null;
+		if (Files.exists(journalFilePath)) {
+			journaledPageMap = load(directoryPath, journalFilePath, fingerprint, options.getOutputProfileList().size());
+			if (journaledPageMap == null) {
+				FileUtils.deleteDirectory(directoryPath.toFile());
+			}
+		}
+
+		FileChannel journalFileChannel;
+		if (journaledPageMap == null) {
+			journaledPageMap = new TreeMap<Integer, List<List<ArchiveWriter.Entry>>>();
+			Files.createDirectories(directoryPath);
+			journalFileChannel = FileChannel.open(journalFilePath,
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			writeLine(journalFileChannel, HEADER_PREFIX + fingerprint);
+		} else {
+			journalFileChannel = FileChannel.open(journalFilePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			if (!journaledPageMap.isEmpty()) {
+				System.out.println("resuming from journal : " + journaledPageMap.size() + " pages");
+			}
+		}
+		return new PageJournal(directoryPath, fingerprint, false, journaledPageMap, journalFileChannel);
+	}
+
+	/**
+	 * ログを読み込み、記録済みのページを求めます。
+	 *
+	 * @param directoryPath 入力ごとのジャーナルのディレクトリのパス。
+	 * @param journalFilePath ログのパス。
+	 * @param fingerprint 識別情報。
+	 * @param profileCount 出力プロファイルの数。
+	 * @return 記録済みのページ。識別情報が一致しない場合は null。
+	 * @throws IOException ログの読み込み中にエラーが発生した場合。
+	 */
+	private static Map<Integer, List<List<ArchiveWriter.Entry>>> load(
+		Path directoryPath,
+		Path journalFilePath,
+		String fingerprint,
+		int profileCount)
+		throws IOException {
+
+		String content = new String(Files.readAllBytes(journalFilePath), StandardCharsets.UTF_8);
+		// 改行で終わっていない最後の行は、書き込み途中で中断されたものとして無視する
+		String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+		if (lines.length == 0 || !lines[0].equals(HEADER_PREFIX + fingerprint)) {
+			return null;
+		}
+
+		Map<Integer, List<List<ArchiveWriter.Entry>>> journaledPageMap = new TreeMap<Integer, List<List<ArchiveWriter.Entry>>>();
+		for (int i = 1; i < lines.length; i++) {
+			String[] fields = lines[i].split("\t");
+			if (fields.length < 2 || !fields[0].equals(PAGE_PREFIX)) {
+				continue;
+			}
+			try {
+				int sequence = Integer.parseInt(fields[1]);
+				List<List<ArchiveWriter.Entry>> entryListList = new ArrayList<List<ArchiveWriter.Entry>>();
+				for (int j = 0; j < profileCount; j++) {
+					entryListList.add(new ArrayList<ArchiveWriter.Entry>());
+				}
+				boolean complete = true;
+				for (int k = 2; k < fields.length; k++) {
+					// <出力プロファイルの番号>/<エントリの番号>/<サイズ>/<CRC>/<最終更新日時>/<エントリ名>
+					String[] values = fields[k].split("/", 6);
+					int profileIndex = Integer.parseInt(values[0]);
+					Path entryFilePath = directoryPath.resolve(sequence + "-" + profileIndex + "-" + Integer.parseInt(values[1]));
+					long size = Long.parseLong(values[2]);
+					if (!Files.isRegularFile(entryFilePath) || Files.size(entryFilePath) != size) {
+						complete = false;
+						break;
+					}
+					entryListList.get(profileIndex).add(ArchiveWriter.Entry.fromFile(
+						URLDecoder.decode(values[5], "UTF-8"),
+						Long.parseLong(values[4]),
+						entryFilePath,
+						size,
+						Long.parseLong(values[3])));
+				}
+				if (complete) {
+					journaledPageMap.put(sequence, entryListList);
+				}
+			} catch (RuntimeException e) {
+				// 壊れた行は未完了のページとして扱う
+			}
+		}
+		return journaledPageMap;
+	}
+
+	/**
+	 * 入力の変換が完了済みかどうかを取得します。
+	 * @return 完了済みの場合は true。
+	 */
+	boolean isCompleted() {
+		return this.completed;
+	}
+
+	/**
+	 * 記録済みのページ数を取得します。
+	 * @return 記録済みのページ数。
+	 */
+	int getJournaledPageCount() {
+		return this.journaledPageMap.size();
+	}
+
+	/**
+	 * 指定されたページの、記録済みのエントリを取得します。
+	 *
+	 * @param sequence ページ番号。
+	 * @return 出力プロファイルごとのエントリのリスト。記録されていない場合は null。
+	 */
+	List<List<ArchiveWriter.Entry>> getEntries(int sequence) {
+		return this.journaledPageMap.get(sequence);
+	}
+
+	/**
+	 * エンコードが完了したページを記録します。
+	 * <p>
+	 * エントリの内容をファイルに保存してディスクへ同期した後、ログに1行を追記して同期します。
+	 * 複数の変換ワーカーから同時に呼び出すことができます。
+	 * </p>
+	 * <p>
+	 * 書き込み済みのエントリを参照するエントリ（重複したページ）を含むページは、内容を保存できないため記録しません。
+	 * このようなページは再開時に変換し直します。
+	 * </p>
+	 *
+	 * @param sequence ページ番号。
+	 * @param entryListList 出力プロファイルごとのエントリのリスト。
+	 * @throws IOException 保存中にエラーが発生した場合。
+	 */
+	void record(int sequence, List<List<ArchiveWriter.Entry>> entryListList) throws IOException {
+		for (List<ArchiveWriter.Entry> entryList : entryListList) {
+			for (ArchiveWriter.Entry entry : entryList) {
+				if (entry.getReferencedName() != null) {
+					return;
+				}
+			}
+		}
+		StringBuilder line = new StringBuilder(PAGE_PREFIX).append('\t').append(sequence);
+		for (int j = 0; j < entryListList.size(); j++) {
+			List<ArchiveWriter.Entry> entryList = entryListList.get(j);
+			for (int k = 0; k < entryList.size(); k++) {
+				ArchiveWriter.Entry entry = entryList.get(k);
+				Path entryFilePath = this.directoryPath.resolve(sequence + "-" + j + "-" + k);
+				try (FileChannel fileChannel = FileChannel.open(entryFilePath,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					if (entry.getData() != null) {
+						ByteBuffer byteBuffer = ByteBuffer.wrap(entry.getData());
+						while (byteBuffer.hasRemaining()) {
+							fileChannel.write(byteBuffer);
+						}
+					} else {
+						try (FileChannel sourceFileChannel = FileChannel.open(entry.getSourceFilePath(), StandardOpenOption.READ)) {
+							for (long position = 0; position < entry.getSize(); ) {
+								position += sourceFileChannel.transferTo(position, entry.getSize() - position, fileChannel);
+							}
+						}
+					}
+					fileChannel.force(true);
+				}
+				line.append('\t')
+					.append(j).append('/')
+					.append(k).append('/')
+					.append(entry.getSize()).append('/')
+					.append(entry.getCrc()).append('/')
+					.append(entry.getTime()).append('/')
+					.append(encode(entry.getName()));
+			}
+		}
+		synchronized (this) {
+			if (this.journalFileChannel == null) {
+				throw new IOException("ジャーナルはすでに閉じられています。: " + this.directoryPath);
+			}
+			writeLine(this.journalFileChannel, line.toString());
+		}
+	}
+
+	/**
+	 * 入力の変換の完了を記録します。ページのエンコード結果とログは削除します。
+	 *
+	 * @throws IOException 記録中にエラーが発生した場合。
+	 */
+	void complete() throws IOException {
+		this.close();
+		Path doneFilePath = this.directoryPath.resolve(DONE_FILE_NAME);
+		Path temporaryFilePath = this.directoryPath.resolve(DONE_FILE_NAME + ".part");
+		try (FileChannel fileChannel = FileChannel.open(temporaryFilePath,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			fileChannel.write(ByteBuffer.wrap(this.fingerprint.getBytes(StandardCharsets.UTF_8)));
+			fileChannel.force(true);
+		}
+		Files.move(temporaryFilePath, doneFilePath, StandardCopyOption.REPLACE_EXISTING);
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(this.directoryPath)) {
+			for (Path path : directoryStream) {
+				if (!path.equals(doneFilePath)) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ログを閉じ、この入力のジャーナルを記録済みのページと完了の記録を含めて削除します。
+	 *
+	 * @throws IOException 削除中にエラーが発生した場合。
+	 */
+	void discard() throws IOException {
+		this.close();
+		FileUtils.deleteDirectory(this.directoryPath.toFile());
+	}
+
+	/**
+	 * ログを閉じます。記録済みのページはそのまま残します。
+	 *
+	 * @throws IOException ログを閉じる際にエラーが発生した場合。
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.journalFileChannel != null) {
+			this.journalFileChannel.close();
+			this.journalFileChannel = null;
+		}
+	}
+
+	/**
+	 * ログに1行を追記し、ディスクへ同期します。
+	 *
+	 * @param fileChannel ログの {@link FileChannel}。
+	 * @param line 追記する行（改行を含まない）。
+	 * @throws IOException 書き込み中にエラーが発生した場合。
+	 */
+	private static void writeLine(FileChannel fileChannel, String line) throws IOException {
+		ByteBuffer byteBuffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+		while (byteBuffer.hasRemaining()) {
+			fileChannel.write(byteBuffer);
+		}
+		fileChannel.force(false);
+	}
+
+	/**
+	 * 入力と変換の設定から識別情報を求めます。
+	 * <p>
+	 * 入力がディレクトリの場合は、直下のファイルの名前・サイズ・最終更新日時を含めます。
+	 * </p>
+	 *
+	 * @param inputFilePath 入力ファイルまたはディレクトリの絶対パス。
+	 * @param options 変換の設定。
+	 * @return 識別情報。
+	 * @throws IOException 入力の属性の読み込み中にエラーが発生した場合。
+	 */
+	private static String fingerprint(Path inputFilePath, BundleOptions options) throws IOException {
+		StringBuilder source = new StringBuilder();
+		source.append(inputFilePath).append('\n');
+		if (Files.isDirectory(inputFilePath)) {
+			List<Path> pathList = new ArrayList<Path>();
+			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(inputFilePath)) {
+				for (Path path : directoryStream) {
+					pathList.add(path);
+				}
+			}
+			Collections.sort(pathList);
+			for (Path path : pathList) {
+				appendAttributes(source, path);
+			}
+		} else {
+			appendAttributes(source, inputFilePath);
+		}
+		source.append(options.getOutputProfileList()).append('\n')
+			.append(options.getGrayscaleTolerance()).append('\n')
+			.append(options.getPerceptualHashDistance()).append('\n')
+			.append(options.getPageSizeBudget()).append('\n')
+			.append(options.getArchiveSizeBudget()).append('\n')
+			.append(options.isLosslessSplit()).append('\n');
+		return hash(source.toString());
+	}
+
+	/**
+	 * ファイルの名前・サイズ・最終更新日時を追加します。
+	 *
+	 * @param source 追加先。
+	 * @param path ファイルのパス。
+	 * @throws IOException 属性の読み込み中にエラーが発生した場合。
+	 */
+	private static void appendAttributes(StringBuilder source, Path path) throws IOException {
+		source.append(path.getFileName()).append('\t')
+			.append(Files.isRegularFile(path) ? Files.size(path) : -1).append('\t')
+			.append(Files.getLastModifiedTime(path).toMillis()).append('\n');
+	}
+
+	/**
+	 * 文字列のSHA-256ハッシュを16進数の文字列で求めます。
+	 *
+	 * @param value 文字列。
+	 * @return ハッシュの16進数表記。
+	 */
+	private static String hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b & 0xFF));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * エントリ名をログに記録できる形式（URLエンコード）に変換します。
+	 *
+	 * @param name エントリ名。
+	 * @return 変換したエントリ名。
+	 */
+	private static String encode(String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package imaizm.imagebundler;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1枚の大きな画像を、横方向の帯に分けて複数のスレッドで並列にJPEG形式にエンコードするクラスです。
+ * <p>
+ * 画像をMCU（最小符号化単位）の高さの倍数の帯に分割し、各帯を別々のスレッドで独立したJPEGデータとしてエンコードした後、
+ * 各帯のエントロピー符号化データをリスタートマーカー（RSTn）で区切って1つのJPEGデータに連結します。
+ * リスタートインターバル（DRIマーカー）を帯1つ分のMCU数に設定するため、
+ * 連結結果は標準に準拠した1つのベースライン形式のJPEGデータになり、DC成分の予測も各帯の先頭で正しく初期化されます。
+ * </p>
+ * <p>
+ * 連結には各帯のハフマン符号表と量子化テーブルが同一である必要があるため、
+ * 標準のハフマン符号表を使用するベースライン形式のプロファイル（{@link JpegEncoder.Profile#FAST}）でのみ使用できます。
+ * 帯の符号表が一致しないなど連結できない場合、{@link #encode(BufferedImage, int)} は null を返し、
+ * 呼び出し元は通常のエンコードにフォールバックします。
+ * </p>
+ * <p>
+ * このクラスはスレッドセーフです。複数の変換ワーカーから共有して使用できます。
+ * </p>
+ */
+public class ParallelJpegEncoder implements Closeable {
+
+	/** 並列にエンコードする画像の画素数の下限の既定値（4M ピクセル）。 */
+	public static final long DEFAULT_MIN_PIXELS = 4L * 1024 * 1024;
+
+	/** 帯の高さの単位（ピクセル単位）。4:2:0 の色差間引きを含む、対応するすべてのサンプリング係数のMCUの高さの倍数。 */
+	private static final int BAND_ALIGNMENT = 16;
+	/** リスタートインターバル（MCU数）の最大値。 */
+	private static final int MAX_RESTART_INTERVAL = 0xFFFF;
+
+	/** 各帯のエンコードに使用するプロファイル。 */
+	private final JpegEncoder.Profile profile;
+	/** 帯のエンコードを行うスレッドの数。 */
+	private final int threadCount;
+	/** 並列にエンコードする画像の画素数の下限。これより小さい画像は1つのスレッドでエンコードします。 */
+	private final long minPixels;
+	/** 帯のエンコードを行う {@link ExecutorService}。 */
+	private final ExecutorService executorService;
+	/** スレッドごとの帯のエンコーダ。 */
+	private final ThreadLocal<JpegEncoder> bandEncoderThreadLocal = new ThreadLocal<JpegEncoder>();
+	/** 生成した帯のエンコーダの一覧（クローズ用）。 */
+	private final List<JpegEncoder> bandEncoderList = Collections.synchronizedList(new ArrayList<JpegEncoder>());
+
+	/**
+	 * 指定されたプロファイルとスレッド数で、画素数の下限を {@link #DEFAULT_MIN_PIXELS} とする {@code ParallelJpegEncoder} を構築します。
+	 *
+	 * @param profile 各帯のエンコードに使用するプロファイル。
+	 * @param threadCount 帯のエンコードを行うスレッドの数。
+	 */
+	public ParallelJpegEncoder(JpegEncoder.Profile profile, int threadCount) {
+		this(profile, threadCount, DEFAULT_MIN_PIXELS);
+	}
+
+	/**
+	 * 指定されたプロファイル、スレッド数、画素数の下限で {@code ParallelJpegEncoder} を構築します。
+	 *
+	 * @param profile 各帯のエンコードに使用するプロファイル。
+	 * @param threadCount 帯のエンコードを行うスレッドの数。
+	 * @param minPixels 並列にエンコードする画像の画素数の下限。
+	 */
+	public ParallelJpegEncoder(JpegEncoder.Profile profile, int threadCount, long minPixels) {
+		this.profile = profile;
+		this.threadCount = threadCount;
+		this.minPixels = minPixels;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executorService = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-encode-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 指定された画像を並列にエンコードする対象とするかどうかを判定します。
+	 *
+	 * @param image エンコードする画像。
+	 * @return 画素数が下限以上で、2つ以上の帯に分割できる場合は true。
+	 */
+	public boolean isApplicable(BufferedImage image) {
+		return
+			this.threadCount > 1 &&
+			(long) image.getWidth() * image.getHeight() >= this.minPixels &&
+			image.getHeight() >= BAND_ALIGNMENT * 2;
+	}
+
+	/**
+	 * 指定された画像を、帯に分けて並列にエンコードします。
+	 *
+	 * @param opaqueImage エンコードする画像（不透明）。
+	 * @param compressionQualityPercentage JPEGの圧縮品質（0から100の範囲、100が最高品質）。
+	 * @return JPEG形式のバイト列。各帯のエンコード結果を連結できない場合は null。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	public byte[] encode(BufferedImage opaqueImage, int compressionQualityPercentage) throws IOException {
+		int width = opaqueImage.getWidth();
+		int height = opaqueImage.getHeight();
+
+		// 帯の高さは、スレッド数で等分した高さを単位の倍数に切り上げ、リスタートインターバルの上限に収まるように制限する
+		int bandHeight = ceilToMultiple((height + this.threadCount - 1) / this.threadCount, BAND_ALIGNMENT);
+		int maxBandHeight = MAX_RESTART_INTERVAL / ((width + 7) / 8) * 8 / BAND_ALIGNMENT * BAND_ALIGNMENT;
+		bandHeight = Math.min(bandHeight, maxBandHeight);
+		if (bandHeight <= 0 || bandHeight >= height) {
+			return null;
+		}
+
+		List<Future<byte[]>> bandFutureList = new ArrayList<Future<byte[]>>();
+		for (int y = 0; y < height; y += bandHeight) {
+			BufferedImage bandImage = opaqueImage.getSubimage(0, y, width, Math.min(bandHeight, height - y));
+			bandFutureList.add(this.executorService.submit(() -> this.getBandEncoder().encode(bandImage, compressionQualityPercentage)));
+		}
+
+		List<byte[]> bandDataList = new ArrayList<byte[]>();
+		try {
+			for (Future<byte[]> bandFuture : bandFutureList) {
+				bandDataList.add(bandFuture.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding bands", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+
+		return stitch(bandDataList, height, bandHeight);
+	}
+
+	/**
+	 * 現在のスレッドの帯のエンコーダを取得します。初回の呼び出し時に生成します。
+	 *
+	 * @return 帯のエンコーダ。
+	 */
+	private JpegEncoder getBandEncoder() {
+		JpegEncoder bandEncoder = this.bandEncoderThreadLocal.get();
+		if (bandEncoder == null) {
+			try {
+				bandEncoder = new JpegEncoder(this.profile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.bandEncoderThreadLocal.set(bandEncoder);
+			this.bandEncoderList.add(bandEncoder);
+		}
+		return bandEncoder;
+	}
+
+	/**
+	 * 各帯のJPEGデータを、リスタートマーカーで区切って1つのJPEGデータに連結します。
+	 * <p>
+	 * 最初の帯のヘッダ（SOSマーカーまで）のSOFマーカーの高さを画像全体の高さに書き換え、
+	 * SOSマーカーの前にDRIマーカーを挿入します。
+	 * 各帯のエントロピー符号化データは、エンコーダにより末尾が1のビットで埋められたバイト境界で終わるため、そのまま連結できます。
+	 * </p>
+	 *
+	 * @param bandDataList 各帯のJPEGデータ（上から順）。
+	 * @param height 画像全体の高さ。
+	 * @param bandHeight 最後の帯を除く各帯の高さ。
+	 * @return 連結したJPEGデータ。各帯のヘッダが一致しない場合、または帯の高さがMCUの高さの倍数でない場合は null。
+	 */
+	static byte[] stitch(List<byte[]> bandDataList, int height, int bandHeight) {
+		byte[] firstBandData = bandDataList.get(0);
+		BandLayout firstBandLayout = BandLayout.read(firstBandData);
+		if (firstBandLayout == null ||
+			bandHeight % firstBandLayout.mcuHeight != 0 ||
+			bandHeight / firstBandLayout.mcuHeight * firstBandLayout.mcusPerLine > MAX_RESTART_INTERVAL) {
+			return null;
+		}
+		int restartInterval = bandHeight / firstBandLayout.mcuHeight * firstBandLayout.mcusPerLine;
+
+		int totalSize = firstBandLayout.headerEnd + 6;
+		List<BandLayout> bandLayoutList = new ArrayList<BandLayout>();
+		for (byte[] bandData : bandDataList) {
+			BandLayout bandLayout = BandLayout.read(bandData);
+			if (bandLayout == null || !bandLayout.hasSameHeader(bandData, firstBandLayout, firstBandData)) {
+				return null;
+			}
+			bandLayoutList.add(bandLayout);
+			totalSize += bandLayout.dataEnd - bandLayout.headerEnd + 2;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream(totalSize);
+		// SOSマーカーの前までのヘッダ（SOFマーカーの高さを書き換える）
+		byte[] header = new byte[firstBandLayout.sosStart];
+		System.arraycopy(firstBandData, 0, header, 0, header.length);
+		header[firstBandLayout.sofHeightOffset] = (byte) (height >> 8);
+		header[firstBandLayout.sofHeightOffset + 1] = (byte) height;
+		output.write(header, 0, header.length);
+		// DRIマーカー
+		output.write(0xFF);
+		output.write(0xDD);
+		output.write(0x00);
+		output.write(0x04);
+		output.write(restartInterval >> 8);
+		output.write(restartInterval & 0xFF);
+		// SOSマーカー
+		output.write(firstBandData, firstBandLayout.sosStart, firstBandLayout.headerEnd - firstBandLayout.sosStart);
+		// 各帯のエントロピー符号化データ
+		for (int i = 0; i < bandDataList.size(); i++) {
+			if (i > 0) {
+				output.write(0xFF);
+				output.write(0xD0 + (i - 1) % 8);
+			}
+			BandLayout bandLayout = bandLayoutList.get(i);
+			output.write(bandDataList.get(i), bandLayout.headerEnd, bandLayout.dataEnd - bandLayout.headerEnd);
+		}
+		output.write(0xFF);
+		output.write(0xD9);
+		return output.toByteArray();
+	}
+
+	/**
+	 * 1つの帯のJPEGデータ内の、ヘッダとエントロピー符号化データの位置を保持するクラスです。
+	 */
+	private static class BandLayout {
+		/** SOFマーカーの高さの位置。 */
+		int sofHeightOffset;
+		/** SOSマーカーの開始位置。 */
+		int sosStart;
+		/** ヘッダ（SOSマーカーを含む）の終了位置。エントロピー符号化データの開始位置。 */
+		int headerEnd;
+		/** エントロピー符号化データの終了位置（EOIマーカーの位置）。 */
+		int dataEnd;
+		/** MCUの高さ（ピクセル単位）。 */
+		int mcuHeight;
+		/** 横方向のMCU数。 */
+		int mcusPerLine;
+
+		/**
+		 * 1つの帯のJPEGデータを読み取ります。
+		 *
+		 * @param data 帯のJPEGデータ。
+		 * @return 読み取った位置。ベースライン形式の1つのスキャンからなるJPEGデータでない場合は null。
+		 */
+		static BandLayout read(byte[] data) {
+			if (data.length < 4 ||
+				(data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8 ||
+				(data[data.length - 2] & 0xFF) != 0xFF || (data[data.length - 1] & 0xFF) != 0xD9) {
+				return null;
+			}
+			BandLayout bandLayout = new BandLayout();
+			int pos = 2;
+			while (pos + 4 <= data.length) {
+				if ((data[pos] & 0xFF) != 0xFF) {
+					return null;
+				}
+				int marker = data[pos + 1] & 0xFF;
+				int end = pos + 2 + (((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF));
+				if (marker == 0xC0) {
+					bandLayout.sofHeightOffset = pos + 5;
+					int width = ((data[pos + 7] & 0xFF) << 8) | (data[pos + 8] & 0xFF);
+					int componentCount = data[pos + 9] & 0xFF;
+					int maxH = 1;
+					int maxV = 1;
+					for (int i = 0; i < componentCount; i++) {
+						int samplingFactors = data[pos + 11 + i * 3] & 0xFF;
+						maxH = Math.max(maxH, samplingFactors >> 4);
+						maxV = Math.max(maxV, samplingFactors & 0x0F);
+					}
+					if (componentCount == 1) {
+						maxH = maxV = 1;
+					}
+					bandLayout.mcuHeight = maxV * 8;
+					bandLayout.mcusPerLine = (width + maxH * 8 - 1) / (maxH * 8);
+				} else if ((marker >= 0xC1 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) || marker == 0xDD) {
+					// ベースライン形式以外、またはリスタートインターバルが既に設定されている場合は連結しない
+					return null;
+				} else if (marker == 0xDA) {
+					if (bandLayout.mcuHeight == 0) {
+						return null;
+					}
+					bandLayout.sosStart = pos;
+					bandLayout.headerEnd = end;
+					bandLayout.dataEnd = data.length - 2;
+					return bandLayout;
+				}
+				pos = end;
+			}
+			return null;
+		}
+
+		/**
+		 * この帯のヘッダが、SOFマーカーの高さを除いて基準の帯のヘッダと一致するかどうかを判定します。
+		 *
+		 * @param data この帯のJPEGデータ。
+		 * @param reference 基準の帯の位置。
+		 * @param referenceData 基準の帯のJPEGデータ。
+		 * @return ヘッダが一致する場合は true。
+		 */
+		boolean hasSameHeader(byte[] data, BandLayout reference, byte[] referenceData) {
+			if (this.headerEnd != reference.headerEnd || this.sofHeightOffset != reference.sofHeightOffset) {
+				return false;
+			}
+			for (int i = 0; i < this.headerEnd; i++) {
+				if (i == this.sofHeightOffset || i == this.sofHeightOffset + 1) {
+					continue;
+				}
+				if (data[i] != referenceData[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * 値を指定された単位の倍数に切り上げます。
+	 *
+	 * @param value 値。
+	 * @param unit 単位。
+	 * @return 切り上げた値。
+	 */
+	private static int ceilToMultiple(int value, int unit) {
+		return (value + unit - 1) / unit * unit;
+	}
+
+	/**
+	 * 帯のエンコードを行うスレッドを停止し、帯のエンコーダを解放します。
+	 */
+	@Override
+	public void close() {
+		this.executorService.shutdown();
+		for (JpegEncoder bandEncoder : this.bandEncoderList) {
+			bandEncoder.close();
+		}
+	}
+}
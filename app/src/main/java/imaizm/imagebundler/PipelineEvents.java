@@ -0,0 +1,302 @@
+package imaizm.imagebundler;
+
+/**
+ * 変換パイプラインの各段階を記録するJava Flight Recorder（JFR）のイベントを定義するクラスです。
+ * <p>
+ * 入力ファイルの列挙、ZIPファイルの展開、画像のデコード、{@link ImageConverter#convert} による変換、
+ * JPEGエンコード、ZIPファイルへの書き込みの各段階と、各段階の並行数の変更について、対象のページ名・アーカイブ名・画像の大きさ・バイト数などを記録します。
+ * JFRのプロファイルに表示される {@code getScaledInstance} やImageIOの内部処理の時間を、どのページのどの段階のものか対応付けるために使用します。
+ * </p>
+ * <p>
+ * 各イベントは次の形で使用します。記録が無効な場合は {@link PipelineEvent#shouldCommit()} が false を返し、
+ * 項目の設定と記録を行わないため、イベントのオブジェクトの生成以外の負荷はほとんどありません。
+ * <pre>
+ * PipelineEvents.Decode event = new PipelineEvents.Decode();
+ * event.begin();
+ * ...
+ * if (event.shouldCommit()) {
+ *     event.page = ...;
+ *     event.commit();
+ * }
+ * </pre>
+ * 記録は {@code -XX:StartFlightRecording} または {@code jcmd <pid> JFR.start} で開始します。
+ * イベント名は {@code imagebundler.} で始まります。
+ * スタックトレースは記録しません。
+ * </p>
+ * <p>
+ * ビルドはJava 8を対象としますが、{@code jdk.jfr} パッケージはJava 8u262より前の実行環境にはありません。
+ * そのため、このクラスのイベントは {@code jdk.jfr.Event} を継承せず、JFRを使用できる場合にだけ
+ * {@link JfrPipelineEvents} のイベントを生成して記録を委譲します。JFRを使用できるかどうかは最初に一度だけ判定し、
+ * 使用できない場合は何も記録しません。
+ * </p>
+ */
+final class PipelineEvents {
+
+	/** JFR（{@code jdk.jfr.Event}）を使用できるかどうか。 */
+	static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+	/**
+	 * インスタンス化を禁止します。
+	 */
+	private PipelineEvents() {
+	}
+
+	/**
+	 * 実行環境で {@code jdk.jfr.Event} クラスを読み込めるかどうかを判定します。
+	 *
+	 * @return 読み込める場合は true。
+	 */
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 各イベントの基底クラスです。
+	 * <p>
+	 * JFRを使用できる場合は {@link JfrPipelineEvents} のイベントを保持し、開始・終了・記録の判定をそのイベントに委譲します。
+	 * 記録時には、サブクラスの項目をそのイベントに複写します。
+	 * </p>
+	 */
+	abstract static class PipelineEvent {
+
+		/** 記録を委譲するJFRのイベント。JFRを使用できない場合は null。 */
+		private final Object jfrEvent;
+
+		/**
+		 * イベントを構築します。
+		 */
+		PipelineEvent() {
+			this.jfrEvent = JFR_AVAILABLE ? this.newJfrEvent() : null;
+		}
+
+		/**
+		 * 記録を委譲するJFRのイベントを生成します。JFRを使用できる場合にだけ呼び出されます。
+		 * @return 生成したJFRのイベント。
+		 */
+		abstract Object newJfrEvent();
+
+		/**
+		 * このイベントの項目をJFRのイベントに複写して記録します。
+		 * @param jfrEvent {@link #newJfrEvent()} で生成したJFRのイベント。
+		 */
+		abstract void commitJfrEvent(Object jfrEvent);
+
+		/**
+		 * 記録の開始時刻を設定します。
+		 */
+		final void begin() {
+			if (this.jfrEvent != null) {
+				JfrPipelineEvents.begin(this.jfrEvent);
+			}
+		}
+
+		/**
+		 * 記録の終了時刻を設定します。
+		 */
+		final void end() {
+			if (this.jfrEvent != null) {
+				JfrPipelineEvents.end(this.jfrEvent);
+			}
+		}
+
+		/**
+		 * イベントを記録するかどうかを判定します。
+		 * @return 記録が有効で、イベントを記録する場合は true。JFRを使用できない場合は false。
+		 */
+		final boolean shouldCommit() {
+			return this.jfrEvent != null && JfrPipelineEvents.shouldCommit(this.jfrEvent);
+		}
+
+		/**
+		 * イベントを記録します。
+		 */
+		final void commit() {
+			if (this.jfrEvent != null) {
+				this.commitJfrEvent(this.jfrEvent);
+			}
+		}
+	}
+
+	/**
+	 * 入力ファイルの列挙（ディレクトリの走査、またはZIPファイルの目次の読み込みと展開の開始）を記録するイベントです。
+	 */
+	static final class InputDiscovery extends PipelineEvent {
+		/** 入力ファイルまたはディレクトリのパス。 */
+		String source;
+		/** 変換対象のページ数。 */
+		int pageCount;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newInputDiscovery();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * ZIPファイルの1つのエントリの展開を記録するイベントです。
+	 */
+	static final class Inflate extends PipelineEvent {
+		/** ZIPファイルのパス。 */
+		String archive;
+		/** エントリ名。 */
+		String page;
+		/** 展開後のバイト数。 */
+		long bytes;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newInflate();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * 1ページの画像のデコードを記録するイベントです。
+	 */
+	static final class Decode extends PipelineEvent {
+		/** ページのファイル名。 */
+		String page;
+		/** 画像ファイルのバイト数。 */
+		long bytes;
+		/** デコード後の画像の幅。 */
+		int width;
+		/** デコード後の画像の高さ。 */
+		int height;
+		/** 使用したデコーダ（"jpeg-scaled" または "imageio"）。 */
+		String decoder;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newDecode();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * 1ページの画像の、1つの出力プロファイルへの変換（{@link ImageConverter#convert}）を記録するイベントです。
+	 */
+	static final class Convert extends PipelineEvent {
+		/** ページのファイル名。 */
+		String page;
+		/** 出力プロファイル名。 */
+		String profile;
+		/** 変換元の画像の幅。 */
+		int sourceWidth;
+		/** 変換元の画像の高さ。 */
+		int sourceHeight;
+		/** 縦横比が異なる場合の処理モード。 */
+		String mode;
+		/** 変換後の画像の数。 */
+		int resultCount;
+		/** 大きい出力プロファイルの変換結果を縮小したかどうか。 */
+		boolean cascaded;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newConvert();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * 1つの出力画像のJPEGエンコード（または再エンコードしない分割）を記録するイベントです。
+	 */
+	static final class Encode extends PipelineEvent {
+		/** 出力エントリ名（再エンコードしない分割の場合は分割前のページのファイル名）。 */
+		String page;
+		/** 出力プロファイル名。 */
+		String profile;
+		/** 画像の幅（再エンコードしない分割の場合は0）。 */
+		int width;
+		/** 画像の高さ（再エンコードしない分割の場合は0）。 */
+		int height;
+		/** エンコード結果のバイト数（再エンコードしない分割の場合は分割後の合計）。 */
+		long bytes;
+		/** エンコードの方法（"quality"、"size-budget" または "lossless-split"）。 */
+		String method;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newEncode();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * ZIPファイルへの1つのエントリの書き込みを記録するイベントです。
+	 */
+	static final class ArchiveWrite extends PipelineEvent {
+		/** ZIPファイルのパス。 */
+		String archive;
+		/** エントリ名。 */
+		String page;
+		/** 書き込んだバイト数。 */
+		long bytes;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newArchiveWrite();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+
+	/**
+	 * {@link ConcurrencyController} による段階の並行数の変更を記録するイベントです。
+	 */
+	static final class ConcurrencyChange extends PipelineEvent {
+		/** 段階の名前（"read" または "convert"）。 */
+		String stage;
+		/** 変更前の並行数。 */
+		int previousLimit;
+		/** 変更後の並行数。 */
+		int limit;
+		/** システム全体のCPU使用率。 */
+		float cpuLoad;
+		/** 段階の処理時間のうちI/O待ちの割合。 */
+		float ioWaitRatio;
+		/** 段階の処理時間のうち前の段階の出力を待っていた割合。 */
+		float stallRatio;
+		/** 段階の開始を待っている処理の数。 */
+		int queueDepth;
+
+		@Override
+		Object newJfrEvent() {
+			return JfrPipelineEvents.newConcurrencyChange();
+		}
+
+		@Override
+		void commitJfrEvent(Object jfrEvent) {
+			JfrPipelineEvents.commit(this, jfrEvent);
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package imaizm.imagebundler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共有ディレクトリ上のリースファイルによって、複数のプロセス（複数のホストを含む）で変換対象を分担するクラスです。
+ * <p>
+ * 各プロセスは同じディレクトリの変換対象を順に {@link #claim(Path)} し、取得できた対象だけを変換します。
+ * 調整役のサーバーは不要で、共有ファイルシステム上のリースディレクトリ（既定では対象のディレクトリの
+ * {@value #LEASE_DIRECTORY_NAME}）に次のファイルを作成して状態を共有します。
+ * <ul>
+ *   <li>{@code <対象名>.lease}：変換中であることを表すリースファイルです。排他的な新規作成で取得するため、
+ *     同時に1つのプロセスだけが取得できます。取得したプロセスは、リースの有効期間の1/3ごとに最終更新日時を更新します。</li>
+ *   <li>{@code <対象名>.done}：変換が完了したことを表すファイルです。このファイルがある対象は取得しません。</li>
+ * </ul>
+ * 最終更新日時が有効期間より古いリースファイルは、異常終了したプロセスのものとみなし、
+ * 一意な名前への名前の変更で1つのプロセスだけが回収してから取得し直します。
+ * 期限切れを確認してから名前を変更するまでの間に、他のプロセスが回収して新しいリースを作成していた場合は、
+ * 名前を変更したファイルが期限切れのリースのものではなくなるため、元の名前に戻して回収をやめます。
+ * そのため、各ホストの時計のずれはリースの有効期間より十分に小さくする必要があります。
+ * </p>
+ * <p>
+ * 回収の競合などで同じ対象を2つのプロセスが変換した場合でも、出力ZIPファイルは {@link ArchiveWriter} が
+ * 一時ファイルからの名前の変更で作成するため、いずれか1つの完全なZIPファイルが残ります。
+ * リースを失ったプロセスは {@link Lease#isLost()} で検出でき、{@link Lease#complete()} は完了を記録しません。
+ * </p>
+ */
+public class WorkClaimer implements Closeable {
+
+	/** 既定のリースディレクトリの名前。 */
+	public static final String LEASE_DIRECTORY_NAME = ".imagebundler-leases";
+	/** 既定のリースの有効期間（ミリ秒）。 */
+	public static final long DEFAULT_LEASE_MILLIS = 60 * 1000;
+	/** リースファイルの拡張子。 */
+	private static final String LEASE_SUFFIX = ".lease";
+	/** 完了を表すファイルの拡張子。 */
+	private static final String DONE_SUFFIX = ".done";
+
+	/**
+	 * 取得した変換対象のリースを表すクラスです。
+	 * <p>
+	 * 変換が成功した場合は {@link #complete()} を、失敗した場合は {@link #close()} を呼び出します。
+	 * {@link #close()} したリースの対象は、他のプロセスが取得し直すことができます。
+	 * </p>
+	 */
+	public final class Lease implements Closeable {
+
+		/** 変換対象のパス。 */
+		private final Path targetPath;
+		/** リースファイルのパス。 */
+		private final Path leaseFilePath;
+		/** 他のプロセスにリースを回収されたかどうか。 */
+		private volatile boolean lost;
+		/** 解放済みかどうか。 */
+		private boolean closed;
+
+		/**
+		 * 指定された変換対象のリースを構築します。
+		 *
+		 * @param targetPath 変換対象のパス。
+		 * @param leaseFilePath 作成済みのリースファイルのパス。
+		 */
+		private Lease(Path targetPath, Path leaseFilePath) {
+			this.targetPath = targetPath;
+			this.leaseFilePath = leaseFilePath;
+		}
+
+		/**
+		 * 変換対象のパスを取得します。
+		 * @return 変換対象のパス。
+		 */
+		public Path getTargetPath() {
+			return this.targetPath;
+		}
+
+		/**
+		 * リースを他のプロセスに回収されたかどうかを取得します。
+		 * <p>
+		 * 最終更新日時を有効期間内に更新できなかった場合（ファイルシステムの応答の停止など）に回収されることがあります。
+		 * </p>
+		 * @return 回収された場合は true。
+		 */
+		public boolean isLost() {
+			return this.lost;
+		}
+
+		/**
+		 * 変換対象の完了を記録し、リースを解放します。以降、どのプロセスもこの対象を取得しません。
+		 * <p>
+		 * リースを他のプロセスに回収されていた場合は、その対象は回収したプロセスが変換するため、完了を記録せずにリースを解放します。
+		 * </p>
+		 *
+		 * @return 完了を記録した場合は true。リースを回収されていた場合は false。
+		 * @throws IOException 完了を表すファイルの作成中にエラーが発生した場合。
+		 */
+		public boolean complete() throws IOException {
+			try {
+				this.renew();
+				if (this.lost) {
+					return false;
+				}
+				Files.write(
+					getDoneFilePath(this.targetPath),
+					WorkClaimer.this.ownerId.getBytes(StandardCharsets.UTF_8));
+				return true;
+			} finally {
+				this.close();
+			}
+		}
+
+		/**
+		 * リースの最終更新日時を更新します。リースファイルが削除されているか、他のプロセスのものに置き換わっている場合は回収されたとみなします。
+		 */
+		private void renew() {
+			try {
+				if (!WorkClaimer.this.ownerId.equals(readOwner(this.leaseFilePath))) {
+					this.lost = true;
+					return;
+				}
+				Files.setLastModifiedTime(this.leaseFilePath, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (NoSuchFileException e) {
+				this.lost = true;
+			} catch (IOException e) {
+				// 一時的なエラーの場合は次回の更新で再試行する
+				System.out.println("lease renewal failed : " + this.leaseFilePath + " : " + e.getMessage());
+			}
+		}
+
+		/**
+		 * リースを解放します。他のプロセスに回収されていた場合、リースファイルは削除しません。
+		 *
+		 * @throws IOException リースファイルの削除中にエラーが発生した場合。
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			WorkClaimer.this.heldLeaseList.remove(this);
+			this.renew();
+			if (!this.lost) {
+				Files.deleteIfExists(this.leaseFilePath);
+			}
+		}
+	}
+
+	/** リースディレクトリのパス。 */
+	private final Path leaseDirectoryPath;
+	/** リースの有効期間（ミリ秒）。 */
+	private final long leaseMillis;
+	/** このプロセスを識別する文字列（リースファイルの内容）。 */
+	private final String ownerId;
+	/** 保持しているリースのリスト。 */
+	private final List<Lease> heldLeaseList = new CopyOnWriteArrayList<Lease>();
+	/** リースを定期的に更新する {@link ScheduledExecutorService}。 */
+	private final ScheduledExecutorService renewalExecutorService;
+
+	/**
+	 * 指定されたリースディレクトリを使用する {@code WorkClaimer} を構築し、リースの定期的な更新を開始します。
+	 *
+	 * @param leaseDirectoryPath リースディレクトリのパス。存在しない場合は作成します。
+	 * @param leaseMillis リースの有効期間（ミリ秒）。
+	 * @throws IOException リースディレクトリの作成中にエラーが発生した場合。
+	 */
+	public WorkClaimer(Path leaseDirectoryPath, long leaseMillis) throws IOException {
+		if (leaseMillis < 3) {
+			throw new IllegalArgumentException("Invalid lease millis : " + leaseMillis);
+		}
+		this.leaseDirectoryPath = Files.createDirectories(leaseDirectoryPath);
+		this.leaseMillis = leaseMillis;
+		// プロセスID@ホスト名に、同じプロセス内の複数のインスタンスを区別する識別子を付加する
+		this.ownerId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString();
+
+		this.renewalExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-lease");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long renewalMillis = leaseMillis / 3;
+		this.renewalExecutorService.scheduleWithFixedDelay(() -> {
+			for (Lease lease : this.heldLeaseList) {
+				lease.renew();
+			}
+		}, renewalMillis, renewalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * システムプロパティの設定で、指定されたディレクトリの変換対象を分担する {@code WorkClaimer} を構築します。
+	 * <p>
+	 * 以下のシステムプロパティを参照します。
+	 * <ul>
+	 *   <li>{@code imagebundler.claim.leaseDirectory}：リースディレクトリ（既定値は対象のディレクトリの {@value #LEASE_DIRECTORY_NAME}）</li>
+	 *   <li>{@code imagebundler.claim.leaseMillis}：リースの有効期間（既定値は {@link #DEFAULT_LEASE_MILLIS}）</li>
+	 * </ul>
+	 * </p>
+	 *
+	 * @param directoryPath 変換対象を含むディレクトリのパス。
+	 * @return 構築した {@code WorkClaimer}。
+	 * @throws IOException リースディレクトリの作成中にエラーが発生した場合。
+	 */
+	public static WorkClaimer fromSystemProperties(Path directoryPath) throws IOException {
+		String leaseDirectory = System.getProperty("imagebundler.claim.leaseDirectory");
+		return new WorkClaimer(
+			(leaseDirectory == null) ? directoryPath.resolve(LEASE_DIRECTORY_NAME) : Paths.get(leaseDirectory),
+			Long.getLong("imagebundler.claim.leaseMillis", DEFAULT_LEASE_MILLIS));
+	}
+
+	/**
+	 * 指定されたディレクトリ内の変換対象（サブディレクトリ、ZIPファイル、tarファイル、7zファイル）を名前の順に列挙します。
+	 * <p>
+	 * 同じディレクトリに出力される、他の対象の変換結果は除外します。
+	 * <ul>
+	 *   <li>名前が {@code _<出力プロファイル名>.zip} で終わるZIPファイル</li>
+	 *   <li>名前が {@code <サブディレクトリ名>.zip} のZIPファイル（ディレクトリの元のファイルを格納したもの）</li>
+	 *   <li>名前が "." で始まるファイルとディレクトリ</li>
+	 * </ul>
+	 * </p>
+	 *
+	 * @param directoryPath 変換対象を含むディレクトリのパス。
+	 * @param options 変換の設定。出力ファイル名の判定に使用します。
+	 * @return 変換対象のパスのリスト。
+	 * @throws IOException ディレクトリの読み込み中にエラーが発生した場合。
+	 */
+	public static List<Path> listTargets(Path directoryPath, BundleOptions options) throws IOException {
+		List<Path> directoryList = new ArrayList<Path>();
+		List<Path> zipFileList = new ArrayList<Path>();
+		List<Path> archiveFileList = new ArrayList<Path>();
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directoryPath)) {
+			for (Path path : directoryStream) {
+				String name = path.getFileName().toString();
+				if (name.startsWith(".")) {
+					continue;
+				}
+				if (Files.isDirectory(path)) {
+					directoryList.add(path);
+				} else if (name.toLowerCase().endsWith(".zip")) {
+					zipFileList.add(path);
+				} else if (ArchiveStreamReader.isSupported(path)) {
+					archiveFileList.add(path);
+				}
+			}
+		}
+
+		Set<String> outputNameSet = new HashSet<String>();
+		for (Path path : directoryList) {
+			outputNameSet.add(path.getFileName().toString().toLowerCase() + ".zip");
+		}
+		List<Path> targetList = new ArrayList<Path>(directoryList);
+		for (Path path : zipFileList) {
+			String name = path.getFileName().toString().toLowerCase();
+			boolean output = outputNameSet.contains(name);
+			for (OutputProfile outputProfile : options.getOutputProfileList()) {
+				output |= name.endsWith("_" + outputProfile.getName().toLowerCase() + ".zip");
+			}
+			if (!output) {
+				targetList.add(path);
+			}
+		}
+		// tarファイル・7zファイルが変換結果として出力されることはないため、そのまま対象とする
+		targetList.addAll(archiveFileList);
+		Collections.sort(targetList);
+		return targetList;
+	}
+
+	/**
+	 * 指定された変換対象のリースを取得します。
+	 * <p>
+	 * 対象が完了済みの場合、または他のプロセスが有効なリースを保持している場合は取得できません。
+	 * 有効期間を過ぎたリースは回収してから取得します。
+	 * </p>
+	 *
+	 * @param targetPath 変換対象のパス。
+	 * @return 取得したリース。取得できなかった場合は null。
+	 * @throws IOException リースファイルの作成中にエラーが発生した場合。
+	 */
+	public Lease claim(Path targetPath) throws IOException {
+		Path doneFilePath = this.getDoneFilePath(targetPath);
+		if (Files.exists(doneFilePath)) {
+			return null;
+		}
+		Path leaseFilePath = this.leaseDirectoryPath.resolve(targetPath.getFileName().toString() + LEASE_SUFFIX);
+		for (int attempt = 0; attempt < 2; attempt++) {
+			try {
+				Files.write(leaseFilePath, this.ownerId.getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) {
+				if (!this.reclaimIfExpired(leaseFilePath)) {
+					return null;
+				}
+				continue;
+			}
+			// 存在の確認からリースの作成までの間に、他のプロセスが完了していた場合
+			if (Files.exists(doneFilePath)) {
+				Files.deleteIfExists(leaseFilePath);
+				return null;
+			}
+			Lease lease = new Lease(targetPath, leaseFilePath);
+			this.heldLeaseList.add(lease);
+			return lease;
+		}
+		return null;
+	}
+
+	/**
+	 * リースファイルの最終更新日時が有効期間を過ぎている場合に、そのリースを回収します。
+	 *
+	 * @param leaseFilePath リースファイルのパス。
+	 * @return 回収した場合、または他のプロセスがすでに回収・解放していた場合は true。有効なリースの場合は false。
+	 * @throws IOException リースファイルの操作中にエラーが発生した場合。
+	 */
+	private boolean reclaimIfExpired(Path leaseFilePath) throws IOException {
+		try {
+			String expiredOwnerId = readOwner(leaseFilePath);
+			if (!this.isExpired(leaseFilePath)) {
+				return false;
+			}
+			return this.reclaim(leaseFilePath, expiredOwnerId);
+		} catch (NoSuchFileException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * 期限切れを確認したリースを回収します。
+	 * <p>
+	 * リースファイルを一意な名前に変更してから削除するため、複数のプロセスが同時に回収しようとしても、
+	 * 名前の変更に成功した1つのプロセスだけが回収します。
+	 * 期限切れの確認から名前の変更までの間に、他のプロセスが回収して新しいリースを作成していた場合は、
+	 * 名前を変更したファイルの保持者または最終更新日時が確認したときと異なるため、元の名前に戻して回収をやめます。
+	 * 戻す前にさらに別のプロセスがリースを作成していた場合は、そのリースを残し、名前を変更したリースの保持者は
+	 * 次回の更新でリースを失ったことを検出します。
+	 * </p>
+	 *
+	 * @param leaseFilePath リースファイルのパス。
+	 * @param expiredOwnerId 期限切れを確認したリースの保持者の識別子。
+	 * @return 回収した場合、または他のプロセスがすでに回収・解放していた場合は true。有効なリースだった場合は false。
+	 * @throws IOException リースファイルの操作中にエラーが発生した場合。
+	 */
+	boolean reclaim(Path leaseFilePath, String expiredOwnerId) throws IOException {
+		Path staleFilePath = leaseFilePath.resolveSibling(
+			leaseFilePath.getFileName().toString() + "." + UUID.randomUUID().toString() + ".stale");
+		try {
+			try {
+				Files.move(leaseFilePath, staleFilePath, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(leaseFilePath, staleFilePath);
+			}
+		} catch (NoSuchFileException e) {
+			return true;
+		}
+		String ownerId = readOwner(staleFilePath);
+		if (!ownerId.equals(expiredOwnerId) || !this.isExpired(staleFilePath)) {
+			// 名前の変更の前に他のプロセスが回収して作成した、有効なリース
+			try {
+				Files.move(staleFilePath, leaseFilePath);
+			} catch (FileAlreadyExistsException e) {
+				Files.deleteIfExists(staleFilePath);
+			}
+			return false;
+		}
+		System.out.println("reclaimed expired lease : " + leaseFilePath + " (" + ownerId + ")");
+		Files.deleteIfExists(staleFilePath);
+		return true;
+	}
+
+	/**
+	 * リースファイルの最終更新日時が有効期間を過ぎているかどうかを判定します。
+	 *
+	 * @param leaseFilePath リースファイルのパス。
+	 * @return 有効期間を過ぎている場合は true。
+	 * @throws IOException 最終更新日時の取得中にエラーが発生した場合。
+	 */
+	private boolean isExpired(Path leaseFilePath) throws IOException {
+		long age = System.currentTimeMillis() - Files.getLastModifiedTime(leaseFilePath).toMillis();
+		return age >= this.leaseMillis;
+	}
+
+	/**
+	 * 変換対象の完了を表すファイルのパスを求めます。
+	 *
+	 * @param targetPath 変換対象のパス。
+	 * @return 完了を表すファイルのパス。
+	 */
+	private Path getDoneFilePath(Path targetPath) {
+		return this.leaseDirectoryPath.resolve(targetPath.getFileName().toString() + DONE_SUFFIX);
+	}
+
+	/**
+	 * リースファイルの内容（リースを保持するプロセスの識別子）を読み込みます。
+	 *
+	 * @param leaseFilePath リースファイルのパス。
+	 * @return リースを保持するプロセスの識別子。
+	 * @throws IOException 読み込み中にエラーが発生した場合。
+	 */
+	private static String readOwner(Path leaseFilePath) throws IOException {
+		return new String(Files.readAllBytes(leaseFilePath), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * リースの定期的な更新を終了し、保持しているすべてのリースを解放します。
+	 *
+	 * @throws IOException リースファイルの削除中にエラーが発生した場合。
+	 */
+	@Override
+	public void close() throws IOException {
+		this.renewalExecutorService.shutdownNow();
+		IOException failure = null;
+		for (Lease lease : this.heldLeaseList) {
+			try {
+				lease.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -6,8 +6,17 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
@@ -15,79 +24,336 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 /**
  * ZIPファイルの処理に関連するユーティリティメソッドを提供するクラスです。
  * <p>
- * 現在は、指定されたZIPファイルを解凍し、特定の条件（JPEGファイルのみ）に一致するファイルを
+ * 現在は、指定されたZIPファイルを解凍し、特定の条件（JPG/JPEG/PNGファイルのみ）に一致するファイルを
  * 指定されたディレクトリに展開する機能を提供します。
+ * 展開は複数のワーカースレッドで並列に行われ、各ワーカーはそれぞれ専用の {@link ZipFile} ハンドルを使用します。
  * </p>
  * <p>
  * ZIPファイルのエンコーディングは "MS932" (Shift_JIS) を想定しています。
  * </p>
  */
 public class ZipFileHandler {
-	
+
+	/** 解凍時の既定の並列数（利用可能なプロセッサ数）。 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/** 各ワーカーがエントリの複写に使用するバッファのサイズ（256KB）。 */
+	private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
 	/**
 	 * 指定されたZIPファイルを指定されたディレクトリに解凍（展開）します。
 	 * <p>
-	 * このメソッドは、ZIPファイル内のエントリを順次処理します。
-	 * ディレクトリではないエントリのうち、ファイル名が ".jpg" または ".jpeg" で終わるもの（大文字・小文字を区別しない）のみを対象とします。
+	 * このメソッドは、{@link #inflateAsync(Path, Path, ExecutorService, int)} を
+	 * {@link #DEFAULT_PARALLELISM} 個のワーカーで実行し、すべてのエントリの展開が完了するまで待機します。
+	 * ディレクトリではないエントリのうち、ファイル名が ".jpg"、".jpeg"、".png" のいずれかで終わるもの（大文字・小文字を区別しない）のみを対象とします。
 	 * 対象となったファイルは、元のファイル名を維持したまま、指定された {@code outputDirectoryPath} に展開されます。
 	 * ZIPファイルの読み込み時のエンコーディングは "MS932" (Shift_JIS) を使用します。
 	 * </p>
 	 * <p>
 	 * 注意：ZIPエントリ名にディレクトリ構造が含まれている場合（例: "folder/image.jpg"）、
 	 * 出力ファイル名はそのベース名（"image.jpg"）のみが使用され、サブディレクトリは作成されません。
+	 * 別のディレクトリに同じファイル名のエントリがある場合は、2つ目以降のエントリを重複しない名前で展開します
+	 * （{@link #getOutputFileName(String, int, Set)} を参照）。
 	 * </p>
 	 *
 	 * @param targetZipFilePath 解凍対象のZIPファイルのパス。
 	 * @param outputDirectoryPath 解凍されたファイルを保存するディレクトリのパス。
 	 *                            このディレクトリは事前に存在している必要があります。
-	 * @return 解凍され、出力ディレクトリに保存されたファイルの {@link Path} のリスト。
-	 *         対象となるファイル（JPG/JPEG）が存在しない場合は空のリストが返されます。
+	 * @return 解凍され、出力ディレクトリに保存されたファイルの {@link Path} のリスト（ZIP内のエントリ順）。
+	 *         対象となるファイル（JPG/JPEG/PNG）が存在しない場合は空のリストが返されます。
 	 * @throws IOException ZIPファイルの読み込み、またはファイルの書き出し中にI/Oエラーが発生した場合。
 	 */
 	public static List<Path> inflate(
 		Path targetZipFilePath,
 		Path outputDirectoryPath)
 		throws IOException {
-		
+
+		ExecutorService executorService = newInflateExecutor(DEFAULT_PARALLELISM);
+		try {
+			List<Path> outputFilePathList = new ArrayList<Path>();
+			for (CompletableFuture<Path> outputFilePathFuture :
+				inflateAsync(targetZipFilePath, outputDirectoryPath, executorService, DEFAULT_PARALLELISM)) {
+				outputFilePathList.add(await(outputFilePathFuture));
+			}
+			return outputFilePathList;
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	/**
+	 * 指定されたZIPファイルを、指定された {@link ExecutorService} 上で並列に解凍します。
+	 * <p>
+	 * まずZIPファイルのセントラルディレクトリから展開対象のエントリ（JPG/JPEG/PNG）を列挙し、
+	 * エントリ順に対応する {@link CompletableFuture} のリストを即座に返します。
+	 * 展開は {@code parallelism} 個のワーカーで行われ、各ワーカーは専用の {@link ZipFile} ハンドルを開いて、
+	 * 未処理のエントリを先頭から順に1件ずつ取得して展開します。
+	 * そのため、先頭のエントリほど早く展開が完了し、呼び出し元は最後のエントリの展開を待たずに
+	 * 先頭のファイルから後続の処理（画像変換など）を開始できます。
+	 * </p>
+	 * <p>
+	 * 個々のエントリの展開に失敗した場合、対応する {@link CompletableFuture} が例外で完了します。
+	 * </p>
+	 *
+	 * @param targetZipFilePath 解凍対象のZIPファイルのパス。
+	 * @param outputDirectoryPath 解凍されたファイルを保存するディレクトリのパス。
+	 * @param executorService 展開処理を実行する {@link ExecutorService}。
+	 * @param parallelism 展開を行うワーカーの数。
+	 * @return 展開後のファイルパスを返す {@link CompletableFuture} のリスト（ZIP内のエントリ順）。
+	 * @throws IOException ZIPファイルのセントラルディレクトリの読み込み中にI/Oエラーが発生した場合。
+	 */
+	public static List<CompletableFuture<Path>> inflateAsync(
+		Path targetZipFilePath,
+		Path outputDirectoryPath,
+		ExecutorService executorService,
+		int parallelism)
+		throws IOException {
+		return inflateAsync(targetZipFilePath, outputDirectoryPath, executorService, parallelism, null);
+	}
+
+	/**
+	 * 指定されたZIPファイルを、指定された {@link ExecutorService} 上で、
+	 * 同時に展開するエントリの数を {@link ConcurrencyController.Stage} で制限しながら並列に解凍します。
+	 * <p>
+	 * {@code parallelism} 個のワーカーを起動し、各ワーカーはエントリを1件展開するごとに {@code readStage} の実行権を取得します。
+	 * そのため、同時に展開されるエントリの数は {@code readStage} の並行数となり、展開中にも変更できます。
+	 * {@code parallelism} には {@code readStage} の並行数の上限を指定します。
+	 * その他の動作は {@link #inflateAsync(Path, Path, ExecutorService, int)} と同じです。
+	 * </p>
+	 *
+	 * @param targetZipFilePath 解凍対象のZIPファイルのパス。
+	 * @param outputDirectoryPath 解凍されたファイルを保存するディレクトリのパス。
+	 * @param executorService 展開処理を実行する {@link ExecutorService}。
+	 * @param parallelism 展開を行うワーカーの数。
+	 * @param readStage 同時に展開するエントリの数を制限する段階。制限しない場合は null。
+	 * @return 展開後のファイルパスを返す {@link CompletableFuture} のリスト（ZIP内のエントリ順）。
+	 * @throws IOException ZIPファイルのセントラルディレクトリの読み込み中にI/Oエラーが発生した場合。
+	 */
+	static List<CompletableFuture<Path>> inflateAsync(
+		Path targetZipFilePath,
+		Path outputDirectoryPath,
+		ExecutorService executorService,
+		int parallelism,
+		ConcurrencyController.Stage readStage)
+		throws IOException {
+
+		// 展開対象エントリのインデックス（ZIP内のエントリ順）と出力先パスを列挙
+		List<Integer> targetEntryIndexList = new ArrayList<Integer>();
 		List<Path> outputFilePathList = new ArrayList<Path>();
+		Set<String> outputFileNameSet = new HashSet<String>();
+		try (ZipFile zipFile = new ZipFile(targetZipFilePath.toFile(), "MS932")) {
+			List<ZipArchiveEntry> zipEntryList = Collections.list(zipFile.getEntries());
+			for (int i = 0; i < zipEntryList.size(); i++) {
+				ZipArchiveEntry zipEntry = zipEntryList.get(i);
+				if (isTargetEntry(zipEntry)) {
+					String outputFileName = getOutputFileName(zipEntry.getName(), i, outputFileNameSet);
+					targetEntryIndexList.add(i);
+					outputFilePathList.add(outputDirectoryPath.resolve(outputFileName));
+				}
+			}
+		}
+
+		List<CompletableFuture<Path>> outputFilePathFutureList = new ArrayList<CompletableFuture<Path>>();
+		for (int i = 0; i < targetEntryIndexList.size(); i++) {
+			outputFilePathFutureList.add(new CompletableFuture<Path>());
+		}
+
+		// 各ワーカーは次に処理するエントリを共有カウンタから取得する
+		AtomicInteger nextIndex = new AtomicInteger();
+		int workerCount = Math.max(1, Math.min(parallelism, targetEntryIndexList.size()));
+		for (int i = 0; i < workerCount; i++) {
+			executorService.execute(() -> inflateWorker(
+				targetZipFilePath,
+				targetEntryIndexList,
+				outputFilePathList,
+				outputFilePathFutureList,
+				nextIndex,
+				readStage));
+		}
+
+		return outputFilePathFutureList;
+	}
+
+	/**
+	 * 解凍ワーカーの処理本体です。
+	 * <p>
+	 * 専用の {@link ZipFile} ハンドルを開き、共有カウンタから取得したエントリを順に展開します。
+	 * ハンドルを開けなかった場合は、取得したエントリの {@link CompletableFuture} をすべて例外で完了させ、
+	 * 呼び出し元が待機し続けることのないようにします。
+	 * </p>
+	 *
+	 * @param targetZipFilePath 解凍対象のZIPファイルのパス。
+	 * @param targetEntryIndexList 展開対象エントリのZIP内でのインデックスのリスト。
+	 * @param outputFilePathList 展開対象エントリの出力先パスのリスト。
+	 * @param outputFilePathFutureList 展開対象エントリの完了を通知する {@link CompletableFuture} のリスト。
+	 * @param nextIndex 次に処理する展開対象エントリの番号を保持する共有カウンタ。
+	 * @param readStage 同時に展開するエントリの数を制限する段階。制限しない場合は null。
+	 */
+	private static void inflateWorker(
+		Path targetZipFilePath,
+		List<Integer> targetEntryIndexList,
+		List<Path> outputFilePathList,
+		List<CompletableFuture<Path>> outputFilePathFutureList,
+		AtomicInteger nextIndex,
+		ConcurrencyController.Stage readStage) {
 
 		try (ZipFile zipFile = new ZipFile(targetZipFilePath.toFile(), "MS932")) {
-			Enumeration<ZipArchiveEntry> zipEntries = zipFile.getEntries();
-			while (zipEntries.hasMoreElements()) {
-				
-				ZipArchiveEntry zipEntry = zipEntries.nextElement();
-				// ディレクトリはスキップ
-				if (! zipEntry.isDirectory()) {
-					String entryNameLower = zipEntry.getName().toLowerCase();
-					// JPGまたはJPEGファイルのみを対象とする
-					if (entryNameLower.endsWith(".jpg") ||
-						entryNameLower.endsWith(".jpeg")) {
-						
-						// ZIPエントリ名からファイル名部分のみを抽出
-						// (例: "path/to/file.jpg" -> "file.jpg")
-						String outputFileName =
-							zipEntry.getName().substring(
-								zipEntry.getName().lastIndexOf("/") + 1);
-						
-						Path outputFilePath = outputDirectoryPath.resolve(outputFileName);
-						outputFilePathList.add(outputFilePath);
-						
-						// ファイルを実際に解凍して書き出す
-						try (OutputStream outputStream = Files.newOutputStream(outputFilePath)) {
-							try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
-								byte[] buffer = new byte[1024];
-								int readSize;
-								while ((readSize = inputStream.read(buffer)) != -1) {
-									outputStream.write(buffer, 0, readSize);
-								}
-							}
+			List<ZipArchiveEntry> zipEntryList = Collections.list(zipFile.getEntries());
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+			while (true) {
+				if (readStage != null) {
+					readStage.acquire();
+				}
+				int index = nextIndex.getAndIncrement();
+				if (index >= targetEntryIndexList.size()) {
+					if (readStage != null) {
+						readStage.release();
+					}
+					break;
+				}
+				ZipArchiveEntry zipEntry = zipEntryList.get(targetEntryIndexList.get(index));
+				Path outputFilePath = outputFilePathList.get(index);
+				PipelineEvents.Inflate inflateEvent = new PipelineEvents.Inflate();
+				inflateEvent.begin();
+				long[] work = (readStage != null) ? readStage.startWork() : null;
+				try {
+					// ファイルを実際に解凍して書き出す
+					try (OutputStream outputStream = Files.newOutputStream(outputFilePath);
+						InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+						int readSize;
+						while ((readSize = inputStream.read(buffer)) != -1) {
+							outputStream.write(buffer, 0, readSize);
 						}
 					}
+					inflateEvent.end();
+					if (inflateEvent.shouldCommit()) {
+						inflateEvent.archive = targetZipFilePath.toString();
+						inflateEvent.page = zipEntry.getName();
+						inflateEvent.bytes = Files.size(outputFilePath);
+						inflateEvent.commit();
+					}
+					outputFilePathFutureList.get(index).complete(outputFilePath);
+				} catch (IOException | RuntimeException e) {
+					outputFilePathFutureList.get(index).completeExceptionally(e);
+				} finally {
+					if (readStage != null) {
+						readStage.endWork(work);
+						readStage.release();
+					}
 				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			int index;
+			while ((index = nextIndex.getAndIncrement()) < targetEntryIndexList.size()) {
+				outputFilePathFutureList.get(index).completeExceptionally(e);
+			}
+		} catch (IOException | RuntimeException e) {
+			int index;
+			while ((index = nextIndex.getAndIncrement()) < targetEntryIndexList.size()) {
+				outputFilePathFutureList.get(index).completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * ZIPエントリ名から、展開先のディレクトリ内で重複しないファイル名を求めます。
+	 * <p>
+	 * 通常はZIPエントリ名のファイル名部分を使用します（例: "path/to/file.jpg" -> "file.jpg"）。
+	 * 別のディレクトリに同じファイル名のエントリがある場合（例: "a/001.jpg" と "b/001.jpg"）は、
+	 * 複数のワーカーが同じファイルに並行して書き込まないよう、2つ目以降のエントリにはディレクトリ部分を "_" で連結した名前
+	 * （例: "b_001.jpg"）を使用し、それも重複する場合はさらにエントリのインデックスを先頭に付加します（例: "5_b_001.jpg"）。
+	 * 大文字・小文字を区別しないファイルシステムに備え、重複は大文字・小文字を区別せずに判定します。
+	 * </p>
+	 * <p>
+	 * {@link ArchiveStreamReader} によるtarファイル・7zファイルの読み込みでも、ページ名を求めるために共通に使用します。
+	 * </p>
+	 *
+	 * @param entryName ZIPエントリ名。
+	 * @param entryIndex ZIP内でのエントリのインデックス。
+	 * @param outputFileNameSet 使用済みのファイル名（小文字）の集合。求めたファイル名が追加されます。
+	 * @return 展開先のファイル名。
+	 */
+	static String getOutputFileName(String entryName, int entryIndex, Set<String> outputFileNameSet) {
+		String outputFileName = entryName.substring(entryName.lastIndexOf("/") + 1);
+		if (!outputFileNameSet.add(outputFileName.toLowerCase(Locale.ROOT))) {
+			outputFileName = entryName.replace('/', '_');
+			if (!outputFileNameSet.add(outputFileName.toLowerCase(Locale.ROOT))) {
+				outputFileName = entryIndex + "_" + outputFileName;
+				outputFileNameSet.add(outputFileName.toLowerCase(Locale.ROOT));
+			}
+		}
+		return outputFileName;
+	}
+
+	/**
+	 * 指定されたZIPエントリが展開対象（ディレクトリではないJPG/JPEG/PNGファイル）かどうかを判定します。
+	 *
+	 * @param zipEntry 判定対象のZIPエントリ。
+	 * @return 展開対象の場合は true。
+	 */
+	private static boolean isTargetEntry(ZipArchiveEntry zipEntry) {
+		// ディレクトリはスキップ
+		if (zipEntry.isDirectory()) {
+			return false;
+		}
+		return isImageEntryName(zipEntry.getName());
+	}
+
+	/**
+	 * エントリ名が変換対象の画像ファイル（JPG、JPEG、PNG）のものかどうかを判定します。
+	 * <p>
+	 * ZIPファイルの展開と、{@link ArchiveStreamReader} によるtarファイル・7zファイルの読み込みで共通に使用し、
+	 * ディレクトリを入力とした場合と同じ拡張子のファイルを対象とします。拡張子の大文字・小文字は区別しません。
+	 * </p>
+	 *
+	 * @param entryName エントリ名。
+	 * @return 変換対象の画像ファイルの場合は true。
+	 */
+	static boolean isImageEntryName(String entryName) {
+		String entryNameLower = entryName.toLowerCase(Locale.ROOT);
+		return entryNameLower.endsWith(".jpg") || entryNameLower.endsWith(".jpeg") || entryNameLower.endsWith(".png");
+	}
+
+	/**
+	 * 解凍処理用の {@link ExecutorService} を生成します。
+	 * <p>
+	 * 生成されるスレッドはデーモンスレッドのため、シャットダウンされなかった場合でもJVMの終了を妨げません。
+	 * </p>
+	 *
+	 * @param parallelism スレッド数。
+	 * @return 解凍処理用の {@link ExecutorService}。
+	 */
+	public static ExecutorService newInflateExecutor(int parallelism) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, Constants.APPLICATION_NAME + "-inflate-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(Math.max(1, parallelism), threadFactory);
+	}
+
+	/**
+	 * 指定された {@link CompletableFuture} の完了を待機し、展開後のファイルパスを返します。
+	 * <p>
+	 * 展開処理が {@link IOException} で失敗していた場合は、その例外をそのままスローします。
+	 * </p>
+	 *
+	 * @param outputFilePathFuture 待機対象の {@link CompletableFuture}。
+	 * @return 展開後のファイルパス。
+	 * @throws IOException 展開処理中にI/Oエラーが発生していた場合。
+	 */
+	public static Path await(CompletableFuture<Path> outputFilePathFuture) throws IOException {
+		try {
+			return outputFilePathFuture.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
 		}
-		
-		return outputFilePathList;
 	}
 
 }
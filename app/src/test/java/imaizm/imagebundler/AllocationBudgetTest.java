@@ -0,0 +1,286 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * 1ページの変換で確保されるメモリ量の上限を検証するテストクラスです。
+ * <p>
+ * {@link ImageConverter#convert} による変換（グレースケール判定の許容値は {@link ImageConverter#DEFAULT_GRAYSCALE_TOLERANCE}）と
+ * {@link JpegEncoder#encode(BufferedImage, int)} によるエンコードを1ページ分実行し、
+ * その間に現在のスレッドで確保されたバイト数（{@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}）
+ * を、ケースごとに定めた上限と比較します。変更によって1ページあたりの画像の複製が増えた場合などに失敗します。
+ * </p>
+ * <p>
+ * 入力画像は測定の前に作成するため、測定値には含まれません。
+ * クラスの読み込みやImageIOの初期化による確保を除くため、各ケースは事前に {@value #WARMUP_COUNT} 回実行してから
+ * {@value #MEASURE_COUNT} 回測定し、その最小値を採用します。
+ * </p>
+ * <p>
+ * 上限は、変換元の画像のラスタのバイト数を単位として「想定する確保量 + 余裕」で求めます。
+ * 想定する確保量は、測定値をラスタのバイト数で割った値を0.1単位で切り上げたもので、
+ * Temurin 8・11・17・21 で同じ値になることを確認しています。
+ * 余裕（{@value #HEADROOM_RASTERS} 枚分）はラスタ1枚分より小さいため、変換元の画像の複製が1つ増えた場合には失敗します。
+ * 意図して確保量が増える変更を行う場合は、想定する確保量も合わせて見直してください。
+ * </p>
+ * <p>
+ * このテストには {@code allocation} タグを付けています。{@code ./gradlew allocationTest} で単独で実行でき、
+ * {@code check} タスクにも含まれます。
+ * </p>
+ */
+@Tag("allocation")
+class AllocationBudgetTest {
+
+	/** 測定前に実行する回数。 */
+	private static final int WARMUP_COUNT = 2;
+	/** 測定する回数。 */
+	private static final int MEASURE_COUNT = 3;
+	/** 上限に加える余裕（変換元の画像のラスタの枚数）。 */
+	private static final double HEADROOM_RASTERS = 0.5;
+
+	/** 縦長のページの幅。 */
+	private static final int PORTRAIT_WIDTH = 1240;
+	/** 縦長のページの高さ。 */
+	private static final int PORTRAIT_HEIGHT = 1754;
+	/** 見開きのページの幅。 */
+	private static final int SPREAD_WIDTH = 2480;
+	/** 見開きのページの高さ。 */
+	private static final int SPREAD_HEIGHT = 1754;
+	/** 変換後の画像の幅。 */
+	private static final int OUTPUT_WIDTH = 768;
+	/** 変換後の画像の高さ。 */
+	private static final int OUTPUT_HEIGHT = 1024;
+
+	@Nested
+	@DisplayName("1ページの変換とエンコードで確保されるメモリ量に対するテスト")
+	/**
+	 * 縦横比の処理モードと入力画像の種類ごとに、1ページあたりの確保量を検証するテストケースをグループ化するネストクラスです。
+	 */
+	class PerPage {
+
+		/**
+		 * 縦長のページを、縦横比が同じ縦長のサイズに縮小する場合のテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("縦長のページの縮小")
+		void test01() throws IOException {
+			BufferedImage srcImage = createPage(PORTRAIT_WIDTH, PORTRAIT_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+			assertWithinBudget(9.7, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.SPLIT);
+		}
+
+		/**
+		 * 見開きのページを、幅と高さを入れ替えたサイズに縮小する場合（PLAIN）のテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("見開きのページの縮小(PLAIN)")
+		void test02() throws IOException {
+			BufferedImage srcImage = createPage(SPREAD_WIDTH, SPREAD_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+			assertWithinBudget(8.9, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.PLAIN);
+		}
+
+		/**
+		 * 見開きのページを、中央切り抜きを行わずに左右に分割する場合（SPLIT）のテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("見開きのページの分割(SPLIT、中央切り抜きなし)")
+		void test03() throws IOException {
+			BufferedImage srcImage = createPage(SPREAD_WIDTH, SPREAD_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+			assertWithinBudget(9.7, srcImage,
+				ImageConverter.CenterClipOption.OFF, ImageConverter.ContraAspectMode.SPLIT);
+		}
+
+		/**
+		 * 見開きのページを、中央切り抜きを行ってから左右に分割する場合（SPLIT）のテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("見開きのページの分割(SPLIT、中央切り抜きあり)")
+		void test04() throws IOException {
+			BufferedImage srcImage = createPage(SPREAD_WIDTH, SPREAD_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+			assertWithinBudget(9.7, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.SPLIT);
+		}
+
+		/**
+		 * 見開きのページを、回転してから縮小する場合（ROTATE）のテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("見開きのページの回転(ROTATE)")
+		void test05() throws IOException {
+			BufferedImage srcImage = createPage(SPREAD_WIDTH, SPREAD_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+			assertWithinBudget(9.9, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.ROTATE);
+		}
+
+		/**
+		 * 透過のある縦長のページを縮小する場合のテストです。エンコード時の透過部分の塗りつぶしを含みます。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("透過のある縦長のページの縮小")
+		void test06() throws IOException {
+			BufferedImage srcImage = createPage(PORTRAIT_WIDTH, PORTRAIT_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+			assertWithinBudget(2.5, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.SPLIT);
+		}
+
+		/**
+		 * 無彩色の縦長のページを縮小する場合のテストです。
+		 * RGBの画像として読み込まれたページが8ビットのグレースケール画像に変換されてから、1チャンネルで縮小・エンコードされます。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("無彩色の縦長のページの縮小")
+		void test07() throws IOException {
+			BufferedImage srcImage = createGrayPage(PORTRAIT_WIDTH, PORTRAIT_HEIGHT);
+			assertEquals(BufferedImage.TYPE_BYTE_GRAY, ImageConverter.convert(
+				srcImage, OUTPUT_WIDTH, OUTPUT_HEIGHT, ImageConverter.BindingSide.RIGHT,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.SPLIT,
+				ImageConverter.DEFAULT_CENTER_CLIP_WIDTH, ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+				ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE).get(0).getType());
+			assertWithinBudget(0.6, srcImage,
+				ImageConverter.CenterClipOption.ON, ImageConverter.ContraAspectMode.SPLIT);
+		}
+	}
+
+	/**
+	 * 1ページの変換とエンコードで確保されるバイト数が上限以下であることを検証します。
+	 * <p>
+	 * 上限は、変換元の画像のラスタのバイト数に、想定する確保量と余裕（{@value #HEADROOM_RASTERS}）の和を掛けた値です。
+	 * </p>
+	 *
+	 * @param rasterCopies 想定する確保量（変換元の画像のラスタの枚数）。
+	 * @param srcImage 変換元の画像。
+	 * @param centerClipOption 中央切り抜きオプション。
+	 * @param mode 縦横比が異なる場合の処理モード。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	private static void assertWithinBudget(
+		double rasterCopies,
+		BufferedImage srcImage,
+		ImageConverter.CenterClipOption centerClipOption,
+		ImageConverter.ContraAspectMode mode) throws IOException {
+
+		long rasterBytes = getRasterBytes(srcImage);
+		long budget = (long) ((rasterCopies + HEADROOM_RASTERS) * rasterBytes);
+
+		com.sun.management.ThreadMXBean threadMXBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assertTrue(threadMXBean.isThreadAllocatedMemorySupported(), "thread allocated memory is not supported");
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+			for (int i = 0; i < WARMUP_COUNT; i++) {
+				convertPage(jpegEncoder, srcImage, centerClipOption, mode);
+			}
+			long allocatedBytes = Long.MAX_VALUE;
+			for (int i = 0; i < MEASURE_COUNT; i++) {
+				long before = threadMXBean.getThreadAllocatedBytes(threadId);
+				convertPage(jpegEncoder, srcImage, centerClipOption, mode);
+				allocatedBytes = Math.min(allocatedBytes, threadMXBean.getThreadAllocatedBytes(threadId) - before);
+			}
+			assertTrue(allocatedBytes <= budget,
+				String.format("%s %dx%d : allocated %,d bytes (%.2f rasters) per page, budget %,d bytes (%.2f rasters)",
+					mode, srcImage.getWidth(), srcImage.getHeight(),
+					allocatedBytes, (double) allocatedBytes / rasterBytes, budget, rasterCopies + HEADROOM_RASTERS));
+		}
+	}
+
+	/**
+	 * 画像のラスタが保持するデータのバイト数を求めます。
+	 *
+	 * @param image 画像。
+	 * @return ラスタのデータのバイト数。
+	 */
+	private static long getRasterBytes(BufferedImage image) {
+		DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+		return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+	}
+
+	/**
+	 * 1ページの画像を変換し、変換後の各画像をエンコードします。
+	 *
+	 * @param jpegEncoder エンコードに使用する {@link JpegEncoder}。
+	 * @param srcImage 変換元の画像。
+	 * @param centerClipOption 中央切り抜きオプション。
+	 * @param mode 縦横比が異なる場合の処理モード。
+	 * @throws IOException エンコード中にエラーが発生した場合。
+	 */
+	private static void convertPage(
+		JpegEncoder jpegEncoder,
+		BufferedImage srcImage,
+		ImageConverter.CenterClipOption centerClipOption,
+		ImageConverter.ContraAspectMode mode) throws IOException {
+		List<BufferedImage> outputImageList = ImageConverter.convert(
+			srcImage, OUTPUT_WIDTH, OUTPUT_HEIGHT, ImageConverter.BindingSide.RIGHT, centerClipOption, mode,
+			ImageConverter.DEFAULT_CENTER_CLIP_WIDTH, ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+			ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE);
+		for (BufferedImage outputImage : outputImageList) {
+			assertTrue(jpegEncoder.encode(outputImage, OutputProfile.DEFAULT_QUALITY).length > 0);
+		}
+	}
+
+	/**
+	 * グレースケールと判定されない色付きのページの画像を作成します。
+	 *
+	 * @param width 画像の幅。
+	 * @param height 画像の高さ。
+	 * @param imageType 画像の種類。
+	 * @return 作成した画像。
+	 */
+	private static BufferedImage createPage(int width, int height, int imageType) {
+		BufferedImage image = new BufferedImage(width, height, imageType);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setPaint(new GradientPaint(0, 0, new Color(0xF0, 0xE0, 0xC0), width, height, new Color(0x20, 0x40, 0xA0)));
+			if (imageType == BufferedImage.TYPE_INT_ARGB) {
+				graphics.fillRect(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+			} else {
+				graphics.fillRect(0, 0, width, height);
+			}
+			graphics.setColor(Color.RED);
+			graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * グレースケールと判定される無彩色のページの画像を、RGBの画像として作成します。
+	 *
+	 * @param width 画像の幅。
+	 * @param height 画像の高さ。
+	 * @return 作成した画像。
+	 */
+	private static BufferedImage createGrayPage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setPaint(new GradientPaint(0, 0, new Color(0xF0, 0xF0, 0xF0), width, height, new Color(0x30, 0x30, 0x30)));
+			graphics.fillRect(0, 0, width, height);
+			graphics.setColor(Color.BLACK);
+			graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+}
@@ -0,0 +1,198 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZMethod;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ArchiveStreamReader} クラスのテストクラスです。
+ * <p>
+ * tarファイル・7zファイルの画像のエントリだけがエントリ順に読み込まれること、
+ * 対応する入力の判定と出力名のベース文字列が正しいことを検証します。
+ * </p>
+ */
+class ArchiveStreamReaderTest {
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ArchiveStreamReaderTest");
+
+	/** テストのアーカイブに格納するエントリ名（エントリ順）。 */
+	private static final List<String> ENTRY_NAME_LIST =
+		Arrays.asList("book/02.jpg", "book/readme.txt", "book/01.PNG");
+
+	/**
+	 * 各テストメソッドの実行前に呼び出されます。
+	 * 作業ディレクトリを作成します。
+	 * @throws IOException 作業ディレクトリの作成中にエラーが発生した場合。
+	 */
+	@BeforeEach
+	void beforeEach() throws IOException {
+		Files.createDirectories(WORK_DIRECTORY_PATH);
+	}
+
+	/**
+	 * 各テストメソッドの実行後に呼び出されます。
+	 * 作業ディレクトリを削除します。
+	 * @throws IOException 作業ディレクトリの削除中にエラーが発生した場合。
+	 */
+	@AfterEach
+	void afterEach() throws IOException {
+		FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+	}
+
+	@Nested
+	@DisplayName("openメソッドに対するテスト")
+	/**
+	 * {@link ArchiveStreamReader#open(Path, int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Open {
+
+		/**
+		 * gzip圧縮したtarファイルから、画像のエントリだけがエントリ順にファイル名と内容を保って読み込まれることを確認するテストです。
+		 * @throws IOException アーカイブの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("tar.gzファイルの画像を順に読み込める")
+		void test01() throws IOException {
+			Path archiveFilePath = WORK_DIRECTORY_PATH.resolve("book.tar.gz");
+			try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
+					new GzipCompressorOutputStream(Files.newOutputStream(archiveFilePath)))) {
+				for (String name : ENTRY_NAME_LIST) {
+					byte[] data = name.getBytes(StandardCharsets.UTF_8);
+					TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+					tarEntry.setSize(data.length);
+					tarOutputStream.putArchiveEntry(tarEntry);
+					tarOutputStream.write(data);
+					tarOutputStream.closeArchiveEntry();
+				}
+			}
+
+			assertPages(archiveFilePath);
+		}
+
+		/**
+		 * 7zファイルから、画像のエントリだけがエントリ順にファイル名と内容を保って読み込まれることを確認するテストです。
+		 * @throws IOException アーカイブの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("7zファイルの画像を順に読み込める")
+		void test02() throws IOException {
+			Path archiveFilePath = WORK_DIRECTORY_PATH.resolve("book.7z");
+			try (SevenZOutputFile sevenZOutputFile = new SevenZOutputFile(archiveFilePath.toFile())) {
+				sevenZOutputFile.setContentCompression(SevenZMethod.DEFLATE);
+				SevenZArchiveEntry directoryEntry = new SevenZArchiveEntry();
+				directoryEntry.setName("book");
+				directoryEntry.setDirectory(true);
+				sevenZOutputFile.putArchiveEntry(directoryEntry);
+				sevenZOutputFile.closeArchiveEntry();
+				for (String name : ENTRY_NAME_LIST) {
+					SevenZArchiveEntry sevenZEntry = new SevenZArchiveEntry();
+					sevenZEntry.setName(name);
+					sevenZOutputFile.putArchiveEntry(sevenZEntry);
+					sevenZOutputFile.write(name.getBytes(StandardCharsets.UTF_8));
+					sevenZOutputFile.closeArchiveEntry();
+				}
+			}
+
+			assertPages(archiveFilePath);
+		}
+
+		/**
+		 * 別のディレクトリに同じファイル名のエントリがある場合に、2つ目以降のエントリが重複しないページ名で読み込まれることを確認するテストです。
+		 * @throws IOException アーカイブの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("別のディレクトリの同じファイル名の画像を重複しない名前で読み込める")
+		void test03() throws IOException {
+			Path archiveFilePath = WORK_DIRECTORY_PATH.resolve("book.tar");
+			List<String> entryNameList = Arrays.asList("a/001.jpg", "b/001.jpg", "b/002.jpg", "c/001.JPG");
+			try (TarArchiveOutputStream tarOutputStream =
+					new TarArchiveOutputStream(Files.newOutputStream(archiveFilePath))) {
+				for (String name : entryNameList) {
+					byte[] data = name.getBytes(StandardCharsets.UTF_8);
+					TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+					tarEntry.setSize(data.length);
+					tarOutputStream.putArchiveEntry(tarEntry);
+					tarOutputStream.write(data);
+					tarOutputStream.closeArchiveEntry();
+				}
+			}
+
+			List<String> nameList = new ArrayList<String>();
+			List<String> dataList = new ArrayList<String>();
+			try (ArchiveStreamReader archiveStreamReader = ArchiveStreamReader.open(archiveFilePath, 1)) {
+				ArchiveStreamReader.Page page;
+				while ((page = archiveStreamReader.next()) != null) {
+					nameList.add(page.getName());
+					dataList.add(new String(page.getData(), StandardCharsets.UTF_8));
+				}
+			}
+			assertEquals(Arrays.asList("001.jpg", "b_001.jpg", "002.jpg", "c_001.JPG"), nameList);
+			assertEquals(entryNameList, dataList);
+		}
+
+		/**
+		 * 読み込んだページが、テストのアーカイブの画像のエントリと一致することを確認します。
+		 *
+		 * @param archiveFilePath 読み込むアーカイブのパス。
+		 * @throws IOException アーカイブの読み込み中にエラーが発生した場合。
+		 */
+		private void assertPages(Path archiveFilePath) throws IOException {
+			List<String> nameList = new ArrayList<String>();
+			try (ArchiveStreamReader archiveStreamReader = ArchiveStreamReader.open(archiveFilePath, 1)) {
+				ArchiveStreamReader.Page page;
+				while ((page = archiveStreamReader.next()) != null) {
+					nameList.add(page.getName());
+					assertEquals("book/" + page.getName(), new String(page.getData(), StandardCharsets.UTF_8));
+				}
+				assertNull(archiveStreamReader.next());
+			}
+			assertEquals(Arrays.asList("02.jpg", "01.PNG"), nameList);
+		}
+	}
+
+	@Nested
+	@DisplayName("isSupportedメソッドとgetBaseNameメソッドに対するテスト")
+	/**
+	 * {@link ArchiveStreamReader#isSupported(Path)} メソッドと {@link ArchiveStreamReader#getBaseName(Path)} メソッドの
+	 * テストケースをグループ化するネストクラスです。
+	 */
+	class IsSupported {
+
+		/**
+		 * tarファイル・7zファイルの拡張子だけが対応する入力と判定され、複合拡張子を除いた名前が求められることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("拡張子から対応する入力を判定できる")
+		void test01() {
+			assertTrue(ArchiveStreamReader.isSupported(Paths.get("book.TAR.GZ")));
+			assertTrue(ArchiveStreamReader.isSupported(Paths.get("book.tgz")));
+			assertTrue(ArchiveStreamReader.isSupported(Paths.get("book.tar")));
+			assertTrue(ArchiveStreamReader.isSupported(Paths.get("book.7z")));
+			assertFalse(ArchiveStreamReader.isSupported(Paths.get("book.zip")));
+			assertFalse(ArchiveStreamReader.isSupported(Paths.get("book.gz")));
+			assertFalse(ArchiveStreamReader.isSupported(WORK_DIRECTORY_PATH));
+
+			assertEquals("book.v1", ArchiveStreamReader.getBaseName(Paths.get("book.v1.tar.gz")));
+			assertEquals("book", ArchiveStreamReader.getBaseName(Paths.get("book.tgz")));
+			assertEquals("book", ArchiveStreamReader.getBaseName(Paths.get("book.7z")));
+		}
+	}
+}
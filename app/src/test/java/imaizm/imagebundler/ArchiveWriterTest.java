@@ -0,0 +1,282 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ArchiveWriter} クラスのテストクラスです。
+ * <p>
+ * ページが順不同で投入された場合でも、ZIPファイルにはページ順に格納されること、
+ * および変換処理の失敗が呼び出し元に通知されることを検証します。
+ * </p>
+ */
+class ArchiveWriterTest {
+
+	@Nested
+	@DisplayName("submitメソッドに対するテスト")
+	/**
+	 * {@link ArchiveWriter#submit(int, List)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Submit {
+
+		/**
+		 * ページを逆順に投入した場合に、ZIPファイル内のエントリがページ順に並ぶことを確認するテストです。
+		 * 空のページ（エントリなし）が含まれていても後続のページが書き込まれることも確認します。
+		 * @throws IOException ZIPファイルの書き込みまたは読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("逆順に投入したページがページ順に格納される")
+		void test01() throws IOException {
+			Path outputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ArchiveWriterTest/test01.zip");
+			Files.createDirectories(outputFilePath.getParent());
+			try {
+				try (ArchiveWriter archiveWriter = new ArchiveWriter(outputFilePath, 4)) {
+					for (int i = 0; i < 4; i++) {
+						archiveWriter.acquireSlot();
+					}
+					archiveWriter.submit(3, Arrays.asList(entry("04.jpg")));
+					archiveWriter.submit(2, Collections.<ArchiveWriter.Entry>emptyList());
+					archiveWriter.submit(1, Arrays.asList(entry("02_1.jpg"), entry("02_2.jpg")));
+					archiveWriter.submit(0, Arrays.asList(entry("01.jpg")));
+					// 出力先のZIPファイルはcloseが成功するまで作成されない
+					assertFalse(Files.exists(outputFilePath));
+				}
+
+				List<String> entryNameList = new ArrayList<String>();
+				try (ZipFile zipFile = new ZipFile(outputFilePath.toFile(), "MS932")) {
+					for (ZipArchiveEntry zipEntry : Collections.list(zipFile.getEntries())) {
+						entryNameList.add(zipEntry.getName());
+						assertEquals(ZipArchiveEntry.STORED, zipEntry.getMethod());
+					}
+				}
+				assertEquals(Arrays.asList("01.jpg", "02_1.jpg", "02_2.jpg", "04.jpg"), entryNameList);
+			} finally {
+				Files.deleteIfExists(outputFilePath);
+				Files.deleteIfExists(outputFilePath.getParent());
+			}
+		}
+
+		/**
+		 * 変換処理の失敗が通知された場合に、{@link ArchiveWriter#close()} が {@link IOException} をスローすることを確認するテストです。
+		 * @throws IOException テスト用ファイルの削除中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("変換処理の失敗がcloseで通知される")
+		void test02() throws IOException {
+			Path outputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ArchiveWriterTest/test02.zip");
+			Files.createDirectories(outputFilePath.getParent());
+			try {
+				ArchiveWriter archiveWriter = new ArchiveWriter(outputFilePath, 2);
+				archiveWriter.acquireSlot();
+				archiveWriter.fail(new IOException("dummy"));
+				IOException e = assertThrows(IOException.class, () -> archiveWriter.close());
+				assertEquals("dummy", e.getMessage());
+				// 書き込み途中のZIPファイルが残らない
+				assertFalse(Files.exists(outputFilePath));
+				assertEquals(0, outputFilePath.getParent().toFile().list().length);
+			} finally {
+				Files.deleteIfExists(outputFilePath);
+				Files.deleteIfExists(outputFilePath.getParent());
+			}
+		}
+
+		/**
+		 * ストリームに書き込んだZIPファイルを先頭から順に読み込めること（ローカルファイルヘッダにサイズが記録されていること）と、
+		 * {@link ArchiveWriter#close()} で出力先のストリームが閉じられないことを確認するテストです。
+		 * @throws IOException ZIPファイルの書き込みまたは読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ストリームへ順に読み込めるZIPファイルが書き込まれる")
+		void test03() throws IOException {
+			boolean[] closed = new boolean[1];
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+				@Override
+				public void close() {
+					closed[0] = true;
+				}
+			};
+			try (ArchiveWriter archiveWriter = new ArchiveWriter(outputStream, 2)) {
+				for (int i = 0; i < 2; i++) {
+					archiveWriter.acquireSlot();
+				}
+				archiveWriter.submit(1, Arrays.asList(entry("02.jpg")));
+				archiveWriter.submit(0, Arrays.asList(entry("01.jpg")));
+			}
+			assertFalse(closed[0]);
+
+			List<String> entryNameList = new ArrayList<String>();
+			try (ZipArchiveInputStream zipInputStream =
+					new ZipArchiveInputStream(new ByteArrayInputStream(outputStream.toByteArray()), "MS932")) {
+				ZipArchiveEntry zipEntry;
+				while ((zipEntry = zipInputStream.getNextZipEntry()) != null) {
+					entryNameList.add(zipEntry.getName());
+					assertArrayEquals(zipEntry.getName().getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(zipInputStream));
+				}
+			}
+			assertEquals(Arrays.asList("01.jpg", "02.jpg"), entryNameList);
+		}
+
+		/**
+		 * 書き込み済みのエントリを参照するエントリに、複写元と同じ内容が格納されることを確認するテストです。
+		 * @throws IOException ZIPファイルの書き込みまたは読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("書き込み済みのエントリの内容が複写される")
+		void test05() throws IOException {
+			Path outputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ArchiveWriterTest/test05.zip");
+			Files.createDirectories(outputFilePath.getParent());
+			ArchiveWriter.Entry firstEntry = entry("01_1.jpg");
+			try {
+				try (ArchiveWriter archiveWriter = new ArchiveWriter(outputFilePath, 3)) {
+					for (int i = 0; i < 3; i++) {
+						archiveWriter.acquireSlot();
+					}
+					archiveWriter.submit(2, Arrays.asList(firstEntry.asReference("03_1.jpg").asReference("03_1.jpg")));
+					archiveWriter.submit(1, Arrays.asList(firstEntry.asReference("02_1.jpg")));
+					archiveWriter.submit(0, Arrays.asList(firstEntry, entry("01_2.jpg")));
+				}
+
+				try (ZipFile zipFile = new ZipFile(outputFilePath.toFile(), "MS932")) {
+					for (String name : Arrays.asList("01_1.jpg", "02_1.jpg", "03_1.jpg")) {
+						ZipArchiveEntry zipEntry = zipFile.getEntry(name);
+						assertEquals(firstEntry.getCrc(), zipEntry.getCrc());
+						try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+							assertArrayEquals(firstEntry.getData(), IOUtils.toByteArray(inputStream));
+						}
+					}
+				}
+			} finally {
+				Files.deleteIfExists(outputFilePath);
+				Files.deleteIfExists(outputFilePath.getParent());
+			}
+		}
+
+		/**
+		 * エントリ数が65,535を超える場合にZip64拡張が使用され、すべてのエントリを読み込めるZIPファイルが書き込まれることを確認するテストです。
+		 * @throws IOException ZIPファイルの書き込みまたは読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("65,535を超えるエントリを格納できる")
+		void test04() throws IOException {
+			int entryCount = 0xFFFF + 2;
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			try (ArchiveWriter archiveWriter = new ArchiveWriter(outputStream, 2)) {
+				for (int i = 0; i < entryCount; i++) {
+					archiveWriter.acquireSlot();
+					archiveWriter.submit(i, Arrays.asList(entry(String.format("%06d.jpg", i))));
+				}
+			}
+
+			try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(outputStream.toByteArray()))) {
+				List<ZipArchiveEntry> zipEntryList = Collections.list(zipFile.getEntries());
+				assertEquals(entryCount, zipEntryList.size());
+				ZipArchiveEntry lastEntry = zipEntryList.get(entryCount - 1);
+				assertEquals(String.format("%06d.jpg", entryCount - 1), lastEntry.getName());
+				try (InputStream inputStream = zipFile.getInputStream(lastEntry)) {
+					assertArrayEquals(lastEntry.getName().getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(inputStream));
+				}
+			}
+		}
+
+		/**
+		 * ストリームへの書き込み中に変換処理の失敗が通知された場合に、セントラルディレクトリが書き込まれず、
+		 * 出力が正しいZIPファイルとして読み込めないことを確認するテストです。
+		 */
+		@Test
+		@DisplayName("失敗したストリームにはセントラルディレクトリが書き込まれない")
+		void test06() {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			ArchiveWriter archiveWriter = new ArchiveWriter(outputStream, 2);
+			IOException e = assertThrows(IOException.class, () -> {
+				archiveWriter.acquireSlot();
+				archiveWriter.submit(0, Arrays.asList(entry("01.jpg")));
+				archiveWriter.fail(new IOException("dummy"));
+				archiveWriter.close();
+			});
+			assertEquals("dummy", e.getMessage());
+
+			assertThrows(IOException.class,
+				() -> new ZipFile(new SeekableInMemoryByteChannel(outputStream.toByteArray())).close());
+		}
+	}
+
+	@Nested
+	@DisplayName("Entry.fromFileメソッドに対するテスト")
+	/**
+	 * {@link ArchiveWriter.Entry#fromFile(Path)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class FromFile {
+
+		/**
+		 * ファイルを内容とするエントリのサイズとCRC-32チェックサムがファイルの内容と一致し、
+		 * ZIPファイルに書き込んだ内容が元のファイルと同一であることを確認するテストです。
+		 * @throws IOException ZIPファイルの書き込みまたは読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ファイルの内容がそのまま格納される")
+		void test01() throws IOException {
+			Path sourceFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+			Path outputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ArchiveWriterTest/FromFile.zip");
+			Files.createDirectories(outputFilePath.getParent());
+			try {
+				byte[] sourceData = Files.readAllBytes(sourceFilePath);
+				CRC32 crc32 = new CRC32();
+				crc32.update(sourceData);
+
+				ArchiveWriter.Entry entry = ArchiveWriter.Entry.fromFile(sourceFilePath);
+				assertAll("entry",
+					() -> assertEquals("480x320.jpg", entry.getName()),
+					() -> assertEquals(sourceData.length, entry.getSize()),
+					() -> assertEquals(crc32.getValue(), entry.getCrc()),
+					() -> assertNull(entry.getData()));
+
+				try (ArchiveWriter archiveWriter = new ArchiveWriter(outputFilePath, 1)) {
+					archiveWriter.acquireSlot();
+					archiveWriter.submit(0, Arrays.asList(entry));
+				}
+
+				try (ZipFile zipFile = new ZipFile(outputFilePath.toFile(), "MS932")) {
+					ZipArchiveEntry zipEntry = zipFile.getEntry("480x320.jpg");
+					assertEquals(sourceData.length, zipEntry.getSize());
+					assertEquals(crc32.getValue(), zipEntry.getCrc());
+					try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+						assertArrayEquals(sourceData, IOUtils.toByteArray(inputStream));
+					}
+				}
+			} finally {
+				Files.deleteIfExists(outputFilePath);
+				Files.deleteIfExists(outputFilePath.getParent());
+			}
+		}
+	}
+
+	/**
+	 * エントリ名を内容とするテスト用のエントリを生成します。
+	 *
+	 * @param name エントリ名。
+	 * @return テスト用のエントリ。
+	 */
+	private static ArchiveWriter.Entry entry(String name) {
+		return new ArchiveWriter.Entry(name, System.currentTimeMillis(), name.getBytes(StandardCharsets.UTF_8));
+	}
+}
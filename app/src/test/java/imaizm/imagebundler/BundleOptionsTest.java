@@ -0,0 +1,146 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link BundleOptions} クラスのテストクラスです。
+ * <p>
+ * ビルダーで構築した設定の既定値と不変性、および {@link BundleOptions#toBuilder()} による設定の複製を検証します。
+ * </p>
+ */
+class BundleOptionsTest {
+
+	@Nested
+	@DisplayName("Builderに対するテスト")
+	/**
+	 * {@link BundleOptions.Builder} クラスのテストケースをグループ化するネストクラスです。
+	 */
+	class Builder {
+
+		/**
+		 * 何も設定しない場合に、各設定が既定値になることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("設定しない項目は既定値になる")
+		void test01() {
+			BundleOptions options = BundleOptions.defaults();
+
+			assertAll(
+				() -> assertEquals(1, options.getOutputProfileList().size()),
+				() -> assertEquals(OutputProfile.DEFAULT_NAME, options.getOutputProfileList().get(0).getName()),
+				() -> assertEquals(ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE, options.getGrayscaleTolerance()),
+				() -> assertEquals(PageDeduplicator.DEFAULT_PERCEPTUAL_HASH_DISTANCE, options.getPerceptualHashDistance()),
+				() -> assertEquals(0, options.getPageSizeBudget()),
+				() -> assertEquals(0, options.getArchiveSizeBudget()),
+				() -> assertTrue(options.isLosslessSplit()),
+				() -> assertEquals(ParallelJpegEncoder.DEFAULT_MIN_PIXELS, options.getParallelEncodingPixels()),
+				() -> assertEquals(ImageConverter.DEFAULT_OFF_HEAP_PIXEL_THRESHOLD, options.getOffHeapPixelThreshold()),
+				() -> assertTrue(options.isAdaptiveConcurrency()),
+				() -> assertEquals(ZipFileHandler.DEFAULT_PARALLELISM * 4, options.getMaxReadParallelism()),
+				() -> assertNull(options.getJournalDirectory()));
+		}
+
+		/**
+		 * 構築後に元の出力プロファイルのリストを変更しても設定が変わらず、
+		 * 取得したリストも変更できないことを確認するテストです。
+		 */
+		@Test
+		@DisplayName("構築後の設定は変更できない")
+		void test02() {
+			List<OutputProfile> outputProfileList =
+				new ArrayList<OutputProfile>(OutputProfile.parseList("reduced=768x1024,thumb=150x200"));
+			BundleOptions options = BundleOptions.builder().outputProfiles(outputProfileList).build();
+			outputProfileList.clear();
+
+			assertEquals(2, options.getOutputProfileList().size());
+			assertThrows(UnsupportedOperationException.class, () -> options.getOutputProfileList().clear());
+		}
+
+		/**
+		 * 出力プロファイルが空の場合、および名前が重複している場合に {@link IllegalArgumentException} がスローされることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("不正な出力プロファイルの指定は例外になる")
+		void test03() {
+			assertThrows(IllegalArgumentException.class,
+				() -> BundleOptions.builder().outputProfiles(new ArrayList<OutputProfile>()).build());
+			assertThrows(IllegalArgumentException.class,
+				() -> BundleOptions.builder().outputProfiles(Arrays.asList(
+					OutputProfile.parse("a=768x1024"),
+					OutputProfile.parse("a=150x200"))).build());
+		}
+	}
+
+	@Nested
+	@DisplayName("toBuilderメソッドに対するテスト")
+	/**
+	 * {@link BundleOptions#toBuilder()} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class ToBuilder {
+
+		/**
+		 * 複製したビルダーの設定を変更しても、元の設定が変わらないことを確認するテストです。
+		 */
+		@Test
+		@DisplayName("複製したビルダーの変更は元の設定に影響しない")
+		void test01() {
+			BundleOptions original = BundleOptions.builder()
+				.grayscaleTolerance(-1)
+				.pageSizeBudget(100000)
+				.losslessSplit(false)
+				.build();
+			BundleOptions derived = original.toBuilder()
+				.outputProfile(OutputProfile.parse("thumb=150x200"))
+				.pageSizeBudget(20000)
+				.build();
+
+			assertAll(
+				() -> assertEquals(OutputProfile.DEFAULT_NAME, original.getOutputProfileList().get(0).getName()),
+				() -> assertEquals(100000, original.getPageSizeBudget()),
+				() -> assertEquals("thumb", derived.getOutputProfileList().get(0).getName()),
+				() -> assertEquals(20000, derived.getPageSizeBudget()),
+				() -> assertEquals(-1, derived.getGrayscaleTolerance()),
+				() -> assertFalse(derived.isLosslessSplit()));
+		}
+	}
+
+	@Nested
+	@DisplayName("fromPropertiesメソッドに対するテスト")
+	/**
+	 * {@link BundleOptions#fromProperties(Properties)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class FromProperties {
+
+		/**
+		 * 指定したキーの設定が反映され、数値に誤りがある場合に {@link IllegalArgumentException} がスローされることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("プロパティの設定が反映される")
+		void test01() {
+			Properties properties = new Properties();
+			properties.setProperty("outputProfiles", "tablet=1536x2048,thumb=150x200:archival");
+			properties.setProperty("jpegProfile", "small");
+			properties.setProperty("archiveSizeBudget", "5000000");
+			properties.setProperty("losslessSplit", "false");
+			properties.setProperty("offHeapPixelThreshold", "1000");
+			BundleOptions options = BundleOptions.fromProperties(properties);
+
+			assertAll(
+				() -> assertEquals(JpegEncoder.Profile.SMALL, options.getOutputProfileList().get(0).getJpegProfile()),
+				() -> assertEquals(JpegEncoder.Profile.ARCHIVAL, options.getOutputProfileList().get(1).getJpegProfile()),
+				() -> assertEquals(5000000, options.getArchiveSizeBudget()),
+				() -> assertFalse(options.isLosslessSplit()),
+				() -> assertEquals(1000, options.getOffHeapPixelThreshold()));
+
+			properties.setProperty("grayscaleTolerance", "high");
+			assertThrows(IllegalArgumentException.class, () -> BundleOptions.fromProperties(properties));
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ConcurrencyController} クラスのテストクラスです。
+ * <p>
+ * 段階の並行数の変更が実行権の数に反映されること、および集計値に応じて並行数が増減されることを検証します。
+ * 調整は定期実行を開始せずに {@link ConcurrencyController#adjust(double)} を直接呼び出して行います。
+ * </p>
+ */
+class ConcurrencyControllerTest {
+
+	/** 調整の間隔（ミリ秒）。 */
+	private static final long INTERVAL_MILLIS = 100;
+	/** 調整の間隔（ナノ秒）。 */
+	private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+
+	@Nested
+	@DisplayName("Stage.setLimitメソッドに対するテスト")
+	/**
+	 * {@link ConcurrencyController.Stage#setLimit(int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class SetLimit {
+
+		/**
+		 * 並行数を増やすと同時に取得できる実行権が増え、減らすと返却された実行権が次の処理に渡されないことを確認するテストです。
+		 * @throws InterruptedException 待機中に割り込まれた場合。
+		 */
+		@Test
+		@DisplayName("並行数の増減が実行権の数に反映される")
+		void test01() throws InterruptedException {
+			ConcurrencyController.Stage stage = new ConcurrencyController.Stage("test", 1, 4, 1);
+			stage.acquire();
+			assertEquals(1, stage.setLimit(3));
+			stage.acquire();
+			stage.acquire();
+
+			// 3つの実行権を使用中に並行数を1にすると、2つ返却されるまで次の処理は開始できない
+			stage.setLimit(1);
+			Thread waitingThread = new Thread(() -> {
+				try {
+					stage.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			waitingThread.start();
+			stage.release();
+			stage.release();
+			while (stage.getWaitingCount() == 0) {
+				Thread.sleep(10);
+			}
+			assertTrue(waitingThread.isAlive());
+
+			stage.release();
+			waitingThread.join();
+			assertEquals(0, stage.getWaitingCount());
+		}
+
+		/**
+		 * 下限と上限を超える並行数が、範囲内に切り詰められることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("範囲外の並行数は切り詰められる")
+		void test02() {
+			ConcurrencyController.Stage stage = new ConcurrencyController.Stage("test", 2, 5, 3);
+
+			assertEquals(3, stage.setLimit(100));
+			assertEquals(5, stage.getLimit());
+			assertEquals(5, stage.setLimit(0));
+			assertEquals(2, stage.getLimit());
+		}
+	}
+
+	@Nested
+	@DisplayName("adjustメソッドに対するテスト")
+	/**
+	 * {@link ConcurrencyController#adjust(double)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Adjust {
+
+		/**
+		 * 変換の段階が展開の完了を待っていて、展開がI/O待ちの多い処理の場合に、
+		 * CPU使用率が高くても展開の並行数が増えることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("変換が展開を待っていて展開がI/O律速なら展開の並行数を増やす")
+		void test01() {
+			ConcurrencyController.Stage readStage = new ConcurrencyController.Stage("read", 1, 8, 2);
+			ConcurrencyController.Stage convertStage = new ConcurrencyController.Stage("convert", 1, 8, 4);
+			ConcurrencyController.Stage writeStage = new ConcurrencyController.Stage("write", 1, 1, 1);
+			ConcurrencyController controller =
+				new ConcurrencyController(readStage, convertStage, writeStage, INTERVAL_MILLIS);
+
+			readStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 10);
+			convertStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 2);
+			convertStage.recordStall(INTERVAL_NANOS / 2);
+			controller.adjust(0.9);
+
+			assertEquals(3, readStage.getLimit());
+			assertEquals(4, convertStage.getLimit());
+		}
+
+		/**
+		 * CPUが飽和していて変換がCPU律速の場合に、変換の並行数がプロセッサ数まで減ることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("CPUが飽和していれば変換の並行数をプロセッサ数まで減らす")
+		void test02() {
+			int processorCount = Runtime.getRuntime().availableProcessors();
+			ConcurrencyController.Stage readStage = new ConcurrencyController.Stage("read", 1, 8, 2);
+			ConcurrencyController.Stage convertStage =
+				new ConcurrencyController.Stage("convert", 1, processorCount + 2, processorCount + 1);
+			ConcurrencyController.Stage writeStage = new ConcurrencyController.Stage("write", 1, 1, 1);
+			ConcurrencyController controller =
+				new ConcurrencyController(readStage, convertStage, writeStage, INTERVAL_MILLIS);
+
+			convertStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS);
+			controller.adjust(1.0);
+			assertEquals(processorCount, convertStage.getLimit());
+
+			// プロセッサ数より少なくはしない
+			convertStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS);
+			controller.adjust(1.0);
+			assertEquals(processorCount, convertStage.getLimit());
+		}
+
+		/**
+		 * 書き込みが滞留している場合は、変換が展開を待っていても、開始を待っているページがあっても並行数を増やさないことを確認するテストです。
+		 * @throws InterruptedException 待機中に割り込まれた場合。
+		 */
+		@Test
+		@DisplayName("書き込みが滞留していれば並行数を増やさない")
+		void test03() throws InterruptedException {
+			ConcurrencyController.Stage readStage = new ConcurrencyController.Stage("read", 1, 8, 2);
+			ConcurrencyController.Stage convertStage = new ConcurrencyController.Stage("convert", 1, 8, 1);
+			ConcurrencyController.Stage writeStage = new ConcurrencyController.Stage("write", 1, 1, 1);
+			ConcurrencyController controller =
+				new ConcurrencyController(readStage, convertStage, writeStage, INTERVAL_MILLIS);
+
+			// 変換の実行権を使い切り、次のページが開始を待っている状態にする
+			convertStage.acquire();
+			Thread waitingThread = new Thread(() -> {
+				try {
+					convertStage.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			waitingThread.start();
+			try {
+				while (convertStage.getWaitingCount() == 0) {
+					Thread.sleep(10);
+				}
+
+				readStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 10);
+				convertStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 2);
+				convertStage.recordStall(INTERVAL_NANOS / 2);
+				writeStage.recordStall(INTERVAL_NANOS);
+				controller.adjust(0.1);
+				assertEquals(2, readStage.getLimit());
+				assertEquals(1, convertStage.getLimit());
+
+				// 書き込みの滞留が解消されれば増やす
+				readStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 10);
+				convertStage.recordWork(INTERVAL_NANOS, INTERVAL_NANOS / 2);
+				convertStage.recordStall(INTERVAL_NANOS / 2);
+				controller.adjust(0.1);
+				assertEquals(3, readStage.getLimit());
+				assertEquals(2, convertStage.getLimit());
+			} finally {
+				convertStage.release();
+				waitingThread.join();
+			}
+		}
+	}
+}
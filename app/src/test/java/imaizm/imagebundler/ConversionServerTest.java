@@ -0,0 +1,174 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ConversionServer} クラスのテストクラスです。
+ * <p>
+ * HTTPで投入したジョブが実行され、状態と出力ZIPファイルのパスを取得できることを検証します。
+ * </p>
+ */
+class ConversionServerTest {
+
+	/** テスト用の入力画像（480x320のJPEG画像）。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ConversionServerTest");
+
+	@Nested
+	@DisplayName("ジョブの投入に対するテスト")
+	/**
+	 * {@code POST /jobs} と {@code GET /jobs/<ID>} のテストケースをグループ化するネストクラスです。
+	 */
+	class SubmitJob {
+
+		/**
+		 * 投入したジョブが正常終了し、指定した出力プロファイルのZIPファイルが作成されることを確認するテストです。
+		 * @throws Exception HTTPの通信中またはファイルの操作中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("投入したジョブが実行され、出力ZIPファイルのパスを取得できる")
+		void test01() throws Exception {
+			Path sourceDirectoryPath = WORK_DIRECTORY_PATH.resolve("book");
+			try (ConversionServer conversionServer =
+					new ConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, 1)) {
+				Files.createDirectories(sourceDirectoryPath);
+				Files.copy(TEST_IMAGE_PATH, sourceDirectoryPath.resolve("01.jpg"));
+
+				HttpURLConnection connection = open(conversionServer, "/jobs");
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				try (OutputStream outputStream = connection.getOutputStream()) {
+					outputStream.write((
+						"source=" + URLEncoder.encode(sourceDirectoryPath.toString(), "UTF-8") +
+						"&outputProfiles=" + URLEncoder.encode("thumb=150x200", "UTF-8")).getBytes(StandardCharsets.UTF_8));
+				}
+				assertEquals(202, connection.getResponseCode());
+				String location = connection.getHeaderField("Location");
+				assertEquals("/jobs/1", location);
+
+				String status = null;
+				for (int i = 0; i < 600; i++) {
+					status = get(conversionServer, location, 200);
+					if (!status.contains("\"QUEUED\"") && !status.contains("\"RUNNING\"")) {
+						break;
+					}
+					Thread.sleep(50);
+				}
+				assertTrue(status.contains("\"state\":\"SUCCEEDED\""), status);
+				assertTrue(status.contains("\"pageCount\":1"), status);
+				assertTrue(status.contains("book_thumb.zip"), status);
+				assertTrue(Files.exists(WORK_DIRECTORY_PATH.resolve("book_thumb.zip")));
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+
+		/**
+		 * 変換対象の指定がない場合と設定に誤りがある場合に 400、存在しないジョブの場合に 404 を返すことを確認するテストです。
+		 * @throws Exception HTTPの通信中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("不正なリクエストにはエラーを返す")
+		void test02() throws Exception {
+			try (ConversionServer conversionServer =
+					new ConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, 1)) {
+				HttpURLConnection connection = open(conversionServer, "/jobs");
+				connection.setRequestMethod("POST");
+				assertEquals(400, connection.getResponseCode());
+
+				connection = open(conversionServer,
+					"/jobs?source=" + URLEncoder.encode(TEST_IMAGE_PATH.getParent().toString(), "UTF-8") + "&pageSizeBudget=abc");
+				connection.setRequestMethod("POST");
+				assertEquals(400, connection.getResponseCode());
+
+				get(conversionServer, "/jobs/999", 404);
+			}
+		}
+
+		/**
+		 * パラメータのURLエンコードが不正な場合に 400、本文が上限を超える場合に 413 を返すことを確認するテストです。
+		 * @throws Exception HTTPの通信中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("不正なエンコードと大きすぎる本文にはエラーを返す")
+		void test03() throws Exception {
+			try (ConversionServer conversionServer =
+					new ConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, 1)) {
+				HttpURLConnection connection = open(conversionServer, "/jobs?source=%zz");
+				connection.setRequestMethod("POST");
+				assertEquals(400, connection.getResponseCode());
+
+				byte[] body = new byte[64 * 1024 + 1];
+				Arrays.fill(body, (byte) 'a');
+				connection = open(conversionServer, "/jobs");
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.length);
+				try (OutputStream outputStream = connection.getOutputStream()) {
+					outputStream.write(body);
+				}
+				assertEquals(413, connection.getResponseCode());
+			}
+		}
+	}
+
+	/**
+	 * サーバーへの接続を開きます。
+	 *
+	 * @param conversionServer 接続先のサーバー。
+	 * @param path リクエストのパス。
+	 * @return 接続。
+	 * @throws IOException 接続中にエラーが発生した場合。
+	 */
+	private static HttpURLConnection open(ConversionServer conversionServer, String path) throws IOException {
+		InetSocketAddress address = conversionServer.getAddress();
+		URL url = new URL("http", address.getHostString(), address.getPort(), path);
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	/**
+	 * GETリクエストを送信し、ステータスコードを確認して応答の本文を返します。
+	 *
+	 * @param conversionServer 接続先のサーバー。
+	 * @param path リクエストのパス。
+	 * @param expectedStatusCode 期待するステータスコード。
+	 * @return 応答の本文。
+	 * @throws IOException 通信中にエラーが発生した場合。
+	 */
+	private static String get(ConversionServer conversionServer, String path, int expectedStatusCode) throws IOException {
+		HttpURLConnection connection = open(conversionServer, path);
+		assertEquals(expectedStatusCode, connection.getResponseCode());
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (InputStream inputStream =
+				(expectedStatusCode < 400) ? connection.getInputStream() : connection.getErrorStream()) {
+			byte[] buffer = new byte[8192];
+			int length;
+			while ((length = inputStream.read(buffer)) > 0) {
+				outputStream.write(buffer, 0, length);
+			}
+		}
+		return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,465 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ImageBundler} クラスのテストクラスです。
+ * <p>
+ * 1つの {@link ImageBundler} で、設定の異なる複数の変換ジョブを同時に実行できることを検証します。
+ * </p>
+ */
+class ImageBundlerTest {
+
+	/** テスト用の入力画像（480x320のJPEG画像）。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageBundlerTest");
+
+	@Nested
+	@DisplayName("bundleメソッドに対するテスト")
+	/**
+	 * {@link ImageBundler#bundle(Path, BundleOptions, ImageBundler.ProgressListener)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Bundle {
+
+		/**
+		 * 出力プロファイルの異なる2つのジョブを同時に実行し、それぞれの設定で変換されたZIPファイルが作成されることを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("設定の異なるジョブを同時に実行できる")
+		void test01() throws Exception {
+			Path splitDirectoryPath = WORK_DIRECTORY_PATH.resolve("split");
+			Path plainDirectoryPath = WORK_DIRECTORY_PATH.resolve("plain");
+			try {
+				Files.createDirectories(splitDirectoryPath);
+				Files.createDirectories(plainDirectoryPath);
+				Files.copy(TEST_IMAGE_PATH, splitDirectoryPath.resolve("01.jpg"));
+				Files.copy(TEST_IMAGE_PATH, plainDirectoryPath.resolve("01.jpg"));
+
+				BundleOptions splitOptions = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("reduced=240x320"))
+					.build();
+				BundleOptions plainOptions = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("thumb=160x120"))
+					.losslessSplit(false)
+					.build();
+
+				List<Path> splitOutputList;
+				List<Path> plainOutputList;
+				List<int[]> progressList = Collections.synchronizedList(new ArrayList<int[]>());
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					CompletableFuture<List<Path>> splitFuture = CompletableFuture.supplyAsync(() -> {
+						try {
+							return imageBundler.bundle(splitDirectoryPath, splitOptions,
+								(submittedPageCount, writtenPageCount, pageCount) ->
+									progressList.add(new int[] { submittedPageCount, writtenPageCount, pageCount }));
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					});
+					plainOutputList = imageBundler.bundle(plainDirectoryPath, plainOptions);
+					splitOutputList = splitFuture.get();
+				}
+
+				assertEquals(1, splitOutputList.size());
+				assertEquals("split_reduced.zip", splitOutputList.get(0).getFileName().toString());
+				List<BufferedImage> splitImageList = readImages(splitOutputList.get(0));
+				assertEquals(2, splitImageList.size());
+				for (BufferedImage image : splitImageList) {
+					assertTrue(image.getWidth() <= 240 && image.getHeight() <= 320);
+				}
+
+				assertEquals(1, plainOutputList.size());
+				assertEquals("plain_thumb.zip", plainOutputList.get(0).getFileName().toString());
+				List<BufferedImage> plainImageList = readImages(plainOutputList.get(0));
+				assertEquals(1, plainImageList.size());
+				assertEquals(160, plainImageList.get(0).getWidth());
+
+				assertTrue(Files.exists(WORK_DIRECTORY_PATH.resolve("split.zip")));
+				int[] lastProgress = progressList.get(progressList.size() - 1);
+				assertArrayEquals(new int[] { 1, 1, 1 }, lastProgress);
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+
+		/**
+		 * ジャーナルに記録済みのページは変換せずに記録されたエントリが格納され、
+		 * 完了した入力は再実行時に変換されないことを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ジャーナルから中断した変換を再開できる")
+		void test02() throws Exception {
+			Path inputDirectoryPath = WORK_DIRECTORY_PATH.resolve("book");
+			try {
+				Files.createDirectories(inputDirectoryPath);
+				Files.copy(TEST_IMAGE_PATH, inputDirectoryPath.resolve("01.jpg"));
+				Files.copy(TEST_IMAGE_PATH, inputDirectoryPath.resolve("02.jpg"));
+
+				BundleOptions options = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("thumb=160x120"))
+					.losslessSplit(false)
+					.journalDirectory(WORK_DIRECTORY_PATH.resolve("journal"))
+					.build();
+
+				// 1ページ目のエンコードが完了した時点で中断された状態にする
+				try (PageJournal pageJournal = PageJournal.open(options.getJournalDirectory(), inputDirectoryPath, options)) {
+					pageJournal.record(0, Collections.singletonList(Collections.singletonList(
+						new ArchiveWriter.Entry("journaled.jpg", 0, Files.readAllBytes(TEST_IMAGE_PATH)))));
+				}
+
+				List<Path> outputList;
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					outputList = imageBundler.bundle(inputDirectoryPath, options);
+				}
+				List<String> entryNameList = new ArrayList<String>();
+				try (ZipFile zipFile = new ZipFile(outputList.get(0).toFile(), "MS932")) {
+					for (ZipArchiveEntry zipEntry : Collections.list(zipFile.getEntries())) {
+						entryNameList.add(zipEntry.getName());
+					}
+				}
+				assertEquals(2, entryNameList.size());
+				assertEquals("journaled.jpg", entryNameList.get(0));
+				List<BufferedImage> imageList = readImages(outputList.get(0));
+				assertEquals(480, imageList.get(0).getWidth());
+				assertEquals(160, imageList.get(1).getWidth());
+
+				// 完了した入力は再実行しても出力ZIPファイルを作り直さない
+				Files.write(outputList.get(0), new byte[] { 1 });
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					assertEquals(outputList, imageBundler.bundle(inputDirectoryPath, options));
+				}
+				assertEquals(1, Files.size(outputList.get(0)));
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+
+		/**
+		 * gzip圧縮したtarファイルを展開せずに変換し、複合拡張子を除いた入力名でZIPファイルが作成されることを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("tar.gzファイルを変換できる")
+		void test03() throws Exception {
+			Path inputFilePath = WORK_DIRECTORY_PATH.resolve("book.tar.gz");
+			try {
+				Files.createDirectories(WORK_DIRECTORY_PATH);
+				byte[] imageData = Files.readAllBytes(TEST_IMAGE_PATH);
+				try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
+						new GzipCompressorOutputStream(Files.newOutputStream(inputFilePath)))) {
+					for (String name : Arrays.asList("book/01.jpg", "book/02.jpg")) {
+						TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+						tarEntry.setSize(imageData.length);
+						tarOutputStream.putArchiveEntry(tarEntry);
+						tarOutputStream.write(imageData);
+						tarOutputStream.closeArchiveEntry();
+					}
+				}
+
+				BundleOptions options = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("thumb=160x120"))
+					.losslessSplit(false)
+					.build();
+				List<int[]> progressList = new ArrayList<int[]>();
+				List<Path> outputList;
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					outputList = imageBundler.bundle(inputFilePath, options,
+						(submittedPageCount, writtenPageCount, pageCount) ->
+							progressList.add(new int[] { submittedPageCount, writtenPageCount, pageCount }));
+				}
+
+				assertEquals(1, outputList.size());
+				assertEquals("book_thumb.zip", outputList.get(0).getFileName().toString());
+				List<BufferedImage> imageList = readImages(outputList.get(0));
+				assertEquals(2, imageList.size());
+				assertEquals(160, imageList.get(1).getWidth());
+				assertArrayEquals(new int[] { 2, 2, 2 }, progressList.get(progressList.size() - 1));
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+
+		/**
+		 * 出力ZIPファイルを作成できずに変換が失敗した場合も、入力のZIPファイルを展開した作業ディレクトリが削除されることを確認するテストです。
+		 * @throws Exception 入力の作成中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("変換に失敗しても作業ディレクトリが削除される")
+		void test04() throws Exception {
+			Path inputFilePath = WORK_DIRECTORY_PATH.resolve("book.zip");
+			Path tempDirectoryPath = WORK_DIRECTORY_PATH.resolve("tmp").toAbsolutePath();
+			String tempDirectory = System.getProperty("java.io.tmpdir");
+			try {
+				Files.createDirectories(tempDirectoryPath);
+				try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(inputFilePath.toFile())) {
+					zipOutputStream.putArchiveEntry(new ZipArchiveEntry("book/01.jpg"));
+					zipOutputStream.write(Files.readAllBytes(TEST_IMAGE_PATH));
+					zipOutputStream.closeArchiveEntry();
+				}
+				// 出力ZIPファイルと同じ名前のディレクトリを置いて、出力ZIPファイルを作成できない状態にする
+				Files.createDirectories(WORK_DIRECTORY_PATH.resolve("book_thumb.zip"));
+
+				BundleOptions options = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("thumb=160x120"))
+					.build();
+				System.setProperty("java.io.tmpdir", tempDirectoryPath.toString());
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					assertThrows(IOException.class, () -> imageBundler.bundle(inputFilePath, options));
+				} finally {
+					System.setProperty("java.io.tmpdir", tempDirectory);
+				}
+
+				try (Stream<Path> tempPaths = Files.list(tempDirectoryPath)) {
+					assertEquals(0, tempPaths.count());
+				}
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("壊れたJPEGファイルに対するテスト")
+	/**
+	 * エントロピー符号化データが壊れたJPEGファイルの変換のテストケースをグループ化するネストクラスです。
+	 */
+	class DamagedPage {
+
+		/**
+		 * 縮小しながらのデコードに失敗するJPEGファイルが、標準のデコーダで読み込まれて変換されることを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("縮小デコードに失敗したページが変換される")
+		void test01() throws Exception {
+			Path inputDirectoryPath = WORK_DIRECTORY_PATH.resolve("damaged");
+			try {
+				Files.createDirectories(inputDirectoryPath);
+				Files.write(inputDirectoryPath.resolve("01.jpg"), readDamagedImage());
+
+				BundleOptions options = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("thumb=160x120"))
+					.losslessSplit(false)
+					.build();
+				List<Path> outputList;
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					outputList = imageBundler.bundle(inputDirectoryPath, options);
+				}
+
+				List<BufferedImage> imageList = readImages(outputList.get(0));
+				assertEquals(1, imageList.size());
+				assertEquals(160, imageList.get(0).getWidth());
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+
+		/**
+		 * 係数を読み込めず可逆に分割できないJPEGファイルが、画素をデコードして分割されることを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("可逆な分割に失敗したページがデコードして分割される")
+		void test02() throws Exception {
+			Path inputDirectoryPath = WORK_DIRECTORY_PATH.resolve("damaged");
+			try {
+				Files.createDirectories(inputDirectoryPath);
+				Files.write(inputDirectoryPath.resolve("01.jpg"), readDamagedImage());
+
+				BundleOptions options = BundleOptions.builder()
+					.outputProfile(OutputProfile.parse("reduced=240x320"))
+					.build();
+				List<Path> outputList;
+				try (ImageBundler imageBundler = new ImageBundler(2)) {
+					outputList = imageBundler.bundle(inputDirectoryPath, options);
+				}
+
+				List<BufferedImage> imageList = readImages(outputList.get(0));
+				assertEquals(2, imageList.size());
+				for (BufferedImage image : imageList) {
+					assertTrue(image.getWidth() <= 240 && image.getHeight() <= 320);
+				}
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("ストリームを指定したbundleメソッドに対するテスト")
+	/**
+	 * {@link ImageBundler#bundle(java.io.InputStream, java.io.OutputStream, BundleOptions)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class BundleStream {
+
+		/**
+		 * ZIPファイルとtarファイルのストリームを変換し、画像のエントリだけがエントリ順に変換されて
+		 * 出力ストリームへ書き込まれることを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ZIPファイルとtarファイルのストリームを変換できる")
+		void test01() throws Exception {
+			byte[] imageData = Files.readAllBytes(TEST_IMAGE_PATH);
+			ByteArrayOutputStream zipData = new ByteArrayOutputStream();
+			try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(zipData)) {
+				for (String name : Arrays.asList("book/02.jpg", "book/readme.txt", "book/01.jpg")) {
+					zipOutputStream.putArchiveEntry(new ZipArchiveEntry(name));
+					zipOutputStream.write(name.endsWith(".jpg") ? imageData : new byte[] { 0 });
+					zipOutputStream.closeArchiveEntry();
+				}
+			}
+			ByteArrayOutputStream tarData = new ByteArrayOutputStream();
+			try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(tarData)) {
+				TarArchiveEntry tarEntry = new TarArchiveEntry("book/03.jpg");
+				tarEntry.setSize(imageData.length);
+				tarOutputStream.putArchiveEntry(tarEntry);
+				tarOutputStream.write(imageData);
+				tarOutputStream.closeArchiveEntry();
+			}
+
+			BundleOptions options = BundleOptions.builder()
+				.outputProfile(OutputProfile.parse("thumb=160x120"))
+				.losslessSplit(false)
+				.build();
+			ByteArrayOutputStream zipOutput = new ByteArrayOutputStream();
+			ByteArrayOutputStream tarOutput = new ByteArrayOutputStream();
+			try (ImageBundler imageBundler = new ImageBundler(2)) {
+				assertEquals(2, imageBundler.bundle(new ByteArrayInputStream(zipData.toByteArray()), zipOutput, options));
+				assertEquals(1, imageBundler.bundle(new ByteArrayInputStream(tarData.toByteArray()), tarOutput, options));
+			}
+
+			List<String> entryNameList = new ArrayList<String>();
+			try (ZipArchiveInputStream zipInputStream =
+					new ZipArchiveInputStream(new ByteArrayInputStream(zipOutput.toByteArray()), "MS932")) {
+				ZipArchiveEntry zipEntry;
+				while ((zipEntry = zipInputStream.getNextZipEntry()) != null) {
+					entryNameList.add(zipEntry.getName());
+					assertEquals(160, ImageIO.read(zipInputStream).getWidth());
+				}
+			}
+			assertEquals(Arrays.asList("02.jpg", "01.jpg"), entryNameList);
+			try (ZipArchiveInputStream zipInputStream =
+					new ZipArchiveInputStream(new ByteArrayInputStream(tarOutput.toByteArray()), "MS932")) {
+				assertEquals("03.jpg", zipInputStream.getNextZipEntry().getName());
+			}
+		}
+
+		/**
+		 * 別のディレクトリに同じファイル名のエントリがあるtarファイルのストリームを変換し、
+		 * 出力ZIPファイルのエントリ名が重複しないことを確認するテストです。
+		 * @throws Exception 変換中またはZIPファイルの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("別のディレクトリの同じファイル名の画像を重複しない名前で出力できる")
+		void test02() throws Exception {
+			byte[] imageData = Files.readAllBytes(TEST_IMAGE_PATH);
+			ByteArrayOutputStream tarData = new ByteArrayOutputStream();
+			try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(tarData)) {
+				for (String name : Arrays.asList("vol1/001.jpg", "vol2/001.jpg", "vol2/002.jpg")) {
+					TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+					tarEntry.setSize(imageData.length);
+					tarOutputStream.putArchiveEntry(tarEntry);
+					tarOutputStream.write(imageData);
+					tarOutputStream.closeArchiveEntry();
+				}
+			}
+
+			BundleOptions options = BundleOptions.builder()
+				.outputProfile(OutputProfile.parse("thumb=160x120"))
+				.losslessSplit(false)
+				.build();
+			ByteArrayOutputStream zipOutput = new ByteArrayOutputStream();
+			try (ImageBundler imageBundler = new ImageBundler(2)) {
+				assertEquals(3, imageBundler.bundle(new ByteArrayInputStream(tarData.toByteArray()), zipOutput, options));
+			}
+
+			List<String> entryNameList = new ArrayList<String>();
+			try (ZipArchiveInputStream zipInputStream =
+					new ZipArchiveInputStream(new ByteArrayInputStream(zipOutput.toByteArray()), "MS932")) {
+				ZipArchiveEntry zipEntry;
+				while ((zipEntry = zipInputStream.getNextZipEntry()) != null) {
+					entryNameList.add(zipEntry.getName());
+				}
+			}
+			assertEquals(Arrays.asList("001.jpg", "vol2_001.jpg", "002.jpg"), entryNameList);
+		}
+	}
+
+	/**
+	 * テスト用の入力画像の、エントロピー符号化データの途中に不正なハフマン符号（連続する1のビット）を書き込んだJPEGデータを作成します。
+	 * <p>
+	 * {@link JpegDecoder} はデコードに失敗し、標準のデコーダは警告を出してデコードできるデータです。
+	 * </p>
+	 *
+	 * @return 壊れたJPEGデータ。
+	 * @throws IOException 入力画像の読み込み中にエラーが発生した場合。
+	 */
+	private static byte[] readDamagedImage() throws IOException {
+		byte[] data = Files.readAllBytes(TEST_IMAGE_PATH);
+		int startOfScan = 0;
+		for (int i = 0; i < data.length - 1; i++) {
+			if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == 0xDA) {
+				startOfScan = i;
+			}
+		}
+		int position = startOfScan + (data.length - startOfScan) / 2;
+		for (int i = 0; i < 8; i += 2) {
+			data[position + i] = (byte) 0xFF;
+			data[position + i + 1] = 0;
+		}
+		return data;
+	}
+
+	/**
+	 * ZIPファイルに格納された画像をエントリ順に読み込みます。
+	 *
+	 * @param zipFilePath ZIPファイルのパス。
+	 * @return 読み込んだ画像のリスト。
+	 * @throws IOException ZIPファイルの読み込み中にエラーが発生した場合。
+	 */
+	private static List<BufferedImage> readImages(Path zipFilePath) throws IOException {
+		List<BufferedImage> imageList = new ArrayList<BufferedImage>();
+		try (ZipFile zipFile = new ZipFile(zipFilePath.toFile(), "MS932")) {
+			for (ZipArchiveEntry zipEntry : Collections.list(zipFile.getEntries())) {
+				try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+					imageList.add(ImageIO.read(inputStream));
+				}
+			}
+		}
+		return imageList;
+	}
+}
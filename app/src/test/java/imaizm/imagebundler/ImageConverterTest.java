@@ -266,4 +266,101 @@ class ImageConverterTest {
 			ImageConverter.writeJpegFile(outputImageList.get(1), outputDirPath.resolve("01_02.jpg").toAbsolutePath().toString(), 30);
 		}
 	}
+
+	@Nested
+	@DisplayName("isGrayscaleメソッドに対するテスト")
+	/**
+	 * {@link ImageConverter#isGrayscale(BufferedImage)} メソッド、およびグレースケール画像の変換処理のテストケースをグループ化するネストクラスです。
+	 */
+	class IsGrayscale {
+
+		/**
+		 * RGBの画像であっても無彩色であればグレースケールと判定され、
+		 * グレースケール判定の許容値を指定した変換の結果が1チャンネルの画像になることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("無彩色のRGB画像がグレースケールと判定され、1チャンネルで変換される")
+		void test01() {
+			BufferedImage inputImage = createGradientImage(480, 320, 0);
+			assertTrue(ImageConverter.isGrayscale(inputImage));
+
+			List<BufferedImage> outputImageList = ImageConverter.convert(inputImage, 240, 320,
+				ImageConverter.BindingSide.RIGHT,
+				ImageConverter.CenterClipOption.OFF,
+				ImageConverter.ContraAspectMode.SPLIT,
+				ImageConverter.DEFAULT_CENTER_CLIP_WIDTH,
+				ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+				ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE);
+			assertAll("outputImageList-type-width-height",
+				() -> assertEquals(2, outputImageList.size()),
+				() -> assertEquals(BufferedImage.TYPE_BYTE_GRAY, outputImageList.get(0).getType()),
+				() -> assertEquals(240, outputImageList.get(0).getWidth()),
+				() -> assertEquals(320, outputImageList.get(0).getHeight()));
+		}
+
+		/**
+		 * 有彩色の画素を含む画像がグレースケールと判定されず、
+		 * 色差成分に量子化誤差を含むJPEG画像（無彩色）はグレースケールと判定されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("有彩色の画像はグレースケールと判定されない")
+		void test02() throws IOException {
+			assertFalse(ImageConverter.isGrayscale(createGradientImage(480, 320, 64)));
+			BufferedImage inputImage = ImageIO.read(
+				Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg").toFile());
+			assertTrue(ImageConverter.isGrayscale(inputImage));
+		}
+
+		/**
+		 * グレースケール判定の許容値を指定しない変換では無彩色の画像もRGBのまま変換され、
+		 * 許容値を指定した1チャンネルでの縮小結果が、RGBのまま縮小した結果とほぼ一致することを確認するテストです。
+		 */
+		@Test
+		@DisplayName("1チャンネルでの縮小結果がRGBでの縮小結果とほぼ一致する")
+		void test03() {
+			BufferedImage inputImage = createGradientImage(500, 700, 0);
+			BufferedImage rgbImage = ImageConverter.convert(inputImage, 150, 210).get(0);
+			BufferedImage grayImage = ImageConverter.convert(
+				inputImage, 150, 210,
+				ImageConverter.BindingSide.RIGHT,
+				ImageConverter.CenterClipOption.ON,
+				ImageConverter.ContraAspectMode.SPLIT,
+				ImageConverter.DEFAULT_CENTER_CLIP_WIDTH,
+				ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+				ImageConverter.DEFAULT_GRAYSCALE_TOLERANCE).get(0);
+
+			assertNotEquals(BufferedImage.TYPE_BYTE_GRAY, rgbImage.getType());
+			assertEquals(BufferedImage.TYPE_BYTE_GRAY, grayImage.getType());
+
+			assertEquals(rgbImage.getWidth(), grayImage.getWidth());
+			assertEquals(rgbImage.getHeight(), grayImage.getHeight());
+			for (int y = 0; y < grayImage.getHeight(); y++) {
+				for (int x = 0; x < grayImage.getWidth(); x++) {
+					int expected = rgbImage.getRGB(x, y) & 0xFF;
+					int actual = grayImage.getRaster().getSample(x, y, 0);
+					assertTrue(Math.abs(expected - actual) <= 2, "(" + x + "," + y + ") " + expected + " != " + actual);
+				}
+			}
+		}
+
+		/**
+		 * 明るさが斜めに変化するテスト用の画像を生成します。
+		 *
+		 * @param width 画像の幅（ピクセル単位）。
+		 * @param height 画像の高さ（ピクセル単位）。
+		 * @param chroma 青成分に加える差分。0の場合は無彩色の画像になります。
+		 * @return テスト用の画像。
+		 */
+		private BufferedImage createGradientImage(int width, int height, int chroma) {
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int v = ((x * 7 + y * 3) / 5) % 192;
+					image.setRGB(x, y, (v << 16) | (v << 8) | (v + chroma));
+				}
+			}
+			return image;
+		}
+	}
 }
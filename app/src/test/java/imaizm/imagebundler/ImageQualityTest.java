@@ -0,0 +1,109 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ImageQuality} クラスのテストクラスです。
+ * <p>
+ * 一致する画像、誤差が既知の画像、および変換結果に対して、PSNRとSSIMが期待どおりの値になることを検証します。
+ * </p>
+ */
+class ImageQualityTest {
+
+	/** テスト用の入力画像（480x320のJPEG画像）。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	@Nested
+	@DisplayName("psnrメソッドに対するテスト")
+	/**
+	 * {@link ImageQuality#psnr(BufferedImage, BufferedImage)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Psnr {
+
+		/**
+		 * 一致する画像のPSNRが無限大になり、すべての成分が10異なる画像のPSNRが
+		 * 10 * log10(255^2 / 100) になることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("一致する画像は無限大、一様な誤差は理論値になる")
+		void test01() {
+			BufferedImage image = createFilledImage(new Color(100, 100, 100));
+			BufferedImage brighterImage = createFilledImage(new Color(110, 110, 110));
+
+			assertEquals(Double.POSITIVE_INFINITY, ImageQuality.psnr(image, image));
+			assertEquals(10 * Math.log10(255.0 * 255.0 / 100.0), ImageQuality.psnr(image, brighterImage), 1e-9);
+		}
+
+		/**
+		 * 大きさが異なる画像を比較した場合に {@link IllegalArgumentException} がスローされることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("大きさが異なる画像は例外になる")
+		void test02() {
+			assertThrows(IllegalArgumentException.class, () -> ImageQuality.psnr(
+				new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB),
+				new BufferedImage(10, 11, BufferedImage.TYPE_INT_RGB)));
+		}
+	}
+
+	@Nested
+	@DisplayName("ssimメソッドに対するテスト")
+	/**
+	 * {@link ImageQuality#ssim(BufferedImage, BufferedImage)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Ssim {
+
+		/**
+		 * 一致する画像のSSIMが1になり、変換結果を低い品質でJPEGエンコードした画像のSSIMが1未満になることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("一致する画像は1、劣化した画像は1未満になる")
+		void test01() throws IOException {
+			BufferedImage inputImage = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			List<BufferedImage> outputImageList = ImageConverter.convert(inputImage, 240, 320);
+			BufferedImage referenceImage = outputImageList.get(0);
+			BufferedImage degradedImage;
+			try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+				degradedImage = ImageIO.read(new ByteArrayInputStream(jpegEncoder.encode(referenceImage, 10)));
+			}
+
+			assertEquals(1.0, ImageQuality.ssim(referenceImage, referenceImage), 1e-9);
+			double ssim = ImageQuality.ssim(referenceImage, degradedImage);
+			assertTrue(ssim < 0.99 && ssim > 0.5, Double.toString(ssim));
+			assertTrue(ImageQuality.psnr(referenceImage, degradedImage) < 40);
+		}
+	}
+
+	/**
+	 * 指定された色で塗りつぶした画像を作成します。
+	 *
+	 * @param color 塗りつぶす色。
+	 * @return 作成した64x48の画像。
+	 */
+	private static BufferedImage createFilledImage(Color color) {
+		BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setColor(color);
+			graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+}
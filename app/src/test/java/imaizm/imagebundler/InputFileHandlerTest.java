@@ -66,10 +66,8 @@ public class InputFileHandlerTest {
 		/**
 		 * 入力対象がZIPファイルの場合の {@link InputFileHandler} のコンストラクタおよび {@link InputFileHandler#close()} メソッドのテストです。
 		 * <p>
-		 * 指定されたZIPファイルが正しく解凍され、サポート対象の画像ファイル（.jpg, .jpeg）が
+		 * 指定されたZIPファイルが正しく解凍され、サポート対象の画像ファイル（.jpg, .jpeg, .png）が
 		 * 処理対象としてリストアップされることを確認します。
-		 * ZIPファイル内にPNGファイルも含まれていますが、現在のテストコードではコメントアウトされており、
-		 * PNGが処理対象に含まれない（または含まれるべきだがテストされていない）状態であることを示唆しています。
 		 * サポート対象外のファイル（.gif）がリストアップされていないことも確認します。
 		 * さらに、{@link InputFileHandler#close()} メソッド呼び出し後に、解凍に使用された一時ディレクトリが
 		 * 適切に削除されることを検証します。
@@ -89,7 +87,7 @@ public class InputFileHandlerTest {
 			assertAll("inputFiles",
 				() -> assertTrue(inputFileNameList.contains("480x320.jpg")),
 				() -> assertTrue(inputFileNameList.contains("480x320.jpeg")),
-			//	() -> assertTrue(inputFileNameList.contains("480x320.png")), // ZipFileHandlerは現状JPG/JPEGのみ対応
+				() -> assertTrue(inputFileNameList.contains("480x320.png")),
 				() -> assertFalse(inputFileNameList.contains("480x320.gif")));
 			Path extractDirectoryPath = inputFileHandler.getExtractDirectoryPath();
 			List<String> beforeDeleteList =
@@ -99,7 +97,7 @@ public class InputFileHandlerTest {
 			assertAll("extractedFiles",
 					() -> assertTrue(beforeDeleteList.contains("480x320.jpg")),
 					() -> assertTrue(beforeDeleteList.contains("480x320.jpeg")),
-				//	() -> assertTrue(beforeDeleteList.contains("480x320.png")), // ZipFileHandlerは現状JPG/JPEGのみ対応
+					() -> assertTrue(beforeDeleteList.contains("480x320.png")),
 					() -> assertFalse(beforeDeleteList.contains("480x320.gif")));
 			
 			inputFileHandler.close();
@@ -0,0 +1,159 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+import imaizm.imagebundler.ImageConverter.BindingSide;
+import imaizm.imagebundler.ImageConverter.CenterClipOption;
+
+/**
+ * {@link JpegCropper} クラスのテストクラスです。
+ * <p>
+ * 係数の段階で切り抜いた画像が、元の画像をデコードしてから切り抜いたものと画素単位で一致すること、
+ * および分割するだけで変換後の大きさに収まる場合のみ分割されることを検証します。
+ * </p>
+ */
+class JpegCropperTest {
+
+	/** テスト用画像（480x320）のパス。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	@Nested
+	@DisplayName("cropメソッドに対するテスト")
+	/**
+	 * {@link JpegCropper#crop(byte[], List)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Crop {
+
+		/**
+		 * MCUの境界で切り抜いた各画像が、元の画像のデコード結果の同じ領域と画素単位で一致することを確認するテストです。
+		 * 右端と下端がMCUの境界に揃っていない領域も含めて確認します。
+		 * @throws IOException テストデータの生成中または切り抜き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("切り抜いた画像が元の画像の同じ領域と一致する")
+		void test01() throws IOException {
+			byte[] data = ImageConverter.encodeJpeg(createColorImage(403, 250), 85);
+			BufferedImage fullImage = JpegDecoder.decode(data, 8);
+			List<Rectangle> regionList = Arrays.asList(
+				new Rectangle(0, 0, 208, 250),
+				new Rectangle(208, 0, 195, 250),
+				new Rectangle(96, 32, 101, 77));
+
+			List<byte[]> croppedDataList = JpegCropper.crop(data, regionList);
+			assertEquals(regionList.size(), croppedDataList.size());
+			for (int i = 0; i < regionList.size(); i++) {
+				Rectangle region = regionList.get(i);
+				BufferedImage expected = fullImage.getSubimage(region.x, region.y, region.width, region.height);
+				BufferedImage actual = JpegDecoder.decode(croppedDataList.get(i), 8);
+				assertImageEquals(expected, actual);
+				assertEquals(region.width, ImageIO.read(new ByteArrayInputStream(croppedDataList.get(i))).getWidth());
+			}
+		}
+
+		/**
+		 * 左端がMCUの境界に揃っていない領域、およびプログレッシブ形式の画像に対して null を返すことを確認するテストです。
+		 * @throws IOException テストデータの生成中または切り抜き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("切り抜けない場合はnullを返す")
+		void test02() throws IOException {
+			byte[] data = ImageConverter.encodeJpeg(createColorImage(160, 96), 85);
+			assertNull(JpegCropper.crop(data, Arrays.asList(new Rectangle(8, 0, 64, 96))));
+
+			byte[] progressiveData;
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.SMALL)) {
+				progressiveData = jpegEncoder.encode(createColorImage(160, 96), 85);
+			}
+			assertNull(JpegCropper.crop(progressiveData, Arrays.asList(new Rectangle(0, 0, 64, 96))));
+		}
+	}
+
+	@Nested
+	@DisplayName("splitメソッドに対するテスト")
+	/**
+	 * {@link JpegCropper#split(byte[], int, int, BindingSide, CenterClipOption)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Split {
+
+		/**
+		 * 中央切り抜きを行う見開き画像が、MCUの境界に揃えた位置で右綴じの順に分割されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中または分割中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("MCUの境界に揃えて右綴じの順に分割される")
+		void test01() throws IOException {
+			byte[] data = Files.readAllBytes(TEST_IMAGE_PATH);
+			BufferedImage fullImage = JpegDecoder.decode(data, 8);
+
+			// 中央切り抜きの領域は x=15〜465、分割位置は x=240
+			List<byte[]> croppedDataList = JpegCropper.split(data, 768, 1024, BindingSide.RIGHT, CenterClipOption.ON);
+			assertEquals(2, croppedDataList.size());
+			assertImageEquals(fullImage.getSubimage(240, 0, 225, 320), JpegDecoder.decode(croppedDataList.get(0), 8));
+			assertImageEquals(fullImage.getSubimage(0, 0, 240, 320), JpegDecoder.decode(croppedDataList.get(1), 8));
+		}
+
+		/**
+		 * 分割後の画像が変換後の大きさに収まらない場合、および分割の必要がない場合に null を返すことを確認するテストです。
+		 * @throws IOException テストデータの読み込み中または分割中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("縮小が必要な場合や分割しない場合はnullを返す")
+		void test02() throws IOException {
+			byte[] data = Files.readAllBytes(TEST_IMAGE_PATH);
+			assertNull(JpegCropper.split(data, 150, 200, BindingSide.RIGHT, CenterClipOption.ON));
+			assertNull(JpegCropper.split(data, 1024, 768, BindingSide.RIGHT, CenterClipOption.ON));
+		}
+	}
+
+	/**
+	 * 色のグラデーションを描画したテスト用画像を生成します。
+	 *
+	 * @param width 画像の幅。
+	 * @param height 画像の高さ。
+	 * @return テスト用画像。
+	 */
+	private static BufferedImage createColorImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new GradientPaint(0, 0, Color.GREEN, width, height, Color.MAGENTA));
+		graphics.fillRect(0, 0, width, height);
+		graphics.setColor(Color.BLACK);
+		graphics.drawString("ImageBundler", width / 3, height / 2);
+		graphics.dispose();
+		return image;
+	}
+
+	/**
+	 * 2つの画像の大きさと全画素が一致することを検証します。
+	 *
+	 * @param expected 期待する画像。
+	 * @param actual 検証する画像。
+	 */
+	private static void assertImageEquals(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "(" + x + ", " + y + ")");
+			}
+		}
+	}
+}
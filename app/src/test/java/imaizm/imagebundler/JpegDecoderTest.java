@@ -0,0 +1,209 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link JpegDecoder} クラスのテストクラスです。
+ * <p>
+ * 等倍でのデコード結果が {@link ImageIO} のデコード結果とほぼ一致すること、
+ * および縮小デコードの結果が等倍のデコード結果を縮小したものとほぼ一致することを検証します。
+ * </p>
+ */
+class JpegDecoderTest {
+
+	/** テスト用画像（480x320）のパス。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	@Nested
+	@DisplayName("decodeメソッドに対するテスト")
+	/**
+	 * {@link JpegDecoder#decode(byte[], int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Decode {
+
+		/**
+		 * ベースライン形式のカラー画像（色差成分 4:2:0）を等倍でデコードした結果が、{@link ImageIO} の結果とほぼ一致することを確認するテストです。
+		 * @throws IOException テストデータの生成中またはデコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("等倍のデコード結果がImageIOの結果とほぼ一致する")
+		void test01() throws IOException {
+			byte[] data = ImageConverter.encodeJpeg(createColorImage(203, 157), 90);
+			BufferedImage expected = ImageIO.read(new ByteArrayInputStream(data));
+			BufferedImage actual = JpegDecoder.decode(data, 8);
+
+			assertEquals(BufferedImage.TYPE_3BYTE_BGR, actual.getType());
+			assertEquals(expected.getWidth(), actual.getWidth());
+			assertEquals(expected.getHeight(), actual.getHeight());
+			assertTrue(getMeanAbsoluteError(expected, actual) < 3.0);
+		}
+
+		/**
+		 * 1/2、1/4、1/8 の大きさでのデコード結果が、等倍のデコード結果を平均画素法で縮小したものとほぼ一致することを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはデコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("縮小デコードの結果が等倍の結果の縮小とほぼ一致する")
+		void test02() throws IOException {
+			byte[] data = Files.readAllBytes(TEST_IMAGE_PATH);
+			BufferedImage fullImage = ImageIO.read(new ByteArrayInputStream(data));
+			for (int scale = 1; scale <= 4; scale <<= 1) {
+				BufferedImage actual = JpegDecoder.decode(data, scale);
+				BufferedImage expected = downscale(fullImage, 8 / scale);
+				assertEquals(expected.getWidth(), actual.getWidth());
+				assertEquals(expected.getHeight(), actual.getHeight());
+				assertTrue(getMeanAbsoluteError(expected, actual) < 4.0, "scale : " + scale);
+			}
+		}
+
+		/**
+		 * プログレッシブ形式の画像を等倍および 1/2 の大きさでデコードした結果が、{@link ImageIO} の結果（を縮小したもの）とほぼ一致することを確認するテストです。
+		 * @throws IOException テストデータの生成中またはデコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("プログレッシブ形式の画像をデコードできる")
+		void test03() throws IOException {
+			byte[] data;
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.SMALL)) {
+				data = jpegEncoder.encode(createColorImage(240, 176), 85);
+			}
+			BufferedImage fullImage = ImageIO.read(new ByteArrayInputStream(data));
+
+			assertTrue(getMeanAbsoluteError(fullImage, JpegDecoder.decode(data, 8)) < 3.0);
+			assertTrue(getMeanAbsoluteError(downscale(fullImage, 2), JpegDecoder.decode(data, 4)) < 4.0);
+		}
+
+		/**
+		 * 1成分のJPEGデータが、グレースケール画像としてデコードされることを確認するテストです。
+		 * @throws IOException テストデータの生成中またはデコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("1成分の画像はグレースケール画像としてデコードされる")
+		void test04() throws IOException {
+			BufferedImage grayImage = ImageConverter.toGrayscale(createColorImage(100, 60));
+			byte[] data = ImageConverter.encodeJpeg(grayImage, 90);
+			BufferedImage actual = JpegDecoder.decode(data, 8);
+
+			assertEquals(BufferedImage.TYPE_BYTE_GRAY, actual.getType());
+			assertTrue(getMeanAbsoluteError(ImageIO.read(new ByteArrayInputStream(data)), actual) < 2.0);
+		}
+
+		/**
+		 * JPEG形式でないデータに対して null を返すことを確認するテストです。
+		 * @throws IOException デコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("JPEG形式でないデータはnullを返す")
+		void test05() throws IOException {
+			assertNull(JpegDecoder.decode(new byte[] { (byte) 0x89, 'P', 'N', 'G' }, 8));
+		}
+	}
+
+	@Nested
+	@DisplayName("getScaleメソッドに対するテスト")
+	/**
+	 * {@link JpegDecoder#getScale(double)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class GetScale {
+
+		/**
+		 * 縮小率を下回らない最小のデコード時の大きさが選択されることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("縮小率を下回らない最小の大きさが選択される")
+		void test01() {
+			assertAll("scale",
+				() -> assertEquals(1, JpegDecoder.getScale(0.1)),
+				() -> assertEquals(2, JpegDecoder.getScale(0.25)),
+				() -> assertEquals(4, JpegDecoder.getScale(0.3)),
+				() -> assertEquals(8, JpegDecoder.getScale(0.6)),
+				() -> assertEquals(8, JpegDecoder.getScale(1.5)));
+		}
+	}
+
+	/**
+	 * 色のグラデーションを描画したテスト用画像を生成します。
+	 *
+	 * @param width 画像の幅。
+	 * @param height 画像の高さ。
+	 * @return テスト用画像。
+	 */
+	private static BufferedImage createColorImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+		graphics.fillRect(0, 0, width, height);
+		graphics.setColor(Color.YELLOW);
+		graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+		graphics.dispose();
+		return image;
+	}
+
+	/**
+	 * 画像を平均画素法で整数分の1に縮小します。端数の画素は、範囲内の画素のみで平均します。
+	 *
+	 * @param image 縮小する画像。
+	 * @param factor 縮小の分母。
+	 * @return 縮小後の画像。
+	 */
+	private static BufferedImage downscale(BufferedImage image, int factor) {
+		int width = (image.getWidth() + factor - 1) / factor;
+		int height = (image.getHeight() + factor - 1) / factor;
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] sum = new int[3];
+				int count = 0;
+				for (int sy = y * factor; sy < Math.min((y + 1) * factor, image.getHeight()); sy++) {
+					for (int sx = x * factor; sx < Math.min((x + 1) * factor, image.getWidth()); sx++) {
+						int rgb = image.getRGB(sx, sy);
+						sum[0] += (rgb >> 16) & 0xFF;
+						sum[1] += (rgb >> 8) & 0xFF;
+						sum[2] += rgb & 0xFF;
+						count++;
+					}
+				}
+				result.setRGB(x, y, ((sum[0] / count) << 16) | ((sum[1] / count) << 8) | (sum[2] / count));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 2つの画像の、RGBの各成分の平均絶対誤差を求めます。
+	 *
+	 * @param expected 期待する画像。
+	 * @param actual 比較する画像。
+	 * @return 平均絶対誤差。
+	 */
+	private static double getMeanAbsoluteError(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		long sum = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int a = expected.getRGB(x, y);
+				int b = actual.getRGB(x, y);
+				for (int shift = 0; shift <= 16; shift += 8) {
+					sum += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+				}
+			}
+		}
+		return (double) sum / (expected.getWidth() * expected.getHeight() * 3);
+	}
+}
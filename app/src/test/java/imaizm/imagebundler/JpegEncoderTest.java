@@ -0,0 +1,174 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link JpegEncoder} クラスのテストクラスです。
+ * <p>
+ * 固定の圧縮品質でのエンコード結果が従来のエンコード結果と一致すること、
+ * および目標サイズでのエンコード結果が目標サイズに収まる最も高い圧縮品質のものであることを検証します。
+ * </p>
+ */
+class JpegEncoderTest {
+
+	/** テスト用画像（480x320）のパス。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	@Nested
+	@DisplayName("encodeメソッドに対するテスト")
+	/**
+	 * {@link JpegEncoder#encode(BufferedImage, int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Encode {
+
+		/**
+		 * 同じインスタンスで繰り返しエンコードした結果が、{@link ImageConverter#encodeJpeg(BufferedImage, int)} の結果と一致することを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("再利用したエンコーダの結果が従来の結果と一致する")
+		void test01() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+				byte[] first = jpegEncoder.encode(image, 75);
+				byte[] second = jpegEncoder.encode(image, 75);
+				assertArrayEquals(ImageConverter.encodeJpeg(image, 75), first);
+				assertArrayEquals(first, second);
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("encodeWithinSizeメソッドに対するテスト")
+	/**
+	 * {@link JpegEncoder#encodeWithinSize(BufferedImage, long)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class EncodeWithinSize {
+
+		/**
+		 * エンコード結果が目標サイズに収まり、かつ1段階高い圧縮品質では目標サイズを超えることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("目標サイズに収まる最も高い圧縮品質でエンコードされる")
+		void test01() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+				long maxSize = jpegEncoder.encode(image, 60).length;
+				byte[] data = jpegEncoder.encodeWithinSize(image, maxSize);
+
+				int quality = -1;
+				for (int q = JpegEncoder.MIN_SEARCH_QUALITY; q <= JpegEncoder.MAX_SEARCH_QUALITY; q++) {
+					if (Arrays.equals(jpegEncoder.encode(image, q), data)) {
+						quality = q;
+					}
+				}
+				assertTrue(data.length <= maxSize);
+				assertTrue(quality >= 60);
+				assertTrue(quality == JpegEncoder.MAX_SEARCH_QUALITY || jpegEncoder.encode(image, quality + 1).length > maxSize);
+			}
+		}
+
+		/**
+		 * 最低の圧縮品質でも目標サイズに収まらない場合に、最低の圧縮品質でエンコードされることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("目標サイズに収まらない場合は最低の圧縮品質でエンコードされる")
+		void test02() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder()) {
+				byte[] data = jpegEncoder.encodeWithinSize(image, 1);
+				assertArrayEquals(jpegEncoder.encode(image, JpegEncoder.MIN_SEARCH_QUALITY), data);
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("Profileに対するテスト")
+	/**
+	 * {@link JpegEncoder.Profile} ごとのエンコード結果のテストケースをグループ化するネストクラスです。
+	 */
+	class Profile {
+
+		/**
+		 * {@link JpegEncoder.Profile#FAST} のエンコード結果が従来のエンコード結果と一致することを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("FASTは従来と同じ出力になる")
+		void test01() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.FAST)) {
+				assertArrayEquals(ImageConverter.encodeJpeg(image, 75), jpegEncoder.encode(image, 75));
+			}
+		}
+
+		/**
+		 * {@link JpegEncoder.Profile#SMALL} のエンコード結果が、JFIFマーカーを持たないプログレッシブ形式で、
+		 * 元の画像と同じサイズに復号できることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("SMALLはJFIFマーカーのないプログレッシブ形式になる")
+		void test02() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.SMALL)) {
+				byte[] data = jpegEncoder.encode(image, 75);
+				assertAll("data",
+					() -> assertEquals(-1, indexOfMarker(data, 0xE0)),
+					() -> assertTrue(indexOfMarker(data, 0xC2) >= 0),
+					() -> assertEquals(image.getWidth(), ImageIO.read(new ByteArrayInputStream(data)).getWidth()),
+					() -> assertTrue(data.length < ImageConverter.encodeJpeg(image, 75).length));
+			}
+		}
+
+		/**
+		 * {@link JpegEncoder.Profile#ARCHIVAL} のエンコード結果が、色差成分を間引かない（4:4:4）ベースライン形式であることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中またはエンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ARCHIVALは色差成分を間引かないベースライン形式になる")
+		void test03() throws IOException {
+			BufferedImage image = ImageIO.read(TEST_IMAGE_PATH.toFile());
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.ARCHIVAL)) {
+				byte[] data = jpegEncoder.encode(image, 75);
+				int sofIndex = indexOfMarker(data, 0xC0);
+				assertTrue(sofIndex >= 0);
+				int componentCount = data[sofIndex + 9];
+				assertEquals(3, componentCount);
+				for (int i = 0; i < componentCount; i++) {
+					assertEquals(0x11, data[sofIndex + 11 + i * 3]);
+				}
+			}
+		}
+
+		/**
+		 * JPEGデータ内で、指定されたマーカー（0xFFに続く1バイト）の位置を検索します。
+		 *
+		 * @param data JPEGデータ。
+		 * @param marker マーカーの2バイト目。
+		 * @return マーカーの位置。見つからない場合は-1。
+		 */
+		private int indexOfMarker(byte[] data, int marker) {
+			for (int i = 0; i < data.length - 1; i++) {
+				if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == marker) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
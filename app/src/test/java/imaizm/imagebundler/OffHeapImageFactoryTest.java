@@ -0,0 +1,84 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link OffHeapImageFactory} クラスのテストクラスです。
+ * <p>
+ * 画素数の閾値に小さな値を指定し、メモリマップされた画像が生成されること、
+ * およびその画像に対する変換処理がヒープ上の画像と同じ結果になることを検証します。
+ * </p>
+ */
+class OffHeapImageFactoryTest {
+
+	@Nested
+	@DisplayName("readメソッドに対するテスト")
+	/**
+	 * {@link OffHeapImageFactory#read(java.io.File, long)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Read {
+
+		/** テスト用画像（480x320）がメモリマップ対象となる画素数の閾値。 */
+		private static final long PIXEL_THRESHOLD = 1000;
+
+		/**
+		 * 閾値を超える画像が {@link MappedDataBuffer} を記憶域として読み込まれ、
+		 * その画素値が {@link ImageIO#read(java.io.File)} で読み込んだ画像と一致することを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("閾値超過の画像がメモリマップされた記憶域に読み込まれる")
+		void test01() throws IOException {
+			Path inputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+			BufferedImage mappedImage = OffHeapImageFactory.read(inputFilePath.toFile(), PIXEL_THRESHOLD);
+			BufferedImage heapImage = ImageIO.read(inputFilePath.toFile());
+
+			assertTrue(mappedImage.getRaster().getDataBuffer() instanceof MappedDataBuffer);
+			assertEquals(heapImage.getWidth(), mappedImage.getWidth());
+			assertEquals(heapImage.getHeight(), mappedImage.getHeight());
+			for (int y = 0; y < heapImage.getHeight(); y += 7) {
+				for (int x = 0; x < heapImage.getWidth(); x += 7) {
+					assertEquals(heapImage.getRGB(x, y), mappedImage.getRGB(x, y));
+				}
+			}
+		}
+
+		/**
+		 * メモリマップされた画像を {@link ImageConverter.ContraAspectMode#ROTATE} で変換した場合に、
+		 * 回転後の画像もメモリマップされた記憶域上に生成され、期待されるサイズに変換されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("メモリマップされた画像を回転モードで変換する")
+		void test02() throws IOException {
+			Path inputFilePath = Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+			BufferedImage mappedImage = OffHeapImageFactory.read(inputFilePath.toFile(), PIXEL_THRESHOLD);
+
+			BufferedImage rotatedImage = OffHeapImageFactory.createCompatibleImage(mappedImage, 320, 480, PIXEL_THRESHOLD);
+			assertTrue(rotatedImage.getRaster().getDataBuffer() instanceof MappedDataBuffer);
+
+			List<BufferedImage> outputImageList = ImageConverter.convert(mappedImage, 240, 360,
+				ImageConverter.BindingSide.RIGHT,
+				ImageConverter.CenterClipOption.OFF,
+				ImageConverter.ContraAspectMode.ROTATE,
+				ImageConverter.DEFAULT_CENTER_CLIP_WIDTH,
+				ImageConverter.DEFAULT_CENTER_CLIP_HEIGHT,
+				-1,
+				PIXEL_THRESHOLD);
+			assertAll("outputImageList-width-height",
+				() -> assertEquals(1, outputImageList.size()),
+				() -> assertEquals(240, outputImageList.get(0).getWidth()),
+				() -> assertEquals(360, outputImageList.get(0).getHeight()));
+		}
+	}
+}
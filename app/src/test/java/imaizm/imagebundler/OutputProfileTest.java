@@ -0,0 +1,103 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+
+import imaizm.imagebundler.ImageConverter.BindingSide;
+import imaizm.imagebundler.ImageConverter.CenterClipOption;
+import imaizm.imagebundler.ImageConverter.ContraAspectMode;
+
+/**
+ * {@link OutputProfile} クラスのテストクラスです。
+ * <p>
+ * 出力プロファイルの一覧を表す文字列の解析と、大きい出力プロファイルの変換結果を縮小して使えるかどうかの判定を検証します。
+ * </p>
+ */
+class OutputProfileTest {
+
+	@Nested
+	@DisplayName("parseListメソッドに対するテスト")
+	/**
+	 * {@link OutputProfile#parseList(String)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class ParseList {
+
+		/**
+		 * 複数の出力プロファイルが指定順に解析され、省略したオプションが既定値になることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("複数の出力プロファイルが解析される")
+		void test01() {
+			List<OutputProfile> outputProfileList =
+				OutputProfile.parseList("reduced=768x1024, tablet=1536x2048:archival:q85, thumb=150x200:plain:left:noclip:q60");
+
+			assertEquals(3, outputProfileList.size());
+
+			OutputProfile reduced = outputProfileList.get(0);
+			assertAll("reduced",
+				() -> assertEquals("reduced", reduced.getName()),
+				() -> assertEquals(768, reduced.getWidth()),
+				() -> assertEquals(1024, reduced.getHeight()),
+				() -> assertEquals(BindingSide.RIGHT, reduced.getSide()),
+				() -> assertEquals(CenterClipOption.ON, reduced.getCenterClipOption()),
+				() -> assertEquals(ContraAspectMode.SPLIT, reduced.getContraAspectMode()),
+				() -> assertEquals(OutputProfile.DEFAULT_QUALITY, reduced.getQuality()),
+				() -> assertEquals(JpegEncoder.DEFAULT_PROFILE, reduced.getJpegProfile()));
+
+			OutputProfile tablet = outputProfileList.get(1);
+			assertAll("tablet",
+				() -> assertEquals(1536, tablet.getWidth()),
+				() -> assertEquals(2048, tablet.getHeight()),
+				() -> assertEquals(85, tablet.getQuality()),
+				() -> assertEquals(JpegEncoder.Profile.ARCHIVAL, tablet.getJpegProfile()));
+
+			OutputProfile thumb = outputProfileList.get(2);
+			assertAll("thumb",
+				() -> assertEquals(BindingSide.LEFT, thumb.getSide()),
+				() -> assertEquals(CenterClipOption.OFF, thumb.getCenterClipOption()),
+				() -> assertEquals(ContraAspectMode.PLAIN, thumb.getContraAspectMode()),
+				() -> assertEquals(60, thumb.getQuality()));
+		}
+
+		/**
+		 * 書式に誤りがある場合、および名前が重複している場合に {@link IllegalArgumentException} がスローされることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("不正な指定は例外になる")
+		void test02() {
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList("768x1024"));
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList("a=768"));
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList("a=768x1024:q101"));
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList("a=768x1024:sepia"));
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList("a=768x1024,a=150x200"));
+			assertThrows(IllegalArgumentException.class, () -> OutputProfile.parseList(" , "));
+		}
+	}
+
+	@Nested
+	@DisplayName("canCascadeToメソッドに対するテスト")
+	/**
+	 * {@link OutputProfile#canCascadeTo(OutputProfile)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class CanCascadeTo {
+
+		/**
+		 * 構図の設定が同じで小さい出力プロファイルにのみ、変換結果を縮小して使えることを確認するテストです。
+		 */
+		@Test
+		@DisplayName("構図が同じで小さい出力プロファイルにのみ縮小して使える")
+		void test01() {
+			OutputProfile tablet = OutputProfile.parse("tablet=1536x2048");
+			OutputProfile reduced = OutputProfile.parse("reduced=768x1024:q60");
+
+			assertTrue(tablet.canCascadeTo(reduced));
+			assertFalse(reduced.canCascadeTo(tablet));
+			assertFalse(tablet.canCascadeTo(OutputProfile.parse("thumb=150x200:plain")));
+			assertFalse(tablet.canCascadeTo(OutputProfile.parse("left=768x1024:left")));
+			assertFalse(tablet.canCascadeTo(OutputProfile.parse("landscape=1024x768")));
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link PageDeduplicator} クラスのテストクラスです。
+ * <p>
+ * 内容が同一のページ、および差分ハッシュが近いページの変換が1度だけ行われ、
+ * 変換結果がエントリ名を付け替えた参照として再利用されることを検証します。
+ * </p>
+ */
+class PageDeduplicatorTest {
+
+	/** 内容が同一のJPEGファイル（拡張子のみ異なる）とPNGファイルを含むテストデータのディレクトリ。 */
+	private static final Path TEST_DATA_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/InputFileHandlerTest/constructor/test01");
+
+	@Nested
+	@DisplayName("convertメソッドに対するテスト")
+	/**
+	 * {@link PageDeduplicator#convert(int, Path, PageDeduplicator.PageConverter)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Convert {
+
+		/**
+		 * 内容が同一のファイルの変換が1度だけ行われ、2つ目のファイルのエントリ名が付け替えられることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("内容が同一のページの変換結果が再利用される")
+		void test01() throws IOException {
+			AtomicInteger convertCount = new AtomicInteger();
+			PageDeduplicator pageDeduplicator = new PageDeduplicator(-1);
+
+			List<ArchiveWriter.Entry> entryList1 = pageDeduplicator.convert(
+				0,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+			List<ArchiveWriter.Entry> entryList2 = pageDeduplicator.convert(
+				1,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpeg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+
+			assertAll("entryList",
+				() -> assertEquals(1, convertCount.get()),
+				() -> assertEquals(1, pageDeduplicator.getDuplicatePageCount()),
+				() -> assertEquals("480x320_1.jpg", entryList2.get(0).getName()),
+				() -> assertEquals("480x320_2.jpg", entryList2.get(1).getName()),
+				() -> assertNull(entryList2.get(0).getData()),
+				() -> assertEquals(entryList1.get(0).getName(), entryList2.get(0).getReferencedName()),
+				() -> assertEquals(entryList1.get(1).getSize(), entryList2.get(1).getSize()),
+				() -> assertEquals(entryList1.get(1).getCrc(), entryList2.get(1).getCrc()));
+		}
+
+		/**
+		 * 差分ハッシュによる判定が無効の場合、内容が異なるファイルはそれぞれ変換されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("内容が異なるページはそれぞれ変換される")
+		void test02() throws IOException {
+			AtomicInteger convertCount = new AtomicInteger();
+			PageDeduplicator pageDeduplicator = new PageDeduplicator(-1);
+
+			pageDeduplicator.convert(
+				0,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+			pageDeduplicator.convert(
+				1,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.png"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+
+			assertEquals(2, convertCount.get());
+			assertEquals(0, pageDeduplicator.getDuplicatePageCount());
+		}
+
+		/**
+		 * 差分ハッシュによる判定が有効の場合、同じ画像を異なる形式で保存したファイルが重複とみなされることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("差分ハッシュが近いページの変換結果が再利用される")
+		void test03() throws IOException {
+			AtomicInteger convertCount = new AtomicInteger();
+			PageDeduplicator pageDeduplicator = new PageDeduplicator(4);
+
+			pageDeduplicator.convert(
+				0,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+			List<ArchiveWriter.Entry> entryList = pageDeduplicator.convert(
+				1,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.png"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+
+			assertEquals(1, convertCount.get());
+			assertEquals("480x320_1.jpg", entryList.get(0).getName());
+		}
+
+		/**
+		 * 後のページが先に変換された場合、前のページは後のページを参照せずに変換されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("後のページを参照しない")
+		void test04() throws IOException {
+			AtomicInteger convertCount = new AtomicInteger();
+			PageDeduplicator pageDeduplicator = new PageDeduplicator(-1);
+
+			pageDeduplicator.convert(
+				1,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpeg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+			List<ArchiveWriter.Entry> entryList = pageDeduplicator.convert(
+				0,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpg"), inputFilePath -> dummyConvert(inputFilePath, convertCount));
+
+			assertEquals(2, convertCount.get());
+			assertEquals(0, pageDeduplicator.getDuplicatePageCount());
+			assertNotNull(entryList.get(0).getData());
+		}
+	}
+
+	@Nested
+	@DisplayName("convertAllメソッドに対するテスト")
+	/**
+	 * {@link PageDeduplicator#convertAll(int, Path, PageDeduplicator.MultiPageConverter)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class ConvertAll {
+
+		/**
+		 * 内容が同一のページについて、出力ZIPファイルごとの変換結果がそれぞれ再利用されることを確認するテストです。
+		 * @throws IOException テストデータの読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("出力ZIPファイルごとの変換結果が再利用される")
+		void test01() throws IOException {
+			AtomicInteger convertCount = new AtomicInteger();
+			PageDeduplicator pageDeduplicator = new PageDeduplicator(-1);
+
+			List<List<ArchiveWriter.Entry>> entryListList1 = pageDeduplicator.convertAll(
+				0,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpg"),
+				inputFilePath -> Arrays.asList(
+					dummyConvert(inputFilePath, convertCount),
+					dummyConvert(inputFilePath, new AtomicInteger()).subList(0, 1)));
+			List<List<ArchiveWriter.Entry>> entryListList2 = pageDeduplicator.convertAll(
+				1,
+				TEST_DATA_DIRECTORY_PATH.resolve("480x320.jpeg"),
+				inputFilePath -> Arrays.asList(
+					dummyConvert(inputFilePath, convertCount),
+					dummyConvert(inputFilePath, new AtomicInteger()).subList(0, 1)));
+
+			assertAll("entryListList",
+				() -> assertEquals(1, convertCount.get()),
+				() -> assertEquals(2, entryListList2.size()),
+				() -> assertEquals(2, entryListList2.get(0).size()),
+				() -> assertEquals(1, entryListList2.get(1).size()),
+				() -> assertEquals(entryListList1.get(1).get(0).getName(), entryListList2.get(1).get(0).getReferencedName()));
+		}
+	}
+
+	/**
+	 * ファイル名を内容とする2つのエントリを返すテスト用の変換処理です。
+	 *
+	 * @param inputFilePath 変換対象の画像ファイルのパス。
+	 * @param convertCount 変換処理の呼び出し回数を数えるカウンタ。
+	 * @return テスト用のエントリのリスト。
+	 */
+	private static List<ArchiveWriter.Entry> dummyConvert(Path inputFilePath, AtomicInteger convertCount) {
+		convertCount.incrementAndGet();
+		String baseName = FilenameUtils.getBaseName(inputFilePath.getFileName().toString());
+		return Arrays.asList(
+			new ArchiveWriter.Entry(baseName + "_1.jpg", 0, inputFilePath.toString().getBytes(StandardCharsets.UTF_8)),
+			new ArchiveWriter.Entry(baseName + "_2.jpg", 0, baseName.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,209 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link PageJournal} クラスのテストクラスです。
+ * <p>
+ * 記録したページが再度開いたときに復元されること、書き込み途中の行や入力・設定の変更が
+ * 正しく扱われること、完了の記録が残ることを検証します。
+ * </p>
+ */
+class PageJournalTest {
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/PageJournalTest");
+	/** テストのジャーナルのディレクトリ。 */
+	private static final Path JOURNAL_DIRECTORY_PATH = WORK_DIRECTORY_PATH.resolve("journal");
+	/** テストの入力ファイル。 */
+	private static final Path INPUT_FILE_PATH = WORK_DIRECTORY_PATH.resolve("book.zip");
+
+	/**
+	 * 各テストメソッドの実行前に呼び出されます。
+	 * 入力ファイルを作成します。
+	 * @throws IOException 入力ファイルの作成中にエラーが発生した場合。
+	 */
+	@BeforeEach
+	void beforeEach() throws IOException {
+		Files.createDirectories(WORK_DIRECTORY_PATH);
+		Files.write(INPUT_FILE_PATH, "book".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 各テストメソッドの実行後に呼び出されます。
+	 * 作業ディレクトリを削除します。
+	 * @throws IOException 作業ディレクトリの削除中にエラーが発生した場合。
+	 */
+	@AfterEach
+	void afterEach() throws IOException {
+		FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+	}
+
+	@Nested
+	@DisplayName("openメソッドに対するテスト")
+	/**
+	 * {@link PageJournal#open(Path, Path, BundleOptions)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Open {
+
+		/**
+		 * 記録したページが、ジャーナルを開き直したときに同じ名前・内容のエントリとして復元されることを確認するテストです。
+		 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("記録したページが復元される")
+		void test01() throws IOException {
+			BundleOptions options = BundleOptions.defaults();
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				assertFalse(pageJournal.isCompleted());
+				assertEquals(0, pageJournal.getJournaledPageCount());
+				pageJournal.record(0, pageOf(entry("01_1.jpg"), entry("01_2.jpg")));
+				pageJournal.record(2, pageOf());
+			}
+
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				assertEquals(2, pageJournal.getJournaledPageCount());
+				List<ArchiveWriter.Entry> entryList = pageJournal.getEntries(0).get(0);
+				assertEquals(2, entryList.size());
+				assertEquals("01_2.jpg", entryList.get(1).getName());
+				assertArrayEquals(
+					"01_2.jpg".getBytes(StandardCharsets.UTF_8),
+					Files.readAllBytes(entryList.get(1).getSourceFilePath()));
+				assertEquals(entry("01_2.jpg").getCrc(), entryList.get(1).getCrc());
+				assertNull(pageJournal.getEntries(1));
+				assertTrue(pageJournal.getEntries(2).get(0).isEmpty());
+			}
+		}
+
+		/**
+		 * 書き込み途中で中断された最後の行と、エンコード結果のファイルが欠けているページが未完了として扱われることを確認するテストです。
+		 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("不完全なページは読み込まれない")
+		void test02() throws IOException {
+			BundleOptions options = BundleOptions.defaults();
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				pageJournal.record(0, pageOf(entry("01.jpg")));
+				pageJournal.record(1, pageOf(entry("02.jpg")));
+			}
+			Path directoryPath = findDirectory();
+			Files.delete(directoryPath.resolve("1-0-0"));
+			Files.write(directoryPath.resolve(PageJournal.JOURNAL_FILE_NAME),
+				"page\t2\t0/0/6/1234/0/03.jpg".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				assertEquals(1, pageJournal.getJournaledPageCount());
+				assertNotNull(pageJournal.getEntries(0));
+				assertNull(pageJournal.getEntries(1));
+				assertNull(pageJournal.getEntries(2));
+			}
+		}
+
+		/**
+		 * 出力に影響する設定または入力ファイルが変わった場合に、以前のジャーナルが破棄されることを確認するテストです。
+		 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("設定または入力が変わると破棄される")
+		void test03() throws IOException {
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, BundleOptions.defaults())) {
+				pageJournal.record(0, pageOf(entry("01.jpg")));
+			}
+
+			BundleOptions changedOptions = BundleOptions.builder().losslessSplit(false).build();
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, changedOptions)) {
+				assertEquals(0, pageJournal.getJournaledPageCount());
+				pageJournal.record(0, pageOf(entry("01.jpg")));
+			}
+
+			Files.write(INPUT_FILE_PATH, "changed book".getBytes(StandardCharsets.UTF_8));
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, changedOptions)) {
+				assertEquals(0, pageJournal.getJournaledPageCount());
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("completeメソッドに対するテスト")
+	/**
+	 * {@link PageJournal#complete()} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Complete {
+
+		/**
+		 * 完了を記録するとエンコード結果が削除され、開き直したジャーナルが完了済みになることを確認するテストです。
+		 * @throws IOException ジャーナルの読み書き中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("完了済みとして開かれる")
+		void test01() throws IOException {
+			BundleOptions options = BundleOptions.defaults();
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				pageJournal.record(0, pageOf(entry("01.jpg")));
+				pageJournal.complete();
+			}
+
+			List<String> fileNameList = new ArrayList<String>();
+			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(findDirectory())) {
+				for (Path path : directoryStream) {
+					fileNameList.add(path.getFileName().toString());
+				}
+			}
+			assertEquals(Arrays.asList(PageJournal.DONE_FILE_NAME), fileNameList);
+
+			try (PageJournal pageJournal = PageJournal.open(JOURNAL_DIRECTORY_PATH, INPUT_FILE_PATH, options)) {
+				assertTrue(pageJournal.isCompleted());
+				assertNull(pageJournal.getEntries(0));
+			}
+		}
+	}
+
+	/**
+	 * 1つの出力プロファイルのエントリからなるページを作成します。
+	 *
+	 * @param entries ページのエントリ。
+	 * @return 出力プロファイルごとのエントリのリスト。
+	 */
+	private static List<List<ArchiveWriter.Entry>> pageOf(ArchiveWriter.Entry... entries) {
+		return Collections.singletonList(Arrays.asList(entries));
+	}
+
+	/**
+	 * エントリ名を内容とするエントリを作成します。
+	 *
+	 * @param name エントリ名。
+	 * @return 作成したエントリ。
+	 */
+	private static ArchiveWriter.Entry entry(String name) {
+		return new ArchiveWriter.Entry(name, 0, name.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * ジャーナルのディレクトリ内の、入力ごとのディレクトリを取得します。
+	 *
+	 * @return 入力ごとのディレクトリのパス。
+	 * @throws IOException ディレクトリの読み込み中にエラーが発生した場合。
+	 */
+	private static Path findDirectory() throws IOException {
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(JOURNAL_DIRECTORY_PATH)) {
+			return directoryStream.iterator().next();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link ParallelJpegEncoder} クラスのテストクラスです。
+ * <p>
+ * 帯に分けて並列にエンコードした結果が、リスタートマーカーを含む1つのJPEGデータとして復号でき、
+ * 1つのスレッドでエンコードした結果と同じ画像になることを検証します。
+ * </p>
+ */
+class ParallelJpegEncoderTest {
+
+	@Nested
+	@DisplayName("encodeメソッドに対するテスト")
+	/**
+	 * {@link ParallelJpegEncoder#encode(BufferedImage, int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Encode {
+
+		/**
+		 * カラー画像を並列にエンコードした結果を復号した画像が、1つのスレッドでエンコードした結果を復号した画像と一致することを確認するテストです。
+		 * 高さが帯の高さの倍数でない画像で、最後の帯が短い場合も確認します。
+		 * @throws IOException エンコード中または復号中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("カラー画像の並列エンコード結果が1スレッドの結果と同じ画像になる")
+		void test01() throws IOException {
+			BufferedImage image = createColorImage(600, 443);
+			assertSameImage(image, BufferedImage.TYPE_3BYTE_BGR);
+		}
+
+		/**
+		 * グレースケール画像を並列にエンコードした結果を復号した画像が、1つのスレッドでエンコードした結果を復号した画像と一致することを確認するテストです。
+		 * @throws IOException エンコード中または復号中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("グレースケール画像の並列エンコード結果が1スレッドの結果と同じ画像になる")
+		void test02() throws IOException {
+			BufferedImage image = ImageConverter.toGrayscale(createColorImage(300, 500));
+			assertSameImage(image, BufferedImage.TYPE_BYTE_GRAY);
+		}
+
+		/**
+		 * 指定された画像を並列にエンコードした結果と1つのスレッドでエンコードした結果を比較します。
+		 *
+		 * @param image エンコードする画像。
+		 * @param imageType 復号後の画像の種類。
+		 * @throws IOException エンコード中または復号中にエラーが発生した場合。
+		 */
+		private void assertSameImage(BufferedImage image, int imageType) throws IOException {
+			byte[] parallelData;
+			try (ParallelJpegEncoder parallelJpegEncoder = new ParallelJpegEncoder(JpegEncoder.Profile.FAST, 4)) {
+				parallelData = parallelJpegEncoder.encode(image, 75);
+			}
+			byte[] sequentialData;
+			try (JpegEncoder jpegEncoder = new JpegEncoder(JpegEncoder.Profile.FAST)) {
+				sequentialData = jpegEncoder.encode(image, 75);
+			}
+
+			assertNotNull(parallelData);
+			assertTrue(indexOfMarker(parallelData, 0xDD) >= 0);
+			assertTrue(indexOfMarker(parallelData, 0xD0) >= 0);
+
+			BufferedImage expected = ImageIO.read(new ByteArrayInputStream(sequentialData));
+			BufferedImage actual = ImageIO.read(new ByteArrayInputStream(parallelData));
+			assertEquals(imageType, JpegDecoder.decode(parallelData, 8).getType());
+			assertEquals(expected.getWidth(), actual.getWidth());
+			assertEquals(expected.getHeight(), actual.getHeight());
+			for (int y = 0; y < expected.getHeight(); y++) {
+				for (int x = 0; x < expected.getWidth(); x++) {
+					assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "(" + x + ", " + y + ")");
+				}
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("JpegEncoderからの利用に対するテスト")
+	/**
+	 * {@link JpegEncoder#JpegEncoder(JpegEncoder.Profile, ParallelJpegEncoder)} で構築したエンコーダのテストケースをグループ化するネストクラスです。
+	 */
+	class WithJpegEncoder {
+
+		/**
+		 * 画素数が指定された下限以上の画像のみ並列にエンコードされ、
+		 * ハフマン符号表を最適化するプロファイルでは並列にエンコードされないことを確認するテストです。
+		 * @throws IOException エンコード中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("大きな画像のみFASTプロファイルで並列にエンコードされる")
+		void test01() throws IOException {
+			try (ParallelJpegEncoder parallelJpegEncoder = new ParallelJpegEncoder(JpegEncoder.Profile.FAST, 2, 200L * 200);
+				JpegEncoder fastEncoder = new JpegEncoder(JpegEncoder.Profile.FAST, parallelJpegEncoder);
+				JpegEncoder archivalEncoder = new JpegEncoder(JpegEncoder.Profile.ARCHIVAL, parallelJpegEncoder)) {
+
+				assertTrue(indexOfMarker(fastEncoder.encode(createColorImage(400, 300), 75), 0xDD) >= 0);
+				assertEquals(-1, indexOfMarker(fastEncoder.encode(createColorImage(150, 150), 75), 0xDD));
+				assertEquals(-1, indexOfMarker(archivalEncoder.encode(createColorImage(400, 300), 75), 0xDD));
+			}
+		}
+	}
+
+	/**
+	 * 色のグラデーションを描画したテスト用画像を生成します。
+	 *
+	 * @param width 画像の幅。
+	 * @param height 画像の高さ。
+	 * @return テスト用画像。
+	 */
+	private static BufferedImage createColorImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.CYAN));
+		graphics.fillRect(0, 0, width, height);
+		graphics.setColor(Color.BLACK);
+		for (int y = 20; y < height; y += 40) {
+			graphics.drawString("ImageBundler " + y, 10, y);
+		}
+		graphics.dispose();
+		return image;
+	}
+
+	/**
+	 * JPEGデータ内で、指定されたマーカー（0xFFに続く1バイト）の位置を検索します。
+	 *
+	 * @param data JPEGデータ。
+	 * @param marker マーカーの2バイト目。
+	 * @return マーカーの位置。見つからない場合は-1。
+	 */
+	private static int indexOfMarker(byte[] data, int marker) {
+		for (int i = 0; i < data.length - 1; i++) {
+			if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == marker) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
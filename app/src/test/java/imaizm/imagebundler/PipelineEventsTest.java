@@ -0,0 +1,92 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * {@link PipelineEvents} クラスのテストクラスです。
+ * <p>
+ * JFRの記録中に変換を実行した場合に、パイプラインの各段階のイベントがページ名などの項目とともに記録されることを検証します。
+ * </p>
+ */
+class PipelineEventsTest {
+
+	/** テスト用の入力画像（480x320のJPEG画像）。 */
+	private static final Path TEST_IMAGE_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/ImageConverterTest/Convert/test01/480x320.jpg");
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/PipelineEventsTest");
+
+	@Nested
+	@DisplayName("イベントの記録に対するテスト")
+	/**
+	 * {@link ImageBundler#bundle(Path, BundleOptions)} の実行中に記録されるイベントのテストケースをグループ化するネストクラスです。
+	 */
+	class Record {
+
+		/**
+		 * 1ページのディレクトリを変換した場合に、各段階のイベントが記録されることを確認するテストです。
+		 * 可逆分割を無効にし、デコード・変換・エンコードが行われるようにします。
+		 * @throws Exception 変換中または記録の読み込み中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("パイプラインの各段階のイベントが記録される")
+		void test01() throws Exception {
+			Path sourceDirectoryPath = WORK_DIRECTORY_PATH.resolve("book");
+			Path recordingFilePath = WORK_DIRECTORY_PATH.resolve("recording.jfr");
+			try {
+				Files.createDirectories(sourceDirectoryPath);
+				Files.copy(TEST_IMAGE_PATH, sourceDirectoryPath.resolve("01.jpg"));
+
+				try (Recording recording = new Recording()) {
+					for (String name : new String[] { "InputDiscovery", "Decode", "Convert", "Encode", "ArchiveWrite" }) {
+						recording.enable("imagebundler." + name);
+					}
+					recording.start();
+					try (ImageBundler imageBundler = new ImageBundler(1)) {
+						imageBundler.bundle(
+							sourceDirectoryPath,
+							BundleOptions.builder().losslessSplit(false).build());
+					}
+					recording.stop();
+					recording.dump(recordingFilePath);
+				}
+
+				List<String> eventNameList = new ArrayList<String>();
+				RecordedEvent convertEvent = null;
+				for (RecordedEvent event : RecordingFile.readAllEvents(recordingFilePath)) {
+					String name = event.getEventType().getName();
+					eventNameList.add(name);
+					if ("imagebundler.Convert".equals(name)) {
+						convertEvent = event;
+					}
+				}
+				assertTrue(eventNameList.contains("imagebundler.InputDiscovery"), eventNameList.toString());
+				assertTrue(eventNameList.contains("imagebundler.Decode"), eventNameList.toString());
+				assertTrue(eventNameList.contains("imagebundler.Encode"), eventNameList.toString());
+				assertTrue(eventNameList.contains("imagebundler.ArchiveWrite"), eventNameList.toString());
+				assertNotNull(convertEvent, eventNameList.toString());
+				assertEquals("01.jpg", convertEvent.getString("page"));
+				assertEquals(480, convertEvent.getInt("sourceWidth"));
+				assertEquals("SPLIT", convertEvent.getString("mode"));
+				assertEquals(2, convertEvent.getInt("resultCount"));
+			} finally {
+				FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+			}
+		}
+	}
+}
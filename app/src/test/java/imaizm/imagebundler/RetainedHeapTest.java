@@ -0,0 +1,151 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ページ数の多いアーカイブの変換中に保持されるメモリ量を検証するテストクラスです。
+ * <p>
+ * ページ数の異なる2つのZIPファイルを同じ設定で変換し、最後のページを投入する時点のヒープの使用量を比較して、
+ * 1ページあたりの増加量が上限以下であることを確認します。
+ * 変換中は、出力ZIPファイルのセントラルディレクトリのエントリ、重複判定のダイジェスト、入力のエントリの一覧といった
+ * ページごとのメタデータだけが保持され、ページの画像・エンコード済みのデータ・エンコーダ・タスクは保持されません。
+ * このテストのページはエンコード後に8KB程度になるため、ページごとにエンコード済みのデータやエンコーダを保持する変更を行うと失敗します。
+ * </p>
+ * <p>
+ * 変換中の画像による一時的な増加を除くため、最後の {@value #SAMPLE_COUNT} ページの投入時にガベージコレクションを実行して使用量を測定し、
+ * その最小値を採用します。クラスの読み込みなどによる増加を除くため、測定の前に1回変換を実行します。
+ * </p>
+ * <p>
+ * ヒープの使用量はガベージコレクションの実行のタイミングやJVMの設定によって変動し、結果が一定しないため、
+ * このテストには {@code heap} タグを付け、{@code check} タスクには含めていません。
+ * ページごとに保持するものを変更した場合に、{@code ./gradlew retainedHeapTest} で単独で実行してください。
+ * </p>
+ */
+@Tag("heap")
+class RetainedHeapTest {
+
+	/** ページ数の少ないZIPファイルのページ数。 */
+	private static final int SMALL_PAGE_COUNT = 250;
+	/** ページ数の多いZIPファイルのページ数。 */
+	private static final int LARGE_PAGE_COUNT = 1000;
+	/** 使用量を測定するページ数（最後のページから数えたページ数）。 */
+	private static final int SAMPLE_COUNT = 8;
+	/** 1ページあたりに保持されるバイト数の上限。 */
+	private static final long BUDGET_PER_PAGE = 3 * 1024;
+
+	/** ページの画像の幅。 */
+	private static final int PAGE_WIDTH = 96;
+	/** ページの画像の高さ。 */
+	private static final int PAGE_HEIGHT = 128;
+
+	@Nested
+	@DisplayName("ページ数の多いアーカイブの変換で保持されるメモリ量に対するテスト")
+	/**
+	 * ページ数に比例して保持されるメモリ量を検証するテストケースをグループ化するネストクラスです。
+	 */
+	class Bundle {
+
+		/**
+		 * ページ数を4倍にしても、変換中に保持されるメモリ量の増加が1ページあたりの上限以下であることを確認するテストです。
+		 * @param workDirectoryPath テストの作業ディレクトリ。
+		 * @throws IOException 入力の作成中または変換中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("ページごとに保持されるメモリ量が上限以下である")
+		void test01(@TempDir Path workDirectoryPath) throws IOException {
+			Path smallInputFilePath = createInput(workDirectoryPath, "small", SMALL_PAGE_COUNT);
+			Path largeInputFilePath = createInput(workDirectoryPath, "large", LARGE_PAGE_COUNT);
+
+			measureRetainedHeap(smallInputFilePath);
+			long smallRetainedHeap = measureRetainedHeap(smallInputFilePath);
+			long largeRetainedHeap = measureRetainedHeap(largeInputFilePath);
+
+			long retainedBytesPerPage =
+				(largeRetainedHeap - smallRetainedHeap) / (LARGE_PAGE_COUNT - SMALL_PAGE_COUNT);
+			assertTrue(retainedBytesPerPage <= BUDGET_PER_PAGE,
+				String.format("retained %,d bytes per page (%,d bytes for %d pages, %,d bytes for %d pages), budget %,d bytes",
+					retainedBytesPerPage,
+					smallRetainedHeap, SMALL_PAGE_COUNT,
+					largeRetainedHeap, LARGE_PAGE_COUNT,
+					BUDGET_PER_PAGE));
+		}
+	}
+
+	/**
+	 * 指定されたZIPファイルを変換し、最後のページの投入時のヒープの使用量を返します。
+	 *
+	 * @param inputFilePath 変換するZIPファイルのパス。
+	 * @return 最後の {@value #SAMPLE_COUNT} ページの投入時に測定したヒープの使用量の最小値。
+	 * @throws IOException 変換中にエラーが発生した場合。
+	 */
+	private static long measureRetainedHeap(Path inputFilePath) throws IOException {
+		BundleOptions options = BundleOptions.builder()
+			.outputProfile(OutputProfile.parse("thumb=" + PAGE_WIDTH + "x" + PAGE_HEIGHT))
+			.losslessSplit(false)
+			.build();
+		long[] retainedHeap = { Long.MAX_VALUE };
+		try (ImageBundler imageBundler = new ImageBundler(2)) {
+			imageBundler.bundle(inputFilePath, options, (submittedPageCount, writtenPageCount, pageCount) -> {
+				if (submittedPageCount >= pageCount - SAMPLE_COUNT && submittedPageCount < pageCount) {
+					retainedHeap[0] = Math.min(retainedHeap[0], getUsedHeap());
+				}
+			});
+		}
+		return retainedHeap[0];
+	}
+
+	/**
+	 * ガベージコレクションを実行してから、ヒープの使用量を返します。
+	 *
+	 * @return ヒープの使用量のバイト数。
+	 */
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * ページごとに内容の異なるJPEG画像を格納したZIPファイルを作成します。
+	 *
+	 * @param directoryPath ZIPファイルを作成するディレクトリ。
+	 * @param baseName ZIPファイルの名前（拡張子を除く）。
+	 * @param pageCount ページ数。
+	 * @return 作成したZIPファイルのパス。
+	 * @throws IOException ZIPファイルの作成中にエラーが発生した場合。
+	 */
+	private static Path createInput(Path directoryPath, String baseName, int pageCount) throws IOException {
+		Path inputFilePath = directoryPath.resolve(baseName + ".zip");
+		Random random = new Random(pageCount);
+		BufferedImage image = new BufferedImage(PAGE_WIDTH, PAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(inputFilePath.toFile())) {
+			for (int i = 0; i < pageCount; i++) {
+				for (int y = 0; y < PAGE_HEIGHT; y++) {
+					for (int x = 0; x < PAGE_WIDTH; x++) {
+						image.setRGB(x, y, random.nextInt());
+					}
+				}
+				ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+				ImageIO.write(image, "jpg", imageData);
+				zipOutputStream.putArchiveEntry(new ZipArchiveEntry(String.format("%s/%04d.jpg", baseName, i)));
+				imageData.writeTo(zipOutputStream);
+				zipOutputStream.closeArchiveEntry();
+			}
+		}
+		return inputFilePath;
+	}
+}
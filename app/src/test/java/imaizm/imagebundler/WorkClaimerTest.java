@@ -0,0 +1,273 @@
+package imaizm.imagebundler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.*;
+
+/**
+ * {@link WorkClaimer} クラスのテストクラスです。
+ * <p>
+ * 同じリースディレクトリを使用する複数の {@link WorkClaimer} を別々のプロセスに見立てて、
+ * 変換対象が重複なく分担されること、完了した対象が再度取得されないこと、
+ * 期限切れのリースが回収されることを検証します。
+ * </p>
+ */
+class WorkClaimerTest {
+
+	/** テストの作業ディレクトリ。 */
+	private static final Path WORK_DIRECTORY_PATH =
+		Paths.get("src/test/resources/imaizm/imagebundler/WorkClaimerTest");
+	/** テストのリースディレクトリ。 */
+	private static final Path LEASE_DIRECTORY_PATH = WORK_DIRECTORY_PATH.resolve(WorkClaimer.LEASE_DIRECTORY_NAME);
+
+	/**
+	 * 各テストメソッドの実行後に呼び出されます。
+	 * 作業ディレクトリを削除します。
+	 * @throws IOException 作業ディレクトリの削除中にエラーが発生した場合。
+	 */
+	@AfterEach
+	void afterEach() throws IOException {
+		FileUtils.deleteDirectory(WORK_DIRECTORY_PATH.toFile());
+	}
+
+	@Nested
+	@DisplayName("claimメソッドに対するテスト")
+	/**
+	 * {@link WorkClaimer#claim(Path)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class Claim {
+
+		/**
+		 * 他のプロセスがリースを保持している間は取得できず、解放された後は取得でき、
+		 * 完了した対象はどのプロセスも取得しないことを確認するテストです。
+		 * @throws IOException リースファイルの操作中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("保持中の対象と完了した対象は取得できない")
+		void test01() throws IOException {
+			Path targetPath = WORK_DIRECTORY_PATH.resolve("book.zip");
+			try (WorkClaimer firstClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS);
+				WorkClaimer secondClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS)) {
+
+				WorkClaimer.Lease firstLease = firstClaimer.claim(targetPath);
+				assertNotNull(firstLease);
+				assertNull(secondClaimer.claim(targetPath));
+
+				firstLease.close();
+				WorkClaimer.Lease secondLease = secondClaimer.claim(targetPath);
+				assertNotNull(secondLease);
+				secondLease.complete();
+
+				assertNull(firstClaimer.claim(targetPath));
+				assertNull(secondClaimer.claim(targetPath));
+				assertFalse(Files.exists(LEASE_DIRECTORY_PATH.resolve("book.zip.lease")));
+				assertTrue(Files.exists(LEASE_DIRECTORY_PATH.resolve("book.zip.done")));
+			}
+		}
+
+		/**
+		 * 最終更新日時が有効期間を過ぎたリース（異常終了したプロセスのもの）は回収して取得でき、
+		 * 回収されたプロセスがリースを失ったことを検出できることを確認するテストです。
+		 * @throws Exception リースファイルの操作中または待機中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("期限切れのリースは回収される")
+		void test02() throws Exception {
+			Path targetPath = WORK_DIRECTORY_PATH.resolve("book");
+			try (WorkClaimer crashedClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS);
+				WorkClaimer claimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS)) {
+
+				WorkClaimer.Lease crashedLease = crashedClaimer.claim(targetPath);
+				assertNotNull(crashedLease);
+				assertNull(claimer.claim(targetPath));
+
+				// 更新が途絶えて有効期間を過ぎた状態にする
+				Path leaseFilePath = LEASE_DIRECTORY_PATH.resolve("book.lease");
+				Files.setLastModifiedTime(leaseFilePath,
+					FileTime.fromMillis(System.currentTimeMillis() - WorkClaimer.DEFAULT_LEASE_MILLIS * 2));
+				WorkClaimer.Lease lease = claimer.claim(targetPath);
+				assertNotNull(lease);
+
+				// 回収されたリースを解放しても、新しいリースファイルは削除されない
+				crashedLease.close();
+				assertTrue(crashedLease.isLost());
+				assertTrue(Files.exists(leaseFilePath));
+				lease.close();
+				assertFalse(lease.isLost());
+				assertFalse(Files.exists(leaseFilePath));
+			}
+		}
+
+		/**
+		 * リースを保持している間は最終更新日時が更新され、有効期間を過ぎても回収されないことを確認するテストです。
+		 * @throws Exception リースファイルの操作中または待機中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("保持中のリースは更新されて回収されない")
+		void test03() throws Exception {
+			long leaseMillis = 600;
+			Path targetPath = WORK_DIRECTORY_PATH.resolve("book.zip");
+			try (WorkClaimer firstClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, leaseMillis);
+				WorkClaimer secondClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, leaseMillis)) {
+
+				WorkClaimer.Lease lease = firstClaimer.claim(targetPath);
+				assertNotNull(lease);
+				for (int i = 0; i < 5; i++) {
+					Thread.sleep(leaseMillis / 2);
+					assertNull(secondClaimer.claim(targetPath));
+				}
+				assertFalse(lease.isLost());
+			}
+		}
+
+		/**
+		 * 同じディレクトリを指定した複数のプロセスが並行して対象を取得した場合に、
+		 * すべての対象がちょうど1回ずつ処理されることを確認するテストです。
+		 * @throws Exception リースファイルの操作中または待機中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("複数のプロセスで対象が重複なく分担される")
+		void test04() throws Exception {
+			int targetCount = 30;
+			List<Path> targetPathList = new ArrayList<Path>();
+			for (int i = 0; i < targetCount; i++) {
+				targetPathList.add(WORK_DIRECTORY_PATH.resolve(String.format("book%02d.zip", i)));
+			}
+			ConcurrentMap<Path, AtomicInteger> processedCountMap = new ConcurrentHashMap<Path, AtomicInteger>();
+			List<CompletableFuture<Void>> workerFutureList = new ArrayList<CompletableFuture<Void>>();
+			for (int worker = 0; worker < 3; worker++) {
+				workerFutureList.add(CompletableFuture.runAsync(() -> {
+					try (WorkClaimer claimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS)) {
+						for (Path targetPath : targetPathList) {
+							WorkClaimer.Lease lease = claimer.claim(targetPath);
+							if (lease != null) {
+								processedCountMap.computeIfAbsent(targetPath, key -> new AtomicInteger()).incrementAndGet();
+								lease.complete();
+							}
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}));
+			}
+			for (CompletableFuture<Void> workerFuture : workerFutureList) {
+				workerFuture.get();
+			}
+
+			assertEquals(targetCount, processedCountMap.size());
+			for (AtomicInteger processedCount : processedCountMap.values()) {
+				assertEquals(1, processedCount.get());
+			}
+		}
+
+		/**
+		 * 期限切れを確認した後に他のプロセスがリースを回収して新しいリースを作成していた場合、
+		 * 新しいリースは回収されずに元の名前に戻されることを確認するテストです。
+		 * @throws IOException リースファイルの操作中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("期限切れを確認した後に作成されたリースは回収されない")
+		void test05() throws IOException {
+			Path targetPath = WORK_DIRECTORY_PATH.resolve("book");
+			Path leaseFilePath = LEASE_DIRECTORY_PATH.resolve("book.lease");
+			try (WorkClaimer firstClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS);
+				WorkClaimer secondClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS)) {
+
+				WorkClaimer.Lease lease = firstClaimer.claim(targetPath);
+				assertNotNull(lease);
+				String ownerId = new String(Files.readAllBytes(leaseFilePath), StandardCharsets.UTF_8);
+
+				// 異常終了したプロセスの期限切れのリースを確認した後に、新しいリースが作成された状態
+				assertFalse(secondClaimer.reclaim(leaseFilePath, "crashed"));
+				assertEquals(ownerId, new String(Files.readAllBytes(leaseFilePath), StandardCharsets.UTF_8));
+				try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(LEASE_DIRECTORY_PATH, "*.stale")) {
+					assertFalse(directoryStream.iterator().hasNext());
+				}
+
+				// 期限切れを確認した後に、保持しているプロセスがリースを更新した状態
+				assertFalse(secondClaimer.reclaim(leaseFilePath, ownerId));
+				assertTrue(Files.exists(leaseFilePath));
+
+				assertTrue(lease.complete());
+				assertFalse(lease.isLost());
+				assertTrue(Files.exists(LEASE_DIRECTORY_PATH.resolve("book.done")));
+			}
+		}
+
+		/**
+		 * 変換中にリースを回収されたプロセスは、完了を記録しないことを確認するテストです。
+		 * @throws IOException リースファイルの操作中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("回収されたリースでは完了が記録されない")
+		void test06() throws IOException {
+			Path targetPath = WORK_DIRECTORY_PATH.resolve("book");
+			Path leaseFilePath = LEASE_DIRECTORY_PATH.resolve("book.lease");
+			try (WorkClaimer crashedClaimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS);
+				WorkClaimer claimer = new WorkClaimer(LEASE_DIRECTORY_PATH, WorkClaimer.DEFAULT_LEASE_MILLIS)) {
+
+				WorkClaimer.Lease crashedLease = crashedClaimer.claim(targetPath);
+				assertNotNull(crashedLease);
+				Files.setLastModifiedTime(leaseFilePath,
+					FileTime.fromMillis(System.currentTimeMillis() - WorkClaimer.DEFAULT_LEASE_MILLIS * 2));
+				WorkClaimer.Lease lease = claimer.claim(targetPath);
+				assertNotNull(lease);
+
+				assertFalse(crashedLease.complete());
+				assertTrue(crashedLease.isLost());
+				assertFalse(Files.exists(LEASE_DIRECTORY_PATH.resolve("book.done")));
+				assertTrue(Files.exists(leaseFilePath));
+
+				assertTrue(lease.complete());
+				assertTrue(Files.exists(LEASE_DIRECTORY_PATH.resolve("book.done")));
+			}
+		}
+	}
+
+	@Nested
+	@DisplayName("listTargetsメソッドに対するテスト")
+	/**
+	 * {@link WorkClaimer#listTargets(Path, BundleOptions)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class ListTargets {
+
+		/**
+		 * サブディレクトリとZIPファイルが名前の順に列挙され、他の対象の変換結果とリースディレクトリが除外されることを確認するテストです。
+		 * @throws IOException テスト用ファイルの作成中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("変換結果を除いた対象が列挙される")
+		void test01() throws IOException {
+			Files.createDirectories(WORK_DIRECTORY_PATH.resolve("vol1"));
+			Files.createDirectories(LEASE_DIRECTORY_PATH);
+			for (String name : Arrays.asList("vol1.zip", "vol2.zip", "vol2_reduced.zip", "vol3.ZIP", "cover.jpg")) {
+				Files.write(WORK_DIRECTORY_PATH.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+			}
+
+			List<Path> targetPathList = WorkClaimer.listTargets(WORK_DIRECTORY_PATH, BundleOptions.defaults());
+
+			assertEquals(
+				Arrays.asList(
+					WORK_DIRECTORY_PATH.resolve("vol1"),
+					WORK_DIRECTORY_PATH.resolve("vol2.zip"),
+					WORK_DIRECTORY_PATH.resolve("vol3.ZIP")),
+				targetPathList);
+		}
+	}
+}
@@ -3,12 +3,20 @@ package imaizm.imagebundler;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.*;
 
 /**
@@ -28,7 +36,7 @@ class ZipFileHandlerTest {
 
 		/**
 		 * {@link ZipFileHandler#inflate(Path, Path)} メソッドが、指定されたZIPファイルを正しく解凍し、
-		 * JPEGファイルのみを展開することを確認するテストです。
+		 * JPEG・PNGファイルのみを展開することを確認するテストです。
 		 * <p>
 		 * 手順：
 		 * <ol>
@@ -38,8 +46,7 @@ class ZipFileHandlerTest {
 		 *     <ul>
 		 *       <li>"480x320.jpg" が含まれていること。</li>
 		 *       <li>"480x320.jpeg" が含まれていること。</li>
-		 *       <li>"480x320.png" が含まれていないこと（現状のZipFileHandlerはJPG/JPEGのみを対象とするため）。
-		 *           テストコード内ではこのアサーションはコメントアウトされています。</li>
+		 *       <li>"480x320.png" が含まれていること。</li>
 		 *       <li>"480x320.gif" が含まれていないこと。</li>
 		 *     </ul>
 		 *   </li>
@@ -63,7 +70,7 @@ class ZipFileHandlerTest {
 				assertAll("inputFiles",
 					() -> assertTrue(inflatedFileNameList.contains("480x320.jpg")),
 					() -> assertTrue(inflatedFileNameList.contains("480x320.jpeg")),
-				//	() -> assertTrue(inflatedFileNameList.contains("480x320.png")), // ZipFileHandlerは現状JPG/JPEGのみ対応
+					() -> assertTrue(inflatedFileNameList.contains("480x320.png")),
 					() -> assertFalse(inflatedFileNameList.contains("480x320.gif")));
 				
 				for (Path inflatedFilePath : inflatedFilePathList) {
@@ -75,4 +82,85 @@ class ZipFileHandlerTest {
 			}
 		}
 	}
+
+	@Nested
+	@DisplayName("inflateAsyncメソッドに対するテスト")
+	/**
+	 * {@link ZipFileHandler#inflateAsync(Path, Path, java.util.concurrent.ExecutorService, int)} メソッドのテストケースをグループ化するネストクラスです。
+	 */
+	class InflateAsync {
+
+		/**
+		 * 複数のワーカーでZIPファイルを並列に解凍した場合に、返される {@link CompletableFuture} のリストが
+		 * ZIP内のエントリ順に並び、すべて展開済みのファイルパスで完了することを確認するテストです。
+		 * @throws IOException テストファイルの準備、ZIPファイルの解凍、または一時ファイルの削除中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("複数ワーカーで並列に解凍し、エントリ順に完了を待機するテスト")
+		void test01() throws IOException {
+			Path testDataPath = Paths.get("src/test/resources/imaizm/imagebundler/ZipFileHandlerTest/Inflate/test01/data.zip");
+			Path tempInflatePath = testDataPath.getParent().resolve("inflatedAsync");
+			Files.createDirectory(tempInflatePath);
+			ExecutorService executorService = ZipFileHandler.newInflateExecutor(4);
+			try {
+				List<CompletableFuture<Path>> inflatedFilePathFutureList =
+					ZipFileHandler.inflateAsync(testDataPath, tempInflatePath, executorService, 4);
+				List<Path> inflatedFilePathList = new ArrayList<Path>();
+				for (CompletableFuture<Path> inflatedFilePathFuture : inflatedFilePathFutureList) {
+					inflatedFilePathList.add(ZipFileHandler.await(inflatedFilePathFuture));
+				}
+
+				List<Path> sequentialFilePathList = ZipFileHandler.inflate(testDataPath, tempInflatePath);
+				assertEquals(sequentialFilePathList, inflatedFilePathList);
+				for (Path inflatedFilePath : inflatedFilePathList) {
+					assertTrue(Files.size(inflatedFilePath) > 0);
+				}
+
+				for (Path inflatedFilePath : inflatedFilePathList) {
+					Files.deleteIfExists(inflatedFilePath);
+				}
+			} finally {
+				executorService.shutdown();
+				Files.delete(tempInflatePath);
+			}
+		}
+
+		/**
+		 * 別のディレクトリに同じファイル名のエントリがある場合に、それぞれが重複しない名前のファイルに
+		 * 元の内容のまま展開されることを確認するテストです。
+		 * @throws IOException テストファイルの準備、ZIPファイルの解凍、または一時ファイルの削除中にエラーが発生した場合。
+		 */
+		@Test
+		@DisplayName("同じファイル名のエントリを別々のファイルに展開するテスト")
+		void test02() throws IOException {
+			Path workDirectoryPath = Paths.get("src/test/resources/imaizm/imagebundler/ZipFileHandlerTest/InflateAsync/test02");
+			Path testDataPath = workDirectoryPath.resolve("data.zip");
+			Path tempInflatePath = workDirectoryPath.resolve("inflated");
+			List<String> entryNameList = Arrays.asList("a/001.jpg", "b/001.jpg", "c/001.JPG");
+			Files.createDirectories(tempInflatePath);
+			ExecutorService executorService = ZipFileHandler.newInflateExecutor(4);
+			try {
+				try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(testDataPath.toFile())) {
+					for (String entryName : entryNameList) {
+						zipOutputStream.putArchiveEntry(new ZipArchiveEntry(entryName));
+						zipOutputStream.write(entryName.getBytes(StandardCharsets.UTF_8));
+						zipOutputStream.closeArchiveEntry();
+					}
+				}
+
+				List<CompletableFuture<Path>> inflatedFilePathFutureList =
+					ZipFileHandler.inflateAsync(testDataPath, tempInflatePath, executorService, 4);
+				List<String> inflatedFileNameList = new ArrayList<String>();
+				for (int i = 0; i < inflatedFilePathFutureList.size(); i++) {
+					Path inflatedFilePath = ZipFileHandler.await(inflatedFilePathFutureList.get(i));
+					inflatedFileNameList.add(inflatedFilePath.getFileName().toString());
+					assertEquals(entryNameList.get(i), new String(Files.readAllBytes(inflatedFilePath), StandardCharsets.UTF_8));
+				}
+				assertEquals(Arrays.asList("001.jpg", "b_001.jpg", "c_001.JPG"), inflatedFileNameList);
+			} finally {
+				executorService.shutdown();
+				FileUtils.deleteDirectory(workDirectoryPath.getParent().toFile());
+			}
+		}
+	}
 }